@@ -51,14 +51,19 @@ import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
 import org.openehealth.coala.domain.CoalaAuthor;
+import org.openehealth.coala.domain.ConsentFetchMode;
 import org.openehealth.coala.domain.ConsentSortParameter;
 import org.openehealth.coala.domain.FindPatientConsentResult;
 import org.openehealth.coala.domain.Patient;
 import org.openehealth.coala.domain.PatientConsent;
 import org.openehealth.coala.domain.PatientConsentPolicy;
 import org.openehealth.coala.exception.CdaXmlTransformerException;
+import org.openehealth.coala.interfacing.AsyncConsentCreationService;
+import org.openehealth.coala.interfacing.AsyncResultListener;
+import org.openehealth.coala.interfacing.CdaLoader;
 import org.openehealth.coala.interfacing.CDATransformationService;
 import org.openehealth.coala.interfacing.ConsentCreationService;
+import org.openehealth.coala.interfacing.ConsentPrefetchService;
 
 /**
  * Represents a patients privacy consent. It will be used if a new consent is
@@ -80,6 +85,7 @@ public class ConsentBean implements Serializable {
 	@Transient
 	private DataModel<PatientConsent> consents = new ListDataModel<PatientConsent>();
 	private List<PatientConsent> consentList;
+	private FindPatientConsentResult findPatientConsentResult;
 
 	private Collection<Object> selectionConsent;
 	private PatientConsent selectedConsent;
@@ -96,6 +102,19 @@ public class ConsentBean implements Serializable {
 	private boolean successfulRegistration;
 	private boolean errorfulRegistration;
 	private boolean validationSuccessful;
+
+	/*
+	 * Consents of the selected patient reloaded in the background after a
+	 * registration, taken over by the consent table as soon as it is rendered
+	 * again.
+	 */
+	private volatile FindPatientConsentResult reloadedConsents;
+
+	/*
+	 * False after this bean has been deserialized from the session, until the
+	 * cdaLoader is set on the restored consents again.
+	 */
+	private transient boolean cdaLoaderAttached;
 	
 	/*
 	 * Handle on the coala-communication layer
@@ -103,6 +122,28 @@ public class ConsentBean implements Serializable {
 	@Transient
 	@Autowired
 	private ConsentCreationService consentCreationService;
+
+	/*
+	 * Handle on the non-blocking requests of the coala-communication layer
+	 */
+	@Transient
+	@Autowired
+	private AsyncConsentCreationService asyncConsentCreationService;
+
+	/*
+	 * Handle on the consents prefetched after a patient search
+	 */
+	@Transient
+	@Autowired
+	private ConsentPrefetchService consentPrefetchService;
+
+	/*
+	 * Handle on the loader of the consent documents, which is not serialized
+	 * with the consents
+	 */
+	@Transient
+	@Autowired
+	private CdaLoader cdaLoader;
 	
 	/*
 	 * Handle on the CDA/Consent service layer
@@ -135,6 +176,32 @@ public class ConsentBean implements Serializable {
 		LOG.info("ConsentCreationService configured and ready... [OK]");
 	}
 
+	/**
+	 * @param asyncConsentCreationService
+	 *            the asyncConsentCreationService to set
+	 */
+	public void setAsyncConsentCreationService(
+			AsyncConsentCreationService asyncConsentCreationService) {
+		this.asyncConsentCreationService = asyncConsentCreationService;
+	}
+
+	/**
+	 * @param consentPrefetchService
+	 *            the consentPrefetchService to set
+	 */
+	public void setConsentPrefetchService(
+			ConsentPrefetchService consentPrefetchService) {
+		this.consentPrefetchService = consentPrefetchService;
+	}
+
+	/**
+	 * @param cdaLoader
+	 *            the cdaLoader to set
+	 */
+	public void setCdaLoader(CdaLoader cdaLoader) {
+		this.cdaLoader = cdaLoader;
+	}
+
 	/**
 	 * @return the policy
 	 */
@@ -264,21 +331,52 @@ public class ConsentBean implements Serializable {
 
 		long start = System.currentTimeMillis();
 
-		// perform query against PXS finally
-		FindPatientConsentResult findPatientConsentResult = consentCreationService.getPatientConsents(selectedPatient, sortParameter);
-		long end = System.currentTimeMillis();
-
-		LOG.info("PXS iti-18-43 query took " + (end - start) + " ms.");
+		// use the consents prefetched after the patient search, if any
+		FindPatientConsentResult findPatientConsentResult = consentPrefetchService
+				.takePrefetchedConsents(selectedPatient, sortParameter);
+		if (findPatientConsentResult == null) {
+			// perform query against PXS finally, the table only shows
+			// metadata, so the consent documents are not retrieved
+			findPatientConsentResult = consentCreationService
+					.getPatientConsents(selectedPatient, sortParameter,
+							ConsentFetchMode.METADATA_ONLY);
+			long end = System.currentTimeMillis();
+			LOG.info("PXS iti-18 query took " + (end - start) + " ms.");
+		} else {
+			long end = System.currentTimeMillis();
+			LOG.info("Prefetched consents were available after "
+					+ (end - start) + " ms.");
+		}
 
 		if (findPatientConsentResult != null) {
 			consentList = findPatientConsentResult.getPatientConsents();
 			setConsents(new ListDataModel<PatientConsent>(consentList));
 
 		}
+		this.findPatientConsentResult = findPatientConsentResult;
 		buildPatientFullName();
 		return "patientSearch";
 	}
 
+	/**
+	 * Re-sorts the {@link PatientConsent}s currently shown in the consent data
+	 * table by the current sort parameter. The consents already loaded are
+	 * sorted locally, only if there are none a new search is triggered.
+	 */
+	private void resort() {
+		if (findPatientConsentResult == null) {
+			search();
+			return;
+		}
+		findPatientConsentResult = findPatientConsentResult
+				.resortBy(sortParameter);
+		consentList = findPatientConsentResult.getPatientConsents();
+		setConsents(new ListDataModel<PatientConsent>(consentList));
+		// row keys of the old selection do not match the new order
+		this.selectionConsent = new ArrayList<Object>();
+		this.selectedConsent = null;
+	}
+
 	
 	/**
 	 * Builds the fullname of the patient for displaying in the UI
@@ -300,9 +398,76 @@ public class ConsentBean implements Serializable {
 	 * @return the consents
 	 */
 	public DataModel<PatientConsent> getConsents() {
+		takeReloadedConsents();
+		attachCdaLoader();
 		return consents;
 	}
 
+	/**
+	 * Sets the cdaLoader on the consents of the consent table once after this
+	 * bean has been deserialized, as the loader of a {@link PatientConsent} is
+	 * not serialized and the consent documents could not be loaded otherwise.
+	 */
+	private void attachCdaLoader() {
+		if (cdaLoaderAttached || cdaLoader == null)
+			return;
+		if (consentList != null) {
+			for (PatientConsent consent : consentList) {
+				consent.setCdaLoader(cdaLoader);
+			}
+		}
+		cdaLoaderAttached = true;
+	}
+
+	/**
+	 * Starts reloading the consents of the selected patient in the background,
+	 * e.g. after a new consent was registered. The request thread is not
+	 * blocked, the reloaded consents replace the outdated ones once they have
+	 * arrived and the consent table is rendered again.
+	 */
+	private void reloadConsentsInBackground() {
+		final Patient patient = selectedPatient;
+		if (patient == null)
+			return;
+		asyncConsentCreationService.getPatientConsentsAsync(patient,
+				sortParameter, ConsentFetchMode.METADATA_ONLY,
+				new AsyncResultListener<FindPatientConsentResult>() {
+					@Override
+					public void onSuccess(FindPatientConsentResult result) {
+						reloadedConsents = result;
+					}
+
+					@Override
+					public void onFailure(Throwable cause) {
+						LOG.warn("Reloading the consents of patient "
+								+ patient.getPatientID() + " failed: "
+								+ cause.getMessage());
+					}
+				});
+	}
+
+	/**
+	 * Shows the consents reloaded in the background, if they have arrived and
+	 * still belong to the selected patient.
+	 */
+	private void takeReloadedConsents() {
+		FindPatientConsentResult reloaded = reloadedConsents;
+		if (reloaded == null)
+			return;
+		reloadedConsents = null;
+		if (selectedPatient == null
+				|| !selectedPatient.equals(reloaded.getPatient()))
+			return;
+		if (reloaded.getSortBy() != sortParameter)
+			reloaded = reloaded.resortBy(sortParameter);
+		findPatientConsentResult = reloaded;
+		consentList = reloaded.getPatientConsents();
+		setConsents(new ListDataModel<PatientConsent>(consentList));
+		// row keys of the old selection do not match the new consents
+		this.selectionConsent = new ArrayList<Object>();
+		this.selectedConsent = null;
+	}
+
 	/**
 	 * @param selection sets the selectionConset
 	 */
@@ -340,7 +505,7 @@ public class ConsentBean implements Serializable {
 		} else {
 			setSortParameter(ConsentSortParameter.START_DATE_NEWEST_FIRST);
 		}
-		search();
+		resort();
 	}
 
 	/**
@@ -352,7 +517,7 @@ public class ConsentBean implements Serializable {
 		} else {
 			setSortParameter(ConsentSortParameter.END_DATE_NEWEST_FIRST);
 		}
-		search();
+		resort();
 	}
 
 	/**
@@ -364,7 +529,7 @@ public class ConsentBean implements Serializable {
 		} else {
 			setSortParameter(ConsentSortParameter.POLICY_TYPE_ASCENDING);
 		}
-		search();
+		resort();
 	}
 
 	/**
@@ -377,7 +542,7 @@ public class ConsentBean implements Serializable {
 		} else {
 			setSortParameter(ConsentSortParameter.CREATION_DATE_NEWEST_FIRST);
 		}
-		search();
+		resort();
 	}
 
 	/**
@@ -389,7 +554,7 @@ public class ConsentBean implements Serializable {
 		} else {
 			setSortParameter(ConsentSortParameter.AUTHOR_ASCENDING);
 		}
-		search();
+		resort();
 	}
 
 	/**
@@ -401,7 +566,7 @@ public class ConsentBean implements Serializable {
 		} else {
 			setSortParameter(ConsentSortParameter.EFFECTIVE_TRUE_FIRST);
 		}
-		search();
+		resort();
 	}
 
 	/**
@@ -474,6 +639,7 @@ public class ConsentBean implements Serializable {
 	 */
 	public void cleanForNewPatientSearch() {
 		this.consentList = new ArrayList<PatientConsent>();
+		this.findPatientConsentResult = null;
 		this.consents = new ListDataModel<PatientConsent>();
 		this.patientString = "";
 		this.selectedConsent = null;
@@ -611,6 +777,9 @@ public class ConsentBean implements Serializable {
 					selectedPatient, validFrom,validUntil, policy, author);
 			setSuccessfulRegistration(true);
 			setErrorfulRegistration(false);
+			// the consent table is outdated now, reload it while the
+			// success dialog is shown
+			reloadConsentsInBackground();
 			// show successful creation panel to the user
 			UIPopupPanel consentCreationSuccessDialog = (UIPopupPanel) uiRoot.findComponent("consentCreationSuccessDialog");
 			if(consentCreationSuccessDialog!=null) {
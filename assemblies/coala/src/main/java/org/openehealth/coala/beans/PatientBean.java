@@ -51,6 +51,7 @@ import org.openehealth.coala.domain.PatientAddress;
 import org.openehealth.coala.domain.PatientConsent;
 import org.openehealth.coala.domain.PatientSortParameter;
 import org.openehealth.coala.exception.ServiceParameterException;
+import org.openehealth.coala.interfacing.ConsentPrefetchService;
 import org.openehealth.coala.interfacing.PatientService;
 
 /**
@@ -75,6 +76,7 @@ public class PatientBean implements Serializable {
 	@Transient
 	private DataModel<Patient> patients = new ListDataModel<Patient>();
 	private List<Patient> patientsResList;
+	private FindPatientResult findPatientResult;
 	private boolean initialSearchState = true;
 
 	private Patient selectedPatient;
@@ -118,6 +120,23 @@ public class PatientBean implements Serializable {
 	@Autowired
 	private PatientService pxsQueryService;
 
+	/*
+	 * Prefetches the consents of small PDQ results in the background, so
+	 * they are usually available as soon as a patient is selected.
+	 */
+	@Transient
+	@Autowired
+	private ConsentPrefetchService consentPrefetchService;
+
+	/**
+	 * @param consentPrefetchService
+	 *            the consentPrefetchService to set
+	 */
+	public void setConsentPrefetchService(
+			ConsentPrefetchService consentPrefetchService) {
+		this.consentPrefetchService = consentPrefetchService;
+	}
+
 	/**
 	 * @return the pxsQueryService
 	 */
@@ -422,6 +441,7 @@ public class PatientBean implements Serializable {
 		consentBean.cleanForNewPatientSearch();
 
 		patientsResList = null;
+		findPatientResult = null;
 
 		try {
 			String givenNameCharsetChecked = checkAndFixWrongCharset(givenName);
@@ -447,6 +467,7 @@ public class PatientBean implements Serializable {
 				// all the other dynamically queried patients
 				patientsResList.addAll(findPatientResult.getPatients());
 				setPatients(new ListDataModel<Patient>(patientsResList));
+				this.findPatientResult = findPatientResult;
 				/*
 				 * cleaning up the old values of the UIInput fields
 				 */
@@ -458,6 +479,10 @@ public class PatientBean implements Serializable {
 				 */
 				consentBean.setConsents(new ListDataModel<PatientConsent>());
 				initialSearchState = false;
+
+				// few patients make a selection likely, start loading their
+				// consents while the user is still looking at the result
+				consentPrefetchService.prefetchConsents(patientsResList);
 			} else {
 				cleanOutdatedViewState();
 				setPatients(new ListDataModel<Patient>());
@@ -543,6 +568,24 @@ public class PatientBean implements Serializable {
 		this.sortParameter = sortParameter;
 	}
 
+	/**
+	 * Re-sorts the {@link Patient}s currently shown in the patient data table
+	 * by the current sort parameter. The patients already found are sorted
+	 * locally, only if there are none a new search is triggered.
+	 */
+	private void resort() {
+		if (findPatientResult == null) {
+			search();
+			return;
+		}
+		findPatientResult = findPatientResult.resortBy(sortParameter);
+		patientsResList = new ArrayList<Patient>(
+				findPatientResult.getPatients());
+		setPatients(new ListDataModel<Patient>(patientsResList));
+		// row keys of the old selection do not match the new order
+		setPatientSelection(new ArrayList<Object>());
+	}
+
 	/**
 	 * Sorts the patient table by patientID
 	 */
@@ -552,7 +595,7 @@ public class PatientBean implements Serializable {
 		} else {
 			setSortParameter(PatientSortParameter.PID_ASCENDING);
 		}
-		search();
+		resort();
 	}
 
 	/**
@@ -564,7 +607,7 @@ public class PatientBean implements Serializable {
 		} else {
 			setSortParameter(PatientSortParameter.GIVENNAME_ASCENDING);
 		}
-		search();
+		resort();
 	}
 
 	/**
@@ -576,7 +619,7 @@ public class PatientBean implements Serializable {
 		} else {
 			setSortParameter(PatientSortParameter.LASTNAME_ASCENDING);
 		}
-		search();
+		resort();
 	}
 
 	/**
@@ -588,7 +631,7 @@ public class PatientBean implements Serializable {
 		} else {
 			setSortParameter(PatientSortParameter.BIRTHDATE_NEWEST_FIRST);
 		}
-		search();
+		resort();
 	}
 
 	/**
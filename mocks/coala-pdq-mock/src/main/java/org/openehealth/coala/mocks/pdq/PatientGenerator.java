@@ -0,0 +1,196 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.openehealth.coala.mocks.pdq;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates a population of synthetic patients with German names, addresses
+ * and dates of birth between 1920 and 2010. Patient ids are numbered
+ * consecutively from the first id on. Names and places are drawn with a skew
+ * towards the front of their lists, so common names like "Müller" yield many
+ * candidates while rare ones yield few, as in a real MPI. The same seed
+ * always produces the same population.
+ */
+public class PatientGenerator {
+
+	private static final String[] FAMILY_NAMES = { "Müller", "Schmidt",
+			"Schneider", "Fischer", "Weber", "Meyer", "Wagner", "Becker",
+			"Schulz", "Hoffmann", "Schäfer", "Koch", "Bauer", "Richter",
+			"Klein", "Wolf", "Schröder", "Neumann", "Schwarz", "Zimmermann",
+			"Braun", "Krüger", "Hofmann", "Hartmann", "Lange", "Schmitt",
+			"Werner", "Schmitz", "Krause", "Meier", "Lehmann", "Schmid",
+			"Schulze", "Maier", "Köhler", "Herrmann", "König", "Walter",
+			"Mayer", "Huber", "Kaiser", "Fuchs", "Peters", "Lang", "Scholz",
+			"Möller", "Weiß", "Jung", "Hahn", "Schubert", "Vogel",
+			"Friedrich", "Keller", "Günther", "Frank", "Berger", "Winkler",
+			"Roth", "Beck", "Lorenz", "Baumann", "Franke", "Albrecht",
+			"Schuster", "Simon", "Ludwig", "Böhm", "Winter", "Kraus",
+			"Martin", "Schumacher", "Krämer", "Vogt", "Stein", "Jäger",
+			"Otto", "Sommer", "Groß", "Seidel", "Heinrich", "Brandt",
+			"Haas", "Schreiber", "Graf", "Schulte", "Dietrich", "Ziegler",
+			"Kuhn", "Kühn", "Pohl", "Engel", "Horn", "Busch", "Bergmann",
+			"Thomas", "Voigt", "Sauer", "Arnold", "Wolff", "Pfeiffer" };
+
+	private static final String[] FEMALE_NAMES = { "Maria", "Ursula",
+			"Monika", "Petra", "Elisabeth", "Sabine", "Renate", "Helga",
+			"Karin", "Brigitte", "Ingrid", "Erika", "Andrea", "Gisela",
+			"Claudia", "Susanne", "Gabriele", "Christa", "Christine",
+			"Hildegard", "Anna", "Birgit", "Barbara", "Gertrud", "Heike",
+			"Marianne", "Elke", "Martina", "Angelika", "Irmgard", "Inge",
+			"Nicole", "Stefanie", "Julia", "Katharina", "Sophie", "Lena",
+			"Hannelore", "Lea" };
+
+	private static final String[] MALE_NAMES = { "Peter", "Michael",
+			"Thomas", "Andreas", "Wolfgang", "Klaus", "Jürgen", "Günter",
+			"Stefan", "Christian", "Uwe", "Werner", "Horst", "Frank",
+			"Dieter", "Manfred", "Gerhard", "Hans", "Bernd", "Torsten",
+			"Markus", "Matthias", "Helmut", "Walter", "Heinz", "Martin",
+			"Ralf", "Rainer", "Jörg", "Sven", "Alexander", "Karl", "Lukas",
+			"Jan", "Tobias", "Florian", "Sebastian", "Daniel", "Björn",
+			"Felix" };
+
+	private static final String[] STREETS = { "Hauptstraße", "Schulstraße",
+			"Gartenstraße", "Bahnhofstraße", "Dorfstraße", "Bergstraße",
+			"Birkenweg", "Lindenstraße", "Kirchstraße", "Waldstraße",
+			"Ringstraße", "Schillerstraße", "Goethestraße", "Jahnstraße",
+			"Mühlenweg", "Wiesenweg", "Am Sportplatz", "Friedhofstraße",
+			"Rosenstraße", "Feldstraße" };
+
+	private static final String[][] CITIES = { { "Berlin", "10115" },
+			{ "Hamburg", "20095" }, { "München", "80331" },
+			{ "Köln", "50667" }, { "Frankfurt am Main", "60311" },
+			{ "Stuttgart", "70173" }, { "Düsseldorf", "40213" },
+			{ "Dortmund", "44135" }, { "Essen", "45127" },
+			{ "Leipzig", "04109" }, { "Bremen", "28195" },
+			{ "Dresden", "01067" }, { "Hannover", "30159" },
+			{ "Nürnberg", "90402" }, { "Heilbronn", "74072" },
+			{ "Karlsruhe", "76133" }, { "Mannheim", "68159" },
+			{ "Freiburg im Breisgau", "79098" }, { "Ulm", "89073" },
+			{ "Würzburg", "97070" } };
+
+	public static final int DEFAULT_POPULATION_SIZE = 100000;
+	public static final long DEFAULT_FIRST_PATIENT_ID = 100000;
+	public static final long DEFAULT_SEED = 42;
+
+	private int populationSize = DEFAULT_POPULATION_SIZE;
+	private long firstPatientId = DEFAULT_FIRST_PATIENT_ID;
+	private long seed = DEFAULT_SEED;
+
+	/**
+	 * Generates the population.
+	 *
+	 * @return the patients, ordered by their ids
+	 */
+	public SyntheticPatient[] generate() {
+		Random random = new Random(seed);
+		SyntheticPatient[] patients = new SyntheticPatient[populationSize];
+		// dates of birth are shared, there are only about 33000 of them
+		Map<Integer, String> birthDates = new HashMap<Integer, String>();
+		Calendar calendar = new GregorianCalendar(1920, Calendar.JANUARY, 1);
+		long firstDay = calendar.getTimeInMillis();
+		long days = (new GregorianCalendar(2010, Calendar.DECEMBER, 31)
+				.getTimeInMillis() - firstDay) / (24L * 60 * 60 * 1000);
+		for (int i = 0; i < populationSize; i++) {
+			boolean female = random.nextBoolean();
+			calendar.setTimeInMillis(firstDay);
+			calendar.add(Calendar.DAY_OF_YEAR, random.nextInt((int) days + 1));
+			String[] city = skewed(CITIES, random);
+			patients[i] = new SyntheticPatient(String.valueOf(firstPatientId
+					+ i), skewed(FAMILY_NAMES, random), skewed(
+					female ? FEMALE_NAMES : MALE_NAMES, random), birthDate(
+					calendar, birthDates), female ? "F" : "M", skewed(STREETS,
+					random), 1 + random.nextInt(150), city[0], city[1]);
+		}
+		return patients;
+	}
+
+	/*
+	 * Little helping method, drawing an element with a skew towards the front
+	 * of the array.
+	 */
+	private static <T> T skewed(T[] values, Random random) {
+		return values[random.nextInt(random.nextInt(values.length) + 1)];
+	}
+
+	/*
+	 * Little helping method, returning the shared yyyyMMdd representation of
+	 * the date of the calendar.
+	 */
+	private static String birthDate(Calendar calendar,
+			Map<Integer, String> birthDates) {
+		int value = calendar.get(Calendar.YEAR) * 10000
+				+ (calendar.get(Calendar.MONTH) + 1) * 100
+				+ calendar.get(Calendar.DAY_OF_MONTH);
+		Integer key = Integer.valueOf(value);
+		String result = birthDates.get(key);
+		if (result == null) {
+			result = String.valueOf(value);
+			birthDates.put(key, result);
+		}
+		return result;
+	}
+
+	/**
+	 * @return the number of generated patients
+	 */
+	public int getPopulationSize() {
+		return populationSize;
+	}
+
+	/**
+	 * @param populationSize
+	 *            the number of patients to generate, must not be negative
+	 */
+	public void setPopulationSize(int populationSize) {
+		if (populationSize < 0)
+			throw new IllegalArgumentException(
+					"populationSize must not be negative");
+		this.populationSize = populationSize;
+	}
+
+	/**
+	 * @return the id of the first patient
+	 */
+	public long getFirstPatientId() {
+		return firstPatientId;
+	}
+
+	/**
+	 * @param firstPatientId
+	 *            the id of the first patient, the other ids follow
+	 *            consecutively
+	 */
+	public void setFirstPatientId(long firstPatientId) {
+		if (firstPatientId < 0)
+			throw new IllegalArgumentException(
+					"firstPatientId must not be negative");
+		this.firstPatientId = firstPatientId;
+	}
+
+	/**
+	 * @param seed
+	 *            the seed of the random data
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+}
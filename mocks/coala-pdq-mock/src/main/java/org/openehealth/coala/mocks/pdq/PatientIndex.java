@@ -0,0 +1,330 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.openehealth.coala.mocks.pdq;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Synthetic MPI answering patient demographics queries from memory. Patients
+ * are found by id in constant time, as the generated ids are consecutive, and
+ * by family name, given name and date of birth through a
+ * {@link SortedKeyIndex} each. Names are compared case-insensitively, a
+ * trailing <code>*</code> makes a name a prefix. A query is answered by
+ * scanning the smallest range of the given criteria and checking the other
+ * ones for each candidate.
+ * <p>
+ * Instances are immutable and thread-safe.
+ */
+public class PatientIndex {
+
+	private static final Logger LOG = LoggerFactory.getLogger(PatientIndex.class);
+
+	public static final String DEFAULT_ASSIGNING_AUTHORITY_OID = "2.16.840.1.113883.3.37.4.1.1.2.2.1";
+
+	private final SyntheticPatient[] patients;
+	private final long firstPatientId;
+	private final String assigningAuthorityOid;
+
+	private final String[] normalizedFamilyNames;
+	private final String[] normalizedGivenNames;
+
+	private final SortedKeyIndex byFamilyName;
+	private final SortedKeyIndex byGivenName;
+	private final SortedKeyIndex byBirthDate;
+
+	/**
+	 * Generates the population and builds the indices.
+	 *
+	 * @param generator
+	 *            generates the patients
+	 * @param assigningAuthorityOid
+	 *            the assigning authority of the patient ids
+	 */
+	public PatientIndex(PatientGenerator generator, String assigningAuthorityOid) {
+		if (generator == null)
+			throw new IllegalArgumentException("generator cannot be null");
+		if (assigningAuthorityOid == null
+				|| assigningAuthorityOid.length() == 0)
+			throw new IllegalArgumentException(
+					"assigningAuthorityOid cannot be null or empty");
+		long start = System.currentTimeMillis();
+		this.patients = generator.generate();
+		this.firstPatientId = generator.getFirstPatientId();
+		this.assigningAuthorityOid = assigningAuthorityOid;
+
+		Map<String, String> normalized = new HashMap<String, String>();
+		normalizedFamilyNames = new String[patients.length];
+		normalizedGivenNames = new String[patients.length];
+		String[] birthDates = new String[patients.length];
+		for (int i = 0; i < patients.length; i++) {
+			normalizedFamilyNames[i] = normalize(patients[i].getFamilyName(),
+					normalized);
+			normalizedGivenNames[i] = normalize(patients[i].getGivenName(),
+					normalized);
+			birthDates[i] = patients[i].getBirthDate();
+		}
+		byFamilyName = new SortedKeyIndex(normalizedFamilyNames);
+		byGivenName = new SortedKeyIndex(normalizedGivenNames);
+		byBirthDate = new SortedKeyIndex(birthDates);
+		LOG.info("Generated and indexed " + patients.length + " patients in "
+				+ (System.currentTimeMillis() - start) + " ms");
+	}
+
+	/**
+	 * Finds the patients matching all given criteria. Criteria which are null
+	 * or empty are ignored, a query without any criterion finds nothing.
+	 *
+	 * @param id
+	 *            the patient id
+	 * @param assigningAuthority
+	 *            the assigning authority of the patient id, ignored if null
+	 * @param familyName
+	 *            the family name, may end with <code>*</code>
+	 * @param givenName
+	 *            the given name, may end with <code>*</code>
+	 * @param birthDate
+	 *            the date of birth, formatted yyyyMMdd
+	 * @param sex
+	 *            the administrative sex
+	 * @param limit
+	 *            the maximum number of patients returned
+	 * @return the matching patients, at most limit
+	 */
+	public Result find(String id, String assigningAuthority, String familyName,
+			String givenName, String birthDate, String sex, int limit) {
+		Result result = new Result();
+		NamePattern family = NamePattern.of(familyName);
+		NamePattern given = NamePattern.of(givenName);
+		if (!isEmpty(id)) {
+			SyntheticPatient patient = byId(id);
+			if (patient != null
+					&& (isEmpty(assigningAuthority) || assigningAuthorityOid
+							.equals(assigningAuthority))
+					&& matches(patient, indexOf(patient), family, given,
+							birthDate, sex))
+				result.add(patient, limit);
+			return result;
+		}
+
+		// scan the smallest range of the given criteria
+		SortedKeyIndex index = null;
+		int[] range = null;
+		if (family != null) {
+			index = byFamilyName;
+			range = family.lookup(byFamilyName);
+		}
+		if (given != null) {
+			int[] candidate = given.lookup(byGivenName);
+			if (range == null || size(candidate) < size(range)) {
+				index = byGivenName;
+				range = candidate;
+			}
+		}
+		if (!isEmpty(birthDate)) {
+			int[] candidate = byBirthDate.exact(birthDate);
+			if (range == null || size(candidate) < size(range)) {
+				index = byBirthDate;
+				range = candidate;
+			}
+		}
+		if (range == null)
+			return result;
+		if (criteria(familyName, givenName, birthDate, sex) == 1) {
+			// nothing left to check, the range is the result
+			int end = Math.min(range[1], range[0] + limit);
+			for (int position = range[0]; position < end; position++)
+				result.patients.add(patients[index.patientAt(position)]);
+			result.hits = size(range);
+			return result;
+		}
+		for (int position = range[0]; position < range[1]; position++) {
+			int patientIndex = index.patientAt(position);
+			SyntheticPatient patient = patients[patientIndex];
+			if (matches(patient, patientIndex, family, given, birthDate, sex))
+				result.add(patient, limit);
+		}
+		return result;
+	}
+
+	/**
+	 * @return the number of patients
+	 */
+	public int size() {
+		return patients.length;
+	}
+
+	/**
+	 * @return the assigning authority of the patient ids
+	 */
+	public String getAssigningAuthorityOid() {
+		return assigningAuthorityOid;
+	}
+
+	/*
+	 * Little helping method, returning the patient with the given id or null.
+	 */
+	private SyntheticPatient byId(String id) {
+		long value;
+		try {
+			value = Long.parseLong(id);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+		long index = value - firstPatientId;
+		if (index < 0 || index >= patients.length)
+			return null;
+		return patients[(int) index];
+	}
+
+	/*
+	 * Little helping method, returning the position of a patient found by id.
+	 */
+	private int indexOf(SyntheticPatient patient) {
+		return (int) (Long.parseLong(patient.getId()) - firstPatientId);
+	}
+
+	/*
+	 * Little helping method, checking the criteria which were not used to
+	 * find the candidate.
+	 */
+	private boolean matches(SyntheticPatient patient, int index,
+			NamePattern family, NamePattern given, String birthDate, String sex) {
+		return (family == null || family.matches(normalizedFamilyNames[index]))
+				&& (given == null || given.matches(normalizedGivenNames[index]))
+				&& (isEmpty(birthDate) || birthDate.equals(patient
+						.getBirthDate()))
+				&& (isEmpty(sex) || sex.equalsIgnoreCase(patient.getSex()));
+	}
+
+	/*
+	 * Little helping method, returning the normalized form of a name shared
+	 * by all patients with that name.
+	 */
+	private static String normalize(String name, Map<String, String> normalized) {
+		String result = normalized.get(name);
+		if (result == null) {
+			result = normalize(name);
+			normalized.put(name, result);
+		}
+		return result;
+	}
+
+	/*
+	 * Little helping method, returning the form of a name used for
+	 * comparisons.
+	 */
+	private static String normalize(String name) {
+		return name.trim().toUpperCase(Locale.GERMAN);
+	}
+
+	/*
+	 * Little helping method, counting the given criteria.
+	 */
+	private static int criteria(String... values) {
+		int count = 0;
+		for (String value : values) {
+			if (!isEmpty(value))
+				count++;
+		}
+		return count;
+	}
+
+	private static int size(int[] range) {
+		return range[1] - range[0];
+	}
+
+	private static boolean isEmpty(String value) {
+		return value == null || value.length() == 0;
+	}
+
+	/*
+	 * Normalized name of a query, which is a prefix if the name ends with a
+	 * wildcard.
+	 */
+	private static final class NamePattern {
+
+		private final String value;
+		private final boolean prefix;
+
+		private NamePattern(String value, boolean prefix) {
+			this.value = value;
+			this.prefix = prefix;
+		}
+
+		/*
+		 * Returns the pattern of a name, null if the name is empty.
+		 */
+		static NamePattern of(String name) {
+			if (isEmpty(name))
+				return null;
+			String value = normalize(name);
+			int wildcard = value.indexOf('*');
+			if (wildcard >= 0)
+				return new NamePattern(value.substring(0, wildcard), true);
+			return new NamePattern(value, false);
+		}
+
+		boolean matches(String normalizedName) {
+			return prefix ? normalizedName.startsWith(value) : normalizedName
+					.equals(value);
+		}
+
+		int[] lookup(SortedKeyIndex index) {
+			return prefix ? index.prefix(value) : index.exact(value);
+		}
+	}
+
+	/**
+	 * Patients found by a query, limited in number.
+	 */
+	public static final class Result {
+
+		private final List<SyntheticPatient> patients = new ArrayList<SyntheticPatient>();
+		private int hits;
+
+		/*
+		 * Little helping method, counting a hit and keeping the patient, if
+		 * the limit has not been reached yet.
+		 */
+		private void add(SyntheticPatient patient, int limit) {
+			hits++;
+			if (patients.size() < limit)
+				patients.add(patient);
+		}
+
+		/**
+		 * @return the patients returned, at most the limit of the query
+		 */
+		public List<SyntheticPatient> getPatients() {
+			return patients;
+		}
+
+		/**
+		 * @return the number of all matching patients
+		 */
+		public int getHits() {
+			return hits;
+		}
+	}
+}
@@ -0,0 +1,299 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.openehealth.coala.mocks.pdq;
+
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Answers ER7 encoded PDQ queries (QBP^Q22) with RSP^K22 responses from a
+ * {@link PatientIndex}. The query parameters <code>@PID.3.1</code>,
+ * <code>@PID.3.4.2</code>, <code>@PID.5.1</code>, <code>@PID.5.2</code>,
+ * <code>@PID.7</code> and <code>@PID.8</code> of QPD-3 are supported. The
+ * number of returned patients is limited by the quantity of RCP-2 and by
+ * {@link #setMaxResults(int)}, QAK-4 to QAK-6 state the number of hits,
+ * returned and remaining patients.
+ * <p>
+ * Instances are thread-safe.
+ */
+public class PdqResponder {
+
+	private static final Logger LOG = LoggerFactory.getLogger(PdqResponder.class);
+
+	public static final int DEFAULT_MAX_RESULTS = 100;
+
+	private static final String SEGMENT_SEPARATOR = "\r";
+
+	private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final PatientIndex index;
+
+	private volatile int maxResults = DEFAULT_MAX_RESULTS;
+
+	private final AtomicLong messageControlId = new AtomicLong(System
+			.currentTimeMillis());
+
+	private final ThreadLocal<SimpleDateFormat> timestamp = new ThreadLocal<SimpleDateFormat>() {
+		@Override
+		protected SimpleDateFormat initialValue() {
+			return new SimpleDateFormat("yyyyMMddHHmmssZ");
+		}
+	};
+
+	/**
+	 * Creates a new responder answering from the given index.
+	 *
+	 * @param index
+	 *            the synthetic MPI
+	 */
+	public PdqResponder(PatientIndex index) {
+		if (index == null)
+			throw new IllegalArgumentException("index cannot be null");
+		this.index = index;
+	}
+
+	/**
+	 * Answers a query.
+	 *
+	 * @param request
+	 *            the ER7 encoded QBP^Q22 message
+	 * @return the ER7 encoded RSP^K22 message, an error response if the
+	 *         request contains no QPD segment
+	 */
+	public String respond(String request) {
+		if (request == null)
+			throw new IllegalArgumentException("request cannot be null");
+		String[] msh = null;
+		String[] qpd = null;
+		String[] rcp = null;
+		for (String segment : request.split("[\r\n]+")) {
+			if (segment.startsWith("MSH"))
+				msh = segment.split("\\|", -1);
+			else if (segment.startsWith("QPD"))
+				qpd = segment.split("\\|", -1);
+			else if (segment.startsWith("RCP"))
+				rcp = segment.split("\\|", -1);
+		}
+		if (msh == null)
+			throw new IllegalArgumentException("request has no MSH segment");
+
+		StringBuilder response = new StringBuilder(1024);
+		appendHeader(response, msh);
+		if (qpd == null) {
+			LOG.warn("Received a query without QPD segment");
+			response.append("MSA|AE|").append(field(msh, 9)).append(
+					SEGMENT_SEPARATOR);
+			response.append("QAK||AE").append(SEGMENT_SEPARATOR);
+			return response.toString();
+		}
+
+		String id = null, authority = null, familyName = null, givenName = null, birthDate = null, sex = null;
+		for (String parameter : field(qpd, 3).split("~")) {
+			int separator = parameter.indexOf('^');
+			if (separator < 0)
+				continue;
+			String name = parameter.substring(0, separator);
+			String value = repairCharset(unescape(parameter
+					.substring(separator + 1)));
+			if ("@PID.3.1".equals(name))
+				id = value;
+			else if ("@PID.3.4.2".equals(name))
+				authority = value;
+			else if ("@PID.5.1".equals(name))
+				familyName = value;
+			else if ("@PID.5.2".equals(name))
+				givenName = value;
+			else if ("@PID.7".equals(name))
+				birthDate = value;
+			else if ("@PID.8".equals(name))
+				sex = value;
+		}
+
+		PatientIndex.Result result = index.find(id, authority, familyName,
+				givenName, birthDate, sex, limit(rcp));
+		int returned = result.getPatients().size();
+		response.append("MSA|AA|").append(field(msh, 9)).append(
+				SEGMENT_SEPARATOR);
+		response.append("QAK|").append(field(qpd, 2)).append('|').append(
+				result.getHits() > 0 ? "OK" : "NF").append('|').append(
+				field(qpd, 1)).append('|').append(result.getHits()).append('|')
+				.append(returned).append('|').append(
+						result.getHits() - returned).append(SEGMENT_SEPARATOR);
+		response.append(join(qpd)).append(SEGMENT_SEPARATOR);
+		int setId = 0;
+		for (SyntheticPatient patient : result.getPatients())
+			appendPid(response, ++setId, patient);
+		return response.toString();
+	}
+
+	/*
+	 * Little helping method, appending the MSH segment of the response.
+	 */
+	private void appendHeader(StringBuilder response, String[] msh) {
+		response.append("MSH|^~\\&|").append(field(msh, 4)).append('|')
+				.append(field(msh, 5)).append('|').append(field(msh, 2))
+				.append('|').append(field(msh, 3)).append('|').append(
+						timestamp.get().format(new Date())).append(
+						"||RSP^K22^RSP_K21|").append(
+						messageControlId.incrementAndGet()).append("|P|2.5")
+				.append(SEGMENT_SEPARATOR);
+	}
+
+	/*
+	 * Little helping method, appending the PID segment of a patient.
+	 */
+	private void appendPid(StringBuilder response, int setId,
+			SyntheticPatient patient) {
+		response.append("PID|").append(setId).append("||");
+		escape(response, patient.getId());
+		response.append("^^^&").append(index.getAssigningAuthorityOid())
+				.append("&ISO||");
+		escape(response, patient.getFamilyName());
+		response.append('^');
+		escape(response, patient.getGivenName());
+		response.append("||").append(patient.getBirthDate()).append('|')
+				.append(patient.getSex()).append("|||");
+		escape(response, patient.getStreetAddress());
+		response.append("^^");
+		escape(response, patient.getCity());
+		response.append("^^").append(patient.getZip()).append("^DEU");
+		response.append(SEGMENT_SEPARATOR);
+	}
+
+	/*
+	 * Little helping method, returning the maximum number of patients to
+	 * return for the quantity limit of RCP-2, if any.
+	 */
+	private int limit(String[] rcp) {
+		int limit = maxResults;
+		String quantity = field(rcp, 2);
+		int separator = quantity.indexOf('^');
+		if (separator >= 0)
+			quantity = quantity.substring(0, separator);
+		if (quantity.length() > 0) {
+			try {
+				limit = Math.min(limit, Integer.parseInt(quantity));
+			} catch (NumberFormatException e) {
+				LOG.warn("Ignoring invalid quantity limit " + quantity);
+			}
+		}
+		return Math.max(0, limit);
+	}
+
+	/*
+	 * Little helping method, returning a field of a segment or the empty
+	 * String, if it is missing.
+	 */
+	private static String field(String[] segment, int index) {
+		if (segment == null || index >= segment.length)
+			return "";
+		return segment[index];
+	}
+
+	/*
+	 * Little helping method, joining the fields of a segment again.
+	 */
+	private static String join(String[] segment) {
+		StringBuilder result = new StringBuilder(segment[0]);
+		for (int i = 1; i < segment.length; i++)
+			result.append('|').append(segment[i]);
+		return result.toString();
+	}
+
+	/*
+	 * Little helping method, appending a value with its delimiters escaped.
+	 */
+	static void escape(StringBuilder target, String value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '|':
+				target.append("\\F\\");
+				break;
+			case '^':
+				target.append("\\S\\");
+				break;
+			case '&':
+				target.append("\\T\\");
+				break;
+			case '~':
+				target.append("\\R\\");
+				break;
+			case '\\':
+				target.append("\\E\\");
+				break;
+			default:
+				target.append(c);
+			}
+		}
+	}
+
+	/*
+	 * Little helping method, resolving the escape sequences of the
+	 * delimiters.
+	 */
+	static String unescape(String value) {
+		if (value.indexOf('\\') < 0)
+			return value;
+		return value.replace("\\F\\", "|").replace("\\S\\", "^").replace(
+				"\\T\\", "&").replace("\\R\\", "~").replace("\\E\\", "\\");
+	}
+
+	/*
+	 * Little helping method, undoing the conversion of UTF-8 encoded names
+	 * into ISO-8859-1 done by the PdqMessageBuilderImpl of Coala. Values
+	 * which are no such conversion are returned unchanged.
+	 */
+	static String repairCharset(String value) {
+		boolean nonAscii = false;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c > 0xFF)
+				return value;
+			nonAscii |= c > 0x7F;
+		}
+		if (!nonAscii)
+			return value;
+		String repaired = new String(value.getBytes(ISO_8859_1), UTF_8);
+		return repaired.indexOf('\uFFFD') < 0 ? repaired : value;
+	}
+
+	/**
+	 * @return the maximum number of patients returned for a query
+	 */
+	public int getMaxResults() {
+		return maxResults;
+	}
+
+	/**
+	 * @param maxResults
+	 *            the maximum number of patients returned for a query, must
+	 *            not be negative
+	 */
+	public void setMaxResults(int maxResults) {
+		if (maxResults < 0)
+			throw new IllegalArgumentException(
+					"maxResults must not be negative");
+		this.maxResults = maxResults;
+	}
+}
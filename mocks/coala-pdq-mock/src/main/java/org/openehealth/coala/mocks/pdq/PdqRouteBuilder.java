@@ -16,17 +16,69 @@
  *******************************************************************************/
 package org.openehealth.coala.mocks.pdq;
 
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
 import org.apache.camel.spring.SpringRouteBuilder;
 import org.openehealth.ipf.platform.camel.ihe.pixpdq.PixPdqCamelValidators;
 
+/**
+ * Route of the PDQ mock. Queries are validated, delayed by the
+ * {@link LatencySimulator} and answered by the {@link PdqResponder} from the
+ * synthetic MPI.
+ */
 public class PdqRouteBuilder extends SpringRouteBuilder {
 
+	public static final String DEFAULT_ENDPOINT = "pdq-iti21://localhost:8765";
+
+	private String endpoint = DEFAULT_ENDPOINT;
+
+	private PdqResponder responder;
+
+	private LatencySimulator latencySimulator = new LatencySimulator();
+
 	@Override
 	public void configure() throws Exception {
-		from("pdq-iti21://localhost:8765")
+		if (responder == null)
+			throw new IllegalStateException("responder must be set");
+
+		from(endpoint)
 			.process(PixPdqCamelValidators.iti21RequestValidator()).id("requestValidator")
+			.process(latencySimulator)
+			.process(new Processor() {
+				public void process(Exchange exchange) throws Exception {
+					String request = exchange.getIn().getBody(String.class);
+					exchange.getOut().setBody(responder.respond(request));
+				}
+			})
 			.process(PixPdqCamelValidators.iti21ResponseValidator()).id("responseValidator");
 
 	}
 
+	/**
+	 * @param endpoint
+	 *            the URI of the ITI-21 endpoint
+	 */
+	public void setEndpoint(String endpoint) {
+		this.endpoint = endpoint;
+	}
+
+	/**
+	 * @param responder
+	 *            answers the queries
+	 */
+	public void setResponder(PdqResponder responder) {
+		this.responder = responder;
+	}
+
+	/**
+	 * @param latencySimulator
+	 *            delays the queries, no delay by default
+	 */
+	public void setLatencySimulator(LatencySimulator latencySimulator) {
+		if (latencySimulator == null)
+			throw new IllegalArgumentException(
+					"latencySimulator cannot be null");
+		this.latencySimulator = latencySimulator;
+	}
+
 }
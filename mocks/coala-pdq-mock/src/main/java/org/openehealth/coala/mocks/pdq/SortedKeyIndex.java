@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.openehealth.coala.mocks.pdq;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Index of patients by one key, e.g. the normalized family name. The patients
+ * are grouped by key in key order, so all patients with a key starting with a
+ * prefix form one contiguous range, found by two binary searches over the
+ * distinct keys. The index is built by a counting sort in linear time and
+ * needs one int per patient.
+ * <p>
+ * Instances are immutable and thread-safe.
+ */
+final class SortedKeyIndex {
+
+	/** distinct keys in ascending order */
+	private final String[] keys;
+
+	/** patients of keys[i] are order[start[i]] to order[start[i + 1] - 1] */
+	private final int[] start;
+
+	/** indices of the patients, grouped by key */
+	private final int[] order;
+
+	/**
+	 * Builds the index.
+	 *
+	 * @param keyOfPatient
+	 *            the key of each patient, indexed like the patients. Equal
+	 *            keys should be the same instances to save memory.
+	 */
+	SortedKeyIndex(String[] keyOfPatient) {
+		Map<String, Integer> ranks = new HashMap<String, Integer>();
+		for (String key : keyOfPatient)
+			ranks.put(key, null);
+		keys = ranks.keySet().toArray(new String[ranks.size()]);
+		Arrays.sort(keys);
+		for (int i = 0; i < keys.length; i++)
+			ranks.put(keys[i], Integer.valueOf(i));
+
+		int[] rankOfPatient = new int[keyOfPatient.length];
+		start = new int[keys.length + 1];
+		for (int i = 0; i < keyOfPatient.length; i++) {
+			rankOfPatient[i] = ranks.get(keyOfPatient[i]).intValue();
+			start[rankOfPatient[i] + 1]++;
+		}
+		for (int i = 0; i < keys.length; i++)
+			start[i + 1] += start[i];
+		int[] next = Arrays.copyOf(start, keys.length);
+		order = new int[keyOfPatient.length];
+		for (int i = 0; i < keyOfPatient.length; i++)
+			order[next[rankOfPatient[i]]++] = i;
+	}
+
+	/**
+	 * Returns the range of the patients with the given key.
+	 *
+	 * @param key
+	 *            the key
+	 * @return the first position and the position after the last one, equal
+	 *         if there is no such patient
+	 */
+	int[] exact(String key) {
+		int index = Arrays.binarySearch(keys, key);
+		if (index < 0)
+			return new int[] { 0, 0 };
+		return new int[] { start[index], start[index + 1] };
+	}
+
+	/**
+	 * Returns the range of the patients with a key starting with the given
+	 * prefix.
+	 *
+	 * @param prefix
+	 *            the prefix, all patients match the empty prefix
+	 * @return the first position and the position after the last one, equal
+	 *         if there is no such patient
+	 */
+	int[] prefix(String prefix) {
+		int from = insertionPoint(prefix);
+		int to = insertionPoint(prefix + Character.MAX_VALUE);
+		return new int[] { start[from], start[to] };
+	}
+
+	/**
+	 * @param position
+	 *            a position within a range
+	 * @return the index of the patient at that position
+	 */
+	int patientAt(int position) {
+		return order[position];
+	}
+
+	/**
+	 * @return the number of distinct keys
+	 */
+	int keyCount() {
+		return keys.length;
+	}
+
+	/*
+	 * Little helping method, returning the index of the first key not less
+	 * than the given one.
+	 */
+	private int insertionPoint(String key) {
+		int index = Arrays.binarySearch(keys, key);
+		return index < 0 ? -index - 1 : index;
+	}
+}
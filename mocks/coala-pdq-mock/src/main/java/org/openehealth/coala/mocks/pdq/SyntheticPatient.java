@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.openehealth.coala.mocks.pdq;
+
+/**
+ * Immutable patient of the synthetic MPI. Names, birth dates and address
+ * parts are shared between patients, so a large population costs little
+ * more than one object per patient.
+ */
+public final class SyntheticPatient {
+
+	private final String id;
+	private final String familyName;
+	private final String givenName;
+	private final String birthDate;
+	private final String sex;
+	private final String street;
+	private final int houseNumber;
+	private final String city;
+	private final String zip;
+
+	/**
+	 * Creates a new patient.
+	 *
+	 * @param id
+	 *            the patient id (PID-3.1)
+	 * @param familyName
+	 *            the family name
+	 * @param givenName
+	 *            the given name
+	 * @param birthDate
+	 *            the date of birth, formatted yyyyMMdd
+	 * @param sex
+	 *            the administrative sex, M or F
+	 * @param street
+	 *            the street of the address
+	 * @param houseNumber
+	 *            the house number of the address
+	 * @param city
+	 *            the city of the address
+	 * @param zip
+	 *            the postal code of the address
+	 */
+	public SyntheticPatient(String id, String familyName, String givenName,
+			String birthDate, String sex, String street, int houseNumber,
+			String city, String zip) {
+		this.id = id;
+		this.familyName = familyName;
+		this.givenName = givenName;
+		this.birthDate = birthDate;
+		this.sex = sex;
+		this.street = street;
+		this.houseNumber = houseNumber;
+		this.city = city;
+		this.zip = zip;
+	}
+
+	/**
+	 * @return the patient id
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * @return the family name
+	 */
+	public String getFamilyName() {
+		return familyName;
+	}
+
+	/**
+	 * @return the given name
+	 */
+	public String getGivenName() {
+		return givenName;
+	}
+
+	/**
+	 * @return the date of birth, formatted yyyyMMdd
+	 */
+	public String getBirthDate() {
+		return birthDate;
+	}
+
+	/**
+	 * @return the administrative sex, M or F
+	 */
+	public String getSex() {
+		return sex;
+	}
+
+	/**
+	 * @return street and house number
+	 */
+	public String getStreetAddress() {
+		return street + " " + houseNumber;
+	}
+
+	/**
+	 * @return the city of the address
+	 */
+	public String getCity() {
+		return city;
+	}
+
+	/**
+	 * @return the postal code of the address
+	 */
+	public String getZip() {
+		return zip;
+	}
+
+	@Override
+	public String toString() {
+		return id + " " + givenName + " " + familyName + " *" + birthDate;
+	}
+}
@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.openehealth.coala.mocks.pdq;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link PatientIndex}, comparing indexed lookups with a full
+ * scan of the population.
+ */
+public class PatientIndexTest {
+
+	private static final String AUTHORITY = PatientIndex.DEFAULT_ASSIGNING_AUTHORITY_OID;
+
+	private static PatientGenerator generator;
+	private static PatientIndex index;
+	private static SyntheticPatient[] patients;
+
+	@BeforeClass
+	public static void setUp() {
+		generator = new PatientGenerator();
+		generator.setPopulationSize(20000);
+		generator.setFirstPatientId(1000);
+		index = new PatientIndex(generator, AUTHORITY);
+		patients = generator.generate();
+	}
+
+	/**
+	 * Tests, whether patients are found by id and assigning authority.
+	 */
+	@Test
+	public void testFindById() {
+		PatientIndex.Result result = index.find("1042", AUTHORITY, null, null,
+				null, null, 10);
+		assertEquals(1, result.getHits());
+		assertEquals("1042", result.getPatients().get(0).getId());
+		assertEquals(patients[42].getFamilyName(), result.getPatients().get(0)
+				.getFamilyName());
+
+		assertEquals(0, index.find("1042", "1.2.3", null, null, null, null, 10)
+				.getHits());
+		assertEquals(0, index.find("999", null, null, null, null, null, 10)
+				.getHits());
+		assertEquals(0, index.find("21000", null, null, null, null, null, 10)
+				.getHits());
+		assertEquals(0, index.find("1042", null, "NoSuchName", null, null,
+				null, 10).getHits());
+	}
+
+	/**
+	 * Tests, whether name prefixes, names and dates of birth find the same
+	 * patients as a full scan.
+	 */
+	@Test
+	public void testFindByDemographics() {
+		SyntheticPatient sample = patients[4711];
+		assertEquals(scan("M", null, null), index.find(null, null, "m*", null,
+				null, null, 100).getHits());
+		assertEquals(scan(sample.getFamilyName(), sample.getGivenName(), null),
+				index.find(null, null, sample.getFamilyName().toLowerCase(),
+						sample.getGivenName(), null, null, 100).getHits());
+		int hits = index.find(null, null, sample.getFamilyName(), sample
+				.getGivenName().substring(0, 2)
+				+ "*", sample.getBirthDate(), null, 100).getHits();
+		assertEquals(scan(sample.getFamilyName(), sample.getGivenName()
+				.substring(0, 2), sample.getBirthDate()), hits);
+		assertTrue(hits >= 1);
+		assertEquals(0, index.find(null, null, null, null, null, null, 100)
+				.getHits());
+	}
+
+	/**
+	 * Tests, whether the number of returned patients is limited while all
+	 * hits are counted.
+	 */
+	@Test
+	public void testLimit() {
+		PatientIndex.Result result = index.find(null, null, "Müller", null,
+				null, null, 5);
+		assertEquals(5, result.getPatients().size());
+		assertEquals(scan("MÜLLER", null, null), result.getHits());
+		assertTrue(result.getHits() > 5);
+
+		result = index.find(null, null, "Müller", null, null, "F", 5);
+		assertEquals(5, result.getPatients().size());
+		for (SyntheticPatient patient : result.getPatients())
+			assertEquals("F", patient.getSex());
+	}
+
+	/*
+	 * Little helping method, counting the matching patients by a full scan.
+	 * Names are matched as prefixes.
+	 */
+	private static int scan(String familyName, String givenName,
+			String birthDate) {
+		int count = 0;
+		for (SyntheticPatient patient : patients) {
+			if (patient.getFamilyName().toUpperCase().startsWith(
+					familyName.toUpperCase())
+					&& (givenName == null || patient.getGivenName()
+							.toUpperCase().startsWith(givenName.toUpperCase()))
+					&& (birthDate == null || birthDate.equals(patient
+							.getBirthDate())))
+				count++;
+		}
+		return count;
+	}
+}
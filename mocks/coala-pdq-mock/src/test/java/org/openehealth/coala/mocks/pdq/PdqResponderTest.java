@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.openehealth.coala.mocks.pdq;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.Charset;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link PdqResponder}, checking the RSP^K22 responses to
+ * queries like the ones sent by Coala.
+ */
+public class PdqResponderTest {
+
+	private static final String MSH = "MSH|^~\\&|CoALA|SendingFacility|PXS|ReceivingFacility|20110707092807101+0200||QBP^Q22|6326568982331147264|P|2.5|||||||";
+
+	private static PdqResponder responder;
+
+	@BeforeClass
+	public static void setUp() {
+		PatientGenerator generator = new PatientGenerator();
+		generator.setPopulationSize(10000);
+		generator.setFirstPatientId(1000);
+		responder = new PdqResponder(new PatientIndex(generator,
+				PatientIndex.DEFAULT_ASSIGNING_AUTHORITY_OID));
+	}
+
+	/**
+	 * Tests the response to a query by patient id.
+	 */
+	@Test
+	public void testQueryById() {
+		String response = responder.respond(MSH
+				+ "\nQPD|Q22^Find Candidates|4711|@PID.3.1^1042~@PID.3.4.2^2.16.840.1.113883.3.37.4.1.1.2.2.1~@PID.3.4.3^ISO|\nRCP|I|");
+		String[] segments = response.split("\r");
+		assertEquals(5, segments.length);
+		assertTrue(segments[0].startsWith("MSH|^~\\&|PXS|ReceivingFacility|CoALA|SendingFacility|"));
+		assertTrue(segments[0].contains("|RSP^K22^RSP_K21|"));
+		assertEquals("MSA|AA|6326568982331147264", segments[1]);
+		assertEquals("QAK|4711|OK|Q22^Find Candidates|1|1|0", segments[2]);
+		assertTrue(segments[3].startsWith("QPD|Q22^Find Candidates|4711|@PID.3.1^1042~"));
+		assertTrue(segments[4].startsWith("PID|1||1042^^^&2.16.840.1.113883.3.37.4.1.1.2.2.1&ISO||"));
+	}
+
+	/**
+	 * Tests, whether the quantity limit of RCP-2 and the maximum number of
+	 * results limit the returned patients.
+	 */
+	@Test
+	public void testLimits() {
+		String query = MSH + "\rQPD|Q22^Find Candidates|1|@PID.5.1^M*|\rRCP|I|";
+		String response = responder.respond(query + "2^RD");
+		String[] segments = response.split("\r");
+		assertEquals(6, segments.length);
+		assertTrue(segments[2].matches("QAK\\|1\\|OK\\|Q22\\^Find Candidates\\|\\d+\\|2\\|\\d+"));
+		assertTrue(segments[5].startsWith("PID|2||"));
+
+		responder.setMaxResults(1);
+		try {
+			response = responder.respond(query);
+			assertEquals(5, response.split("\r").length);
+		} finally {
+			responder.setMaxResults(PdqResponder.DEFAULT_MAX_RESULTS);
+		}
+
+		response = responder.respond(MSH
+				+ "\rQPD|Q22^Find Candidates|2|@PID.5.1^Nobody|\rRCP|I|");
+		assertTrue(response.contains("\rQAK|2|NF|Q22^Find Candidates|0|0|0\r"));
+	}
+
+	/**
+	 * Tests, whether names converted like by Coala's PdqMessageBuilderImpl are
+	 * repaired and delimiters are escaped.
+	 */
+	@Test
+	public void testEncoding() {
+		String converted = new String("Müller".getBytes(Charset
+				.forName("UTF-8")), Charset.forName("ISO-8859-1"));
+		assertEquals("Müller", PdqResponder.repairCharset(converted));
+		assertEquals("Müller", PdqResponder.repairCharset("Müller"));
+		assertEquals("Mueller", PdqResponder.repairCharset("Mueller"));
+
+		StringBuilder escaped = new StringBuilder();
+		PdqResponder.escape(escaped, "a|b^c&d~e\\f");
+		assertEquals("a\\F\\b\\S\\c\\T\\d\\R\\e\\E\\f", escaped.toString());
+		assertEquals("a|b^c&d~e\\f", PdqResponder.unescape(escaped.toString()));
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.mocks.xds;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.activation.DataSource;
+
+/**
+ * Read only {@link DataSource} of the content of a document. Each call of
+ * {@link #getInputStream()} starts reading from the beginning again.
+ */
+class ContentDataSource implements DataSource {
+
+	private final byte[] content;
+	private final String contentType;
+
+	/**
+	 * @param content
+	 *            the content, which is not copied
+	 * @param contentType
+	 *            the mime type of the content, application/octet-stream if
+	 *            null
+	 */
+	ContentDataSource(byte[] content, String contentType) {
+		if (content == null)
+			throw new IllegalArgumentException("content cannot be null");
+		this.content = content;
+		this.contentType = contentType != null ? contentType
+				: "application/octet-stream";
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javax.activation.DataSource#getInputStream()
+	 */
+	public InputStream getInputStream() {
+		return new ByteArrayInputStream(content);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javax.activation.DataSource#getOutputStream()
+	 */
+	public OutputStream getOutputStream() throws IOException {
+		throw new IOException("The content of a stored document is read only.");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javax.activation.DataSource#getContentType()
+	 */
+	public String getContentType() {
+		return contentType;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javax.activation.DataSource#getName()
+	 */
+	public String getName() {
+		return "document";
+	}
+}
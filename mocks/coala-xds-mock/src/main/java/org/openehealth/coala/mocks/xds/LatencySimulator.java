@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.mocks.xds;
+
+import java.util.Random;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+
+/**
+ * {@link Processor} delaying each exchange by a base latency plus an evenly
+ * distributed random jitter, to give the mock the response times of a real
+ * registry. With the defaults of 0 it does not delay at all.
+ * <p>
+ * coala-pdq-mock has a copy of this class, as the mocks are built on their
+ * own and share no artifact. Changes should be made to both copies.
+ */
+public class LatencySimulator implements Processor {
+
+	public static final long DEFAULT_LATENCY = 0;
+	public static final long DEFAULT_JITTER = 0;
+
+	private volatile long latency = DEFAULT_LATENCY;
+	private volatile long jitter = DEFAULT_JITTER;
+
+	private final ThreadLocal<Random> random = new ThreadLocal<Random>() {
+		@Override
+		protected Random initialValue() {
+			return new Random();
+		}
+	};
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.apache.camel.Processor#process(org.apache.camel.Exchange)
+	 */
+	public void process(Exchange exchange) throws Exception {
+		long delay = nextDelay();
+		if (delay > 0)
+			Thread.sleep(delay);
+	}
+
+	/**
+	 * @return the delay of the next exchange in milliseconds, between latency
+	 *         and latency + jitter
+	 */
+	long nextDelay() {
+		long base = latency;
+		long spread = jitter;
+		if (spread <= 0)
+			return base;
+		return base + (long) (random.get().nextDouble() * (spread + 1));
+	}
+
+	/**
+	 * @return the minimum delay in milliseconds
+	 */
+	public long getLatency() {
+		return latency;
+	}
+
+	/**
+	 * @param latency
+	 *            the minimum delay in milliseconds, must not be negative
+	 */
+	public void setLatency(long latency) {
+		if (latency < 0)
+			throw new IllegalArgumentException("latency must not be negative");
+		this.latency = latency;
+	}
+
+	/**
+	 * @return the maximum random delay in milliseconds added to the latency
+	 */
+	public long getJitter() {
+		return jitter;
+	}
+
+	/**
+	 * @param jitter
+	 *            the maximum random delay in milliseconds added to the
+	 *            latency, must not be negative
+	 */
+	public void setJitter(long jitter) {
+		if (jitter < 0)
+			throw new IllegalArgumentException("jitter must not be negative");
+		this.jitter = jitter;
+	}
+}
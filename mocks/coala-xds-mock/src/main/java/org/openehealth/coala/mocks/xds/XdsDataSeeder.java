@@ -0,0 +1,346 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.mocks.xds;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Random;
+import java.util.UUID;
+
+import javax.activation.DataHandler;
+
+import org.openehealth.coala.domain.PatientConsentPolicy;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.AssigningAuthority;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.Association;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.AssociationType;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.Author;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.Code;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.Document;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.DocumentEntry;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.Identifiable;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.LocalizedString;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.Name;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.Person;
+import org.openehealth.ipf.commons.ihe.xds.core.requests.ProvideAndRegisterDocumentSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fills an {@link XdsStore} with synthetic consents of synthetic patients.
+ * Patient ids are numbered consecutively from {@link #setFirstPatientId(long)}
+ * on, so load drivers can address seeded patients without asking the mock.
+ * Each patient gets the configured number of consents, every consent but the
+ * first one replacing its predecessor, just like Coala does. Thus each patient
+ * has exactly one approved consent and the other ones are deprecated.
+ * <p>
+ * The same seed always produces the same data. Seeding goes through
+ * {@link XdsStore#register(ProvideAndRegisterDocumentSet)}, the same way
+ * ITI-41 requests do.
+ */
+public class XdsDataSeeder {
+
+	private static final Logger LOG = LoggerFactory.getLogger(XdsDataSeeder.class);
+
+	public static final int DEFAULT_PATIENT_COUNT = 1000;
+	public static final int DEFAULT_CONSENTS_PER_PATIENT = 3;
+	public static final long DEFAULT_FIRST_PATIENT_ID = 100000;
+	public static final long DEFAULT_SEED = 42;
+	public static final String DEFAULT_ASSIGNING_AUTHORITY_OID = "2.16.840.1.113883.3.37.4.1.1.2.2.1";
+	public static final String DEFAULT_DOCUMENT_BASE_UNIQUE_ID = "2.16.840.1.113883.3.37.900.5.2.99";
+	public static final String DEFAULT_FORMAT_CODE = "urn:ihe:iti:bppc:2007";
+	public static final String DEFAULT_FORMAT_CODE_SCHEME = "IHE Format Codes";
+	public static final String DEFAULT_TYPE_CODE = "57016-8";
+	public static final String DEFAULT_TYPE_CODE_DISPLAYNAME = "Privacy Policy Acknowledgement Document";
+	public static final String DEFAULT_TYPE_CODE_SCHEME = "LOINC";
+
+	private static final String[] GIVEN_NAMES = { "Anna", "Bernd", "Claudia",
+			"Dieter", "Erika", "Frank", "Gisela", "Hans", "Ingrid", "Jürgen",
+			"Karin", "Lukas", "Monika", "Norbert", "Petra", "Ralf", "Sabine",
+			"Thomas", "Ursula", "Wolfgang" };
+
+	private static final String[] FAMILY_NAMES = { "Müller", "Schmidt",
+			"Schneider", "Fischer", "Weber", "Meyer", "Wagner", "Becker",
+			"Schulz", "Hoffmann", "Schäfer", "Koch", "Bauer", "Richter",
+			"Klein", "Wolf", "Schröder", "Neumann", "Schwarz", "Zimmermann" };
+
+	private static final String[] TITLES = { null, null, "Dr.", "Prof." };
+
+	private static final long DAY = 24L * 60 * 60 * 1000;
+
+	private final XdsStore store;
+
+	private int patientCount = DEFAULT_PATIENT_COUNT;
+	private int consentsPerPatient = DEFAULT_CONSENTS_PER_PATIENT;
+	private long firstPatientId = DEFAULT_FIRST_PATIENT_ID;
+	private long seed = DEFAULT_SEED;
+	private String assigningAuthorityOid = DEFAULT_ASSIGNING_AUTHORITY_OID;
+	private String documentBaseUniqueId = DEFAULT_DOCUMENT_BASE_UNIQUE_ID;
+	private String formatCode = DEFAULT_FORMAT_CODE;
+	private String formatCodeScheme = DEFAULT_FORMAT_CODE_SCHEME;
+
+	/** number of documents seeded so far, part of their unique ids */
+	private long documentCount;
+
+	/**
+	 * Creates a new seeder for the given store.
+	 *
+	 * @param store
+	 *            the store to fill
+	 */
+	public XdsDataSeeder(XdsStore store) {
+		if (store == null)
+			throw new IllegalArgumentException("store cannot be null");
+		this.store = store;
+	}
+
+	/**
+	 * Registers the consents of all patients.
+	 *
+	 * @throws IOException
+	 *             if the store fails to read a document
+	 */
+	public void seed() throws IOException {
+		long start = System.currentTimeMillis();
+		Random random = new Random(seed);
+		Date now = new Date();
+		for (int i = 0; i < patientCount; i++) {
+			Identifiable patientId = new Identifiable(String
+					.valueOf(firstPatientId + i), new AssigningAuthority(
+					assigningAuthorityOid, "ISO"));
+			// the oldest consent was created up to two years ago
+			long created = now.getTime() - (1 + random.nextInt(730)) * DAY;
+			String previousUuid = null;
+			for (int j = 0; j < consentsPerPatient; j++) {
+				DocumentEntry entry = createEntry(patientId, new Date(created),
+						random);
+				ProvideAndRegisterDocumentSet request = new ProvideAndRegisterDocumentSet();
+				request.getDocuments().add(
+						new Document(entry, new DataHandler(
+								new ContentDataSource(createCda(entry),
+										entry.getMimeType()))));
+				if (previousUuid != null) {
+					Association replacement = new Association();
+					replacement.setAssociationType(AssociationType.REPLACE);
+					replacement.setEntryUuid(uuid(random));
+					replacement.setSourceUuid(entry.getEntryUuid());
+					replacement.setTargetUuid(previousUuid);
+					request.getAssociations().add(replacement);
+				}
+				store.register(request);
+				previousUuid = entry.getEntryUuid();
+				created = Math.min(now.getTime(), created
+						+ (1 + random.nextInt(120)) * DAY);
+			}
+		}
+		LOG.info("Seeded " + patientCount * consentsPerPatient
+				+ " consents of " + patientCount + " patients in "
+				+ (System.currentTimeMillis() - start) + " ms");
+	}
+
+	/*
+	 * Little helping method, creating the entry of a consent created at the
+	 * given time.
+	 */
+	private DocumentEntry createEntry(Identifiable patientId, Date created,
+			Random random) {
+		SimpleDateFormat longFormat = new SimpleDateFormat("yyyyMMddHHmmss");
+		SimpleDateFormat shortFormat = new SimpleDateFormat("yyyyMMdd");
+		Calendar validUntil = new GregorianCalendar();
+		validUntil.setTime(created);
+		validUntil.add(Calendar.YEAR, 1 + random.nextInt(5));
+
+		DocumentEntry entry = new DocumentEntry();
+		entry.setUniqueId(documentBaseUniqueId + "." + (++documentCount));
+		entry.setEntryUuid(uuid(random));
+		entry.setPatientId(patientId);
+		entry.setSourcePatientId(patientId);
+		entry.setCreationTime(longFormat.format(created));
+		entry.setServiceStartTime(shortFormat.format(created));
+		entry.setServiceStopTime(shortFormat.format(validUntil.getTime()));
+		entry.setMimeType("text/xml");
+		entry.setLanguageCode("en-US");
+		entry.setTitle(new LocalizedString("Patient Consent", "en-US", "UTF-8"));
+		entry.setFormatCode(new Code(formatCode, new LocalizedString(
+				formatCode, "en-US", "UTF-8"), formatCodeScheme));
+		Code typeCode = new Code(DEFAULT_TYPE_CODE, new LocalizedString(
+				DEFAULT_TYPE_CODE_DISPLAYNAME, "en-US", "UTF-8"),
+				DEFAULT_TYPE_CODE_SCHEME);
+		entry.setTypeCode(typeCode);
+		entry.setClassCode(typeCode);
+		PatientConsentPolicy[] policies = PatientConsentPolicy.values();
+		PatientConsentPolicy policy = policies[random.nextInt(policies.length)];
+		entry.getEventCodeList().add(
+				new Code(policy.getCode(), new LocalizedString(policy
+						.getCode(), "en-US", "UTF-8"), "Privacy Policies"));
+
+		Name name = new Name();
+		name.setPrefix(TITLES[random.nextInt(TITLES.length)]);
+		name.setGivenName(GIVEN_NAMES[random.nextInt(GIVEN_NAMES.length)]);
+		name.setFamilyName(FAMILY_NAMES[random.nextInt(FAMILY_NAMES.length)]);
+		Person person = new Person();
+		person.setName(name);
+		Author author = new Author();
+		author.setAuthorPerson(person);
+		entry.setAuthor(author);
+		return entry;
+	}
+
+	/*
+	 * Little helping method, creating a small BPPC like CDA for an entry.
+	 */
+	private static byte[] createCda(DocumentEntry entry) {
+		Name author = entry.getAuthor().getAuthorPerson().getName();
+		String policy = entry.getEventCodeList().get(0).getCode();
+		StringBuilder cda = new StringBuilder(1024);
+		cda.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		cda.append("<ClinicalDocument xmlns=\"urn:hl7-org:v3\">\n");
+		cda.append("<id root=\"").append(entry.getUniqueId()).append("\"/>\n");
+		cda.append("<code code=\"57016-8\" codeSystem=\"2.16.840.1.113883.6.1\"/>\n");
+		cda.append("<title>Patient Consent</title>\n");
+		cda.append("<effectiveTime value=\"").append(entry.getCreationTime())
+				.append("\"/>\n");
+		cda.append("<recordTarget><patientRole><id extension=\"")
+				.append(entry.getPatientId().getId()).append("\" root=\"")
+				.append(entry.getPatientId().getAssigningAuthority()
+						.getUniversalId())
+				.append("\"/></patientRole></recordTarget>\n");
+		cda.append("<author><assignedAuthor><assignedPerson><name>");
+		if (author.getPrefix() != null)
+			cda.append("<prefix>").append(author.getPrefix()).append("</prefix>");
+		cda.append("<given>").append(author.getGivenName()).append("</given>");
+		cda.append("<family>").append(author.getFamilyName())
+				.append("</family>");
+		cda.append("</name></assignedPerson></assignedAuthor></author>\n");
+		cda.append("<documentationOf><serviceEvent><code code=\"")
+				.append(policy).append("\"/><effectiveTime><low value=\"")
+				.append(entry.getServiceStartTime())
+				.append("\"/><high value=\"")
+				.append(entry.getServiceStopTime())
+				.append("\"/></effectiveTime></serviceEvent></documentationOf>\n");
+		cda.append("<component><structuredBody><component><section>");
+		cda.append("<title>Consent</title><text>The patient agrees to policy ")
+				.append(policy).append(".</text>");
+		cda.append("</section></component></structuredBody></component>\n");
+		cda.append("</ClinicalDocument>\n");
+		try {
+			return cda.toString().getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException("UTF-8 is not supported", e);
+		}
+	}
+
+	/*
+	 * Little helping method, creating a reproducible entry uuid.
+	 */
+	private static String uuid(Random random) {
+		byte[] bytes = new byte[16];
+		random.nextBytes(bytes);
+		return "urn:uuid:" + UUID.nameUUIDFromBytes(bytes);
+	}
+
+	/**
+	 * @param patientCount
+	 *            the number of patients to seed, must not be negative
+	 */
+	public void setPatientCount(int patientCount) {
+		if (patientCount < 0)
+			throw new IllegalArgumentException(
+					"patientCount must not be negative");
+		this.patientCount = patientCount;
+	}
+
+	/**
+	 * @param consentsPerPatient
+	 *            the number of consents of each patient, must be greater than
+	 *            0
+	 */
+	public void setConsentsPerPatient(int consentsPerPatient) {
+		if (consentsPerPatient < 1)
+			throw new IllegalArgumentException(
+					"consentsPerPatient must be greater than 0");
+		this.consentsPerPatient = consentsPerPatient;
+	}
+
+	/**
+	 * @param firstPatientId
+	 *            the id of the first seeded patient, the other ids follow
+	 *            consecutively
+	 */
+	public void setFirstPatientId(long firstPatientId) {
+		if (firstPatientId < 0)
+			throw new IllegalArgumentException(
+					"firstPatientId must not be negative");
+		this.firstPatientId = firstPatientId;
+	}
+
+	/**
+	 * @param seed
+	 *            the seed of the random data
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * @param assigningAuthorityOid
+	 *            the assigning authority of the patient ids, must match the
+	 *            one Coala queries with
+	 */
+	public void setAssigningAuthorityOid(String assigningAuthorityOid) {
+		if (assigningAuthorityOid == null
+				|| assigningAuthorityOid.length() == 0)
+			throw new IllegalArgumentException(
+					"assigningAuthorityOid cannot be null or empty");
+		this.assigningAuthorityOid = assigningAuthorityOid;
+	}
+
+	/**
+	 * @param documentBaseUniqueId
+	 *            the OID the unique ids of the seeded documents are appended
+	 *            to. It must differ from the one Coala uses.
+	 */
+	public void setDocumentBaseUniqueId(String documentBaseUniqueId) {
+		if (documentBaseUniqueId == null || documentBaseUniqueId.length() == 0)
+			throw new IllegalArgumentException(
+					"documentBaseUniqueId cannot be null or empty");
+		this.documentBaseUniqueId = documentBaseUniqueId;
+	}
+
+	/**
+	 * @param formatCode
+	 *            the format code of the consents, Coala only reads entries
+	 *            with its consent format code
+	 */
+	public void setFormatCode(String formatCode) {
+		if (formatCode == null || formatCode.length() == 0)
+			throw new IllegalArgumentException(
+					"formatCode cannot be null or empty");
+		this.formatCode = formatCode;
+	}
+
+	/**
+	 * @param formatCodeScheme
+	 *            the scheme of the format code
+	 */
+	public void setFormatCodeScheme(String formatCodeScheme) {
+		this.formatCodeScheme = formatCodeScheme;
+	}
+}
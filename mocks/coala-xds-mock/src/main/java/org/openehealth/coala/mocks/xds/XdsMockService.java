@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.mocks.xds;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.activation.DataHandler;
+
+import org.openehealth.coala.mocks.xds.XdsStore.StoredDocument;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.DocumentEntry;
+import org.openehealth.ipf.commons.ihe.xds.core.requests.ProvideAndRegisterDocumentSet;
+import org.openehealth.ipf.commons.ihe.xds.core.requests.QueryRegistry;
+import org.openehealth.ipf.commons.ihe.xds.core.requests.RetrieveDocument;
+import org.openehealth.ipf.commons.ihe.xds.core.requests.RetrieveDocumentSet;
+import org.openehealth.ipf.commons.ihe.xds.core.requests.query.FindDocumentsQuery;
+import org.openehealth.ipf.commons.ihe.xds.core.responses.QueryResponse;
+import org.openehealth.ipf.commons.ihe.xds.core.responses.Response;
+import org.openehealth.ipf.commons.ihe.xds.core.responses.RetrievedDocument;
+import org.openehealth.ipf.commons.ihe.xds.core.responses.RetrievedDocumentSet;
+import org.openehealth.ipf.commons.ihe.xds.core.responses.Status;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Answers the XDS transactions used by Coala from an {@link XdsStore}. Only
+ * the features Coala relies on are supported: FindDocuments queries
+ * returning leaf objects, filtered by patient and availability status, and
+ * retrieval of documents from the repository of the store.
+ */
+public class XdsMockService {
+
+	private static final Logger LOG = LoggerFactory.getLogger(XdsMockService.class);
+
+	private final XdsStore store;
+
+	/**
+	 * Creates a new service answering from the given store.
+	 *
+	 * @param store
+	 *            the registry and repository
+	 */
+	public XdsMockService(XdsStore store) {
+		if (store == null)
+			throw new IllegalArgumentException("store cannot be null");
+		this.store = store;
+	}
+
+	/**
+	 * Answers an ITI-18 request.
+	 *
+	 * @param request
+	 *            the stored query
+	 * @return the matching document entries, or a failure for queries other
+	 *         than FindDocuments
+	 */
+	public QueryResponse query(QueryRegistry request) {
+		QueryResponse response = new QueryResponse();
+		if (!(request.getQuery() instanceof FindDocumentsQuery)) {
+			LOG.warn("Unsupported query " + request.getQuery());
+			response.setStatus(Status.FAILURE);
+			return response;
+		}
+		FindDocumentsQuery query = (FindDocumentsQuery) request.getQuery();
+		List<DocumentEntry> entries;
+		try {
+			entries = store.findDocuments(query.getPatientId(),
+					query.getStatus());
+		} catch (IllegalArgumentException e) {
+			LOG.warn("Invalid query: " + e.getMessage());
+			response.setStatus(Status.FAILURE);
+			return response;
+		}
+		response.getDocumentEntries().addAll(entries);
+		response.setStatus(Status.SUCCESS);
+		return response;
+	}
+
+	/**
+	 * Answers an ITI-41 request.
+	 *
+	 * @param request
+	 *            the documents to register
+	 * @return success, or a failure if nothing has been registered
+	 */
+	public Response provideAndRegister(ProvideAndRegisterDocumentSet request) {
+		try {
+			store.register(request);
+			return new Response(Status.SUCCESS);
+		} catch (IllegalArgumentException e) {
+			LOG.warn("Rejected submission: " + e.getMessage());
+		} catch (IOException e) {
+			LOG.warn("Could not read submitted document", e);
+		}
+		return new Response(Status.FAILURE);
+	}
+
+	/**
+	 * Answers an ITI-43 request.
+	 *
+	 * @param request
+	 *            the requested documents
+	 * @return the documents found, with a partial success if some of them
+	 *         are unknown and a failure if all of them are
+	 */
+	public RetrievedDocumentSet retrieve(RetrieveDocumentSet request) {
+		RetrievedDocumentSet response = new RetrievedDocumentSet();
+		int requested = 0;
+		for (RetrieveDocument requestData : request.getDocuments()) {
+			requested++;
+			StoredDocument document = null;
+			if (store.getRepositoryUniqueId().equals(
+					requestData.getRepositoryUniqueId()))
+				document = store.getDocument(requestData.getDocumentUniqueId());
+			if (document == null) {
+				LOG.warn("Unknown document " + requestData.getDocumentUniqueId()
+						+ " in repository " + requestData.getRepositoryUniqueId());
+				continue;
+			}
+			String mimeType = document.getEntry().getMimeType();
+			RetrievedDocument retrieved = new RetrievedDocument();
+			retrieved.setDataHandler(new DataHandler(new ContentDataSource(
+					document.getContent(), mimeType)));
+			retrieved.setRequestData(requestData);
+			retrieved.setMimeType(mimeType);
+			response.getDocuments().add(retrieved);
+		}
+		int found = response.getDocuments().size();
+		if (found == requested && found > 0)
+			response.setStatus(Status.SUCCESS);
+		else if (found > 0)
+			response.setStatus(Status.PARTIAL_SUCCESS);
+		else
+			response.setStatus(Status.FAILURE);
+		return response;
+	}
+}
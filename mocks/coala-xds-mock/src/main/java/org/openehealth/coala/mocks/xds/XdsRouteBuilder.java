@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.mocks.xds;
+
+import static org.openehealth.ipf.platform.camel.ihe.xds.XdsCamelValidators.iti18RequestValidator;
+import static org.openehealth.ipf.platform.camel.ihe.xds.XdsCamelValidators.iti18ResponseValidator;
+import static org.openehealth.ipf.platform.camel.ihe.xds.XdsCamelValidators.iti41RequestValidator;
+import static org.openehealth.ipf.platform.camel.ihe.xds.XdsCamelValidators.iti41ResponseValidator;
+import static org.openehealth.ipf.platform.camel.ihe.xds.XdsCamelValidators.iti43RequestValidator;
+import static org.openehealth.ipf.platform.camel.ihe.xds.XdsCamelValidators.iti43ResponseValidator;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.spring.SpringRouteBuilder;
+import org.openehealth.ipf.commons.ihe.xds.core.requests.ProvideAndRegisterDocumentSet;
+import org.openehealth.ipf.commons.ihe.xds.core.requests.QueryRegistry;
+import org.openehealth.ipf.commons.ihe.xds.core.requests.RetrieveDocumentSet;
+
+/**
+ * Routes of the XDS mock. The ITI-18, ITI-41 and ITI-43 endpoints are served
+ * by the CXF servlet below <code>services/xds-iti18</code>,
+ * <code>services/xds-iti41</code> and <code>services/xds-iti43</code>.
+ * Requests and responses are validated like by a real registry, each request
+ * is delayed by the {@link LatencySimulator} before it is answered by the
+ * {@link XdsMockService}.
+ */
+public class XdsRouteBuilder extends SpringRouteBuilder {
+
+	private XdsMockService service;
+
+	private LatencySimulator latencySimulator = new LatencySimulator();
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.apache.camel.builder.RouteBuilder#configure()
+	 */
+	@Override
+	public void configure() throws Exception {
+		if (service == null)
+			throw new IllegalStateException("service must be set");
+
+		from("xds-iti18:xds-iti18")
+			.process(iti18RequestValidator()).id("iti18RequestValidator")
+			.process(latencySimulator)
+			.process(new Processor() {
+				public void process(Exchange exchange) throws Exception {
+					QueryRegistry request = exchange.getIn().getBody(QueryRegistry.class);
+					exchange.getOut().setBody(service.query(request));
+				}
+			})
+			.process(iti18ResponseValidator()).id("iti18ResponseValidator");
+
+		from("xds-iti41:xds-iti41")
+			.process(iti41RequestValidator()).id("iti41RequestValidator")
+			.process(latencySimulator)
+			.process(new Processor() {
+				public void process(Exchange exchange) throws Exception {
+					ProvideAndRegisterDocumentSet request = exchange.getIn().getBody(ProvideAndRegisterDocumentSet.class);
+					exchange.getOut().setBody(service.provideAndRegister(request));
+				}
+			})
+			.process(iti41ResponseValidator()).id("iti41ResponseValidator");
+
+		from("xds-iti43:xds-iti43")
+			.process(iti43RequestValidator()).id("iti43RequestValidator")
+			.process(latencySimulator)
+			.process(new Processor() {
+				public void process(Exchange exchange) throws Exception {
+					RetrieveDocumentSet request = exchange.getIn().getBody(RetrieveDocumentSet.class);
+					exchange.getOut().setBody(service.retrieve(request));
+				}
+			})
+			.process(iti43ResponseValidator()).id("iti43ResponseValidator");
+	}
+
+	/**
+	 * @param service
+	 *            answers the requests
+	 */
+	public void setService(XdsMockService service) {
+		this.service = service;
+	}
+
+	/**
+	 * @param latencySimulator
+	 *            delays the requests, no delay by default
+	 */
+	public void setLatencySimulator(LatencySimulator latencySimulator) {
+		if (latencySimulator == null)
+			throw new IllegalArgumentException(
+					"latencySimulator cannot be null");
+		this.latencySimulator = latencySimulator;
+	}
+}
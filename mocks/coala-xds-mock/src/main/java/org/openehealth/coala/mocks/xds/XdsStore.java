@@ -0,0 +1,451 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.mocks.xds;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.activation.DataHandler;
+
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.Association;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.AssociationType;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.AvailabilityStatus;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.Document;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.DocumentEntry;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.Identifiable;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.SubmissionSet;
+import org.openehealth.ipf.commons.ihe.xds.core.requests.ProvideAndRegisterDocumentSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Thread-safe, in-memory XDS registry and repository. Document entries are
+ * indexed by patient, unique id and entry UUID, the document content is held
+ * as bytes next to its entry.
+ * <p>
+ * Submissions of one patient are applied atomically with respect to each
+ * other and to queries for that patient: either all documents and
+ * replacements of a submission become visible or none. Submissions and
+ * queries of different patients do not block each other. Like a real
+ * registry, the store replaces symbolic entry UUIDs of a submission, e.g.
+ * <code>newConsent</code>, with <code>urn:uuid:</code> ids and rewrites the
+ * associations referring to them. As the registered
+ * {@link DocumentEntry} objects are handed out as they are, an entry may
+ * become deprecated while a response containing it is being marshalled.
+ */
+public class XdsStore {
+
+	private static final Logger LOG = LoggerFactory.getLogger(XdsStore.class);
+
+	public static final String DEFAULT_REPOSITORY_UNIQUE_ID = "1.2.840.113619.20.2.2.1";
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private static final String UUID_PREFIX = "urn:uuid:";
+
+	private String repositoryUniqueId = DEFAULT_REPOSITORY_UNIQUE_ID;
+
+	/** all entries of a patient, the list is also the lock of the patient */
+	private final ConcurrentMap<String, List<StoredDocument>> byPatient = new ConcurrentHashMap<String, List<StoredDocument>>();
+
+	private final ConcurrentMap<String, StoredDocument> byUniqueId = new ConcurrentHashMap<String, StoredDocument>();
+
+	private final ConcurrentMap<String, StoredDocument> byEntryUuid = new ConcurrentHashMap<String, StoredDocument>();
+
+	/**
+	 * Registers the documents of a provide and register request and stores
+	 * their content. Each document becomes {@link AvailabilityStatus#APPROVED}
+	 * and gets size, hash and repository unique id set. Symbolic entry UUIDs
+	 * of the submission set, the documents and the associations are replaced
+	 * by new <code>urn:uuid:</code> ids, also where the associations refer to
+	 * them. The targets of {@link AssociationType#REPLACE} associations become
+	 * {@link AvailabilityStatus#DEPRECATED}.
+	 *
+	 * @param request
+	 *            the ITI-41 request
+	 * @throws IllegalArgumentException
+	 *             if the request is invalid, e.g. because a unique id is
+	 *             already registered, a symbolic id is used twice or a replaced
+	 *             document is unknown or not approved. Nothing is registered
+	 *             in this case.
+	 * @throws IOException
+	 *             if the content of a document can't be read
+	 */
+	public void register(ProvideAndRegisterDocumentSet request)
+			throws IOException {
+		if (request == null)
+			throw new IllegalArgumentException("request cannot be null");
+		if (request.getDocuments().isEmpty())
+			throw new IllegalArgumentException(
+					"request must contain at least one document");
+
+		String patientKey = null;
+		List<StoredDocument> documents = new ArrayList<StoredDocument>();
+		for (Document document : request.getDocuments()) {
+			DocumentEntry entry = document.getDocumentEntry();
+			if (entry == null || entry.getUniqueId() == null
+					|| entry.getEntryUuid() == null)
+				throw new IllegalArgumentException(
+						"documents must have an entry with unique id and entry uuid");
+			String key = patientKey(entry.getPatientId());
+			if (patientKey != null && !patientKey.equals(key))
+				throw new IllegalArgumentException(
+						"all documents must belong to the same patient");
+			patientKey = key;
+			documents.add(new StoredDocument(entry, read(document
+					.getDataHandler())));
+		}
+		assignEntryUuids(request);
+
+		List<StoredDocument> patientDocuments = documentsOf(patientKey);
+		synchronized (patientDocuments) {
+			List<StoredDocument> replaced = replacedDocuments(request,
+					patientKey);
+			// the ids are global, so they are claimed atomically, as the
+			// lock of the patient does not guard against other patients
+			List<StoredDocument> claimed = new ArrayList<StoredDocument>();
+			try {
+				for (StoredDocument document : documents) {
+					claim(document);
+					claimed.add(document);
+				}
+			} catch (IllegalArgumentException e) {
+				for (StoredDocument document : claimed) {
+					release(document);
+				}
+				throw e;
+			}
+
+			for (StoredDocument document : documents) {
+				DocumentEntry entry = document.getEntry();
+				entry.setAvailabilityStatus(AvailabilityStatus.APPROVED);
+				entry.setRepositoryUniqueId(repositoryUniqueId);
+				entry.setSize(Long.valueOf(document.getContent().length));
+				entry.setHash(sha1(document.getContent()));
+				patientDocuments.add(document);
+			}
+			for (StoredDocument document : replaced) {
+				document.getEntry().setAvailabilityStatus(
+						AvailabilityStatus.DEPRECATED);
+			}
+		}
+		if (LOG.isDebugEnabled())
+			LOG.debug("Registered " + documents.size() + " document(s) for "
+					+ patientKey + ", replaced " + countReplacements(request));
+	}
+
+	/**
+	 * Returns the entries of a patient having one of the given availability
+	 * stati, in the order of registration.
+	 *
+	 * @param patientId
+	 *            the id of the patient, including the assigning authority
+	 * @param stati
+	 *            the accepted stati, all stati are accepted if null or empty
+	 * @return the matching entries, never null
+	 */
+	public List<DocumentEntry> findDocuments(Identifiable patientId,
+			Collection<AvailabilityStatus> stati) {
+		List<DocumentEntry> result = new ArrayList<DocumentEntry>();
+		List<StoredDocument> patientDocuments = byPatient
+				.get(patientKey(patientId));
+		if (patientDocuments == null)
+			return result;
+		synchronized (patientDocuments) {
+			for (StoredDocument document : patientDocuments) {
+				DocumentEntry entry = document.getEntry();
+				if (stati == null || stati.isEmpty()
+						|| stati.contains(entry.getAvailabilityStatus()))
+					result.add(entry);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param uniqueId
+	 *            the unique id of a document
+	 * @return the stored document or null, if there is none with this id
+	 */
+	public StoredDocument getDocument(String uniqueId) {
+		if (uniqueId == null)
+			return null;
+		return byUniqueId.get(uniqueId);
+	}
+
+	/**
+	 * @return the number of stored documents
+	 */
+	public int size() {
+		return byUniqueId.size();
+	}
+
+	/**
+	 * @return the number of patients with at least one document
+	 */
+	public int patientCount() {
+		return byPatient.size();
+	}
+
+	/**
+	 * Removes all documents.
+	 */
+	public void clear() {
+		byPatient.clear();
+		byUniqueId.clear();
+		byEntryUuid.clear();
+	}
+
+	/**
+	 * @return the unique id set on all registered documents
+	 */
+	public String getRepositoryUniqueId() {
+		return repositoryUniqueId;
+	}
+
+	/**
+	 * @param repositoryUniqueId
+	 *            the unique id set on all registered documents. Coala
+	 *            retrieves documents from the repository stated in their
+	 *            entries, so it should match the repository configured there.
+	 */
+	public void setRepositoryUniqueId(String repositoryUniqueId) {
+		if (repositoryUniqueId == null || repositoryUniqueId.length() == 0)
+			throw new IllegalArgumentException(
+					"repositoryUniqueId cannot be null or empty");
+		this.repositoryUniqueId = repositoryUniqueId;
+	}
+
+	/*
+	 * Little helping method, replacing the symbolic entry UUIDs of a
+	 * submission with new urn:uuid ids and rewriting the sources and targets
+	 * of the associations referring to them.
+	 */
+	private static void assignEntryUuids(ProvideAndRegisterDocumentSet request) {
+		Map<String, String> assigned = new HashMap<String, String>();
+		SubmissionSet submissionSet = request.getSubmissionSet();
+		if (submissionSet != null)
+			submissionSet.setEntryUuid(assign(submissionSet.getEntryUuid(),
+					assigned));
+		for (Document document : request.getDocuments()) {
+			DocumentEntry entry = document.getDocumentEntry();
+			entry.setEntryUuid(assign(entry.getEntryUuid(), assigned));
+		}
+		if (request.getAssociations() == null)
+			return;
+		for (Association association : request.getAssociations()) {
+			association.setEntryUuid(assign(association.getEntryUuid(),
+					assigned));
+		}
+		for (Association association : request.getAssociations()) {
+			String source = assigned.get(association.getSourceUuid());
+			if (source != null)
+				association.setSourceUuid(source);
+			String target = assigned.get(association.getTargetUuid());
+			if (target != null)
+				association.setTargetUuid(target);
+		}
+	}
+
+	/*
+	 * Little helping method, returning a new urn:uuid id for a symbolic id
+	 * and remembering it. Null and urn:uuid ids are returned as they are.
+	 */
+	private static String assign(String entryUuid, Map<String, String> assigned) {
+		if (entryUuid == null || entryUuid.startsWith(UUID_PREFIX))
+			return entryUuid;
+		String uuid = UUID_PREFIX + UUID.randomUUID();
+		if (assigned.put(entryUuid, uuid) != null)
+			throw new IllegalArgumentException("Symbolic id " + entryUuid
+					+ " is used twice.");
+		return uuid;
+	}
+
+	/*
+	 * Little helping method, registering the unique id and the entry uuid of
+	 * a document, unless one of them is registered already.
+	 */
+	private void claim(StoredDocument document) {
+		DocumentEntry entry = document.getEntry();
+		if (byUniqueId.putIfAbsent(entry.getUniqueId(), document) != null)
+			throw new IllegalArgumentException("Unique id "
+					+ entry.getUniqueId() + " is already registered.");
+		if (byEntryUuid.putIfAbsent(entry.getEntryUuid(), document) != null) {
+			byUniqueId.remove(entry.getUniqueId(), document);
+			throw new IllegalArgumentException("Entry uuid "
+					+ entry.getEntryUuid() + " is already registered.");
+		}
+	}
+
+	/*
+	 * Little helping method, removing the ids of a claimed document again.
+	 */
+	private void release(StoredDocument document) {
+		DocumentEntry entry = document.getEntry();
+		byUniqueId.remove(entry.getUniqueId(), document);
+		byEntryUuid.remove(entry.getEntryUuid(), document);
+	}
+
+	/*
+	 * Little helping method, returning the documents replaced by a request.
+	 * Must be called holding the lock of the patient.
+	 */
+	private List<StoredDocument> replacedDocuments(
+			ProvideAndRegisterDocumentSet request, String patientKey) {
+		List<StoredDocument> replaced = new ArrayList<StoredDocument>();
+		if (request.getAssociations() == null)
+			return replaced;
+		for (Association association : request.getAssociations()) {
+			if (association.getAssociationType() != AssociationType.REPLACE)
+				continue;
+			StoredDocument target = byEntryUuid.get(association.getTargetUuid());
+			if (target == null)
+				throw new IllegalArgumentException("Replaced document "
+						+ association.getTargetUuid() + " is unknown.");
+			if (!patientKey.equals(patientKey(target.getEntry().getPatientId())))
+				throw new IllegalArgumentException("Replaced document "
+						+ association.getTargetUuid()
+						+ " belongs to another patient.");
+			if (target.getEntry().getAvailabilityStatus() != AvailabilityStatus.APPROVED)
+				throw new IllegalArgumentException("Replaced document "
+						+ association.getTargetUuid() + " is not approved.");
+			replaced.add(target);
+		}
+		return replaced;
+	}
+
+	/*
+	 * Little helping method, counting the replace associations of a request
+	 * for logging.
+	 */
+	private static int countReplacements(ProvideAndRegisterDocumentSet request) {
+		int count = 0;
+		if (request.getAssociations() != null) {
+			for (Association association : request.getAssociations()) {
+				if (association.getAssociationType() == AssociationType.REPLACE)
+					count++;
+			}
+		}
+		return count;
+	}
+
+	/*
+	 * Little helping method, returning the documents of a patient, creating
+	 * the list if necessary.
+	 */
+	private List<StoredDocument> documentsOf(String patientKey) {
+		List<StoredDocument> documents = byPatient.get(patientKey);
+		if (documents == null) {
+			documents = new ArrayList<StoredDocument>();
+			List<StoredDocument> existing = byPatient.putIfAbsent(patientKey,
+					documents);
+			if (existing != null)
+				documents = existing;
+		}
+		return documents;
+	}
+
+	/*
+	 * Little helping method, returning the key of a patient in the index.
+	 */
+	static String patientKey(Identifiable patientId) {
+		if (patientId == null || patientId.getId() == null
+				|| patientId.getAssigningAuthority() == null
+				|| patientId.getAssigningAuthority().getUniversalId() == null)
+			throw new IllegalArgumentException(
+					"patientId must have an id and an assigning authority");
+		return patientId.getId() + "^^^&"
+				+ patientId.getAssigningAuthority().getUniversalId() + "&ISO";
+	}
+
+	/*
+	 * Little helping method, reading the content of a document.
+	 */
+	private static byte[] read(DataHandler dataHandler) throws IOException {
+		if (dataHandler == null)
+			throw new IllegalArgumentException("documents must have a content");
+		InputStream in = dataHandler.getInputStream();
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int count;
+			while ((count = in.read(buffer)) >= 0)
+				out.write(buffer, 0, count);
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+	/*
+	 * Little helping method, returning the hex encoded SHA-1 hash of the
+	 * content as required for the hash attribute of a document entry.
+	 */
+	private static String sha1(byte[] content) {
+		byte[] digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1").digest(content);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 is not available", e);
+		}
+		char[] chars = new char[digest.length * 2];
+		for (int i = 0; i < digest.length; i++) {
+			chars[2 * i] = HEX[(digest[i] >> 4) & 0xF];
+			chars[2 * i + 1] = HEX[digest[i] & 0xF];
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * A registered document entry together with the content of the document.
+	 */
+	public static final class StoredDocument {
+
+		private final DocumentEntry entry;
+		private final byte[] content;
+
+		StoredDocument(DocumentEntry entry, byte[] content) {
+			this.entry = entry;
+			this.content = content;
+		}
+
+		/**
+		 * @return the registered entry
+		 */
+		public DocumentEntry getEntry() {
+			return entry;
+		}
+
+		/**
+		 * @return the content of the document, must not be changed
+		 */
+		public byte[] getContent() {
+			return content;
+		}
+	}
+}
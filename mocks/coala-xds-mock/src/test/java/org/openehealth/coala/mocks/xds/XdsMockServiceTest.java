@@ -0,0 +1,260 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.mocks.xds;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.getCurrentArguments;
+import static org.easymock.EasyMock.isA;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import javax.activation.DataHandler;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.easymock.IAnswer;
+import org.junit.Before;
+import org.junit.Test;
+import org.openehealth.coala.builder.DocumentEntryBuilder;
+import org.openehealth.coala.domain.CoalaAuthor;
+import org.openehealth.coala.domain.Gender;
+import org.openehealth.coala.domain.Patient;
+import org.openehealth.coala.domain.PatientAddress;
+import org.openehealth.coala.domain.PatientConsentPolicy;
+import org.openehealth.coala.util.PXSDateConverterImpl;
+import org.openehealth.coala.xds.XDSConfigurationImpl;
+import org.openehealth.coala.xds.XDSTransactorImpl;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.AssigningAuthority;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.AvailabilityStatus;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.Document;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.DocumentEntry;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.Identifiable;
+import org.openehealth.ipf.commons.ihe.xds.core.requests.ProvideAndRegisterDocumentSet;
+import org.openehealth.ipf.commons.ihe.xds.core.requests.QueryRegistry;
+import org.openehealth.ipf.commons.ihe.xds.core.requests.RetrieveDocument;
+import org.openehealth.ipf.commons.ihe.xds.core.requests.RetrieveDocumentSet;
+import org.openehealth.ipf.commons.ihe.xds.core.requests.query.FindDocumentsQuery;
+import org.openehealth.ipf.commons.ihe.xds.core.responses.QueryResponse;
+import org.openehealth.ipf.commons.ihe.xds.core.responses.RetrievedDocumentSet;
+import org.openehealth.ipf.commons.ihe.xds.core.responses.Response;
+import org.openehealth.ipf.commons.ihe.xds.core.responses.Status;
+import org.openehealth.ipf.commons.ihe.xds.core.stub.ebrs30.rs.RegistryResponseType;
+
+/**
+ * Unit test for {@link XdsMockService}, checking the answers to queries and
+ * retrievals of seeded documents and the registration of consents as Coala
+ * submits them.
+ */
+public class XdsMockServiceTest {
+
+	private static final String ITI18_ENDPOINT = "xds-iti18://localhost:8080/coala-xds-mock/services/xds-iti18";
+	private static final String ITI41_ENDPOINT = "xds-iti41://localhost:8080/coala-xds-mock/services/xds-iti41";
+	private static final String ITI43_ENDPOINT = "xds-iti43://localhost:8080/coala-xds-mock/services/xds-iti43";
+	private static final String RESPONSE_STATUS = "urn:oasis:names:tc:ebxml-regrep:ResponseStatusType:";
+
+	private XdsStore store;
+	private XdsMockService service;
+	private String approvedUniqueId;
+
+	@Before
+	public void setUp() throws Exception {
+		store = new XdsStore();
+		XdsDataSeeder seeder = new XdsDataSeeder(store);
+		seeder.setPatientCount(2);
+		seeder.setConsentsPerPatient(2);
+		seeder.setFirstPatientId(1);
+		seeder.seed();
+		service = new XdsMockService(store);
+
+		FindDocumentsQuery query = new FindDocumentsQuery();
+		query.setPatientId(new Identifiable("1", new AssigningAuthority(
+				XdsDataSeeder.DEFAULT_ASSIGNING_AUTHORITY_OID, "ISO")));
+		query.setStatus(Arrays.asList(AvailabilityStatus.APPROVED));
+		QueryResponse response = service.query(new QueryRegistry(query));
+		assertEquals(Status.SUCCESS, response.getStatus());
+		assertEquals(1, response.getDocumentEntries().size());
+		approvedUniqueId = response.getDocumentEntries().get(0).getUniqueId();
+	}
+
+	/**
+	 * Tests, whether the status of a retrieval reflects the documents found.
+	 */
+	@Test
+	public void testRetrieve() {
+		String repository = store.getRepositoryUniqueId();
+		RetrievedDocumentSet response = service.retrieve(retrieve(new RetrieveDocument(
+				repository, approvedUniqueId, null)));
+		assertEquals(Status.SUCCESS, response.getStatus());
+		assertEquals(1, response.getDocuments().size());
+		assertEquals("text/xml", response.getDocuments().get(0).getMimeType());
+
+		response = service.retrieve(retrieve(new RetrieveDocument(repository,
+				approvedUniqueId, null), new RetrieveDocument(repository,
+				"1.2.3.unknown", null)));
+		assertEquals(Status.PARTIAL_SUCCESS, response.getStatus());
+		assertEquals(1, response.getDocuments().size());
+
+		response = service.retrieve(retrieve(new RetrieveDocument(
+				"1.2.3.other.repository", approvedUniqueId, null)));
+		assertEquals(Status.FAILURE, response.getStatus());
+	}
+
+	/**
+	 * Tests, whether consents created by the {@link DocumentEntryBuilder} and
+	 * submitted by the {@link XDSTransactorImpl} can be registered one after
+	 * the other, although both use the same symbolic entry UUID, and whether
+	 * the second one replaces the first.
+	 */
+	@Test
+	public void testRegisterConsentsOfCoala() throws Exception {
+		PXSDateConverterImpl dateConverter = new PXSDateConverterImpl();
+		DocumentEntryBuilder builder = new DocumentEntryBuilder();
+		builder.setPxsDateConverter(dateConverter);
+		XDSTransactorImpl transactor = createTransactor(dateConverter);
+
+		Patient patient = new Patient("42",
+				XdsDataSeeder.DEFAULT_ASSIGNING_AUTHORITY_OID, "Hans",
+				"Mueller", new Date(), Gender.MALE, new PatientAddress());
+		CoalaAuthor author = new CoalaAuthor("Dr.", "Hugo", "Hausarzt");
+		Date validFrom = new Date(System.currentTimeMillis() - 86400000L);
+		Date validUntil = new Date(System.currentTimeMillis() + 86400000L);
+
+		DocumentEntry first = builder.createDocumentEntry(author, patient,
+				PatientConsentPolicy.ONE, validFrom, validUntil);
+		assertEquals("newConsent", first.getEntryUuid());
+		String firstUniqueId = transactor.provideAndRegisterNewConsent(
+				new Document(first, content("first")), true);
+		// unique ids of the builder are based on the current millisecond
+		Thread.sleep(5);
+		DocumentEntry second = builder.createDocumentEntry(author, patient,
+				PatientConsentPolicy.FOUR, validFrom, validUntil);
+		assertEquals("newConsent", second.getEntryUuid());
+		String secondUniqueId = transactor.provideAndRegisterNewConsent(
+				new Document(second, content("second")), true);
+
+		assertNotNull(firstUniqueId);
+		assertNotNull(secondUniqueId);
+		assertFalse(firstUniqueId.equals(secondUniqueId));
+		assertTrue(first.getEntryUuid().startsWith("urn:uuid:"));
+		assertTrue(second.getEntryUuid().startsWith("urn:uuid:"));
+		assertFalse(first.getEntryUuid().equals(second.getEntryUuid()));
+		assertSame(AvailabilityStatus.DEPRECATED, store.getDocument(
+				firstUniqueId).getEntry().getAvailabilityStatus());
+
+		List<DocumentEntry> approved = transactor.getConsentDocumentList("42",
+				Arrays.asList(AvailabilityStatus.APPROVED));
+		assertEquals(1, approved.size());
+		assertEquals(secondUniqueId, approved.get(0).getUniqueId());
+	}
+
+	/**
+	 * Tests, whether queries other than FindDocuments fail.
+	 */
+	@Test
+	public void testUnsupportedQuery() {
+		assertSame(Status.FAILURE, service.query(new QueryRegistry(null))
+				.getStatus());
+	}
+
+	/*
+	 * Little helping method, creating a transactor whose ITI-18 and ITI-41
+	 * requests are answered by the service under test.
+	 */
+	private XDSTransactorImpl createTransactor(
+			PXSDateConverterImpl dateConverter) {
+		XDSConfigurationImpl configuration = new XDSConfigurationImpl();
+		configuration.setXdsIti18endpoint(ITI18_ENDPOINT);
+		configuration.setXdsIti41endpoint(ITI41_ENDPOINT);
+		configuration.setXdsIti43endpoint(ITI43_ENDPOINT);
+		configuration
+				.setAssigningAuthorityOID(XdsDataSeeder.DEFAULT_ASSIGNING_AUTHORITY_OID);
+		configuration.setDocumentsourceOid("2.16.840.1.113883.3.37.900.5.1.1");
+		configuration
+				.setSubmissionSetBaseUniqueId("2.16.840.1.113883.3.37.900.5.3");
+		configuration.setDefaultSubmissionSetTitle("Submission Set");
+		configuration.setConsentLanguageCode("en-US");
+		configuration.setConsentEncoding("UTF-8");
+		configuration.setConsentFormatCodeCode("urn:ihe:iti:bppc:2007");
+		configuration.setConsentDocumentTypeCodeCode("57016-8");
+		configuration
+				.setConsentDocumentTypeCodeDisplayname("Privacy Policy Acknowledgement Document");
+		configuration.setConsentDocumentTypeCodeSchemename("LOINC");
+
+		ProducerTemplate producerTemplate = createMock(ProducerTemplate.class);
+		expect(producerTemplate.send(eq(ITI18_ENDPOINT), isA(Exchange.class)))
+				.andAnswer(new IAnswer<Exchange>() {
+					public Exchange answer() {
+						Exchange exchange = (Exchange) getCurrentArguments()[1];
+						exchange.getOut().setBody(
+								service.query(exchange.getIn().getBody(
+										QueryRegistry.class)));
+						return exchange;
+					}
+				}).anyTimes();
+		expect(producerTemplate.send(eq(ITI41_ENDPOINT), isA(Exchange.class)))
+				.andAnswer(new IAnswer<Exchange>() {
+					public Exchange answer() {
+						Exchange exchange = (Exchange) getCurrentArguments()[1];
+						Response response = service.provideAndRegister(exchange
+								.getIn().getBody(
+										ProvideAndRegisterDocumentSet.class));
+						RegistryResponseType registryResponse = new RegistryResponseType();
+						registryResponse.setStatus(RESPONSE_STATUS
+								+ (response.getStatus() == Status.SUCCESS ? "Success"
+										: "Failure"));
+						exchange.getOut().setBody(registryResponse);
+						return exchange;
+					}
+				}).anyTimes();
+		replay(producerTemplate);
+
+		XDSTransactorImpl transactor = new XDSTransactorImpl();
+		transactor.setXdsConfiguration(configuration);
+		transactor.setPxsDateConverter(dateConverter);
+		transactor.setCamelContext(new DefaultCamelContext());
+		transactor.setProducerTemplate(producerTemplate);
+		return transactor;
+	}
+
+	/*
+	 * Little helping method, creating the content of a consent.
+	 */
+	private static DataHandler content(String text) throws Exception {
+		return new DataHandler(new ContentDataSource(("<ClinicalDocument>"
+				+ text + "</ClinicalDocument>").getBytes("UTF-8"), "text/xml"));
+	}
+
+	/*
+	 * Little helping method, creating a retrieval request.
+	 */
+	private static RetrieveDocumentSet retrieve(RetrieveDocument... documents) {
+		RetrieveDocumentSet request = new RetrieveDocumentSet();
+		request.getDocuments().addAll(Arrays.asList(documents));
+		return request;
+	}
+}
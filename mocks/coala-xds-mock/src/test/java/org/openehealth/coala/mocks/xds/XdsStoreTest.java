@@ -0,0 +1,273 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.mocks.xds;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.activation.DataHandler;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.AssigningAuthority;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.Association;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.AssociationType;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.AvailabilityStatus;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.Document;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.DocumentEntry;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.Identifiable;
+import org.openehealth.ipf.commons.ihe.xds.core.requests.ProvideAndRegisterDocumentSet;
+
+/**
+ * Unit test for {@link XdsStore} and {@link XdsDataSeeder}, checking
+ * registration, replacement and queries of documents.
+ */
+public class XdsStoreTest {
+
+	private static final String AUTHORITY = "2.16.840.1.113883.3.37.4.1.1.2.2.1";
+
+	private XdsStore store;
+	private Identifiable patient;
+
+	@Before
+	public void setUp() {
+		store = new XdsStore();
+		patient = new Identifiable("4711", new AssigningAuthority(AUTHORITY,
+				"ISO"));
+	}
+
+	/**
+	 * Tests, whether registered documents are approved, completed and found
+	 * by their patient.
+	 */
+	@Test
+	public void testRegisterAndFind() throws Exception {
+		store.register(request(entry("1.1", "urn:uuid:a", patient), null));
+
+		List<DocumentEntry> found = store.findDocuments(new Identifiable(
+				"4711", new AssigningAuthority(AUTHORITY, "ISO")), null);
+		assertEquals(1, found.size());
+		DocumentEntry entry = found.get(0);
+		assertEquals(AvailabilityStatus.APPROVED, entry.getAvailabilityStatus());
+		assertEquals(XdsStore.DEFAULT_REPOSITORY_UNIQUE_ID, entry
+				.getRepositoryUniqueId());
+		assertEquals(Long.valueOf(content("1.1").length), entry.getSize());
+		assertEquals(40, entry.getHash().length());
+		assertTrue(Arrays.equals(content("1.1"), store.getDocument("1.1")
+				.getContent()));
+
+		assertTrue(store.findDocuments(
+				new Identifiable("4712", new AssigningAuthority(AUTHORITY,
+						"ISO")), null).isEmpty());
+	}
+
+	/**
+	 * Tests, whether a replaced document becomes deprecated and is filtered
+	 * by its status.
+	 */
+	@Test
+	public void testReplace() throws Exception {
+		store.register(request(entry("1.1", "urn:uuid:a", patient), null));
+		store.register(request(entry("1.2", "urn:uuid:b", patient),
+				"urn:uuid:a"));
+
+		assertEquals(AvailabilityStatus.DEPRECATED, store.getDocument("1.1")
+				.getEntry().getAvailabilityStatus());
+		List<DocumentEntry> approved = store.findDocuments(patient, Arrays
+				.asList(AvailabilityStatus.APPROVED));
+		assertEquals(1, approved.size());
+		assertEquals("1.2", approved.get(0).getUniqueId());
+		assertEquals(2, store.findDocuments(patient, Arrays.asList(
+				AvailabilityStatus.APPROVED, AvailabilityStatus.DEPRECATED))
+				.size());
+
+		// a deprecated document can't be replaced again
+		try {
+			store.register(request(entry("1.3", "urn:uuid:c", patient),
+					"urn:uuid:a"));
+			fail("Replacing a deprecated document must fail");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		assertNull(store.getDocument("1.3"));
+		assertEquals(2, store.size());
+	}
+
+	/**
+	 * Tests, whether invalid submissions are rejected without registering
+	 * anything.
+	 */
+	@Test
+	public void testRejectInvalidSubmission() throws Exception {
+		store.register(request(entry("1.1", "urn:uuid:a", patient), null));
+		try {
+			store.register(request(entry("1.1", "urn:uuid:b", patient), null));
+			fail("Registering a unique id twice must fail");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			store.register(request(entry("1.2", "urn:uuid:c", patient),
+					"urn:uuid:unknown"));
+			fail("Replacing an unknown document must fail");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		assertEquals(1, store.size());
+		assertNull(store.getDocument("1.2"));
+	}
+
+	/**
+	 * Tests, whether a unique id submitted concurrently for different
+	 * patients is registered only once, and whether a rejected submission
+	 * releases the ids it claimed before.
+	 */
+	@Test
+	public void testRejectConcurrentDuplicates() throws Exception {
+		for (int round = 0; round < 20; round++) {
+			assertEquals(1, registerConcurrently("3." + round, 16));
+		}
+		assertEquals(20, store.size());
+
+		ProvideAndRegisterDocumentSet request = request(entry("2.2",
+				"urn:uuid:d", patient), null);
+		request.getDocuments().addAll(
+				request(entry("3.0", "urn:uuid:e", patient), null)
+						.getDocuments());
+		try {
+			store.register(request);
+			fail("Registering a unique id twice must fail");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		assertNull(store.getDocument("2.2"));
+		assertEquals(20, store.size());
+		store.register(request(entry("2.2", "urn:uuid:d", patient), null));
+		assertEquals(21, store.size());
+	}
+
+	/**
+	 * Tests, whether the seeder leaves one approved consent per patient.
+	 */
+	@Test
+	public void testSeed() throws Exception {
+		XdsDataSeeder seeder = new XdsDataSeeder(store);
+		seeder.setPatientCount(10);
+		seeder.setConsentsPerPatient(3);
+		seeder.setFirstPatientId(1000);
+		seeder.seed();
+
+		assertEquals(30, store.size());
+		assertEquals(10, store.patientCount());
+		Identifiable seeded = new Identifiable("1009", new AssigningAuthority(
+				XdsDataSeeder.DEFAULT_ASSIGNING_AUTHORITY_OID, "ISO"));
+		List<DocumentEntry> approved = store.findDocuments(seeded, Arrays
+				.asList(AvailabilityStatus.APPROVED));
+		assertEquals(1, approved.size());
+		assertEquals(1, approved.get(0).getEventCodeList().size());
+		assertNotNull(approved.get(0).getAuthor().getAuthorPerson().getName()
+				.getFamilyName());
+		assertEquals(3, store.findDocuments(seeded, null).size());
+	}
+
+	/*
+	 * Little helping method, submitting the same unique id for different
+	 * patients at once and returning the number of successful submissions.
+	 */
+	private int registerConcurrently(final String uniqueId, int threads)
+			throws InterruptedException {
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicInteger registered = new AtomicInteger();
+		List<Thread> submitters = new ArrayList<Thread>();
+		for (int i = 0; i < threads; i++) {
+			final Identifiable patientId = new Identifiable(
+					String.valueOf(5000 + i), new AssigningAuthority(AUTHORITY,
+							"ISO"));
+			Thread submitter = new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						store.register(request(entry(uniqueId, "symbolic",
+								patientId), null));
+						registered.incrementAndGet();
+					} catch (IllegalArgumentException e) {
+						// expected for all but one
+					} catch (Exception e) {
+						throw new IllegalStateException(e);
+					}
+				}
+			};
+			submitter.start();
+			submitters.add(submitter);
+		}
+		start.countDown();
+		for (Thread submitter : submitters) {
+			submitter.join();
+		}
+		return registered.get();
+	}
+
+	/*
+	 * Little helping method, creating a document entry.
+	 */
+	private static DocumentEntry entry(String uniqueId, String entryUuid,
+			Identifiable patientId) {
+		DocumentEntry entry = new DocumentEntry();
+		entry.setUniqueId(uniqueId);
+		entry.setEntryUuid(entryUuid);
+		entry.setPatientId(patientId);
+		entry.setMimeType("text/xml");
+		return entry;
+	}
+
+	/*
+	 * Little helping method, creating a submission of one document, which
+	 * replaces the given entry, if it is not null.
+	 */
+	private static ProvideAndRegisterDocumentSet request(DocumentEntry entry,
+			String replacedUuid) {
+		ProvideAndRegisterDocumentSet request = new ProvideAndRegisterDocumentSet();
+		request.getDocuments().add(
+				new Document(entry, new DataHandler(new ContentDataSource(
+						content(entry.getUniqueId()), "text/xml"))));
+		if (replacedUuid != null) {
+			Association association = new Association();
+			association.setAssociationType(AssociationType.REPLACE);
+			association.setSourceUuid(entry.getEntryUuid());
+			association.setTargetUuid(replacedUuid);
+			request.getAssociations().add(association);
+		}
+		return request;
+	}
+
+	/*
+	 * Little helping method, returning the content of a document.
+	 */
+	private static byte[] content(String uniqueId) {
+		return ("<ClinicalDocument id=\"" + uniqueId + "\"/>").getBytes();
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the CoALA benchmarks with the settings used to compare optimizations:
+ * throughput, the latency distribution (sample time, with percentiles) and
+ * the allocation rate reported by the gc profiler. The results are written as
+ * JSON to <code>coala-benchmarks.json</code>. All fixtures are created in
+ * memory, no PXS or network access is needed.
+ * <p>
+ * Without arguments all benchmarks are run, otherwise the first argument is
+ * taken as regular expression selecting the benchmarks, e.g.
+ * <code>java -jar coala-benchmarks.jar Pdq</code>. Arguments starting with an
+ * option are passed on to the JMH command line unchanged, e.g.
+ * <code>java -jar coala-benchmarks.jar -lprof</code>.
+ */
+public final class BenchmarkRunner {
+
+	/** default file the results are written to */
+	public static final String RESULT_FILE = "coala-benchmarks.json";
+
+	private BenchmarkRunner() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length > 0 && args[0].startsWith("-")) {
+			org.openjdk.jmh.Main.main(args);
+			return;
+		}
+		run(args.length > 0 ? args[0] : BenchmarkRunner.class.getPackage()
+				.getName() + ".*");
+	}
+
+	/**
+	 * Runs the benchmarks matching the given expression.
+	 *
+	 * @param include
+	 *            regular expression selecting the benchmarks
+	 * @throws RunnerException
+	 *             if JMH fails
+	 */
+	public static void run(String include) throws RunnerException {
+		ChainedOptionsBuilder options = new OptionsBuilder()
+				.include(include)
+				.mode(Mode.Throughput)
+				.mode(Mode.SampleTime)
+				.timeUnit(TimeUnit.MICROSECONDS)
+				.addProfiler(GCProfiler.class)
+				.resultFormat(ResultFormatType.JSON)
+				.result(RESULT_FILE);
+		new Runner(options.build()).run();
+	}
+}
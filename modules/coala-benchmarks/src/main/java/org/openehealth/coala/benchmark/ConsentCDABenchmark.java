@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.util.ResourceBundle;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.velocity.Template;
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.runtime.RuntimeConstants;
+import org.apache.velocity.runtime.resource.loader.ClasspathResourceLoader;
+import org.openehealth.coala.builder.CDABuilder;
+import org.openehealth.coala.domain.Patient;
+import org.openehealth.coala.domain.PatientConsentPolicy;
+import org.openehealth.coala.util.PXSDateConverterImpl;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.DocumentEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the compiled CDA template of {@link CDABuilder} with merging
+ * <code>CDATemplate.txt</code> through Velocity, as CDABuilder used to do: a
+ * new VelocityContext per consent and the result rendered to a String twice.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ConsentCDABenchmark {
+
+	private final PXSDateConverterImpl pxsDateConverter = new PXSDateConverterImpl();
+
+	private CDABuilder cdaBuilder;
+
+	private Template velocityTemplate;
+
+	private String codeSystemOid;
+
+	private String confidentialityCodeSystemOid;
+
+	private Patient patient;
+
+	private DocumentEntry documentEntry;
+
+	private final PatientConsentPolicy policy = PatientConsentPolicy.ONE;
+
+	private final ByteArrayOutputStream stream = new ByteArrayOutputStream(
+			8192);
+
+	@Setup
+	public void setUp() throws Exception {
+		cdaBuilder = new CDABuilder(Fixtures.CDA_TEMPLATE);
+		cdaBuilder.setPxsDateConverter(pxsDateConverter);
+
+		ResourceBundle properties = ResourceBundle.getBundle("coala-document");
+		codeSystemOid = properties.getString("coala.cda.code.codeSystem");
+		confidentialityCodeSystemOid = properties
+				.getString("coala.cda.confidentialty.codeSystem");
+		VelocityEngine engine = new VelocityEngine();
+		engine.setProperty(RuntimeConstants.RESOURCE_LOADER, "classpath");
+		engine.setProperty("classpath.resource.loader.class",
+				ClasspathResourceLoader.class.getName());
+		engine.init();
+		velocityTemplate = engine.getTemplate(Fixtures.CDA_TEMPLATE);
+
+		patient = Fixtures.patient();
+		documentEntry = Fixtures.documentEntry(patient, policy);
+	}
+
+	@Benchmark
+	public String compiledTemplate() {
+		return cdaBuilder.createConsentCDA(patient, policy, documentEntry);
+	}
+
+	@Benchmark
+	public int compiledTemplateToStream() {
+		stream.reset();
+		cdaBuilder.writeConsentCDA(patient, policy, documentEntry, stream);
+		return stream.size();
+	}
+
+	@Benchmark
+	public String velocityMerge() throws Exception {
+		StringWriter writer = new StringWriter();
+		VelocityContext context = new VelocityContext();
+		context.put("family", patient.getLastName());
+		context.put("given", patient.getGivenName());
+		context.put("birthTime",
+				pxsDateConverter.DateToShortString(patient.getBirthdate()));
+		context.put("streetAddressLine", patient.getAddress()
+				.getStreetAddress());
+		context.put("city", patient.getAddress().getCity());
+		context.put("state", patient.getAddress().getStateOrProvince());
+		context.put("postalCode", patient.getAddress().getZipOrPostalCode());
+		context.put("country", patient.getAddress().getCountry());
+		context.put("pID", patient.getPatientID());
+		context.put("pRoot",
+				patient.getPatientIDAssigningAuthorityUniversalId());
+		context.put("title", documentEntry.getTitle().getValue());
+		context.put("administrativeGenderCode", patient.getSex());
+		context.put("ComponentTitle", policy.name());
+		context.put("ComponentText", policy.getShortName());
+		context.put("idRoot", documentEntry.getUniqueId());
+		context.put("cCode", documentEntry.getTypeCode().getCode());
+		context.put("cDisplayName", documentEntry.getTypeCode()
+				.getDisplayName().getValue());
+		context.put("cCodeSystem", codeSystemOid);
+		context.put("cCodeSystemName", documentEntry.getTypeCode()
+				.getSchemeName());
+		context.put("effectiveTime", documentEntry.getCreationTime());
+		context.put("confCode", documentEntry.getConfidentialityCodes().get(0)
+				.getCode());
+		context.put("confDisplayName", documentEntry.getConfidentialityCodes()
+				.get(0).getDisplayName().getValue());
+		context.put("confCodeSystem", confidentialityCodeSystemOid);
+		context.put("confCodeSystemName", documentEntry
+				.getConfidentialityCodes().get(0).getSchemeName());
+		context.put("languageCode", documentEntry.getLanguageCode());
+		context.put("aTitle", documentEntry.getAuthor().getAuthorPerson()
+				.getName().getPrefix());
+		context.put("aFamily", documentEntry.getAuthor().getAuthorPerson()
+				.getName().getFamilyName());
+		context.put("aGiven", documentEntry.getAuthor().getAuthorPerson()
+				.getName().getGivenName());
+		context.put("lowvalue", documentEntry.getServiceStartTime());
+		context.put("highvalue", documentEntry.getServiceStopTime());
+		velocityTemplate.merge(context, writer);
+		// the former unconditional debug log
+		writer.toString();
+		return writer.toString();
+	}
+}
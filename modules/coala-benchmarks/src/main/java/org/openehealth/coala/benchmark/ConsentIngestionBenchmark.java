@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.benchmark;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.activation.DataHandler;
+import javax.activation.DataSource;
+
+import org.openehealth.coala.converter.ConsentConverter;
+import org.openehealth.coala.domain.Gender;
+import org.openehealth.coala.domain.Patient;
+import org.openehealth.coala.domain.PatientAddress;
+import org.openehealth.coala.domain.PatientConsent;
+import org.openehealth.coala.domain.PatientConsentPolicy;
+import org.openehealth.coala.util.PXSDateConverterImpl;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.AvailabilityStatus;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.Code;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.DocumentEntry;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.LocalizedString;
+import org.openehealth.ipf.commons.ihe.xds.core.responses.RetrievedDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures reading retrieved consents in
+ * {@link ConsentConverter#transformToCoalaConsent(DocumentEntry, RetrievedDocument, Patient)}
+ * for CDAs carrying a scanned signature as base64 encoded, line wrapped
+ * attachment. The <code>concatenateLines</code> benchmark reproduces the
+ * former line by line String concatenation as a baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ConsentIngestionBenchmark {
+
+	private static final char[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+			.toCharArray();
+
+	/** size of the scanned signature in KB */
+	@Param({ "100", "500" })
+	private int signatureKilobytes;
+
+	private byte[] cda;
+
+	private DocumentEntry entry;
+
+	private Patient patient;
+
+	private ConsentConverter converter;
+
+	@Setup
+	public void setUp() throws IOException {
+		StringBuilder builder = new StringBuilder();
+		builder.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		builder.append("<ClinicalDocument xmlns=\"urn:hl7-org:v3\">\n");
+		builder.append("<title>Consent to Share Information</title>\n");
+		builder.append("<component><nonXMLBody><text mediaType=\"image/tiff\" representation=\"B64\">\n");
+		Random random = new Random(42);
+		int chars = signatureKilobytes * 1024 * 4 / 3;
+		for (int i = 0; i < chars; i++) {
+			builder.append(BASE64[random.nextInt(BASE64.length)]);
+			if (i % 76 == 75)
+				builder.append('\n');
+		}
+		builder.append("\n</text></nonXMLBody></component>\n</ClinicalDocument>\n");
+		cda = builder.toString().getBytes("UTF-8");
+
+		entry = new DocumentEntry();
+		entry.setAvailabilityStatus(AvailabilityStatus.APPROVED);
+		entry.setCreationTime("20110707092808");
+		entry.setServiceStartTime("20110707");
+		entry.setServiceStopTime("20120707");
+		String code = PatientConsentPolicy.ONE.getCode();
+		entry.getEventCodeList().add(
+				new Code(code, new LocalizedString(code, "en-US", "UTF-8"),
+						"Privacy Policies"));
+
+		patient = new Patient("79471", "2.16.840.1.113883.3.37.4.1.1.2.1.1",
+				"Max", "Mustermann", new Date(), Gender.MALE,
+				new PatientAddress());
+
+		converter = new ConsentConverter();
+		converter.setPxsDateConverter(new PXSDateConverterImpl());
+	}
+
+	@Benchmark
+	public PatientConsent readBytes() {
+		RetrievedDocument document = new RetrievedDocument();
+		document.setDataHandler(new DataHandler(new CdaDataSource(cda)));
+		return converter.transformToCoalaConsent(entry, document, patient);
+	}
+
+	@Benchmark
+	public String concatenateLines() throws IOException {
+		DataHandler dataHandler = new DataHandler(new CdaDataSource(cda));
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				dataHandler.getInputStream()));
+		String xml = "";
+		String buffer = reader.readLine();
+		while (buffer != null) {
+			xml += buffer + "\n";
+			buffer = reader.readLine();
+		}
+		return xml;
+	}
+
+	/*
+	 * Data source delivering a CDA from memory, like the DataHandler of a
+	 * retrieved document does.
+	 */
+	private static class CdaDataSource implements DataSource {
+
+		private final byte[] bytes;
+
+		CdaDataSource(byte[] bytes) {
+			this.bytes = bytes;
+		}
+
+		public InputStream getInputStream() {
+			return new ByteArrayInputStream(bytes);
+		}
+
+		public OutputStream getOutputStream() throws IOException {
+			throw new IOException("read only");
+		}
+
+		public String getContentType() {
+			return "text/xml";
+		}
+
+		public String getName() {
+			return "cda";
+		}
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openehealth.coala.domain.ConsentSortParameter;
+import org.openehealth.coala.domain.FindPatientConsentResult;
+import org.openehealth.coala.domain.PatientConsent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures loading consents into a {@link FindPatientConsentResult} and
+ * resorting it, as done when the user clicks on a column of the consent table.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ConsentSortBenchmark {
+
+	@Param({ "1000", "10000" })
+	private int consentCount;
+
+	@Param({ "CREATION_DATE_NEWEST_FIRST", "POLICY_TYPE_ASCENDING",
+			"AUTHOR_ASCENDING" })
+	private ConsentSortParameter sortBy;
+
+	private List<PatientConsent> consents;
+
+	private FindPatientConsentResult sorted;
+
+	@Setup
+	public void setUp() {
+		consents = Fixtures.consents(consentCount);
+		sorted = new FindPatientConsentResult(consents.get(0).getPatient(),
+				ConsentSortParameter.getDefault());
+		sorted.addAll(consents);
+		sorted.lock();
+	}
+
+	@Benchmark
+	public List<PatientConsent> addAllAndLock() {
+		FindPatientConsentResult result = new FindPatientConsentResult(
+				consents.get(0).getPatient(), sortBy);
+		result.addAll(consents);
+		result.lock();
+		return result.getPatientConsents();
+	}
+
+	@Benchmark
+	public List<PatientConsent> resort() {
+		return sorted.resortBy(sortBy).getPatientConsents();
+	}
+}
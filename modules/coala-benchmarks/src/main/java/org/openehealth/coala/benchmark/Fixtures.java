@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.benchmark;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.openehealth.coala.builder.CDABuilder;
+import org.openehealth.coala.builder.DocumentEntryBuilder;
+import org.openehealth.coala.domain.CoalaAuthor;
+import org.openehealth.coala.domain.Gender;
+import org.openehealth.coala.domain.Patient;
+import org.openehealth.coala.domain.PatientAddress;
+import org.openehealth.coala.domain.PatientConsent;
+import org.openehealth.coala.domain.PatientConsentPolicy;
+import org.openehealth.coala.util.PXSDateConverterImpl;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.DocumentEntry;
+
+/**
+ * Realistic test data shared by the benchmarks. Everything is created in
+ * memory from a fixed seed, so the benchmarks run offline and reproducibly.
+ */
+final class Fixtures {
+
+	static final String AUTHORITY = "2.16.840.1.113883.3.37.4.1.1.2.1.1";
+
+	static final String CDA_TEMPLATE = "CDATemplate.txt";
+
+	private Fixtures() {
+	}
+
+	/**
+	 * @return a patient with a complete address
+	 */
+	static Patient patient() {
+		PatientAddress address = new PatientAddress();
+		address.setStreetAddress("Musterweg 1");
+		address.setCity("Heilbronn");
+		address.setStateOrProvince("BW");
+		address.setZipOrPostalCode("74081");
+		address.setCountry("DE");
+		return new Patient("79471", AUTHORITY, "Max", "Mustermann", new Date(
+				315529200000L), Gender.MALE, address);
+	}
+
+	/**
+	 * @return the metadata of a new consent of the given patient
+	 */
+	static DocumentEntry documentEntry(Patient patient,
+			PatientConsentPolicy policy) {
+		DocumentEntryBuilder builder = new DocumentEntryBuilder();
+		builder.setPxsDateConverter(new PXSDateConverterImpl());
+		return builder.createDocumentEntry(new CoalaAuthor("Dr.", "Hans",
+				"Hein"), patient, policy, new Date(1309993688000L), new Date(
+				1341616088000L));
+	}
+
+	/**
+	 * Creates a consent CDA with the given number of additional sections,
+	 * each about 1 KB of text, like consents carrying the full policy text.
+	 */
+	static String cda(int extraSections) {
+		Patient patient = patient();
+		CDABuilder builder = new CDABuilder(CDA_TEMPLATE);
+		builder.setPxsDateConverter(new PXSDateConverterImpl());
+		String cda = builder.createConsentCDA(patient,
+				PatientConsentPolicy.ONE,
+				documentEntry(patient, PatientConsentPolicy.ONE));
+
+		StringBuilder sections = new StringBuilder();
+		for (int i = 0; i < extraSections; i++) {
+			sections.append("<component><section><title>Paragraph ")
+					.append(i + 1).append("</title><text>");
+			for (int j = 0; j < 16; j++) {
+				sections.append("The patient agrees to share the documents of this treatment. ");
+			}
+			sections.append("</text></section></component>\n");
+		}
+		int end = cda.lastIndexOf("</structuredBody>");
+		return cda.substring(0, end) + sections + cda.substring(end);
+	}
+
+	/**
+	 * Creates consents with random dates, policies and authors.
+	 */
+	static List<PatientConsent> consents(int count) {
+		Random random = new Random(42);
+		Patient patient = patient();
+		PatientConsentPolicy[] policies = PatientConsentPolicy.values();
+		Calendar calendar = Calendar.getInstance();
+		List<PatientConsent> consents = new ArrayList<PatientConsent>(count);
+		for (int i = 0; i < count; i++) {
+			calendar.set(2000 + random.nextInt(12), random.nextInt(12),
+					1 + random.nextInt(28));
+			Date creation = calendar.getTime();
+			Date from = new Date(creation.getTime() + random.nextInt(30)
+					* 86400000L);
+			Date until = new Date(from.getTime() + (1 + random.nextInt(730))
+					* 86400000L);
+			consents.add(new PatientConsent(from, until, policies[random
+					.nextInt(policies.length)], patient, random.nextInt(4) == 0,
+					new CoalaAuthor("Dr.", "Given" + random.nextInt(50), "Family"
+							+ random.nextInt(200)), creation, null));
+		}
+		return consents;
+	}
+}
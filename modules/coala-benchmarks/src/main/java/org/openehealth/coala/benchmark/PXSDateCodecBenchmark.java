@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.benchmark;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.openehealth.coala.util.PXSDateCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link PXSDateCodec} with a {@link SimpleDateFormat} created per
+ * call, as PXSDateConverterImpl used to do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@Threads(4)
+public class PXSDateCodecBenchmark {
+
+	private static final String LONG_PATTERN = "yyyyMMddHHmmss";
+
+	private final PXSDateCodec codec = new PXSDateCodec(LONG_PATTERN,
+			"yyyyMMdd");
+
+	private final String pxsDate = "20110115033650";
+
+	private final Date date = new Date(1295059010000L);
+
+	@Benchmark
+	public Date parseCodec() {
+		return codec.parse(pxsDate);
+	}
+
+	@Benchmark
+	public Date parseSimpleDateFormat() throws ParseException {
+		return new SimpleDateFormat(LONG_PATTERN, Locale.GERMAN).parse(pxsDate);
+	}
+
+	@Benchmark
+	public String formatCodec() {
+		return codec.format(date);
+	}
+
+	@Benchmark
+	public String formatSimpleDateFormat() {
+		return new SimpleDateFormat(LONG_PATTERN).format(date);
+	}
+}
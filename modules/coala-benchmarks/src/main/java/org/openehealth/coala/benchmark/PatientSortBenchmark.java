@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.benchmark;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openehealth.coala.domain.FindPatientQuery;
+import org.openehealth.coala.domain.FindPatientResult;
+import org.openehealth.coala.domain.Gender;
+import org.openehealth.coala.domain.Patient;
+import org.openehealth.coala.domain.PatientAddress;
+import org.openehealth.coala.domain.PatientSortParameter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures loading a large PDQ result into a {@link FindPatientResult}. The
+ * <code>insertSorted</code> benchmark reproduces the former sorted insert,
+ * which scanned the list linearly for every patient added, as a baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class PatientSortBenchmark {
+
+	private static final String ASSIGNING_AUTHORITY = "2.16.840.1.113883.3.37.4.1.1.2.1.1";
+
+	@Param({ "1000", "10000" })
+	private int patientCount;
+
+	@Param({ "LASTNAME_ASCENDING", "PID_ASCENDING", "BIRTHDATE_NEWEST_FIRST" })
+	private PatientSortParameter sortBy;
+
+	private List<Patient> patients;
+
+	private FindPatientQuery query;
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(42);
+		PatientAddress address = new PatientAddress("Musterweg 1", "Heilbronn",
+				"74081");
+		Calendar calendar = Calendar.getInstance();
+		patients = new ArrayList<Patient>(patientCount);
+		for (int i = 0; i < patientCount; i++) {
+			calendar.set(1920 + random.nextInt(90), random.nextInt(12),
+					1 + random.nextInt(28));
+			patients.add(new Patient(Integer.toString(random.nextInt(1000000)),
+					ASSIGNING_AUTHORITY, "Given" + random.nextInt(1000), "Last"
+							+ random.nextInt(5000), calendar.getTime(),
+					Gender.UNKNOWN, address));
+		}
+		query = new FindPatientQuery(null, "", "Last*", null);
+	}
+
+	@Benchmark
+	public List<Patient> addAllAndLock() {
+		FindPatientResult result = new FindPatientResult(query, sortBy);
+		result.addAll(patients);
+		result.lock();
+		return result.getPatients();
+	}
+
+	@Benchmark
+	public List<Patient> addPatientAndLock() {
+		FindPatientResult result = new FindPatientResult(query, sortBy);
+		for (Patient patient : patients) {
+			result.addPatient(patient);
+		}
+		result.lock();
+		return result.getPatients();
+	}
+
+	@Benchmark
+	public List<Patient> insertSorted() {
+		List<Patient> list = new ArrayList<Patient>();
+		for (Patient patient : patients) {
+			int i = 0;
+			while (i < list.size() && compare(patient, list.get(i)) >= 0) {
+				i++;
+			}
+			list.add(i, patient);
+		}
+		return list;
+	}
+
+	/*
+	 * Little helping method, comparing two patients the way FindPatientResult
+	 * used to do for every single comparison.
+	 */
+	private int compare(Patient p1, Patient p2) {
+		if (sortBy == PatientSortParameter.BIRTHDATE_NEWEST_FIRST)
+			return p1.getBirthdate().compareTo(p2.getBirthdate());
+		else if (sortBy == PatientSortParameter.LASTNAME_ASCENDING)
+			return p1.getLastName().compareTo(p2.getLastName());
+		else if (sortBy == PatientSortParameter.PID_ASCENDING)
+			return new Long(p1.getPatientID()).compareTo(new Long(p2
+					.getPatientID()));
+		throw new IllegalStateException("Unsupported sort parameter " + sortBy);
+	}
+}
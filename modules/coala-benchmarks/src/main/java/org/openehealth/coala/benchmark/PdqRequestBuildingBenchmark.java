@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.benchmark;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openehealth.coala.communication.PdqMessageBuilderImpl;
+import org.openehealth.coala.util.PXSDateConverterImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures building QBP^Q22 requests with {@link PdqMessageBuilderImpl} for
+ * a search by name and a search by all criteria.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class PdqRequestBuildingBenchmark {
+
+	private final Date birthdate = new Date(315529200000L);
+
+	private PdqMessageBuilderImpl builder;
+
+	@Setup
+	public void setUp() {
+		builder = new PdqMessageBuilderImpl();
+		builder.setPxsDateConverter(new PXSDateConverterImpl());
+	}
+
+	@Benchmark
+	public String buildByName() {
+		return builder.buildPdqRequest(null, null, "Müller", null);
+	}
+
+	@Benchmark
+	public String buildByAllCriteria() {
+		return builder.buildPdqRequest("79471", Fixtures.AUTHORITY, "Max",
+				"Müller", birthdate);
+	}
+}
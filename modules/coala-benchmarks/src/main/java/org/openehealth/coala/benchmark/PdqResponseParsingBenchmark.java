@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openehealth.coala.converter.PdqHL7ConverterImpl;
+import org.openehealth.coala.domain.Gender;
+import org.openehealth.coala.domain.Patient;
+import org.openehealth.coala.domain.PatientAddress;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the segment cursor based conversion of RSP^K22 responses in
+ * {@link PdqHL7ConverterImpl} with the former conversion, which split the
+ * whole response into fields with {@link String#split(String)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class PdqResponseParsingBenchmark {
+
+	private static final String AUTHORITY = "2.16.840.1.113883.3.37.4.1.1.2.1.1";
+
+	@Param({ "100", "1000", "10000" })
+	private int patientCount;
+
+	private String response;
+
+	private PdqHL7ConverterImpl converter;
+
+	@Setup
+	public void setUp() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("MSH|^~\\&|PXS|ReceivingFacility|CoALA|SendingFacility|20110707092808+0200||RSP^K22|4711|P|2.5\r");
+		builder.append("MSA|AA|6326568982331147264\r");
+		builder.append("QAK|54152038513763936462005704923487680|OK\r");
+		builder.append("QPD|Q22^Find Candidates|54152038513763936462005704923487680|@PID.5.1^Mustermann\r");
+		for (int i = 0; i < patientCount; i++) {
+			builder.append("PID|").append(i + 1).append("||").append(100000 + i)
+					.append("^^^Heilbronn&").append(AUTHORITY)
+					.append("&ISO||Mustermann^Max").append(i)
+					.append("||19800101|M|||Musterweg ").append(i)
+					.append("^^Heilbronn^BW^74081^DE\r");
+		}
+		response = builder.toString();
+		converter = new PdqHL7ConverterImpl();
+	}
+
+	@Benchmark
+	public List<Patient> cursor() {
+		return converter.convertPdqToPatients(response);
+	}
+
+	@Benchmark
+	public List<Patient> split() {
+		List<Patient> patients = new ArrayList<Patient>();
+		String[] hl7msgs = response.split("\\|");
+		for (int i = 0; hl7msgs.length > i; i++) {
+			if (hl7msgs[i].contains("\rPID") && (hl7msgs.length >= i + 5)) {
+				String[] pidComplete = hl7msgs[i + 3].split("\\^");
+				String pid = pidComplete[0];
+				String pidAssigningAuthorityUniversalId = pidComplete[3]
+						.split("&")[1];
+				String[] patientName = hl7msgs[i + 5].split("\\^");
+				PatientAddress address = new PatientAddress();
+				String[] addressElements = hl7msgs[i + 11].split("\\^");
+				if (addressElements.length > 0)
+					address.setStreetAddress(addressElements[0]);
+				if (addressElements.length > 2)
+					address.setCity(addressElements[2]);
+				if (addressElements.length > 3)
+					address.setStateOrProvince(addressElements[3]);
+				if (addressElements.length > 4)
+					address.setZipOrPostalCode(addressElements[4]);
+				if (addressElements.length > 5)
+					address.setCountry(addressElements[5]);
+				patients.add(new Patient(pid, pidAssigningAuthorityUniversalId,
+						patientName[1], patientName[0], converter
+								.stringToDate(hl7msgs[i + 7]), Gender
+								.fromString(hl7msgs[i + 8]), address));
+			}
+		}
+		return patients;
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.openehealth.coala.transformer.XmlTransformer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures rendering consent CDAs into HTML with the BPPC style sheet through
+ * {@link XmlTransformer}, from a String and from the bytes of a retrieved
+ * document. Several threads share one transformer, like the sessions of the
+ * web application do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@Threads(4)
+public class XmlTransformBenchmark {
+
+	private static final String XSL_SHEET = "text_xml-urn_ihe_iti_bppc_2007.xsl";
+
+	/** number of additional text sections of about 1 KB each */
+	@Param({ "0", "50" })
+	private int extraSections;
+
+	private String cda;
+
+	private byte[] cdaBytes;
+
+	private XmlTransformer transformer;
+
+	@Setup
+	public void setUp() throws Exception {
+		cda = Fixtures.cda(extraSections);
+		cdaBytes = cda.getBytes("UTF-8");
+		InputStream xsl = Thread.currentThread().getContextClassLoader()
+				.getResourceAsStream(XSL_SHEET);
+		try {
+			transformer = new XmlTransformer(xsl,
+					XmlTransformer.DEFAULT_POOL_SIZE);
+		} finally {
+			xsl.close();
+		}
+	}
+
+	@Benchmark
+	public String transformString() throws Exception {
+		return transformer.transformXmlIntoHtml(cda);
+	}
+
+	@Benchmark
+	public int transformStream() throws Exception {
+		StringWriter html = new StringWriter(8192);
+		transformer.transformXmlIntoHtml(new ByteArrayInputStream(cdaBytes),
+				html);
+		return html.getBuffer().length();
+	}
+}
@@ -16,15 +16,15 @@
  */
 package org.openehealth.coala.builder;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.util.Date;
 import java.util.ResourceBundle;
 
-import org.apache.velocity.Template;
-import org.apache.velocity.VelocityContext;
-import org.apache.velocity.app.VelocityEngine;
-import org.apache.velocity.runtime.RuntimeConstants;
-import org.apache.velocity.runtime.resource.loader.ClasspathResourceLoader;
 import org.openehealth.coala.domain.Patient;
 import org.openehealth.coala.domain.PatientConsentPolicy;
 import org.openehealth.coala.exception.CDACreationException;
@@ -33,7 +33,10 @@ import org.openehealth.ipf.commons.ihe.xds.core.metadata.DocumentEntry;
 import org.slf4j.Logger;
 
 /**
- * this Class is responsible for the Consent CDA creation.
+ * this Class is responsible for the Consent CDA creation. The CDA template is
+ * parsed once into static text fragments and typed slots, which are filled
+ * directly from the {@link Patient}, {@link PatientConsentPolicy} and
+ * {@link DocumentEntry} and XML escaped while the CDA is written.
  * 
  * @author mnachtma, wkais
  */
@@ -73,7 +76,10 @@ public class CDABuilder {
 	private static final String TAG_CDA_Author_FAMILY = "aFamily";
 	private static final String TAG_CDA_Author_GIVEN = "aGiven";
 
-	private Template t;
+	private final CDATemplate template;
+
+	/** the slots of the template, in the order of the template */
+	private final Slot[] slots;
 
 	private static String CDA_CODE_CODESYSTEM_OID;
 
@@ -86,13 +92,14 @@ public class CDABuilder {
 	}
 
 	/**
-	 * the constructor declares and initializes the Velocity-engine
+	 * the constructor loads and parses the CDA template
 	 * 
 	 * @param templateName
 	 *            the filename ( no path here ! ) of the CDA template to be
 	 *            used. Must not be null or empty.
 	 * @throws RuntimeException
-	 *             thrown if any errors occurred during initialization
+	 *             thrown if any errors occurred during initialization, e.g.
+	 *             the template refers to unknown values
 	 */
 	public CDABuilder(String templateName) {
 		try {
@@ -101,14 +108,11 @@ public class CDABuilder {
 					.getString("coala.cda.code.codeSystem");
 			CDA_CONFIDENTIALTY_CODESYSTEM_OID = properties
 					.getString("coala.cda.confidentialty.codeSystem");
-			/* first, get and initialize an engine */
-			VelocityEngine ve = new VelocityEngine();
-			ve.setProperty(RuntimeConstants.RESOURCE_LOADER, "classpath");
-			ve.setProperty("classpath.resource.loader.class",
-					ClasspathResourceLoader.class.getName());
-			ve.init();
-			/* next, get the Template */
-			t = ve.getTemplate(templateName);
+			template = CDATemplate.load(templateName);
+			slots = new Slot[template.getSlotCount()];
+			for (int i = 0; i < slots.length; i++) {
+				slots[i] = Slot.forTag(template.getSlotName(i));
+			}
 		} catch (Exception e) {
 			throw new RuntimeException(e.getLocalizedMessage(), e);
 		}
@@ -136,6 +140,40 @@ public class CDABuilder {
 	public String createConsentCDA(Patient patient,
 			PatientConsentPolicy policy, DocumentEntry documentEntry) {
 
+		StringWriter writer = new StringWriter(4096);
+		writeConsentCDA(patient, policy, documentEntry, writer);
+		String cda = writer.toString();
+		/* show the World */
+		if (LOG.isDebugEnabled())
+			LOG.debug(cda);
+		return cda;
+	}
+
+	/**
+	 * this method writes a valid consent CDA structure into the given writer,
+	 * without creating a String of the whole document.
+	 * 
+	 * @param patient
+	 *            the {@link Patient} instance for which the CDA should be
+	 *            created. Must not be null.
+	 * @param policy
+	 *            the {@link PatientConsentPolicy} that was chosen for this new
+	 *            consent CDA. Must not be null.
+	 * @param documentEntry
+	 *            the {@link DocumentEntry} that was associated to the consent
+	 *            CDA. Must not be null and have a valid {@link DocumentEntry}
+	 *            state.
+	 * @param writer
+	 *            the writer for the CDA XML Document. Must not be null, it is
+	 *            neither flushed nor closed.
+	 * @throws CDACreationException
+	 *             thrown if the new consent CDA could be generated.
+	 * @throws IllegalArgumentException
+	 *             thrown if one of the given parameters is invalid.
+	 */
+	public void writeConsentCDA(Patient patient, PatientConsentPolicy policy,
+			DocumentEntry documentEntry, Writer writer) {
+
 		// Basic checks
 		if (patient == null)
 			throw new IllegalArgumentException("Patient cannot be null.");
@@ -143,86 +181,318 @@ public class CDABuilder {
 			throw new IllegalArgumentException("policy cannot be null.");
 		if (documentEntry == null)
 			throw new IllegalArgumentException("documentEntry cannot be null.");
-
-		StringWriter writer = new StringWriter();
-
-		/* create a context and add data */
-		VelocityContext context = new VelocityContext();
-
-		/* load Metadata */
-		context = createMetaContext(context, patient, policy, documentEntry);
-
-		context.put(TAG_CDA_ID_ROOT, documentEntry.getUniqueId());
-		context.put(TAG_CDA_CODE_CODE, documentEntry.getTypeCode().getCode());
-		context.put(TAG_CDA_CODE_DISPLAYNAME, documentEntry.getTypeCode()
-				.getDisplayName().getValue());
-		context.put(TAG_CDA_CODE_CODESYSTEM, CDA_CODE_CODESYSTEM_OID);
-		context.put(TAG_CDA_CODE_CODESYSTEMNAME, documentEntry.getTypeCode()
-				.getSchemeName());
-		context.put(TAG_CDA_EFFECTIVETIME, documentEntry.getCreationTime());
-		context.put(TAG_CDA_CONFIDENTIALTY_CODE, documentEntry
-				.getConfidentialityCodes().get(0).getCode());
-		context.put(TAG_CDA_CONFIDENTIALTY_DISPLAYNAME, documentEntry
-				.getConfidentialityCodes().get(0).getDisplayName().getValue());
-		context.put(TAG_CDA_CONFIDENTIALTY_CODESYSTEM,
-				CDA_CONFIDENTIALTY_CODESYSTEM_OID);
-		context.put(TAG_CDA_CONFIDENTIALTY_CODESYSTEMNAME, documentEntry
-				.getConfidentialityCodes().get(0).getSchemeName());
-		context.put(TAG_CDA_LANGUAGECODE, documentEntry.getLanguageCode());
-		context.put(TAG_CDA_Author_TITLE, documentEntry.getAuthor()
-				.getAuthorPerson().getName().getPrefix());
-		context.put(TAG_CDA_Author_FAMILY, documentEntry.getAuthor()
-				.getAuthorPerson().getName().getFamilyName());
-		context.put(TAG_CDA_Author_GIVEN, documentEntry.getAuthor()
-				.getAuthorPerson().getName().getGivenName());
-		context.put(TAG_CDA_VALIDFROM, documentEntry.getServiceStartTime());
-		context.put(TAG_CDA_VALIDUNTIL, documentEntry.getServiceStopTime());
+		if (writer == null)
+			throw new IllegalArgumentException("writer cannot be null.");
 
 		try {
-			/* now render the template into a StringWriter */
-			t.merge(context, writer);
-		} catch (Exception e) {
+			for (int i = 0; i < slots.length; i++) {
+				template.writeText(i, writer);
+				CDATemplate.writeEscaped(
+						slots[i].value(this, patient, policy, documentEntry),
+						writer);
+			}
+			template.writeText(slots.length, writer);
+		} catch (IOException e) {
+			throw new CDACreationException(e.getLocalizedMessage(), e);
+		} catch (RuntimeException e) {
+			// e.g. incomplete metadata of the document entry
 			throw new CDACreationException(e.getLocalizedMessage(), e);
 		}
-		/* show the World */
-		LOG.debug(writer.toString());
-		return writer.toString();
 	}
 
 	/**
-	 * this Method is called to create a cda document by
-	 * {@link #createConsentCDA(Patient, Date, Date, PatientConsentPolicy, DocumentEntry)}
+	 * this method writes a valid consent CDA structure UTF-8 encoded into the
+	 * given stream.
 	 * 
-	 * @param context
 	 * @param patient
+	 *            the {@link Patient} instance for which the CDA should be
+	 *            created. Must not be null.
 	 * @param policy
-	 * @return
+	 *            the {@link PatientConsentPolicy} that was chosen for this new
+	 *            consent CDA. Must not be null.
+	 * @param documentEntry
+	 *            the {@link DocumentEntry} that was associated to the consent
+	 *            CDA. Must not be null and have a valid {@link DocumentEntry}
+	 *            state.
+	 * @param stream
+	 *            the stream for the CDA XML Document. Must not be null, it is
+	 *            flushed but not closed.
+	 * @throws CDACreationException
+	 *             thrown if the new consent CDA could be generated.
+	 * @throws IllegalArgumentException
+	 *             thrown if one of the given parameters is invalid.
+	 */
+	public void writeConsentCDA(Patient patient, PatientConsentPolicy policy,
+			DocumentEntry documentEntry, OutputStream stream) {
+		if (stream == null)
+			throw new IllegalArgumentException("stream cannot be null.");
+		Writer writer;
+		try {
+			writer = new BufferedWriter(new OutputStreamWriter(stream, "UTF-8"));
+		} catch (IOException e) {
+			throw new CDACreationException(e.getLocalizedMessage(), e);
+		}
+		writeConsentCDA(patient, policy, documentEntry, writer);
+		try {
+			writer.flush();
+		} catch (IOException e) {
+			throw new CDACreationException(e.getLocalizedMessage(), e);
+		}
+	}
+
+	/*
+	 * Little helping method, returning the String representation of a value
+	 * or null.
 	 */
-	private VelocityContext createMetaContext(VelocityContext context,
-			Patient patient, PatientConsentPolicy policy,
-			DocumentEntry documentEntry) {
-
-		context.put(TAG_CDA_FAMILY, patient.getLastName());
-		context.put(TAG_CDA_GIVEN, patient.getGivenName());
-		context.put(TAG_CDA_BIRTHDATE,
-				pxsDateConverter.DateToShortString(patient.getBirthdate()));
-		context.put(TAG_CDA_ADDRESS_STREET, patient.getAddress()
-				.getStreetAddress());
-		context.put(TAG_CDA_ADDRESS_CITY, patient.getAddress().getCity());
-		context.put(TAG_CDA_ADDRESS_STATE, patient.getAddress()
-				.getStateOrProvince());
-		context.put(TAG_CDA_ADDRESS_POSTALCODE, patient.getAddress()
-				.getZipOrPostalCode());
-		context.put(TAG_CDA_ADDRESS_COUNTRY, patient.getAddress().getCountry());
-		context.put(TAG_CDA_PATIENT_ID, patient.getPatientID());
-		context.put(TAG_CDA_PATIENT_ID_ROOT,
-				patient.getPatientIDAssigningAuthorityUniversalId());
-		context.put(TAG_CDA_TITlE, documentEntry.getTitle().getValue());
-		context.put(TAG_CDA_PATIENT_GENDER, patient.getSex());
-		context.put(TAG_CDA_COMPONENT_TITLE, policy.name());
-		context.put(TAG_CDA_COMPONENT_TEXT, policy.getShortName());
-
-		return context;
+	private static String string(Object value) {
+		return value == null ? null : value.toString();
 	}
 
+	/**
+	 * The values the CDA template may refer to, each filled directly from the
+	 * consent data.
+	 */
+	private enum Slot {
+		FAMILY(TAG_CDA_FAMILY) {
+			@Override
+			String value(CDABuilder b, Patient p, PatientConsentPolicy policy,
+					DocumentEntry de) {
+				return p.getLastName();
+			}
+		},
+		GIVEN(TAG_CDA_GIVEN) {
+			@Override
+			String value(CDABuilder b, Patient p, PatientConsentPolicy policy,
+					DocumentEntry de) {
+				return p.getGivenName();
+			}
+		},
+		BIRTHDATE(TAG_CDA_BIRTHDATE) {
+			@Override
+			String value(CDABuilder b, Patient p, PatientConsentPolicy policy,
+					DocumentEntry de) {
+				Date birthdate = p.getBirthdate();
+				return b.pxsDateConverter.DateToShortString(birthdate);
+			}
+		},
+		ADDRESS_STREET(TAG_CDA_ADDRESS_STREET) {
+			@Override
+			String value(CDABuilder b, Patient p, PatientConsentPolicy policy,
+					DocumentEntry de) {
+				return p.getAddress().getStreetAddress();
+			}
+		},
+		ADDRESS_CITY(TAG_CDA_ADDRESS_CITY) {
+			@Override
+			String value(CDABuilder b, Patient p, PatientConsentPolicy policy,
+					DocumentEntry de) {
+				return p.getAddress().getCity();
+			}
+		},
+		ADDRESS_STATE(TAG_CDA_ADDRESS_STATE) {
+			@Override
+			String value(CDABuilder b, Patient p, PatientConsentPolicy policy,
+					DocumentEntry de) {
+				return p.getAddress().getStateOrProvince();
+			}
+		},
+		ADDRESS_POSTALCODE(TAG_CDA_ADDRESS_POSTALCODE) {
+			@Override
+			String value(CDABuilder b, Patient p, PatientConsentPolicy policy,
+					DocumentEntry de) {
+				return p.getAddress().getZipOrPostalCode();
+			}
+		},
+		ADDRESS_COUNTRY(TAG_CDA_ADDRESS_COUNTRY) {
+			@Override
+			String value(CDABuilder b, Patient p, PatientConsentPolicy policy,
+					DocumentEntry de) {
+				return p.getAddress().getCountry();
+			}
+		},
+		PATIENT_ID(TAG_CDA_PATIENT_ID) {
+			@Override
+			String value(CDABuilder b, Patient p, PatientConsentPolicy policy,
+					DocumentEntry de) {
+				return p.getPatientID();
+			}
+		},
+		PATIENT_ID_ROOT(TAG_CDA_PATIENT_ID_ROOT) {
+			@Override
+			String value(CDABuilder b, Patient p, PatientConsentPolicy policy,
+					DocumentEntry de) {
+				return p.getPatientIDAssigningAuthorityUniversalId();
+			}
+		},
+		TITLE(TAG_CDA_TITlE) {
+			@Override
+			String value(CDABuilder b, Patient p, PatientConsentPolicy policy,
+					DocumentEntry de) {
+				return de.getTitle().getValue();
+			}
+		},
+		PATIENT_GENDER(TAG_CDA_PATIENT_GENDER) {
+			@Override
+			String value(CDABuilder b, Patient p, PatientConsentPolicy policy,
+					DocumentEntry de) {
+				return string(p.getSex());
+			}
+		},
+		COMPONENT_TITLE(TAG_CDA_COMPONENT_TITLE) {
+			@Override
+			String value(CDABuilder b, Patient p, PatientConsentPolicy policy,
+					DocumentEntry de) {
+				return policy.name();
+			}
+		},
+		COMPONENT_TEXT(TAG_CDA_COMPONENT_TEXT) {
+			@Override
+			String value(CDABuilder b, Patient p, PatientConsentPolicy policy,
+					DocumentEntry de) {
+				return policy.getShortName();
+			}
+		},
+		ID_ROOT(TAG_CDA_ID_ROOT) {
+			@Override
+			String value(CDABuilder b, Patient p, PatientConsentPolicy policy,
+					DocumentEntry de) {
+				return de.getUniqueId();
+			}
+		},
+		CODE_CODE(TAG_CDA_CODE_CODE) {
+			@Override
+			String value(CDABuilder b, Patient p, PatientConsentPolicy policy,
+					DocumentEntry de) {
+				return de.getTypeCode().getCode();
+			}
+		},
+		CODE_DISPLAYNAME(TAG_CDA_CODE_DISPLAYNAME) {
+			@Override
+			String value(CDABuilder b, Patient p, PatientConsentPolicy policy,
+					DocumentEntry de) {
+				return de.getTypeCode().getDisplayName().getValue();
+			}
+		},
+		CODE_CODESYSTEM(TAG_CDA_CODE_CODESYSTEM) {
+			@Override
+			String value(CDABuilder b, Patient p, PatientConsentPolicy policy,
+					DocumentEntry de) {
+				return CDA_CODE_CODESYSTEM_OID;
+			}
+		},
+		CODE_CODESYSTEMNAME(TAG_CDA_CODE_CODESYSTEMNAME) {
+			@Override
+			String value(CDABuilder b, Patient p, PatientConsentPolicy policy,
+					DocumentEntry de) {
+				return de.getTypeCode().getSchemeName();
+			}
+		},
+		EFFECTIVETIME(TAG_CDA_EFFECTIVETIME) {
+			@Override
+			String value(CDABuilder b, Patient p, PatientConsentPolicy policy,
+					DocumentEntry de) {
+				return string(de.getCreationTime());
+			}
+		},
+		CONFIDENTIALTY_CODE(TAG_CDA_CONFIDENTIALTY_CODE) {
+			@Override
+			String value(CDABuilder b, Patient p, PatientConsentPolicy policy,
+					DocumentEntry de) {
+				return de.getConfidentialityCodes().get(0).getCode();
+			}
+		},
+		CONFIDENTIALTY_DISPLAYNAME(TAG_CDA_CONFIDENTIALTY_DISPLAYNAME) {
+			@Override
+			String value(CDABuilder b, Patient p, PatientConsentPolicy policy,
+					DocumentEntry de) {
+				return de.getConfidentialityCodes().get(0).getDisplayName()
+						.getValue();
+			}
+		},
+		CONFIDENTIALTY_CODESYSTEM(TAG_CDA_CONFIDENTIALTY_CODESYSTEM) {
+			@Override
+			String value(CDABuilder b, Patient p, PatientConsentPolicy policy,
+					DocumentEntry de) {
+				return CDA_CONFIDENTIALTY_CODESYSTEM_OID;
+			}
+		},
+		CONFIDENTIALTY_CODESYSTEMNAME(TAG_CDA_CONFIDENTIALTY_CODESYSTEMNAME) {
+			@Override
+			String value(CDABuilder b, Patient p, PatientConsentPolicy policy,
+					DocumentEntry de) {
+				return de.getConfidentialityCodes().get(0).getSchemeName();
+			}
+		},
+		LANGUAGECODE(TAG_CDA_LANGUAGECODE) {
+			@Override
+			String value(CDABuilder b, Patient p, PatientConsentPolicy policy,
+					DocumentEntry de) {
+				return de.getLanguageCode();
+			}
+		},
+		AUTHOR_TITLE(TAG_CDA_Author_TITLE) {
+			@Override
+			String value(CDABuilder b, Patient p, PatientConsentPolicy policy,
+					DocumentEntry de) {
+				return de.getAuthor().getAuthorPerson().getName().getPrefix();
+			}
+		},
+		AUTHOR_FAMILY(TAG_CDA_Author_FAMILY) {
+			@Override
+			String value(CDABuilder b, Patient p, PatientConsentPolicy policy,
+					DocumentEntry de) {
+				return de.getAuthor().getAuthorPerson().getName()
+						.getFamilyName();
+			}
+		},
+		AUTHOR_GIVEN(TAG_CDA_Author_GIVEN) {
+			@Override
+			String value(CDABuilder b, Patient p, PatientConsentPolicy policy,
+					DocumentEntry de) {
+				return de.getAuthor().getAuthorPerson().getName()
+						.getGivenName();
+			}
+		},
+		VALIDFROM(TAG_CDA_VALIDFROM) {
+			@Override
+			String value(CDABuilder b, Patient p, PatientConsentPolicy policy,
+					DocumentEntry de) {
+				return string(de.getServiceStartTime());
+			}
+		},
+		VALIDUNTIL(TAG_CDA_VALIDUNTIL) {
+			@Override
+			String value(CDABuilder b, Patient p, PatientConsentPolicy policy,
+					DocumentEntry de) {
+				return string(de.getServiceStopTime());
+			}
+		};
+
+		private final String tag;
+
+		private Slot(String tag) {
+			this.tag = tag;
+		}
+
+		/**
+		 * Returns the value of this slot for the given consent data.
+		 */
+		abstract String value(CDABuilder builder, Patient patient,
+				PatientConsentPolicy policy, DocumentEntry documentEntry);
+
+		/**
+		 * Returns the slot referred to by the given tag.
+		 * 
+		 * @throws IllegalArgumentException
+		 *             if the tag is unknown
+		 */
+		static Slot forTag(String tag) {
+			for (Slot slot : values()) {
+				if (slot.tag.equals(tag))
+					return slot;
+			}
+			throw new IllegalArgumentException("Unknown CDA template value $"
+					+ tag);
+		}
+	}
 }
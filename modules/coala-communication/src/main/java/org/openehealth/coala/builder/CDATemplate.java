@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.builder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A CDA template parsed once into static text fragments and the names of the
+ * slots between them. References are written like Velocity references,
+ * <code>$name</code> or <code>${name}</code>; directives are not supported.
+ * The slots are filled by the caller, see {@link CDABuilder}.
+ * <p>
+ * Instances are immutable and thread-safe.
+ */
+final class CDATemplate {
+
+	/** text fragments, one more than there are slots */
+	private final char[][] texts;
+
+	/** names of the slots, the slot i follows the text i */
+	private final String[] slotNames;
+
+	/**
+	 * Parses the given template text.
+	 * 
+	 * @param template
+	 *            the template text, must not be null
+	 */
+	CDATemplate(String template) {
+		if (template == null)
+			throw new IllegalArgumentException("template cannot be null");
+		List<char[]> textList = new ArrayList<char[]>();
+		List<String> nameList = new ArrayList<String>();
+		int start = 0;
+		int pos = 0;
+		while ((pos = template.indexOf('$', pos)) >= 0) {
+			boolean braced = pos + 1 < template.length()
+					&& template.charAt(pos + 1) == '{';
+			int nameStart = braced ? pos + 2 : pos + 1;
+			int nameEnd = nameStart;
+			if (nameEnd < template.length()
+					&& isNameStart(template.charAt(nameEnd))) {
+				nameEnd++;
+				while (nameEnd < template.length()
+						&& isNamePart(template.charAt(nameEnd)))
+					nameEnd++;
+			}
+			if (nameEnd == nameStart
+					|| (braced && (nameEnd == template.length() || template
+							.charAt(nameEnd) != '}'))) {
+				// no reference, the $ is part of the text
+				pos++;
+				continue;
+			}
+			textList.add(template.substring(start, pos).toCharArray());
+			nameList.add(template.substring(nameStart, nameEnd));
+			pos = braced ? nameEnd + 1 : nameEnd;
+			start = pos;
+		}
+		textList.add(template.substring(start).toCharArray());
+		texts = textList.toArray(new char[textList.size()][]);
+		slotNames = nameList.toArray(new String[nameList.size()]);
+	}
+
+	/**
+	 * Loads and parses a UTF-8 encoded template from the class path.
+	 * 
+	 * @param templateName
+	 *            the name of the template resource, must neither be null nor
+	 *            empty
+	 * @return the parsed template
+	 * @throws IOException
+	 *             if the template can't be found or read
+	 */
+	static CDATemplate load(String templateName) throws IOException {
+		if (templateName == null || templateName.trim().isEmpty())
+			throw new IllegalArgumentException(
+					"templateName cannot be null or empty");
+		InputStream stream = Thread.currentThread().getContextClassLoader()
+				.getResourceAsStream(templateName);
+		if (stream == null)
+			stream = CDATemplate.class.getClassLoader().getResourceAsStream(
+					templateName);
+		if (stream == null)
+			throw new IOException("Unable to find template " + templateName);
+		try {
+			Reader reader = new InputStreamReader(stream, "UTF-8");
+			StringBuilder template = new StringBuilder();
+			char[] buffer = new char[4096];
+			int count;
+			while ((count = reader.read(buffer)) >= 0) {
+				template.append(buffer, 0, count);
+			}
+			return new CDATemplate(template.toString());
+		} finally {
+			stream.close();
+		}
+	}
+
+	/**
+	 * @return the number of slots
+	 */
+	int getSlotCount() {
+		return slotNames.length;
+	}
+
+	/**
+	 * @param slot
+	 *            the index of the slot
+	 * @return the name of the slot
+	 */
+	String getSlotName(int slot) {
+		return slotNames[slot];
+	}
+
+	/**
+	 * Writes the text fragment preceding the given slot, or the last fragment
+	 * for the index {@link #getSlotCount()}.
+	 * 
+	 * @param index
+	 *            the index of the fragment
+	 * @param writer
+	 *            the writer to write to
+	 * @throws IOException
+	 *             if the writer fails
+	 */
+	void writeText(int index, Writer writer) throws IOException {
+		writer.write(texts[index]);
+	}
+
+	/**
+	 * Writes a slot value, escaping the characters which are not allowed in
+	 * XML text and attribute values. Nothing is written for null.
+	 * 
+	 * @param value
+	 *            the value of the slot, may be null
+	 * @param writer
+	 *            the writer to write to
+	 * @throws IOException
+	 *             if the writer fails
+	 */
+	static void writeEscaped(String value, Writer writer) throws IOException {
+		if (value == null)
+			return;
+		int start = 0;
+		int length = value.length();
+		for (int i = 0; i < length; i++) {
+			String entity;
+			switch (value.charAt(i)) {
+			case '<':
+				entity = "&lt;";
+				break;
+			case '>':
+				entity = "&gt;";
+				break;
+			case '&':
+				entity = "&amp;";
+				break;
+			case '"':
+				entity = "&quot;";
+				break;
+			case '\'':
+				entity = "&apos;";
+				break;
+			default:
+				continue;
+			}
+			writer.write(value, start, i - start);
+			writer.write(entity);
+			start = i + 1;
+		}
+		writer.write(value, start, length - start);
+	}
+
+	/*
+	 * Little helping method, checking whether c may start a reference name.
+	 */
+	private static boolean isNameStart(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+
+	/*
+	 * Little helping method, checking whether c may be part of a reference
+	 * name.
+	 */
+	private static boolean isNamePart(char c) {
+		return isNameStart(c) || (c >= '0' && c <= '9') || c == '_'
+				|| c == '-';
+	}
+}
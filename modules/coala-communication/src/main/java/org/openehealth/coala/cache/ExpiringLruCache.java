@@ -0,0 +1,326 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A simple, thread-safe cache which holds at most <code>maxEntries</code>
+ * values, each of them for at most <code>timeToLive</code> milliseconds. If
+ * the cache runs full, the least recently used entry is evicted. Optionally,
+ * the values are weighed by a {@link Weigher} and least recently used entries
+ * are evicted as well while the total weight exceeds <code>maxWeight</code>.
+ * Hits, misses and evictions are counted and can be read for monitoring
+ * purposes.
+ *
+ * @param <K>
+ *            the type of the keys
+ * @param <V>
+ *            the type of the cached values
+ */
+public class ExpiringLruCache<K, V> {
+
+	private final int maxEntries;
+	private final long timeToLive;
+	private final long maxWeight;
+	private final Weigher<? super V> weigher;
+
+	/** total weight of all entries held, always 0 without weigher */
+	private long weight;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/** access ordered map, the eldest entry is the least recently used one */
+	private final Map<K, CacheEntry<V>> entries;
+
+	/**
+	 * Creates a new cache.
+	 *
+	 * @param maxEntries
+	 *            the maximum number of entries held by the cache, must be
+	 *            greater than 0
+	 * @param timeToLive
+	 *            the time in milliseconds an entry stays valid after it has
+	 *            been put into the cache, must be greater than 0
+	 */
+	public ExpiringLruCache(int maxEntries, long timeToLive) {
+		this(maxEntries, timeToLive, Long.MAX_VALUE, null);
+	}
+
+	/**
+	 * Creates a new cache with a budget for the total weight of its values.
+	 *
+	 * @param maxEntries
+	 *            the maximum number of entries held by the cache, must be
+	 *            greater than 0
+	 * @param timeToLive
+	 *            the time in milliseconds an entry stays valid after it has
+	 *            been put into the cache, must be greater than 0
+	 * @param maxWeight
+	 *            the maximum total weight of all values held by the cache,
+	 *            must be greater than 0
+	 * @param weigher
+	 *            calculates the weight of a value, <code>null</code> if the
+	 *            values shall not be weighed
+	 */
+	public ExpiringLruCache(final int maxEntries, long timeToLive,
+			long maxWeight, Weigher<? super V> weigher) {
+		if (maxEntries < 1)
+			throw new IllegalArgumentException(
+					"maxEntries must be greater than 0.");
+		if (timeToLive < 1)
+			throw new IllegalArgumentException(
+					"timeToLive must be greater than 0.");
+		if (maxWeight < 1)
+			throw new IllegalArgumentException(
+					"maxWeight must be greater than 0.");
+		this.maxEntries = maxEntries;
+		this.timeToLive = timeToLive;
+		this.maxWeight = maxWeight;
+		this.weigher = weigher;
+		this.entries = new LinkedHashMap<K, CacheEntry<V>>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+				if (size() > maxEntries) {
+					weight -= eldest.getValue().weight;
+					evictions.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Returns the value cached for the given key or <code>null</code>, if
+	 * there is no value or it has expired already.
+	 *
+	 * @param key
+	 *            the key to look up
+	 * @return the cached value or <code>null</code>
+	 */
+	public synchronized V get(K key) {
+		CacheEntry<V> entry = entries.get(key);
+		if (entry != null && entry.isExpired(System.currentTimeMillis())) {
+			removeEntry(key);
+			evictions.incrementAndGet();
+			entry = null;
+		}
+		if (entry == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return entry.value;
+	}
+
+	/**
+	 * Checks whether a value is cached for the given key. Unlike
+	 * {@link #get(Object)}, the lookup counts neither as hit nor as miss.
+	 *
+	 * @param key
+	 *            the key to look up
+	 * @return true, if there is a value which has not expired yet
+	 */
+	public synchronized boolean containsKey(K key) {
+		CacheEntry<V> entry = entries.get(key);
+		if (entry != null && entry.isExpired(System.currentTimeMillis())) {
+			removeEntry(key);
+			evictions.incrementAndGet();
+			return false;
+		}
+		return entry != null;
+	}
+
+	/**
+	 * Puts a value into the cache, replacing the value previously cached for
+	 * the same key. A value weighing more than <code>maxWeight</code> on its
+	 * own is not cached at all.
+	 *
+	 * @param key
+	 *            the key of the value, must not be <code>null</code>
+	 * @param value
+	 *            the value to cache, must not be <code>null</code>
+	 */
+	public synchronized void put(K key, V value) {
+		if (key == null || value == null)
+			throw new IllegalArgumentException(
+					"Neither key nor value must be null.");
+		long valueWeight = weigher == null ? 0 : weigher.weigh(value);
+		removeEntry(key);
+		if (valueWeight > maxWeight)
+			return;
+		weight += valueWeight;
+		entries.put(key, new CacheEntry<V>(value, System.currentTimeMillis()
+				+ timeToLive, valueWeight));
+		// evict least recently used entries until the budget fits again
+		Iterator<CacheEntry<V>> eldest = entries.values().iterator();
+		while (weight > maxWeight && eldest.hasNext()) {
+			weight -= eldest.next().weight;
+			eldest.remove();
+			evictions.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Removes the value cached for the given key, if any.
+	 *
+	 * @param key
+	 *            the key of the value to remove
+	 * @return the removed value, even if it has expired already, or
+	 *         <code>null</code>
+	 */
+	public synchronized V remove(K key) {
+		CacheEntry<V> entry = removeEntry(key);
+		return entry == null ? null : entry.value;
+	}
+
+	/**
+	 * Removes all values from the cache.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		weight = 0;
+	}
+
+	/*
+	 * Little helping method, removing an entry and its weight. Callers must
+	 * hold the lock of this cache.
+	 */
+	private CacheEntry<V> removeEntry(K key) {
+		CacheEntry<V> entry = entries.remove(key);
+		if (entry != null)
+			weight -= entry.weight;
+		return entry;
+	}
+
+	/**
+	 * Returns the number of entries currently held by the cache, including
+	 * expired ones which have not been accessed since.
+	 *
+	 * @return the number of entries currently held by the cache
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the total weight of the entries currently held by the cache,
+	 * including expired ones which have not been accessed since.
+	 *
+	 * @return the total weight of the entries, 0 if values are not weighed
+	 */
+	public synchronized long getWeight() {
+		return weight;
+	}
+
+	/**
+	 * @return the maximum total weight of all values held by this cache
+	 */
+	public long getMaxWeight() {
+		return maxWeight;
+	}
+
+	/**
+	 * @return the maximum number of entries held by this cache
+	 */
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	/**
+	 * @return the time in milliseconds an entry stays valid
+	 */
+	public long getTimeToLive() {
+		return timeToLive;
+	}
+
+	/**
+	 * @return the number of lookups which returned a cached value
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * @return the number of lookups which did not return a cached value
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * @return the number of entries dropped because they expired or the cache
+	 *         ran full
+	 */
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("ExpiringLruCache [size=");
+		builder.append(size());
+		builder.append(", maxEntries=");
+		builder.append(maxEntries);
+		builder.append(", timeToLive=");
+		builder.append(timeToLive);
+		if (weigher != null) {
+			builder.append(", weight=");
+			builder.append(getWeight());
+			builder.append(", maxWeight=");
+			builder.append(maxWeight);
+		}
+		builder.append(", hits=");
+		builder.append(hits.get());
+		builder.append(", misses=");
+		builder.append(misses.get());
+		builder.append(", evictions=");
+		builder.append(evictions.get());
+		builder.append("]");
+		return builder.toString();
+	}
+
+	/**
+	 * A cached value together with its expiry time and weight.
+	 */
+	private static class CacheEntry<V> {
+
+		private final V value;
+		private final long expiresAt;
+		private final long weight;
+
+		public CacheEntry(V value, long expiresAt, long weight) {
+			this.value = value;
+			this.expiresAt = expiresAt;
+			this.weight = weight;
+		}
+
+		public boolean isExpired(long now) {
+			return now >= expiresAt;
+		}
+	}
+}
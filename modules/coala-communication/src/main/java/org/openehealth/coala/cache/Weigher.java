@@ -0,0 +1,36 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.cache;
+
+/**
+ * Calculates the weight of a cached value, e.g. its approximate size in bytes,
+ * for caches with a memory budget.
+ *
+ * @param <V>
+ *            the type of the cached values
+ */
+public interface Weigher<V> {
+
+	/**
+	 * Returns the weight of the given value.
+	 *
+	 * @param value
+	 *            the value to weigh, never <code>null</code>
+	 * @return the weight of the value, must not be negative
+	 */
+	long weigh(V value);
+}
@@ -16,20 +16,21 @@
  */
 package org.openehealth.coala.converter;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
 import java.util.Date;
 
 import org.openehealth.coala.domain.CoalaAuthor;
+import org.openehealth.coala.domain.ConsentDocumentReference;
 import org.openehealth.coala.domain.Patient;
 import org.openehealth.coala.domain.PatientConsent;
 import org.openehealth.coala.domain.PatientConsentPolicy;
+import org.openehealth.coala.interfacing.CdaLoader;
 import org.openehealth.coala.util.PXSDateConverter;
 import org.openehealth.ipf.commons.ihe.xds.core.metadata.Author;
 import org.openehealth.ipf.commons.ihe.xds.core.metadata.AvailabilityStatus;
 import org.openehealth.ipf.commons.ihe.xds.core.metadata.DocumentEntry;
 import org.openehealth.ipf.commons.ihe.xds.core.metadata.Person;
 import org.openehealth.ipf.commons.ihe.xds.core.responses.RetrievedDocument;
+import org.slf4j.Logger;
 
 /**
  * This class handles domain conversion from XDS to Coala and back.
@@ -38,8 +39,17 @@ import org.openehealth.ipf.commons.ihe.xds.core.responses.RetrievedDocument;
  */
 public class ConsentConverter {
 
+	private static final Logger LOG = org.slf4j.LoggerFactory
+			.getLogger(ConsentConverter.class);
+
+	/** default maximum size (bytes) of a retrieved consent document */
+	public static final int DEFAULT_MAX_DOCUMENT_SIZE = 10485760;
+
 	private PXSDateConverter pxsDateConverter;
 
+	private volatile DocumentContentReader documentReader = new DocumentContentReader(
+			DEFAULT_MAX_DOCUMENT_SIZE);
+
 	/**
 	 * Converts the given XDS-Data to a Patient Consent of the Coala Domain
 	 * 
@@ -53,6 +63,52 @@ public class ConsentConverter {
 	 */
 	public PatientConsent transformToCoalaConsent(DocumentEntry metadataEntry,
 			RetrievedDocument document, Patient patient) {
+		return createConsent(metadataEntry, patient, readCda(document), null);
+	}
+
+	/**
+	 * Converts the given XDS meta data to a Patient Consent of the Coala
+	 * Domain, whose CDA is loaded when it is needed for the first time.
+	 * 
+	 * @param metadataEntry
+	 *            The meta data entry retrieved by the ITI-18 request
+	 * @param patient
+	 *            the patient whom this consent belongs to
+	 * @param cdaLoader
+	 *            loads the CDA of the consent on demand
+	 * @return a PatientConsent with the corresponding data
+	 */
+	public PatientConsent transformToCoalaConsent(DocumentEntry metadataEntry,
+			Patient patient, CdaLoader cdaLoader) {
+		if (cdaLoader == null)
+			throw new IllegalArgumentException("cdaLoader cannot be null.");
+		return createConsent(metadataEntry, patient, null, cdaLoader);
+	}
+
+	/**
+	 * Reads the CDA of a retrieved consent document.
+	 * 
+	 * @param document
+	 *            The document, retrieved by the ITI-43 request
+	 * @return the CDA, an empty String if the document could not be read
+	 */
+	public String readCda(RetrievedDocument document) {
+		try {
+			return documentReader.read(document.getDataHandler());
+		} catch (Exception e) {
+			// consent will not contain a cda
+			LOG.warn("Could not read the CDA of a retrieved consent document: "
+					+ e.getMessage());
+			return "";
+		}
+	}
+
+	/*
+	 * Little helping method, converting the meta data and either the CDA or
+	 * a reference to the document into a consent.
+	 */
+	private PatientConsent createConsent(DocumentEntry metadataEntry,
+			Patient patient, String xml, CdaLoader cdaLoader) {
 
 		// test for Obsoleteness
 		boolean obsolete = false;
@@ -109,32 +165,19 @@ public class ConsentConverter {
 		String code = metadataEntry.getEventCodeList().get(0).getCode();
 		PatientConsentPolicy policy = PatientConsentPolicy.getPolicyType(code);
 
-		BufferedReader reader;
-		
-		String xml = "";
-		String buffer = null;
-
-		try {
-			// Try to read out the stream
-
-			// See if source can be established and has bytes
-			reader = new BufferedReader(new InputStreamReader(document
-					.getDataHandler().getInputStream()));
-
-			buffer = reader.readLine();
-			while (buffer != null) {
-				xml += buffer + "\n";
-				buffer = reader.readLine();
-			}
-		
-
-		} catch (Exception e) {
-			// consent will not contain a cda
-			xml = "";
+		PatientConsent consent;
+		if (cdaLoader == null) {
+			consent = new PatientConsent(validFromDate, validUntilDate, policy,
+					patient, obsolete, cAuthor, creationDate, xml);
+		} else {
+			ConsentDocumentReference reference = new ConsentDocumentReference(
+					metadataEntry.getUniqueId(),
+					metadataEntry.getRepositoryUniqueId(),
+					metadataEntry.getHomeCommunityId());
+			consent = new PatientConsent(validFromDate, validUntilDate, policy,
+					patient, obsolete, cAuthor, creationDate, reference,
+					cdaLoader);
 		}
-
-		PatientConsent consent = new PatientConsent(validFromDate, validUntilDate, policy,
-				patient, obsolete, cAuthor, creationDate, xml);
 		
 		if (invalid) consent.invalidate();
 		return consent;
@@ -145,6 +188,24 @@ public class ConsentConverter {
 		this.pxsDateConverter = pxsDateConverter;
 	}
 
+	/**
+	 * Sets the maximum size of a retrieved consent document. Larger documents
+	 * are not read, the resulting consent will not contain a CDA.
+	 * 
+	 * @param maxDocumentSize
+	 *            the maximum size in bytes, must be greater than 0
+	 */
+	public void setMaxDocumentSize(int maxDocumentSize) {
+		this.documentReader = new DocumentContentReader(maxDocumentSize);
+	}
+
+	/**
+	 * @return the maximum size of a retrieved consent document in bytes
+	 */
+	public int getMaxDocumentSize() {
+		return documentReader.getMaxDocumentSize();
+	}
+
 
 	/**
 	 * Creates a new CoalaAuthor
@@ -0,0 +1,231 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.converter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.Arrays;
+
+import javax.activation.DataHandler;
+
+/**
+ * Reads the content of a retrieved XML document into a String. The bytes are
+ * copied once into a buffer growing up to the maximum document size and then
+ * decoded in one go. The charset is taken from the content type, a byte order
+ * mark or the XML declaration, in that order, and defaults to UTF-8. The
+ * content is neither changed nor split into lines.
+ * <p>
+ * Instances are immutable and thread-safe.
+ */
+final class DocumentContentReader {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final int INITIAL_BUFFER_SIZE = 8192;
+
+	/** number of bytes searched for the encoding of the XML declaration */
+	private static final int DECLARATION_LENGTH = 256;
+
+	private final int maxDocumentSize;
+
+	/**
+	 * Creates a new reader for documents up to the given size.
+	 *
+	 * @param maxDocumentSize
+	 *            the maximum size of a document in bytes, must be greater
+	 *            than 0
+	 */
+	DocumentContentReader(int maxDocumentSize) {
+		if (maxDocumentSize < 1)
+			throw new IllegalArgumentException(
+					"maxDocumentSize must be greater than 0");
+		this.maxDocumentSize = maxDocumentSize;
+	}
+
+	/**
+	 * Reads and decodes the content of the given document. The stream of the
+	 * document is closed afterwards.
+	 *
+	 * @param dataHandler
+	 *            the data handler of the document
+	 * @return the content of the document
+	 * @throws IOException
+	 *             if the document can't be read or is larger than the
+	 *             maximum document size
+	 */
+	String read(DataHandler dataHandler) throws IOException {
+		if (dataHandler == null)
+			throw new IllegalArgumentException("dataHandler cannot be null");
+		InputStream stream = dataHandler.getInputStream();
+		byte[] bytes;
+		int length;
+		try {
+			bytes = new byte[initialBufferSize(stream)];
+			length = 0;
+			while (true) {
+				if (length == bytes.length) {
+					if (length > maxDocumentSize)
+						throw new IOException(
+								"Document exceeds the maximum size of "
+										+ maxDocumentSize + " bytes.");
+					// one byte more than allowed reveals oversized documents
+					bytes = Arrays.copyOf(bytes, (int) Math.min(
+							2L * length, maxDocumentSize + 1L));
+				}
+				int count = stream.read(bytes, length, bytes.length - length);
+				if (count < 0)
+					break;
+				length += count;
+			}
+		} finally {
+			stream.close();
+		}
+		return decode(bytes, length, dataHandler.getContentType());
+	}
+
+	/**
+	 * @return the maximum size of a document in bytes
+	 */
+	int getMaxDocumentSize() {
+		return maxDocumentSize;
+	}
+
+	/*
+	 * Little helping method, decoding the given bytes with the charset of the
+	 * content type, the byte order mark or the XML declaration.
+	 */
+	static String decode(byte[] bytes, int length, String contentType) {
+		Charset charset = charsetOf(contentType);
+		int offset = 0;
+		if (startsWith(bytes, length, 0xEF, 0xBB, 0xBF)) {
+			offset = 3;
+			if (charset == null)
+				charset = UTF_8;
+		} else if (charset == null && startsWith(bytes, length, 0xFE, 0xFF)) {
+			charset = Charset.forName("UTF-16BE");
+			offset = 2;
+		} else if (charset == null && startsWith(bytes, length, 0xFF, 0xFE)) {
+			charset = Charset.forName("UTF-16LE");
+			offset = 2;
+		}
+		if (charset == null)
+			charset = forName(declaredEncoding(bytes, length));
+		if (charset == null)
+			charset = UTF_8;
+		return new String(bytes, offset, length - offset, charset);
+	}
+
+	/*
+	 * Little helping method, returning the charset parameter of a content
+	 * type or null, if there is no supported one.
+	 */
+	private static Charset charsetOf(String contentType) {
+		if (contentType == null)
+			return null;
+		int index = contentType.toLowerCase().indexOf("charset=");
+		if (index < 0)
+			return null;
+		String name = contentType.substring(index + 8);
+		int end = name.indexOf(';');
+		if (end >= 0)
+			name = name.substring(0, end);
+		name = name.trim();
+		if (name.length() > 1 && name.charAt(0) == '"')
+			name = name.substring(1, name.length() - 1);
+		return forName(name);
+	}
+
+	/*
+	 * Little helping method, returning the encoding of the XML declaration at
+	 * the start of an ASCII compatible document or null, if there is none.
+	 */
+	private static String declaredEncoding(byte[] bytes, int length) {
+		int end = Math.min(length, DECLARATION_LENGTH);
+		int start = 0;
+		while (start < end && bytes[start] != '<')
+			start++;
+		if (start + 5 > end || bytes[start + 1] != '?'
+				|| bytes[start + 2] != 'x' || bytes[start + 3] != 'm'
+				|| bytes[start + 4] != 'l')
+			return null;
+		int declarationEnd = start;
+		while (declarationEnd < end && bytes[declarationEnd] != '>')
+			declarationEnd++;
+		String declaration = new String(bytes, start, declarationEnd - start,
+				UTF_8);
+		int index = declaration.indexOf("encoding");
+		if (index < 0)
+			return null;
+		index = declaration.indexOf('=', index);
+		if (index < 0)
+			return null;
+		index++;
+		while (index < declaration.length()
+				&& Character.isWhitespace(declaration.charAt(index)))
+			index++;
+		if (index >= declaration.length())
+			return null;
+		char quote = declaration.charAt(index);
+		int quoteEnd = declaration.indexOf(quote, index + 1);
+		if ((quote != '"' && quote != '\'') || quoteEnd < 0)
+			return null;
+		return declaration.substring(index + 1, quoteEnd);
+	}
+
+	/*
+	 * Little helping method, returning the charset with the given name or
+	 * null, if it is not supported.
+	 */
+	private static Charset forName(String name) {
+		if (name == null || name.length() == 0)
+			return null;
+		try {
+			return Charset.forName(name);
+		} catch (IllegalCharsetNameException e) {
+			return null;
+		} catch (UnsupportedCharsetException e) {
+			return null;
+		}
+	}
+
+	/*
+	 * Little helping method, checking whether the bytes start with the given
+	 * unsigned values.
+	 */
+	private static boolean startsWith(byte[] bytes, int length, int... prefix) {
+		if (length < prefix.length)
+			return false;
+		for (int i = 0; i < prefix.length; i++) {
+			if ((bytes[i] & 0xFF) != prefix[i])
+				return false;
+		}
+		return true;
+	}
+
+	/*
+	 * Little helping method, guessing the size of the document from the bytes
+	 * available without blocking.
+	 */
+	private int initialBufferSize(InputStream stream) throws IOException {
+		int available = stream.available();
+		int size = available > 0 ? available + 1 : INITIAL_BUFFER_SIZE;
+		return Math.max(1, Math.min(size, maxDocumentSize + 1));
+	}
+}
@@ -0,0 +1,308 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.converter;
+
+/**
+ * Single pass cursor over the segments of an ER7 encoded HL7 v2 message. The
+ * delimiters are taken from the MSH segment, if the message starts with one.
+ * The cursor only remembers positions within the message, Strings are
+ * created only for the values actually read. Only the first repetition of a
+ * field is considered. Escape sequences for the delimiters are resolved.
+ * <p>
+ * Instances are not thread-safe.
+ */
+final class HL7SegmentCursor {
+
+	private final CharSequence message;
+	private final int length;
+
+	private char fieldSeparator = '|';
+	private char componentSeparator = '^';
+	private char repetitionSeparator = '~';
+	private char escapeCharacter = '\\';
+	private char subComponentSeparator = '&';
+
+	/** bounds of the current segment, -1 before the first one was found */
+	private int segmentStart = -1;
+	private int segmentEnd = -1;
+
+	/** bounds of the value located last */
+	private int start;
+	private int end;
+
+	/**
+	 * Creates a new cursor positioned before the first segment of the given
+	 * message.
+	 *
+	 * @param message
+	 *            the HL7 message, must not be <code>null</code>
+	 */
+	HL7SegmentCursor(CharSequence message) {
+		if (message == null)
+			throw new IllegalArgumentException("message cannot be null");
+		this.message = message;
+		this.length = message.length();
+		readDelimiters();
+	}
+
+	/**
+	 * Moves the cursor to the next segment with the given name.
+	 *
+	 * @param segmentName
+	 *            the name of the segment, e.g. PID
+	 * @return true, if a segment was found, false if the end of the message
+	 *         has been reached
+	 */
+	boolean nextSegment(String segmentName) {
+		int pos = segmentEnd + 1;
+		while (pos < length) {
+			int eol = endOfSegment(pos);
+			if (isSegment(pos, eol, segmentName)) {
+				segmentStart = pos;
+				segmentEnd = eol;
+				return true;
+			}
+			pos = eol + 1;
+		}
+		segmentStart = length;
+		segmentEnd = length;
+		return false;
+	}
+
+	/**
+	 * Returns the first repetition of a field of the current segment.
+	 *
+	 * @param field
+	 *            the number of the field, as in PID-3
+	 * @return the value of the field, an empty String if it is not present
+	 */
+	String field(int field) {
+		locate(field);
+		return value();
+	}
+
+	/**
+	 * Returns a component of the first repetition of a field of the current
+	 * segment.
+	 *
+	 * @param field
+	 *            the number of the field, as in PID-3
+	 * @param component
+	 *            the zero based index of the component
+	 * @return the value of the component, an empty String if it is not
+	 *         present
+	 */
+	String component(int field, int component) {
+		locate(field);
+		narrow(componentSeparator, component);
+		return value();
+	}
+
+	/**
+	 * Returns a sub-component of the first repetition of a field of the
+	 * current segment.
+	 *
+	 * @param field
+	 *            the number of the field, as in PID-3
+	 * @param component
+	 *            the zero based index of the component
+	 * @param subComponent
+	 *            the zero based index of the sub-component
+	 * @return the value of the sub-component, an empty String if it is not
+	 *         present
+	 */
+	String subComponent(int field, int component, int subComponent) {
+		locate(field);
+		narrow(componentSeparator, component);
+		narrow(subComponentSeparator, subComponent);
+		return value();
+	}
+
+	/**
+	 * Returns the components of the first repetition of a field of the
+	 * current segment. Like {@link String#split(String)}, trailing empty
+	 * components are not part of the result.
+	 *
+	 * @param field
+	 *            the number of the field, as in PID-3
+	 * @param maxComponents
+	 *            the maximum number of components to return
+	 * @return the components of the field, at most
+	 *         <code>maxComponents</code>
+	 */
+	String[] components(int field, int maxComponents) {
+		locate(field);
+		int fieldStart = start;
+		int fieldEnd = end;
+		String[] components = new String[maxComponents];
+		int count = 0;
+		for (int i = 0; i < maxComponents && fieldStart <= fieldEnd; i++) {
+			int componentEnd = indexOf(componentSeparator, fieldStart, fieldEnd);
+			if (componentEnd > fieldStart)
+				count = i + 1;
+			start = fieldStart;
+			end = componentEnd;
+			components[i] = value();
+			fieldStart = componentEnd + 1;
+		}
+		String[] result = new String[count];
+		System.arraycopy(components, 0, result, 0, count);
+		return result;
+	}
+
+	/*
+	 * Little helping method, reading the delimiters from MSH-1 and MSH-2.
+	 */
+	private void readDelimiters() {
+		if (length < 4 || message.charAt(0) != 'M' || message.charAt(1) != 'S'
+				|| message.charAt(2) != 'H')
+			return;
+		fieldSeparator = message.charAt(3);
+		int eol = endOfSegment(0);
+		int encodingEnd = indexOf(fieldSeparator, 4, eol);
+		if (encodingEnd > 4)
+			componentSeparator = message.charAt(4);
+		if (encodingEnd > 5)
+			repetitionSeparator = message.charAt(5);
+		if (encodingEnd > 6)
+			escapeCharacter = message.charAt(6);
+		if (encodingEnd > 7)
+			subComponentSeparator = message.charAt(7);
+	}
+
+	/*
+	 * Little helping method, locating the first repetition of a field of the
+	 * current segment.
+	 */
+	private void locate(int field) {
+		if (segmentStart < 0 || segmentStart >= length)
+			throw new IllegalStateException(
+					"The cursor is not positioned on a segment.");
+		start = segmentStart;
+		end = segmentEnd;
+		narrow(fieldSeparator, field);
+		end = indexOf(repetitionSeparator, start, end);
+	}
+
+	/*
+	 * Little helping method, narrowing the located value to its part with the
+	 * given index.
+	 */
+	private void narrow(char separator, int index) {
+		int pos = start;
+		for (int i = 0; i < index; i++) {
+			pos = indexOf(separator, pos, end);
+			if (pos == end) {
+				start = end;
+				return;
+			}
+			pos++;
+		}
+		start = pos;
+		end = indexOf(separator, pos, end);
+	}
+
+	/*
+	 * Little helping method, creating the String for the located value.
+	 */
+	private String value() {
+		if (indexOf(escapeCharacter, start, end) == end)
+			return message.subSequence(start, end).toString();
+		StringBuilder builder = new StringBuilder(end - start);
+		int pos = start;
+		while (pos < end) {
+			char c = message.charAt(pos);
+			int escapeEnd = c == escapeCharacter ? indexOf(escapeCharacter,
+					pos + 1, end) : end;
+			if (c == escapeCharacter && escapeEnd == pos + 2) {
+				char replacement = unescape(message.charAt(pos + 1));
+				if (replacement != 0) {
+					builder.append(replacement);
+					pos = escapeEnd + 1;
+					continue;
+				}
+			}
+			builder.append(c);
+			pos++;
+		}
+		return builder.toString();
+	}
+
+	/*
+	 * Little helping method, returning the delimiter an escape sequence
+	 * stands for or 0, if it is no delimiter escape sequence.
+	 */
+	private char unescape(char code) {
+		switch (code) {
+		case 'F':
+			return fieldSeparator;
+		case 'S':
+			return componentSeparator;
+		case 'T':
+			return subComponentSeparator;
+		case 'R':
+			return repetitionSeparator;
+		case 'E':
+			return escapeCharacter;
+		default:
+			return 0;
+		}
+	}
+
+	/*
+	 * Little helping method, returning the end of the segment starting at
+	 * pos. Segments are terminated by carriage returns, line feeds are
+	 * tolerated as well.
+	 */
+	private int endOfSegment(int pos) {
+		while (pos < length) {
+			char c = message.charAt(pos);
+			if (c == '\r' || c == '\n')
+				return pos;
+			pos++;
+		}
+		return length;
+	}
+
+	/*
+	 * Little helping method, checking whether the segment between pos and eol
+	 * has the given name.
+	 */
+	private boolean isSegment(int pos, int eol, String segmentName) {
+		int nameLength = segmentName.length();
+		if (eol - pos < nameLength)
+			return false;
+		for (int i = 0; i < nameLength; i++) {
+			if (message.charAt(pos + i) != segmentName.charAt(i))
+				return false;
+		}
+		return eol - pos == nameLength
+				|| message.charAt(pos + nameLength) == fieldSeparator;
+	}
+
+	/*
+	 * Little helping method, returning the index of c between from and to or
+	 * to, if it does not occur.
+	 */
+	private int indexOf(char c, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (message.charAt(i) == c)
+				return i;
+		}
+		return to;
+	}
+}
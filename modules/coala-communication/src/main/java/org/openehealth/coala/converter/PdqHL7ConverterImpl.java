@@ -62,77 +62,17 @@ public class PdqHL7ConverterImpl extends PXSDateConverterImpl implements PdqHL7C
 	@Override
 	public List<Patient> convertPdqToPatients(String hl7message) {
 
-		LOG.info("Converting a HL7 PDQ-22 response: \n" + hl7message);
+		if (LOG.isDebugEnabled())
+			LOG.debug("Converting a HL7 PDQ-22 response: \n" + hl7message);
 
 		List<Patient> patients = new ArrayList<Patient>();
 		if (hl7message != null) {
-
-			String[] hl7msgs = hl7message.split("\\|");
-			for (int i = 0; hl7msgs.length > i; i++) {
-				if (isNewPatientSegment(hl7msgs, i)) {
-
-					// PID and Assigning Authority
-					String[] pidComplete = hl7msgs[i + 3].split("\\^");
-					String pid = pidComplete[0];
-					String[] pidAssigningAuthorityUniversalIds = pidComplete[3]
-							.split("&");
-					String pidAssigningAuthorityUniversalId = pidAssigningAuthorityUniversalIds[1];
-
-					// LastName and GivenName
-					String[] patientName = hl7msgs[i + 5].split("\\^");
-					String lastName = patientName[1];
-					String givenName = patientName[0];
-
-					// Date of Birth
-					String dateOfBirth = hl7msgs[i + 7];
-					Date dateDOB = stringToDate(dateOfBirth);
-
-					// Sex
-					String sex = hl7msgs[i + 8];
-
-					// Address
-					String adress = hl7msgs[i + 11];
-					PatientAddress anAddress = new PatientAddress();
-					String[] addressElements = adress.split("\\^");
-					if (addressElements.length > 0)
-						anAddress.setStreetAddress(addressElements[0]);
-					if (addressElements.length > 1)
-						anAddress.setOtherDesignation(addressElements[1]);
-					if (addressElements.length > 2)
-						anAddress.setCity(addressElements[2]);
-					if (addressElements.length > 3)
-						anAddress.setStateOrProvince(addressElements[3]);
-					if (addressElements.length > 4)
-						anAddress.setZipOrPostalCode(addressElements[4]);
-					if (addressElements.length > 5)
-						anAddress.setCountry(addressElements[5]);
-					if (addressElements.length > 6)
-						anAddress.setAddressType(addressElements[6]);
-					if (addressElements.length > 7)
-						anAddress
-								.setOtherGeographicDesignation(addressElements[7]);
-					if (addressElements.length > 8)
-						anAddress.setCountryCode(addressElements[8]);
-					if (addressElements.length > 9)
-						anAddress.setCensusTract(addressElements[9]);
-					if (addressElements.length > 10)
-						anAddress
-								.setAddressRepresentationCode(addressElements[10]);
-					if (addressElements.length > 11)
-						anAddress.setAddressValidityRange(addressElements[11]);
-					if (addressElements.length > 12)
-						anAddress.setEffectiveDate(addressElements[12]);
-					if (addressElements.length > 13)
-						anAddress.setExpirationDate(addressElements[13]);
-
-					// new Patient
-					Patient aPatient = new Patient(pid,
-							pidAssigningAuthorityUniversalId, lastName,
-							givenName, dateDOB, Gender.fromString(sex), anAddress);
-
+			HL7SegmentCursor cursor = new HL7SegmentCursor(hl7message);
+			while (cursor.nextSegment("PID")) {
+				Patient aPatient = convertPidSegment(cursor);
+				if (LOG.isDebugEnabled())
 					LOG.debug(aPatient.toString());
-					patients.add(aPatient);
-				}
+				patients.add(aPatient);
 			}
 		} else {
 			LOG.warn("Received NULL as value for 'hl7message' param. Bad things are happening!");
@@ -144,19 +84,61 @@ public class PdqHL7ConverterImpl extends PXSDateConverterImpl implements PdqHL7C
 	}
 
 	/**
-	 * Checks if it's a patient segment (PID).
+	 * Converts the PID segment the cursor is positioned on into a patient.
 	 * 
-	 * @param hl7msgs
-	 *            the hl7 message
-	 * @param i
-	 *            the position
-	 * @return true, if it's a patient segment (PID), else return false.
+	 * @param cursor
+	 *            the cursor positioned on a PID segment
+	 * @return the patient described by the PID segment
 	 */
-	private boolean isNewPatientSegment(String[] hl7msgs, int i) {
-		// \r because a PID seqment has to start in a new line.
-		if (hl7msgs[i].contains("\rPID") && (hl7msgs.length >= i + 5))
-			return true;
-		return false;
+	private Patient convertPidSegment(HL7SegmentCursor cursor) {
+		// PID and Assigning Authority (PID-3.1 and PID-3.4.2)
+		String pid = cursor.component(3, 0);
+		String pidAssigningAuthorityUniversalId = cursor.subComponent(3, 3, 1);
+
+		// family name and given name (PID-5.1 and PID-5.2)
+		String familyName = cursor.component(5, 0);
+		String givenName = cursor.component(5, 1);
+
+		// Date of Birth
+		Date dateDOB = stringToDate(cursor.field(7));
+
+		// Sex
+		String sex = cursor.field(8);
+
+		// Address
+		PatientAddress anAddress = new PatientAddress();
+		String[] addressElements = cursor.components(11, 14);
+		if (addressElements.length > 0)
+			anAddress.setStreetAddress(addressElements[0]);
+		if (addressElements.length > 1)
+			anAddress.setOtherDesignation(addressElements[1]);
+		if (addressElements.length > 2)
+			anAddress.setCity(addressElements[2]);
+		if (addressElements.length > 3)
+			anAddress.setStateOrProvince(addressElements[3]);
+		if (addressElements.length > 4)
+			anAddress.setZipOrPostalCode(addressElements[4]);
+		if (addressElements.length > 5)
+			anAddress.setCountry(addressElements[5]);
+		if (addressElements.length > 6)
+			anAddress.setAddressType(addressElements[6]);
+		if (addressElements.length > 7)
+			anAddress.setOtherGeographicDesignation(addressElements[7]);
+		if (addressElements.length > 8)
+			anAddress.setCountryCode(addressElements[8]);
+		if (addressElements.length > 9)
+			anAddress.setCensusTract(addressElements[9]);
+		if (addressElements.length > 10)
+			anAddress.setAddressRepresentationCode(addressElements[10]);
+		if (addressElements.length > 11)
+			anAddress.setAddressValidityRange(addressElements[11]);
+		if (addressElements.length > 12)
+			anAddress.setEffectiveDate(addressElements[12]);
+		if (addressElements.length > 13)
+			anAddress.setExpirationDate(addressElements[13]);
+
+		return new Patient(pid, pidAssigningAuthorityUniversalId, givenName,
+				familyName, dateDOB, Gender.fromString(sex), anAddress);
 	}
 
 	/* (non-Javadoc)
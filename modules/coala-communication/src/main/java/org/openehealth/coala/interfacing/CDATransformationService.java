@@ -16,8 +16,12 @@
  */
 package org.openehealth.coala.interfacing;
 
+import java.io.InputStream;
+import java.io.Writer;
 import java.util.Date;
 
+import javax.activation.DataSource;
+
 import javax.xml.transform.TransformerException;
 
 import org.openehealth.coala.domain.CoalaAuthor;
@@ -74,6 +78,27 @@ public interface CDATransformationService {
 	String transformToHTML(String cdaDocumentContent)
 			throws CdaXmlTransformerException;
 
+	/**
+	 * Transforms a CDA document read from a stream, e.g. the DataHandler of a
+	 * retrieved document, into a pretty and well formed HTML output, which is
+	 * written while it is produced. Neither the CDA document nor the HTML
+	 * output is held in memory as a whole.
+	 * <p>
+	 * Note well: NO HTML/HEAD/BODY html tags are written, only tags like
+	 * P/B/H1/H2...
+	 * 
+	 * @param cdaDocument
+	 *            A stream delivering a well formed xml CDA document. It is not
+	 *            closed.
+	 * @param html
+	 *            The writer receiving the html result for the BPPC
+	 *            acknowledgment information. It is not closed.
+	 * @throws CdaXmlTransformerException
+	 *             Thrown when transformer was not able to process.
+	 */
+	void transformToHTML(InputStream cdaDocument, Writer html)
+			throws CdaXmlTransformerException;
+
 	/**
 	 * Transforms CDA relevant (meta) data into a pretty and well formed HTML
 	 * output.
@@ -131,4 +156,29 @@ public interface CDATransformationService {
 			PatientConsentPolicy policy, CoalaAuthor cauthor,
 			DocumentEntry documentEntry);
 
+	/**
+	 * Creates a new consent CDA like
+	 * {@link #transformToValidPatientConsent(Patient, PatientConsentPolicy, CoalaAuthor, DocumentEntry)}
+	 * , but delivers it UTF-8 encoded as re-readable {@link DataSource}, ready
+	 * to be sent as MTOM attachment. No String of the whole CDA is created.
+	 * 
+	 * @param p
+	 *            The {@link Patient} instance for which the new consent shall
+	 *            be created. Must not be null.
+	 * @param policy
+	 *            One out of five values for {@link PatientConsentPolicy}.
+	 * @param cauthor
+	 *            A {@link CoalaAuthor} instance for informations about the
+	 *            CDA's author.
+	 * @param documentEntry
+	 *            A {@link DocumentEntry} instance for further information, like
+	 *            creation date and author.
+	 * @return the data source delivering the consent CDA
+	 * @throws IllegalArgumentException
+	 *             Thrown if parameters were invalid
+	 */
+	DataSource createValidPatientConsentDataSource(Patient p,
+			PatientConsentPolicy policy, CoalaAuthor cauthor,
+			DocumentEntry documentEntry);
+
 }
@@ -16,19 +16,31 @@
  */
 package org.openehealth.coala.service;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Date;
 
+import javax.activation.DataSource;
+
 import org.openehealth.coala.builder.CDABuilder;
 import org.openehealth.coala.builder.DocumentEntryBuilder;
+import org.openehealth.coala.cache.ExpiringLruCache;
+import org.openehealth.coala.cache.Weigher;
 import org.openehealth.coala.domain.CoalaAuthor;
 import org.openehealth.coala.domain.Patient;
+import org.openehealth.coala.domain.PatientAddress;
 import org.openehealth.coala.domain.PatientConsent;
 import org.openehealth.coala.domain.PatientConsentPolicy;
+import org.openehealth.coala.exception.CDACreationException;
 import org.openehealth.coala.exception.CdaXmlTransformerException;
 import org.openehealth.coala.exception.XslTransformerException;
 import org.openehealth.coala.interfacing.CDATransformationService;
 import org.openehealth.coala.transformer.XmlTransformer;
+import org.openehealth.coala.util.CdaDataSourceImpl;
 import org.openehealth.ipf.commons.ihe.xds.core.metadata.DocumentEntry;
 
 /**
@@ -39,9 +51,31 @@ import org.openehealth.ipf.commons.ihe.xds.core.metadata.DocumentEntry;
  */
 public class CDATransformationServiceImpl implements CDATransformationService {
 
-	private XmlTransformer xmlTransformer;
+	/** default number of rendered consents kept in the HTML cache */
+	public static final int DEFAULT_HTML_CACHE_SIZE = 200;
+	/** default time (ms) a rendered consent is kept in the HTML cache */
+	public static final long DEFAULT_HTML_CACHE_TIME_TO_LIVE = 1800000L;
+	/** default memory budget (bytes) of the HTML cache */
+	public static final long DEFAULT_HTML_CACHE_MAX_BYTES = 4194304L;
+
+	/** approximates the memory used by a cached HTML fragment in bytes */
+	private static final Weigher<String> HTML_WEIGHER = new Weigher<String>() {
+		public long weigh(String html) {
+			return 2L * html.length();
+		}
+	};
+
+	private volatile XmlTransformer xmlTransformer;
+
+	/** rendered HTML by hash of the consent identity */
+	private volatile ExpiringLruCache<String, String> htmlCache = new ExpiringLruCache<String, String>(
+			DEFAULT_HTML_CACHE_SIZE, DEFAULT_HTML_CACHE_TIME_TO_LIVE,
+			DEFAULT_HTML_CACHE_MAX_BYTES, HTML_WEIGHER);
 	private CDABuilder cdaBuilder;
 
+	/** maximum number of idle XSL transformers kept for reuse */
+	private int transformerPoolSize = XmlTransformer.DEFAULT_POOL_SIZE;
+
 	public void setCdaBuilder(CDABuilder cdaBuilder) {
 		this.cdaBuilder = cdaBuilder;
 	}
@@ -83,6 +117,19 @@ public class CDATransformationServiceImpl implements CDATransformationService {
 		return xmlTransformer.transformXmlIntoHtml(cdaDocumentContent);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.openehealth.coala.interfacing.CDATransformationService#transformToHTML(
+	 * java.io.InputStream, java.io.Writer)
+	 */
+	@Override
+	public void transformToHTML(InputStream cdaDocument, Writer html)
+			throws CdaXmlTransformerException {
+		xmlTransformer.transformXmlIntoHtml(cdaDocument, html);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -98,13 +145,86 @@ public class CDATransformationServiceImpl implements CDATransformationService {
 			Date validUntil, PatientConsentPolicy policy, CoalaAuthor cauthor)
 			throws CdaXmlTransformerException {
 
+		String cacheKey = createHtmlCacheKey(patient, validFrom, validUntil,
+				policy, cauthor);
+		String html = cacheKey == null ? null : htmlCache.get(cacheKey);
+		if (html != null)
+			return html;
+
 		DocumentEntry documentEntry = documentEntryBuilder.createDocumentEntry(
 				cauthor, patient, policy, validFrom, validUntil);
 
 		String cda = transformToValidPatientConsent(patient, policy, cauthor,
 				documentEntry);
 
-		return xmlTransformer.transformXmlIntoHtml(cda);
+		html = xmlTransformer.transformXmlIntoHtml(cda);
+		if (cacheKey != null)
+			htmlCache.put(cacheKey, html);
+		return html;
+	}
+
+	/**
+	 * Creates the key of a rendered consent in the HTML cache. It is the SHA-1
+	 * hash of everything the rendered consent depends on, so equal consents
+	 * share one entry no matter which objects describe them. Returns
+	 * <code>null</code> if a parameter is missing, such requests are left to
+	 * the builders to reject.
+	 */
+	private String createHtmlCacheKey(Patient patient, Date validFrom,
+			Date validUntil, PatientConsentPolicy policy, CoalaAuthor cauthor) {
+		if (patient == null || validFrom == null || validUntil == null
+				|| policy == null || cauthor == null)
+			return null;
+		StringBuilder identity = new StringBuilder();
+		identity.append(patient.getPatientID()).append('\n');
+		identity.append(patient.getPatientIDAssigningAuthorityUniversalId())
+				.append('\n');
+		identity.append(patient.getGivenName()).append('\n');
+		identity.append(patient.getLastName()).append('\n');
+		if (patient.getBirthdate() != null)
+			identity.append(patient.getBirthdate().getTime());
+		identity.append('\n');
+		identity.append(patient.getSex()).append('\n');
+		PatientAddress address = patient.getAddress();
+		if (address != null) {
+			identity.append(address.getStreetAddress()).append('\n');
+			identity.append(address.getOtherDesignation()).append('\n');
+			identity.append(address.getCity()).append('\n');
+			identity.append(address.getStateOrProvince()).append('\n');
+			identity.append(address.getZipOrPostalCode()).append('\n');
+			identity.append(address.getCountry()).append('\n');
+			identity.append(address.getAddressType()).append('\n');
+			identity.append(address.getOtherGeographicDesignation()).append(
+					'\n');
+			identity.append(address.getCountryCode()).append('\n');
+			identity.append(address.getCensusTract()).append('\n');
+			identity.append(address.getAddressRepresentationCode()).append(
+					'\n');
+			identity.append(address.getAddressValidityRange()).append('\n');
+			identity.append(address.getEffectiveDate()).append('\n');
+			identity.append(address.getExpirationDate());
+		}
+		identity.append('\n');
+		identity.append(validFrom.getTime()).append('\n');
+		identity.append(validUntil.getTime()).append('\n');
+		identity.append(policy.name()).append('\n');
+		identity.append(cauthor.getTitle()).append('\n');
+		identity.append(cauthor.getGivenName()).append('\n');
+		identity.append(cauthor.getFamilyName());
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			byte[] hash = digest.digest(identity.toString().getBytes("UTF-8"));
+			StringBuilder key = new StringBuilder(hash.length * 2);
+			for (byte b : hash) {
+				key.append(Character.forDigit((b >> 4) & 0xf, 16));
+				key.append(Character.forDigit(b & 0xf, 16));
+			}
+			return key.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 is not supported.", e);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException("UTF-8 is not supported.", e);
+		}
 	}
 
 	/*
@@ -124,6 +244,31 @@ public class CDATransformationServiceImpl implements CDATransformationService {
 		return cdaBuilder.createConsentCDA(p, policy, documentEntry);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.openehealth.coala.interfacing.CDATransformationService#
+	 * createValidPatientConsentDataSource(org.openehealth.coala.domain.Patient,
+	 * org.openehealth.coala.domain.PatientConsentPolicy,
+	 * org.openehealth.coala.domain.CoalaAuthor,
+	 * org.openehealth.ipf.commons.ihe.xds.core.metadata.DocumentEntry)
+	 */
+	@Override
+	public DataSource createValidPatientConsentDataSource(final Patient p,
+			final PatientConsentPolicy policy, CoalaAuthor cauthor,
+			final DocumentEntry documentEntry) {
+		try {
+			return CdaDataSourceImpl.render(new CdaDataSourceImpl.Renderer() {
+				@Override
+				public void render(Writer writer) {
+					cdaBuilder.writeConsentCDA(p, policy, documentEntry, writer);
+				}
+			});
+		} catch (IOException e) {
+			throw new CDACreationException(e.getLocalizedMessage(), e);
+		}
+	}
+
 	/*
 	 * Ensures correct state of CDATransformationService instance...
 	 */
@@ -131,7 +276,7 @@ public class CDATransformationServiceImpl implements CDATransformationService {
 			XslTransformerException {
 		InputStream xsltStream = Thread.currentThread().getContextClassLoader()
 				.getResourceAsStream(nameOfXSLTSheet);
-		xmlTransformer = new XmlTransformer(xsltStream);
+		xmlTransformer = new XmlTransformer(xsltStream, transformerPoolSize);
 	}
 
 	/*
@@ -159,4 +304,88 @@ public class CDATransformationServiceImpl implements CDATransformationService {
 		return nameOfXSLTSheet;
 	}
 
+	/**
+	 * Sets the maximum number of idle XSL transformers kept for reuse. If the
+	 * XSL sheet has been loaded already, it is compiled again with the new pool
+	 * size.
+	 * 
+	 * @param transformerPoolSize
+	 *            the maximum number of idle transformers, must be greater than
+	 *            0
+	 */
+	public void setTransformerPoolSize(int transformerPoolSize) {
+		if (transformerPoolSize < 1)
+			throw new IllegalArgumentException(
+					"transformerPoolSize must be greater than 0.");
+		this.transformerPoolSize = transformerPoolSize;
+		if (xmlTransformer != null)
+			setNameOfXSLTSheet(nameOfXSLTSheet);
+	}
+
+	/**
+	 * @return the maximum number of idle XSL transformers kept for reuse
+	 */
+	public int getTransformerPoolSize() {
+		return transformerPoolSize;
+	}
+
+	/**
+	 * Replaces the HTML cache by an empty one with the given settings.
+	 * 
+	 * @param maxEntries
+	 *            the maximum number of rendered consents cached
+	 * @param timeToLive
+	 *            the time in milliseconds a rendered consent is cached
+	 * @param maxBytes
+	 *            the approximate memory budget of the cache in bytes
+	 */
+	public void configureHtmlCache(int maxEntries, long timeToLive,
+			long maxBytes) {
+		this.htmlCache = new ExpiringLruCache<String, String>(maxEntries,
+				timeToLive, maxBytes, HTML_WEIGHER);
+	}
+
+	/*
+	 * Needed for Spring injection
+	 */
+	public void setHtmlCacheSize(int htmlCacheSize) {
+		configureHtmlCache(htmlCacheSize, htmlCache.getTimeToLive(),
+				htmlCache.getMaxWeight());
+	}
+
+	/*
+	 * Needed for Spring injection
+	 */
+	public void setHtmlCacheTimeToLive(long htmlCacheTimeToLive) {
+		configureHtmlCache(htmlCache.getMaxEntries(), htmlCacheTimeToLive,
+				htmlCache.getMaxWeight());
+	}
+
+	/*
+	 * Needed for Spring injection
+	 */
+	public void setHtmlCacheMaxBytes(long htmlCacheMaxBytes) {
+		configureHtmlCache(htmlCache.getMaxEntries(),
+				htmlCache.getTimeToLive(), htmlCacheMaxBytes);
+	}
+
+	/**
+	 * Returns the cache of rendered consents, e.g. to read its statistics.
+	 * 
+	 * @return the cache of rendered consents
+	 */
+	public ExpiringLruCache<String, String> getHtmlCache() {
+		return htmlCache;
+	}
+
+	/**
+	 * Returns the transformer used for CDA to HTML conversions, e.g. to read
+	 * its reuse statistics.
+	 * 
+	 * @return the transformer used for CDA to HTML conversions
+	 */
+	public XmlTransformer getXmlTransformer() {
+		return xmlTransformer;
+	}
+
 }
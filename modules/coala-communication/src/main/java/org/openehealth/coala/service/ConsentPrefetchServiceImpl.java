@@ -0,0 +1,472 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.service;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openehealth.coala.cache.ExpiringLruCache;
+import org.openehealth.coala.domain.ConsentFetchMode;
+import org.openehealth.coala.domain.ConsentSortParameter;
+import org.openehealth.coala.domain.FindPatientConsentResult;
+import org.openehealth.coala.domain.Patient;
+import org.openehealth.coala.interfacing.ConsentCreationService;
+import org.openehealth.coala.interfacing.ConsentPrefetchService;
+import org.slf4j.Logger;
+
+/**
+ * Prefetches the consents of patients via the {@link ConsentCreationService}
+ * on a small, bounded pool of background threads. The pending results are
+ * parked in a short-lived {@link ExpiringLruCache}, keyed by patient ID and
+ * assigning authority. As prefetching is speculative, a prefetch is dropped
+ * instead of queued if the pool is busy, so it never delays the user's own
+ * requests.
+ * <p>
+ * Prefetches, hits, misses and wasted prefetches are counted for monitoring
+ * the hit rate. Instances are thread-safe once configured.
+ */
+public class ConsentPrefetchServiceImpl implements ConsentPrefetchService {
+
+	private static final Logger LOG = org.slf4j.LoggerFactory
+			.getLogger(ConsentPrefetchServiceImpl.class);
+
+	/** default maximum number of patients of a PDQ result to prefetch for */
+	public static final int DEFAULT_MAX_PATIENTS = 3;
+	/** default number of prefetches running concurrently */
+	public static final int DEFAULT_POOL_SIZE = 2;
+	/** default number of prefetches waiting for a free thread */
+	public static final int DEFAULT_QUEUE_SIZE = 16;
+	/** default number of prefetched results kept */
+	public static final int DEFAULT_CACHE_SIZE = 100;
+	/** default time in milliseconds a prefetched result is kept */
+	public static final long DEFAULT_CACHE_TIME_TO_LIVE = 60000L;
+	/** default time in milliseconds to wait for a running prefetch */
+	public static final long DEFAULT_TAKE_TIMEOUT = 30000L;
+
+	private ConsentCreationService consentCreationService;
+
+	private boolean enabled = true;
+	private int maxPatients = DEFAULT_MAX_PATIENTS;
+	private ConsentFetchMode fetchMode = ConsentFetchMode.METADATA_ONLY;
+	private long takeTimeout = DEFAULT_TAKE_TIMEOUT;
+
+	/*
+	 * Executor running the prefetches
+	 */
+	private ExecutorService executor;
+	private int poolSize = DEFAULT_POOL_SIZE;
+	private int queueSize = DEFAULT_QUEUE_SIZE;
+
+	/*
+	 * Pending and completed prefetches, keyed by patient ID and assigning
+	 * authority. Entries are removed as soon as they are taken.
+	 */
+	private volatile ExpiringLruCache<String, Future<FindPatientConsentResult>> prefetches = new ExpiringLruCache<String, Future<FindPatientConsentResult>>(
+			DEFAULT_CACHE_SIZE, DEFAULT_CACHE_TIME_TO_LIVE);
+
+	private final AtomicLong prefetchCount = new AtomicLong();
+	private final AtomicLong rejectedCount = new AtomicLong();
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong failureCount = new AtomicLong();
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.openehealth.coala.interfacing.ConsentPrefetchService#prefetchConsents
+	 * (java.util.List)
+	 */
+	@Override
+	public void prefetchConsents(List<Patient> patients) {
+		if (!enabled || patients == null || patients.isEmpty()
+				|| patients.size() > maxPatients)
+			return;
+		for (Patient patient : patients) {
+			prefetchConsents(patient);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.openehealth.coala.interfacing.ConsentPrefetchService#prefetchConsents
+	 * (org.openehealth.coala.domain.Patient)
+	 */
+	@Override
+	public void prefetchConsents(final Patient patient) {
+		if (!enabled || patient == null)
+			return;
+		String key = createPrefetchKey(patient);
+		ExpiringLruCache<String, Future<FindPatientConsentResult>> prefetches = this.prefetches;
+		synchronized (prefetches) {
+			if (prefetches.containsKey(key))
+				return;
+			Future<FindPatientConsentResult> prefetch;
+			try {
+				prefetch = getExecutor().submit(
+						new Callable<FindPatientConsentResult>() {
+							@Override
+							public FindPatientConsentResult call() {
+								return consentCreationService
+										.getPatientConsents(patient,
+												ConsentSortParameter
+														.getDefault(),
+												fetchMode);
+							}
+						});
+			} catch (RejectedExecutionException e) {
+				rejectedCount.incrementAndGet();
+				LOG.debug("Prefetch pool is busy, consents of patient "
+						+ patient.getPatientID() + " are not prefetched.");
+				return;
+			}
+			prefetches.put(key, prefetch);
+			prefetchCount.incrementAndGet();
+		}
+		LOG.debug("Prefetching consents of patient " + patient.getPatientID());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.openehealth.coala.interfacing.ConsentPrefetchService#
+	 * takePrefetchedConsents(org.openehealth.coala.domain.Patient,
+	 * org.openehealth.coala.domain.ConsentSortParameter)
+	 */
+	@Override
+	public FindPatientConsentResult takePrefetchedConsents(Patient patient,
+			ConsentSortParameter sortBy) {
+		if (patient == null)
+			throw new IllegalArgumentException("patient cannot be null.");
+		if (sortBy == null)
+			sortBy = ConsentSortParameter.getDefault();
+		if (!enabled)
+			return null;
+
+		String key = createPrefetchKey(patient);
+		ExpiringLruCache<String, Future<FindPatientConsentResult>> prefetches = this.prefetches;
+		Future<FindPatientConsentResult> prefetch;
+		synchronized (prefetches) {
+			prefetch = prefetches.get(key);
+			prefetches.remove(key);
+		}
+		if (prefetch == null) {
+			missCount.incrementAndGet();
+			return null;
+		}
+
+		FindPatientConsentResult result;
+		try {
+			result = prefetch.get(takeTimeout, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			prefetch.cancel(true);
+			failureCount.incrementAndGet();
+			return null;
+		} catch (ExecutionException e) {
+			LOG.warn("Prefetching consents of patient "
+					+ patient.getPatientID() + " failed: "
+					+ e.getCause().getMessage());
+			failureCount.incrementAndGet();
+			return null;
+		} catch (TimeoutException e) {
+			LOG.warn("Prefetching consents of patient "
+					+ patient.getPatientID() + " timed out after "
+					+ takeTimeout + " ms.");
+			prefetch.cancel(true);
+			failureCount.incrementAndGet();
+			return null;
+		}
+		hitCount.incrementAndGet();
+		if (result == null || result.getSortBy() == sortBy)
+			return result;
+		return result.resortBy(sortBy);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.openehealth.coala.interfacing.ConsentPrefetchService#
+	 * invalidatePrefetchedConsents(org.openehealth.coala.domain.Patient)
+	 */
+	@Override
+	public void invalidatePrefetchedConsents(Patient patient) {
+		if (patient == null)
+			throw new IllegalArgumentException("patient cannot be null.");
+		ExpiringLruCache<String, Future<FindPatientConsentResult>> prefetches = this.prefetches;
+		Future<FindPatientConsentResult> prefetch;
+		synchronized (prefetches) {
+			prefetch = prefetches.remove(createPrefetchKey(patient));
+		}
+		if (prefetch != null) {
+			prefetch.cancel(true);
+			LOG.debug("Dropped prefetched consents of patient "
+					+ patient.getPatientID());
+		}
+	}
+
+	/**
+	 * Returns the key a prefetch is parked with in the cache.
+	 * 
+	 * @param patient
+	 *            the patient the consents belong to
+	 * @return the prefetch key for the patient
+	 */
+	private String createPrefetchKey(Patient patient) {
+		return patient.getPatientID() + "^"
+				+ patient.getPatientIDAssigningAuthorityUniversalId();
+	}
+
+	/**
+	 * Returns the executor running the prefetches and creates it on first
+	 * use. If the pool and its queue are busy, new prefetches are rejected.
+	 * 
+	 * @return the executor used for prefetches
+	 */
+	private synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			ThreadPoolExecutor threadPool = new ThreadPoolExecutor(poolSize,
+					poolSize, 60L, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(queueSize),
+					new ServiceThreadFactory("coala-prefetch-"),
+					new ThreadPoolExecutor.AbortPolicy());
+			threadPool.allowCoreThreadTimeOut(true);
+			executor = threadPool;
+		}
+		return executor;
+	}
+
+	/**
+	 * Stops the executor running the prefetches and drops all prefetched
+	 * results. Called by Spring on context shutdown.
+	 */
+	public synchronized void shutdown() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+		prefetches.clear();
+	}
+
+	/**
+	 * Replaces the cache of prefetched results by a new, empty one with the
+	 * given bounds. Prefetches held by the old cache count as wasted.
+	 * 
+	 * @param maxEntries
+	 *            maximum number of prefetched results kept
+	 * @param timeToLive
+	 *            time in milliseconds a prefetched result is kept
+	 */
+	public void configureCache(int maxEntries, long timeToLive) {
+		this.prefetches = new ExpiringLruCache<String, Future<FindPatientConsentResult>>(
+				maxEntries, timeToLive);
+	}
+
+	/**
+	 * Sets the maximum number of prefetched results kept.
+	 * 
+	 * @param cacheSize
+	 *            number of results, must be greater than 0
+	 */
+	public void setCacheSize(int cacheSize) {
+		configureCache(cacheSize, prefetches.getTimeToLive());
+	}
+
+	/**
+	 * Sets the time in milliseconds a prefetched result is kept before it is
+	 * considered outdated.
+	 * 
+	 * @param cacheTimeToLive
+	 *            time in milliseconds, must be greater than 0
+	 */
+	public void setCacheTimeToLive(long cacheTimeToLive) {
+		configureCache(prefetches.getMaxEntries(), cacheTimeToLive);
+	}
+
+	/**
+	 * Sets the number of prefetches running concurrently.
+	 * 
+	 * @param poolSize
+	 *            number of threads, must be greater than 0
+	 */
+	public synchronized void setPoolSize(int poolSize) {
+		if (poolSize < 1)
+			throw new IllegalArgumentException(
+					"poolSize must be greater than 0.");
+		this.poolSize = poolSize;
+		restartExecutor();
+	}
+
+	/**
+	 * Sets the number of prefetches waiting for a free thread. Further
+	 * prefetches are dropped.
+	 * 
+	 * @param queueSize
+	 *            number of waiting prefetches, must be greater than 0
+	 */
+	public synchronized void setQueueSize(int queueSize) {
+		if (queueSize < 1)
+			throw new IllegalArgumentException(
+					"queueSize must be greater than 0.");
+		this.queueSize = queueSize;
+		restartExecutor();
+	}
+
+	/*
+	 * Little helping method, letting the current executor complete its
+	 * prefetches and creating a new one on next use.
+	 */
+	private synchronized void restartExecutor() {
+		if (executor != null) {
+			executor.shutdown();
+			executor = null;
+		}
+	}
+
+	/**
+	 * Sets the maximum number of patients of a PDQ result for which consents
+	 * are prefetched. Larger results are not prefetched at all, as a
+	 * selection of any single patient is unlikely.
+	 * 
+	 * @param maxPatients
+	 *            number of patients, must not be negative
+	 */
+	public void setMaxPatients(int maxPatients) {
+		if (maxPatients < 0)
+			throw new IllegalArgumentException(
+					"maxPatients must not be negative.");
+		this.maxPatients = maxPatients;
+	}
+
+	/**
+	 * Sets the time in milliseconds to wait for a prefetch which is still
+	 * running when its result is taken.
+	 * 
+	 * @param takeTimeout
+	 *            timeout in milliseconds, must be greater than 0
+	 */
+	public void setTakeTimeout(long takeTimeout) {
+		if (takeTimeout < 1)
+			throw new IllegalArgumentException(
+					"takeTimeout must be greater than 0.");
+		this.takeTimeout = takeTimeout;
+	}
+
+	/**
+	 * Sets how much of the consents is prefetched. Should match the mode the
+	 * consents are shown with, METADATA_ONLY by default.
+	 * 
+	 * @param fetchMode
+	 *            the fetch mode, must not be <code>null</code>
+	 */
+	public void setFetchMode(ConsentFetchMode fetchMode) {
+		if (fetchMode == null)
+			throw new IllegalArgumentException("fetchMode cannot be null.");
+		this.fetchMode = fetchMode;
+	}
+
+	/**
+	 * Enables or disables prefetching. While disabled, nothing is prefetched
+	 * and no prefetched results are handed out.
+	 * 
+	 * @param enabled
+	 *            true to prefetch consents
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setConsentCreationService(
+			ConsentCreationService consentCreationService) {
+		this.consentCreationService = consentCreationService;
+	}
+
+	/**
+	 * @return the number of prefetches started
+	 */
+	public long getPrefetchCount() {
+		return prefetchCount.get();
+	}
+
+	/**
+	 * @return the number of prefetches dropped because the pool was busy
+	 */
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	/**
+	 * @return the number of consent requests served by a prefetch
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * @return the number of consent requests without a prefetch
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * @return the number of prefetches which were taken, but failed or timed
+	 *         out
+	 */
+	public long getFailureCount() {
+		return failureCount.get();
+	}
+
+	/**
+	 * Returns the number of prefetches whose result was never used, because
+	 * they expired, were evicted, failed, were invalidated or were dropped on
+	 * reconfiguration.
+	 * Prefetches still held by the cache are not counted.
+	 * 
+	 * @return the number of wasted prefetches
+	 */
+	public long getWastedCount() {
+		return Math.max(0, prefetchCount.get() - hitCount.get()
+				- prefetches.size());
+	}
+
+	/**
+	 * Returns the share of consent requests served by a prefetch.
+	 * 
+	 * @return the hit rate between 0 and 1, 0 if nothing has been requested
+	 */
+	public double getHitRate() {
+		long hits = hitCount.get();
+		long requests = hits + missCount.get() + failureCount.get();
+		return requests == 0 ? 0d : (double) hits / requests;
+	}
+}
@@ -17,17 +17,32 @@
 package org.openehealth.coala.service;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.activation.DataHandler;
 
 import org.openehealth.coala.builder.DocumentEntryBuilder;
+import org.openehealth.coala.cache.ExpiringLruCache;
 import org.openehealth.coala.communication.PdqMessageBuilder;
 import org.openehealth.coala.converter.ConsentConverter;
 import org.openehealth.coala.converter.PdqHL7Converter;
 import org.openehealth.coala.converter.PdqHL7ConverterImpl;
 import org.openehealth.coala.domain.CoalaAuthor;
+import org.openehealth.coala.domain.ConsentFetchMode;
 import org.openehealth.coala.domain.ConsentSortParameter;
 import org.openehealth.coala.domain.FindPatientConsentResult;
 import org.openehealth.coala.domain.FindPatientQuery;
@@ -39,11 +54,15 @@ import org.openehealth.coala.domain.PatientSortParameter;
 import org.openehealth.coala.exception.PDQRequestFailedException;
 import org.openehealth.coala.exception.ServiceParameterException;
 import org.openehealth.coala.exception.XDSRequestFailedException;
+import org.openehealth.coala.interfacing.AsyncConsentCreationService;
+import org.openehealth.coala.interfacing.AsyncPatientService;
+import org.openehealth.coala.interfacing.AsyncResultListener;
 import org.openehealth.coala.interfacing.CDATransformationService;
+import org.openehealth.coala.interfacing.CdaLoader;
 import org.openehealth.coala.interfacing.ConsentCreationService;
+import org.openehealth.coala.interfacing.ConsentPrefetchService;
 import org.openehealth.coala.interfacing.PatientService;
 import org.openehealth.coala.pdq.PDQGate;
-import org.openehealth.coala.util.CdaDataSourceImpl;
 import org.openehealth.coala.xds.XDSGate;
 import org.openehealth.ipf.commons.ihe.xds.core.metadata.AvailabilityStatus;
 import org.openehealth.ipf.commons.ihe.xds.core.metadata.Document;
@@ -60,10 +79,32 @@ import org.slf4j.Logger;
  * @FIXME This class apparently does more than one thing. Its responsibility is not clearly defined.
  * 		Code smell! A refactoring is needed here.
  */
-public class PXSQueryServiceImpl implements PatientService, ConsentCreationService {
+public class PXSQueryServiceImpl implements PatientService, ConsentCreationService,
+		AsyncPatientService, AsyncConsentCreationService {
 	
 	private static final Logger LOG = org.slf4j.LoggerFactory
 		.getLogger(PXSQueryServiceImpl.class);
+
+	/** default number of concurrent ITI-43 retrievals per service instance */
+	public static final int DEFAULT_RETRIEVAL_POOL_SIZE = 4;
+	/** default time in milliseconds to wait for the ITI-43 retrievals of a request */
+	public static final long DEFAULT_RETRIEVAL_TIMEOUT = 30000L;
+	/** number of waiting ITI-43 retrievals per thread before rejecting */
+	public static final int RETRIEVAL_QUEUE_CAPACITY_PER_THREAD = 16;
+	/** number of stripes the generations of the cached consents are kept in */
+	private static final int CONSENT_GENERATION_STRIPES = 64;
+	/** default number of requests executed concurrently in the background */
+	public static final int DEFAULT_ASYNC_POOL_SIZE = 8;
+	/** number of waiting background requests per thread before rejecting */
+	public static final int ASYNC_QUEUE_CAPACITY_PER_THREAD = 16;
+	/** default number of patients whose consents are cached */
+	public static final int DEFAULT_CONSENT_CACHE_SIZE = 500;
+	/** default time in milliseconds the consents of a patient are cached */
+	public static final long DEFAULT_CONSENT_CACHE_TIME_TO_LIVE = 120000L;
+	/** default number of patient queries whose results are cached */
+	public static final int DEFAULT_PATIENT_CACHE_SIZE = 200;
+	/** default time in milliseconds the result of a patient query is cached */
+	public static final long DEFAULT_PATIENT_CACHE_TIME_TO_LIVE = 120000L;
 	
 	/*
 	 * Provides links into the IPF layer
@@ -76,8 +117,50 @@ public class PXSQueryServiceImpl implements PatientService, ConsentCreationServi
 
 	private CDATransformationService cdaTransformationService;
 	private ConsentConverter consentConverter;
+	private CdaLoader cdaLoader;
+	private ConsentPrefetchService consentPrefetchService;
 	private DocumentEntryBuilder documentEntryBuilder;
 	private PdqMessageBuilder pdqMessageBuilder;
+
+	/*
+	 * Executor used to retrieve consent documents (ITI-43) concurrently
+	 */
+	private ThreadPoolExecutor retrievalExecutor;
+	private int retrievalPoolSize = DEFAULT_RETRIEVAL_POOL_SIZE;
+	private long retrievalTimeout = DEFAULT_RETRIEVAL_TIMEOUT;
+
+	/*
+	 * Executor used for the requests of the asynchronous service methods
+	 */
+	private ExecutorService asyncExecutor;
+	private int asyncPoolSize = DEFAULT_ASYNC_POOL_SIZE;
+
+	/*
+	 * Converted consents per patient, keyed by patient ID and assigning
+	 * authority. Entries are evicted whenever a new consent is registered.
+	 * The cached lists share their PatientConsent instances with all results
+	 * handed out for the patient, so the consents must not be modified by
+	 * callers.
+	 */
+	private volatile ExpiringLruCache<String, List<PatientConsent>> consentCache = new ExpiringLruCache<String, List<PatientConsent>>(
+			DEFAULT_CONSENT_CACHE_SIZE, DEFAULT_CONSENT_CACHE_TIME_TO_LIVE);
+
+	/*
+	 * Generations of the cached consents, striped by patient. Registering a
+	 * consent increments the generation of the patient's stripe, so a consent
+	 * request which was running meanwhile does not cache its outdated result.
+	 * Guarded by consentCacheLock together with the puts and evictions.
+	 */
+	private final long[] consentGenerations = new long[CONSENT_GENERATION_STRIPES];
+	private final Object consentCacheLock = new Object();
+
+	/*
+	 * Patients found per PDQ query. The queries are normalized by their
+	 * equals and hashCode methods, so repeated searches differing only in
+	 * case or whitespace are answered without an ITI-21 request.
+	 */
+	private volatile ExpiringLruCache<FindPatientQuery, List<Patient>> patientCache = new ExpiringLruCache<FindPatientQuery, List<Patient>>(
+			DEFAULT_PATIENT_CACHE_SIZE, DEFAULT_PATIENT_CACHE_TIME_TO_LIVE);
 	
 
 	public void setPdqMessageBuilder(PdqMessageBuilder pdqMessageBuilder) {
@@ -123,13 +206,20 @@ public class PXSQueryServiceImpl implements PatientService, ConsentCreationServi
 		if (query == null)
 			throw new ServiceParameterException(
 					"Tried to call findPatients, but did not provide an argument (query is null).");
-		// Transform Query to String request to package for PDQ Layer
-		String request = pdqMessageBuilder.buildPdqRequest(
-				query.getPatientID(), query.getGivenName(),
-				query.getLastName(), query.getBirthdate());
-		String hl7response = pdqGate.requestPatients(request);
+		// serve the patients from the cache, if the query was sent lately
+		List<Patient> patients = patientCache.get(query);
+		if (patients == null) {
+			// Transform Query to String request to package for PDQ Layer
+			String request = pdqMessageBuilder.buildPdqRequest(
+					query.getPatientID(), query.getGivenName(),
+					query.getLastName(), query.getBirthdate());
+			String hl7response = pdqGate.requestPatients(request);
+			patients = Collections.unmodifiableList(pdqConverter
+					.convertPdqToPatients(hl7response));
+			patientCache.put(query, patients);
+		}
 		FindPatientResult result = new FindPatientResult(query, sortBy);
-		result.addAll(pdqConverter.convertPdqToPatients(hl7response));
+		result.addAll(patients);
 		result.lock();
 		return result;
 
@@ -146,8 +236,29 @@ public class PXSQueryServiceImpl implements PatientService, ConsentCreationServi
 	@Override
 	public FindPatientConsentResult getPatientConsents(Patient patient,
 			ConsentSortParameter sortBy) throws XDSRequestFailedException {
+		return getPatientConsents(patient, sortBy, ConsentFetchMode.FULL);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.openehealth.coala.interfacing.ConsentCreationService#getPatientConsents
+	 * (org.openehealth.coala.domain.Patient,
+	 * org.openehealth.coala.domain.ConsentSortParameter,
+	 * org.openehealth.coala.domain.ConsentFetchMode)
+	 */
+	@Override
+	public FindPatientConsentResult getPatientConsents(Patient patient,
+			ConsentSortParameter sortBy, ConsentFetchMode fetchMode)
+			throws XDSRequestFailedException {
 		if (patient == null)
 			throw new IllegalArgumentException("patient cannot be null.");
+		if (fetchMode == null)
+			fetchMode = ConsentFetchMode.getDefault();
+		if (fetchMode == ConsentFetchMode.METADATA_ONLY && cdaLoader == null)
+			throw new IllegalStateException(
+					"No cdaLoader configured to fetch consents METADATA_ONLY.");
 
 		// The code here may not be intuitively understandable due to it being
 		// an interwoven sets of ITI 18 and 43 requests. First, a metadata set
@@ -157,33 +268,213 @@ public class PXSQueryServiceImpl implements PatientService, ConsentCreationServi
 		// Coala-Domain.
 		// Sorting happens automagically in the FindPatientConsentResult object.
 
-		// 1) get List of documents
+		// 0) serve the consents from the cache, if they were requested lately
+		String cacheKey = createConsentCacheKey(patient, fetchMode);
+		List<PatientConsent> cachedConsents = consentCache.get(cacheKey);
+		if (cachedConsents != null) {
+			FindPatientConsentResult result = new FindPatientConsentResult(
+					patient, sortBy);
+			result.addAll(cachedConsents);
+			result.lock();
+			return result;
+		}
+
+		// 1) get List of documents, remembering the generation of the cached
+		// consents to detect registrations meanwhile
+		long generation = getConsentGeneration(patient);
 		List<DocumentEntry> metadataList = xdsGate.requestConsents(
 				patient.getPatientID(), stati, sortBy);
 		FindPatientConsentResult result = new FindPatientConsentResult(patient,
 				sortBy);
-		// 2) For each metadataSet, query appropriate Document
-		for (DocumentEntry entry : metadataList) {
+		if (fetchMode == ConsentFetchMode.METADATA_ONLY) {
+			// 2) the registry response is sufficient, the documents are
+			// retrieved by the cdaLoader when they are needed
+			for (DocumentEntry entry : metadataList) {
+				result.addPatientConsent(consentConverter
+						.transformToCoalaConsent(entry, patient, cdaLoader));
+			}
+			result.lock();
+			cacheConsents(patient, fetchMode, generation,
+					result.getPatientConsents());
+			return result;
+		}
+		// 2) Query the Documents for the metadataSets, spread over at most
+		// retrievalPoolSize batched ITI-43 requests running concurrently
+		int batchSize = Math.max(1,
+				(metadataList.size() + retrievalPoolSize - 1)
+						/ retrievalPoolSize);
+		List<Future<List<PatientConsent>>> retrievals = new ArrayList<Future<List<PatientConsent>>>();
+		// all retrievals share one deadline, so the request as a whole is
+		// aborted after retrievalTimeout
+		long deadline = System.nanoTime()
+				+ TimeUnit.MILLISECONDS.toNanos(retrievalTimeout);
+		try {
+			for (int i = 0; i < metadataList.size(); i += batchSize) {
+				List<DocumentEntry> batch = metadataList.subList(i,
+						Math.min(i + batchSize, metadataList.size()));
+				retrievals.add(submitRetrieval(new ConsentRetrieval(batch,
+						patient)));
+			}
+			// 3) collect the converted PatientConsents in the order of the
+			// ITI-18 response, so that equally ranked consents keep a
+			// deterministic order in the result
+			for (Future<List<PatientConsent>> retrieval : retrievals) {
+				result.addAll(awaitRetrieval(retrieval, deadline));
+			}
+		} finally {
+			// no-op for completed retrievals, stops the remaining ones if a
+			// single retrieval failed or timed out
+			for (Future<List<PatientConsent>> retrieval : retrievals) {
+				retrieval.cancel(true);
+			}
+		}
 
-			List<RetrievedDocument> consentList = xdsGate
-					.retrieveDocumentSet(entry);
-			LOG.debug(consentList.get(0).getRequestData().toString());
+		result.lock();
+		cacheConsents(patient, fetchMode, generation,
+				result.getPatientConsents());
+		return result;
+	}
 
-			// Check if there is only exactly one object in the list.
-			if (consentList.size() != 1)
-				throw new RuntimeException(
-						"Fatal Error during conversion of consent: Assuming a retrieved document list of size 1, but list was of size "
-								+ consentList.size());
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.openehealth.coala.interfacing.AsyncPatientService#findPatientsAsync
+	 * (org.openehealth.coala.domain.FindPatientQuery,
+	 * org.openehealth.coala.domain.PatientSortParameter)
+	 */
+	@Override
+	public Future<FindPatientResult> findPatientsAsync(
+			final FindPatientQuery query, final PatientSortParameter sortBy) {
+		return submitAsync(new Callable<FindPatientResult>() {
+			@Override
+			public FindPatientResult call() throws Exception {
+				return findPatients(query, sortBy);
+			}
+		}, null);
+	}
 
-			// 3) convert data to PatientConsents
-			PatientConsent consent = consentConverter.transformToCoalaConsent(
-					entry, consentList.get(0), patient);
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.openehealth.coala.interfacing.AsyncPatientService#findPatientsAsync
+	 * (org.openehealth.coala.domain.FindPatientQuery,
+	 * org.openehealth.coala.domain.PatientSortParameter,
+	 * org.openehealth.coala.interfacing.AsyncResultListener)
+	 */
+	@Override
+	public Future<FindPatientResult> findPatientsAsync(
+			final FindPatientQuery query, final PatientSortParameter sortBy,
+			AsyncResultListener<FindPatientResult> listener) {
+		if (listener == null)
+			throw new IllegalArgumentException("listener cannot be null.");
+		return submitAsync(new Callable<FindPatientResult>() {
+			@Override
+			public FindPatientResult call() throws Exception {
+				return findPatients(query, sortBy);
+			}
+		}, listener);
+	}
 
-			result.addPatientConsent(consent);
-		}
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.openehealth.coala.interfacing.AsyncConsentCreationService#
+	 * getPatientConsentsAsync(org.openehealth.coala.domain.Patient,
+	 * org.openehealth.coala.domain.ConsentSortParameter,
+	 * org.openehealth.coala.domain.ConsentFetchMode)
+	 */
+	@Override
+	public Future<FindPatientConsentResult> getPatientConsentsAsync(
+			final Patient patient, final ConsentSortParameter sortBy,
+			final ConsentFetchMode fetchMode) {
+		return submitAsync(
+				new Callable<FindPatientConsentResult>() {
+					@Override
+					public FindPatientConsentResult call() throws Exception {
+						return getPatientConsents(patient, sortBy, fetchMode);
+					}
+				}, null);
+	}
 
-		result.lock();
-		return result;
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.openehealth.coala.interfacing.AsyncConsentCreationService#
+	 * getPatientConsentsAsync(org.openehealth.coala.domain.Patient,
+	 * org.openehealth.coala.domain.ConsentSortParameter,
+	 * org.openehealth.coala.domain.ConsentFetchMode,
+	 * org.openehealth.coala.interfacing.AsyncResultListener)
+	 */
+	@Override
+	public Future<FindPatientConsentResult> getPatientConsentsAsync(
+			final Patient patient, final ConsentSortParameter sortBy,
+			final ConsentFetchMode fetchMode,
+			AsyncResultListener<FindPatientConsentResult> listener) {
+		if (listener == null)
+			throw new IllegalArgumentException("listener cannot be null.");
+		return submitAsync(
+				new Callable<FindPatientConsentResult>() {
+					@Override
+					public FindPatientConsentResult call() throws Exception {
+						return getPatientConsents(patient, sortBy, fetchMode);
+					}
+				}, listener);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.openehealth.coala.interfacing.AsyncConsentCreationService#
+	 * createPatientConsentAsync(org.openehealth.coala.domain.Patient,
+	 * java.util.Date, java.util.Date,
+	 * org.openehealth.coala.domain.PatientConsentPolicy,
+	 * org.openehealth.coala.domain.CoalaAuthor)
+	 */
+	@Override
+	public Future<Void> createPatientConsentAsync(final Patient patient,
+			final Date validFrom, final Date validUntil,
+			final PatientConsentPolicy policy, final CoalaAuthor author) {
+		return submitAsync(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				createPatientConsent(patient, validFrom, validUntil, policy,
+						author);
+				return null;
+			}
+		}, null);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.openehealth.coala.interfacing.AsyncConsentCreationService#
+	 * createPatientConsentAsync(org.openehealth.coala.domain.Patient,
+	 * java.util.Date, java.util.Date,
+	 * org.openehealth.coala.domain.PatientConsentPolicy,
+	 * org.openehealth.coala.domain.CoalaAuthor,
+	 * org.openehealth.coala.interfacing.AsyncResultListener)
+	 */
+	@Override
+	public Future<Void> createPatientConsentAsync(final Patient patient,
+			final Date validFrom, final Date validUntil,
+			final PatientConsentPolicy policy, final CoalaAuthor author,
+			AsyncResultListener<Void> listener) {
+		if (listener == null)
+			throw new IllegalArgumentException("listener cannot be null.");
+		return submitAsync(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				createPatientConsent(patient, validFrom, validUntil, policy,
+						author);
+				return null;
+			}
+		}, listener);
 	}
 
 	//TODO Javadoc @see...
@@ -246,18 +537,421 @@ public class PXSQueryServiceImpl implements PatientService, ConsentCreationServi
 		// Create metadata
 		DocumentEntry entry = documentEntryBuilder.createDocumentEntry(author, patient, policy, validFrom, validUntil);
 		
-		//Create a cda
-		String cda = cdaTransformationService.transformToValidPatientConsent(patient, policy, author, entry);
-				
-		
-		// Create a DataHandler for the document
-		DataHandler handler = new DataHandler(new CdaDataSourceImpl(
-				cda));
+		// Create a cda, UTF-8 encoded and re-readable for the MTOM attachment
+		DataHandler handler = new DataHandler(
+				cdaTransformationService.createValidPatientConsentDataSource(
+						patient, policy, author, entry));
 		
 		// Register the Consent
 		xdsGate.registerNewConsent(new Document(entry, handler), replaceAllOther);
+
+		// the cached consent lists of this patient are outdated now
+		evictConsents(patient);
+		// and so are the consents prefetched for the patient
+		if (consentPrefetchService != null)
+			consentPrefetchService.invalidatePrefetchedConsents(patient);
+	}
+
+	/*
+	 * Little helping method, returning the current generation of the cached
+	 * consents of the given patient.
+	 */
+	private long getConsentGeneration(Patient patient) {
+		synchronized (consentCacheLock) {
+			return consentGenerations[getConsentGenerationStripe(patient)];
+		}
+	}
+
+	/*
+	 * Little helping method, caching the consents of the given patient unless
+	 * a consent has been registered for the patient since the given
+	 * generation.
+	 */
+	private void cacheConsents(Patient patient, ConsentFetchMode fetchMode,
+			long generation, List<PatientConsent> consents) {
+		synchronized (consentCacheLock) {
+			if (consentGenerations[getConsentGenerationStripe(patient)] == generation)
+				consentCache.put(createConsentCacheKey(patient, fetchMode),
+						consents);
+		}
+	}
+
+	/*
+	 * Little helping method, evicting the cached consents of the given patient
+	 * and outdating the consent requests running for the patient.
+	 */
+	private void evictConsents(Patient patient) {
+		synchronized (consentCacheLock) {
+			consentGenerations[getConsentGenerationStripe(patient)]++;
+			for (ConsentFetchMode fetchMode : ConsentFetchMode.values()) {
+				consentCache.remove(createConsentCacheKey(patient, fetchMode));
+			}
+		}
+	}
+
+	/*
+	 * Little helping method, returning the stripe of the generation of the
+	 * cached consents of the given patient.
+	 */
+	private int getConsentGenerationStripe(Patient patient) {
+		int hash = (patient.getPatientID() + "^" + patient
+				.getPatientIDAssigningAuthorityUniversalId()).hashCode();
+		return (hash & Integer.MAX_VALUE) % CONSENT_GENERATION_STRIPES;
+	}
+
+	/**
+	 * Little helping method which creates the key the consents of the given
+	 * patient are cached with.
+	 * 
+	 * @param patient
+	 *            the patient the consents belong to
+	 * @param fetchMode
+	 *            the mode the consents were fetched with
+	 * @return the cache key for the patient
+	 */
+	private String createConsentCacheKey(Patient patient,
+			ConsentFetchMode fetchMode) {
+		return patient.getPatientID() + "^"
+				+ patient.getPatientIDAssigningAuthorityUniversalId() + "^"
+				+ fetchMode;
+	}
+
+	/**
+	 * Replaces the consent cache by a new, empty one with the given bounds.
+	 * 
+	 * @param maxEntries
+	 *            maximum number of patients whose consents are cached
+	 * @param timeToLive
+	 *            time in milliseconds the consents of a patient are cached
+	 */
+	public void configureConsentCache(int maxEntries, long timeToLive) {
+		this.consentCache = new ExpiringLruCache<String, List<PatientConsent>>(
+				maxEntries, timeToLive);
+	}
+
+	/**
+	 * Sets the maximum number of patients whose consents are cached.
+	 * 
+	 * @param consentCacheSize
+	 *            number of cached patients, must be greater than 0
+	 */
+	public void setConsentCacheSize(int consentCacheSize) {
+		configureConsentCache(consentCacheSize, consentCache.getTimeToLive());
+	}
+
+	/**
+	 * Sets the time in milliseconds the consents of a patient are cached.
+	 * 
+	 * @param consentCacheTimeToLive
+	 *            time to live in milliseconds, must be greater than 0
+	 */
+	public void setConsentCacheTimeToLive(long consentCacheTimeToLive) {
+		configureConsentCache(consentCache.getMaxEntries(),
+				consentCacheTimeToLive);
+	}
+
+	/**
+	 * Replaces the patient cache by a new, empty one with the given bounds.
+	 * 
+	 * @param maxEntries
+	 *            maximum number of queries whose results are cached
+	 * @param timeToLive
+	 *            time in milliseconds the result of a query is cached
+	 */
+	public void configurePatientCache(int maxEntries, long timeToLive) {
+		this.patientCache = new ExpiringLruCache<FindPatientQuery, List<Patient>>(
+				maxEntries, timeToLive);
+	}
+
+	/**
+	 * Sets the maximum number of patient queries whose results are cached.
+	 * 
+	 * @param patientCacheSize
+	 *            number of cached queries, must be greater than 0
+	 */
+	public void setPatientCacheSize(int patientCacheSize) {
+		configurePatientCache(patientCacheSize, patientCache.getTimeToLive());
+	}
+
+	/**
+	 * Sets the time in milliseconds the result of a patient query is cached.
+	 * 
+	 * @param patientCacheTimeToLive
+	 *            time to live in milliseconds, must be greater than 0
+	 */
+	public void setPatientCacheTimeToLive(long patientCacheTimeToLive) {
+		configurePatientCache(patientCache.getMaxEntries(),
+				patientCacheTimeToLive);
+	}
+
+	/**
+	 * Drops the cached result of the given query, e.g. after the patients
+	 * matching it have changed in the MPI.
+	 * 
+	 * @param query
+	 *            the query whose result is outdated
+	 */
+	public void invalidatePatients(FindPatientQuery query) {
+		if (query != null)
+			patientCache.remove(query);
+	}
+
+	/**
+	 * Drops all cached results of patient queries, so that the next searches
+	 * are sent to the MPI again.
+	 */
+	public void invalidatePatients() {
+		patientCache.clear();
+	}
+
+	/**
+	 * Returns the patient cache, e.g. to read its hit, miss and eviction
+	 * counters.
+	 * 
+	 * @return the patient cache
+	 */
+	public ExpiringLruCache<FindPatientQuery, List<Patient>> getPatientCache() {
+		return patientCache;
+	}
+
+	/**
+	 * Returns the consent cache, e.g. to read its hit, miss and eviction
+	 * counters. The cached consents are shared with the results handed out
+	 * and must not be modified.
+	 * 
+	 * @return the consent cache
+	 */
+	public ExpiringLruCache<String, List<PatientConsent>> getConsentCache() {
+		return consentCache;
+	}
+
+	/**
+	 * Returns the number of ITI-43 retrievals waiting for a free retrieval
+	 * thread.
+	 * 
+	 * @return the number of queued retrievals
+	 */
+	public synchronized int getQueuedRetrievalCount() {
+		if (retrievalExecutor == null)
+			return 0;
+		return retrievalExecutor.getQueue().size();
+	}
+
+	/**
+	 * Little helping method which waits for a single consent retrieval until
+	 * the deadline of the whole consent request and unwraps its outcome.
+	 * 
+	 * @param retrieval
+	 *            the pending retrieval
+	 * @param deadline
+	 *            the {@link System#nanoTime()} by which the retrieval has to
+	 *            be finished
+	 * @return the converted {@link PatientConsent}s
+	 * @throws XDSRequestFailedException
+	 *             if the retrieval failed, timed out or the waiting thread was
+	 *             interrupted
+	 */
+	private List<PatientConsent> awaitRetrieval(
+			Future<List<PatientConsent>> retrieval, long deadline)
+			throws XDSRequestFailedException {
+		try {
+			return retrieval.get(Math.max(0L, deadline - System.nanoTime()),
+					TimeUnit.NANOSECONDS);
+		} catch (TimeoutException e) {
+			throw new XDSRequestFailedException(
+					"Retrieval of consent documents did not finish within "
+							+ retrievalTimeout + " ms.", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new XDSRequestFailedException(
+					"Interrupted while waiting for consent document retrieval.",
+					e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new XDSRequestFailedException(
+					"Retrieval of consent document failed.", e.getCause());
+		}
+	}
+
+	/**
+	 * Little helping method which submits a single consent retrieval. A
+	 * retrieval rejected by the saturated or stopped executor fails the
+	 * request at once. It is never run by the calling thread, where neither
+	 * the deadline of the request nor the cancellation would apply.
+	 * 
+	 * @param retrieval
+	 *            the retrieval to execute
+	 * @return the pending retrieval
+	 * @throws XDSRequestFailedException
+	 *             if the retrieval was rejected
+	 */
+	private Future<List<PatientConsent>> submitRetrieval(
+			ConsentRetrieval retrieval) throws XDSRequestFailedException {
+		try {
+			return getRetrievalExecutor().submit(retrieval);
+		} catch (RejectedExecutionException e) {
+			LOG.warn("Consent retrieval rejected, " + retrievalPoolSize
+					+ " threads are busy and the queue is full.");
+			throw new XDSRequestFailedException(
+					"Too many concurrent consent document retrievals.", e);
+		}
+	}
+
+	/**
+	 * Returns the executor used for ITI-43 retrievals and creates it on first
+	 * use. The pool is bounded by <code>retrievalPoolSize</code>; if its queue
+	 * runs full, further retrievals are rejected.
+	 * 
+	 * @return the executor used for ITI-43 retrievals
+	 */
+	private synchronized ExecutorService getRetrievalExecutor() {
+		if (retrievalExecutor == null) {
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(
+					retrievalPoolSize, retrievalPoolSize, 60L,
+					TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(
+							retrievalPoolSize
+									* RETRIEVAL_QUEUE_CAPACITY_PER_THREAD),
+					new ServiceThreadFactory("coala-xds-retrieval-"),
+					new ThreadPoolExecutor.AbortPolicy());
+			executor.allowCoreThreadTimeOut(true);
+			retrievalExecutor = executor;
+		}
+		return retrievalExecutor;
+	}
+
+	/**
+	 * Returns the executor used for the asynchronous service methods and
+	 * creates it on first use. The pool is bounded by
+	 * <code>asyncPoolSize</code>; if its queue runs full, further requests are
+	 * rejected instead of being run by the calling thread, which must not
+	 * block.
+	 * 
+	 * @return the executor used for asynchronous requests
+	 */
+	private synchronized ExecutorService getAsyncExecutor() {
+		if (asyncExecutor == null) {
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(
+					asyncPoolSize, asyncPoolSize, 60L, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(asyncPoolSize
+							* ASYNC_QUEUE_CAPACITY_PER_THREAD),
+					new ServiceThreadFactory("coala-async-"),
+					new ThreadPoolExecutor.AbortPolicy());
+			executor.allowCoreThreadTimeOut(true);
+			asyncExecutor = executor;
+		}
+		return asyncExecutor;
+	}
+
+	/**
+	 * Little helping method which submits a request of the asynchronous
+	 * service methods. A request rejected by the saturated or stopped
+	 * executor is returned as a Future that already failed with the
+	 * {@link RejectedExecutionException}, so the caller is never blocked.
+	 * 
+	 * @param request
+	 *            the request to execute in the background
+	 * @param listener
+	 *            the listener to notify on completion, may be
+	 *            <code>null</code>
+	 * @return the pending or failed request
+	 */
+	private <T> Future<T> submitAsync(Callable<T> request,
+			AsyncResultListener<T> listener) {
+		FutureTask<T> task = new NotifyingTask<T>(request, listener);
+		try {
+			getAsyncExecutor().execute(task);
+			return task;
+		} catch (final RejectedExecutionException e) {
+			LOG.warn("Asynchronous request rejected, " + asyncPoolSize
+					+ " threads are busy and the queue is full.");
+			FutureTask<T> rejected = new NotifyingTask<T>(new Callable<T>() {
+				@Override
+				public T call() throws Exception {
+					throw e;
+				}
+			}, listener);
+			rejected.run();
+			return rejected;
+		}
+	}
+
+	/**
+	 * Stops the executors used for ITI-43 retrievals and asynchronous
+	 * requests. Pending requests are cancelled. Called by Spring on context
+	 * shutdown.
+	 */
+	public synchronized void shutdown() {
+		shutdownRetrievalExecutor();
+		if (asyncExecutor != null) {
+			asyncExecutor.shutdownNow();
+			asyncExecutor = null;
+		}
+	}
+
+	/*
+	 * Little helping method which stops the executor used for ITI-43
+	 * retrievals.
+	 */
+	private synchronized void shutdownRetrievalExecutor() {
+		if (retrievalExecutor != null) {
+			retrievalExecutor.shutdownNow();
+			retrievalExecutor = null;
+		}
+	}
+
+	/**
+	 * Sets the maximum number of requests of the asynchronous service methods
+	 * executed concurrently. Up to {@link #ASYNC_QUEUE_CAPACITY_PER_THREAD}
+	 * further requests per thread wait for execution, beyond that the
+	 * returned Futures fail with a {@link RejectedExecutionException}.
+	 * 
+	 * @param asyncPoolSize
+	 *            number of threads, must be greater than 0
+	 */
+	public synchronized void setAsyncPoolSize(int asyncPoolSize) {
+		if (asyncPoolSize < 1)
+			throw new IllegalArgumentException(
+					"asyncPoolSize must be greater than 0.");
+		this.asyncPoolSize = asyncPoolSize;
+		if (asyncExecutor != null) {
+			// running requests are completed by the old executor
+			asyncExecutor.shutdown();
+			asyncExecutor = null;
+		}
+	}
+
+	/**
+	 * Sets the maximum number of ITI-43 retrievals executed concurrently. Up
+	 * to {@link #RETRIEVAL_QUEUE_CAPACITY_PER_THREAD} further retrievals per
+	 * thread wait for execution, beyond that consent requests fail with a
+	 * {@link XDSRequestFailedException}.
+	 * 
+	 * @param retrievalPoolSize
+	 *            number of retrieval threads, must be greater than 0
+	 */
+	public synchronized void setRetrievalPoolSize(int retrievalPoolSize) {
+		if (retrievalPoolSize < 1)
+			throw new IllegalArgumentException(
+					"retrievalPoolSize must be greater than 0.");
+		this.retrievalPoolSize = retrievalPoolSize;
+		shutdownRetrievalExecutor();
+	}
+
+	/**
+	 * Sets the time in milliseconds to wait for all ITI-43 retrievals of a
+	 * consent request before it is aborted. The timeout applies to the request
+	 * as a whole, not to each of its concurrent retrievals.
+	 * 
+	 * @param retrievalTimeout
+	 *            timeout in milliseconds, must be greater than 0
+	 */
+	public void setRetrievalTimeout(long retrievalTimeout) {
+		if (retrievalTimeout < 1)
+			throw new IllegalArgumentException(
+					"retrievalTimeout must be greater than 0.");
+		this.retrievalTimeout = retrievalTimeout;
 	}
-	
 
 	public void setPdqGate(PDQGate pdqGate) {
 		this.pdqGate = pdqGate;
@@ -267,8 +961,106 @@ public class PXSQueryServiceImpl implements PatientService, ConsentCreationServi
 		this.xdsGate = xdsGate;
 	}
 
+	public void setCdaLoader(CdaLoader cdaLoader) {
+		this.cdaLoader = cdaLoader;
+	}
+
+	/**
+	 * Sets the prefetch service whose prefetched consents are dropped when a
+	 * consent is registered. Optional, as long as no consents are prefetched.
+	 * 
+	 * @param consentPrefetchService
+	 *            the prefetch service, may be <code>null</code>
+	 */
+	public void setConsentPrefetchService(
+			ConsentPrefetchService consentPrefetchService) {
+		this.consentPrefetchService = consentPrefetchService;
+	}
+
 	public void setCdaService(CDATransformationService cdaService) {
 		this.cdaTransformationService = cdaService;
 	}
 
+	/**
+	 * Request of the asynchronous service methods, notifying its
+	 * {@link AsyncResultListener}, if any, as soon as it is done, failed or
+	 * cancelled. A failing listener does not affect the outcome of the
+	 * request.
+	 */
+	private static class NotifyingTask<T> extends FutureTask<T> {
+
+		private final AsyncResultListener<T> listener;
+
+		public NotifyingTask(Callable<T> request,
+				AsyncResultListener<T> listener) {
+			super(request);
+			this.listener = listener;
+		}
+
+		@Override
+		protected void done() {
+			if (listener == null)
+				return;
+			try {
+				T result;
+				try {
+					result = get();
+				} catch (ExecutionException e) {
+					listener.onFailure(e.getCause());
+					return;
+				} catch (CancellationException e) {
+					listener.onFailure(e);
+					return;
+				} catch (InterruptedException e) {
+					// the task is done, so get() does not wait
+					Thread.currentThread().interrupt();
+					listener.onFailure(e);
+					return;
+				}
+				listener.onSuccess(result);
+			} catch (RuntimeException e) {
+				LOG.warn("Listener of an asynchronous request failed.", e);
+			}
+		}
+	}
+
+	/**
+	 * Retrieves the documents of a batch of {@link DocumentEntry}s via ITI-43
+	 * and converts them into {@link PatientConsent}s, keeping the order of the
+	 * entries.
+	 */
+	private class ConsentRetrieval implements Callable<List<PatientConsent>> {
+
+		private final List<DocumentEntry> entries;
+		private final Patient patient;
+
+		public ConsentRetrieval(List<DocumentEntry> entries, Patient patient) {
+			this.entries = entries;
+			this.patient = patient;
+		}
+
+		@Override
+		public List<PatientConsent> call() throws Exception {
+			Map<String, RetrievedDocument> documents = xdsGate
+					.retrieveDocumentSets(entries);
+
+			List<PatientConsent> consents = new ArrayList<PatientConsent>(
+					entries.size());
+			for (DocumentEntry entry : entries) {
+				// Check if there is exactly one document for each entry.
+				RetrievedDocument document = documents.get(entry
+						.getUniqueId());
+				if (document == null)
+					throw new XDSRequestFailedException(
+							"Fatal Error during conversion of consent: No document was retrieved for document entry "
+									+ entry.getUniqueId());
+				LOG.debug(document.getRequestData().toString());
+
+				consents.add(consentConverter.transformToCoalaConsent(entry,
+						document, patient));
+			}
+			return consents;
+		}
+	}
+
 }
@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.service;
+
+import java.util.List;
+
+import org.openehealth.coala.converter.ConsentConverter;
+import org.openehealth.coala.domain.ConsentDocumentReference;
+import org.openehealth.coala.exception.XDSRequestFailedException;
+import org.openehealth.coala.interfacing.CdaLoader;
+import org.openehealth.coala.xds.XDSGate;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.DocumentEntry;
+import org.openehealth.ipf.commons.ihe.xds.core.responses.RetrievedDocument;
+
+/**
+ * Loads the CDA of a consent on demand with an ITI-43 request via the
+ * {@link XDSGate}. Instances are thread-safe once configured.
+ */
+public class XdsCdaLoader implements CdaLoader {
+
+	private XDSGate xdsGate;
+	private ConsentConverter consentConverter;
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.openehealth.coala.interfacing.CdaLoader#loadCda(org.openehealth.coala
+	 * .domain.ConsentDocumentReference)
+	 */
+	@Override
+	public String loadCda(ConsentDocumentReference reference)
+			throws XDSRequestFailedException {
+		if (reference == null)
+			throw new IllegalArgumentException("reference cannot be null.");
+
+		DocumentEntry entry = new DocumentEntry();
+		entry.setUniqueId(reference.getDocumentUniqueId());
+		entry.setRepositoryUniqueId(reference.getRepositoryUniqueId());
+		entry.setHomeCommunityId(reference.getHomeCommunityId());
+
+		List<RetrievedDocument> documents = xdsGate.retrieveDocumentSet(entry);
+		if (documents.size() != 1)
+			throw new XDSRequestFailedException("Expected one document for "
+					+ reference + ", but " + documents.size()
+					+ " were retrieved.");
+		return consentConverter.readCda(documents.get(0));
+	}
+
+	public void setXdsGate(XDSGate xdsGate) {
+		this.xdsGate = xdsGate;
+	}
+
+	public void setConsentConverter(ConsentConverter consentConverter) {
+		this.consentConverter = consentConverter;
+	}
+}
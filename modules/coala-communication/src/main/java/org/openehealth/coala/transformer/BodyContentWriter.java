@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.transformer;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * {@link Writer} passing only the HTML code between the first
+ * <code>&lt;body&gt;</code> and the following <code>&lt;/body&gt;</code> tag
+ * on to the target writer. Everything written before the body is held back
+ * and discarded as soon as the body starts. If no body is found at all, the
+ * held back code is passed on by {@link #finish()}, so documents without a
+ * body are delivered completely, just like
+ * {@link XmlTransformer#deliverRelevantHTML(String)} does. A body which is
+ * not closed is delivered up to the end of the document, whereas
+ * {@link XmlTransformer#deliverRelevantHTML(String)} returns the whole
+ * document then. The body has already been passed on at that point and
+ * holding it back instead would defeat streaming.
+ * <p>
+ * The target writer is neither flushed nor closed by this writer. Instances
+ * are not thread-safe.
+ */
+final class BodyContentWriter extends Writer {
+
+	private static final String BODY_START = "<body>";
+	private static final String BODY_END = "</body>";
+
+	private static final int BEFORE_BODY = 0;
+	private static final int IN_BODY = 1;
+	private static final int AFTER_BODY = 2;
+
+	private final Writer target;
+
+	/** everything written before the body, needed if there is no body */
+	private final StringBuilder head = new StringBuilder();
+
+	private int state = BEFORE_BODY;
+
+	/** number of chars of the current tag matched so far */
+	private int matched;
+
+	/**
+	 * Creates a new writer passing the body content on to the given writer.
+	 *
+	 * @param target
+	 *            the writer for the body content, must not be
+	 *            <code>null</code>
+	 */
+	BodyContentWriter(Writer target) {
+		if (target == null)
+			throw new IllegalArgumentException("target cannot be null");
+		this.target = target;
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		int end = off + len;
+		int pos = off;
+		while (pos < end && state == BEFORE_BODY) {
+			pos = scanHead(cbuf, pos, end);
+		}
+		while (pos < end && state == IN_BODY) {
+			pos = scanBody(cbuf, pos, end);
+		}
+	}
+
+	/**
+	 * Passes on what is still held back: the whole document, if no body was
+	 * found, or the start of a tag which turned out not to be the end of the
+	 * body. Must be called once after the last write.
+	 *
+	 * @throws IOException
+	 *             if the target writer fails
+	 */
+	void finish() throws IOException {
+		if (state == BEFORE_BODY) {
+			target.append(head);
+			head.setLength(0);
+		} else if (state == IN_BODY && matched > 0) {
+			target.write(BODY_END, 0, matched);
+		}
+		matched = 0;
+		state = AFTER_BODY;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		target.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		finish();
+	}
+
+	/*
+	 * Little helping method, holding chars back until the start of the body
+	 * has been found. Returns the position after the scanned chars.
+	 */
+	private int scanHead(char[] cbuf, int pos, int end) {
+		int start = pos;
+		while (pos < end) {
+			matched = match(BODY_START, cbuf[pos++]);
+			if (matched == BODY_START.length()) {
+				head.setLength(0);
+				matched = 0;
+				state = IN_BODY;
+				return pos;
+			}
+		}
+		head.append(cbuf, start, pos - start);
+		return pos;
+	}
+
+	/*
+	 * Little helping method, passing chars on until the end of the body has
+	 * been found. The start of a possible end tag is held back until it is
+	 * clear, whether it is one. Returns the position after the scanned chars.
+	 */
+	private int scanBody(char[] cbuf, int pos, int end) throws IOException {
+		int start = pos;
+		for (; pos < end; pos++) {
+			char c = cbuf[pos];
+			if (matched > 0) {
+				if (c == BODY_END.charAt(matched)) {
+					start = pos + 1;
+					if (++matched == BODY_END.length()) {
+						matched = 0;
+						state = AFTER_BODY;
+						return end;
+					}
+					continue;
+				}
+				// the chars held back were no end tag after all
+				target.write(BODY_END, 0, matched);
+				matched = 0;
+				start = pos;
+			}
+			if (c == BODY_END.charAt(0)) {
+				target.write(cbuf, start, pos - start);
+				matched = 1;
+				start = pos + 1;
+			}
+		}
+		target.write(cbuf, start, end - start);
+		return end;
+	}
+
+	/*
+	 * Little helping method, returning how many chars of the tag are matched
+	 * after c has been read. As '<' only occurs at the start of the tags, a
+	 * mismatch never hides the start of another match except at c itself.
+	 */
+	private int match(String tag, char c) {
+		if (tag.charAt(matched) == c)
+			return matched + 1;
+		return c == tag.charAt(0) ? 1 : 0;
+	}
+}
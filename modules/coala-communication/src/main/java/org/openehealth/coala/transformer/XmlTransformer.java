@@ -16,11 +16,22 @@
  */
 package org.openehealth.coala.transformer;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
@@ -30,17 +41,46 @@ import org.openehealth.coala.exception.XslTransformerException;
 
 /**
  * Transforms a XML file with a XSL file into HTML and represents it as a
- * string.
+ * string. The XSL file is compiled once into {@link Templates}. As a
+ * {@link Transformer} must not be used by several threads at the same time,
+ * each transformation borrows one from a pool and returns it afterwards. If
+ * the pool is empty, a new {@link Transformer} is created, so transformations
+ * never wait for each other. Instances of this class are thread-safe.
+ * <p>
+ * Besides Strings, the XML can be read from a {@link Reader} or an
+ * {@link InputStream}, e.g. the one of a retrieved document's DataHandler.
+ * The HTML code is then written to a {@link Writer} while it is produced,
+ * only the code between the body tags is passed on. This way no complete
+ * copy of the XML or the HTML is held in memory.
+ * <p>
+ * If the HTML contains a body which is never closed, everything from the
+ * start of the body up to the end of the document is delivered. Before the
+ * HTML was streamed, the whole document was delivered in this case, as
+ * {@link #deliverRelevantHTML(String)} still does. Keeping that would mean
+ * holding back the complete body until its end tag shows up.
  * 
  * @author hhein
  */
 public class XmlTransformer {
 
-	private Transformer transformer = null;
+	/** default maximum number of idle transformers kept for reuse */
+	public static final int DEFAULT_POOL_SIZE = 8;
+
+	/** number of chars or bytes searched for the XML declaration in streams */
+	private static final int DECLARATION_LOOKAHEAD = 1024;
+
+	private static final String XML_DECLARATION = "<?xml";
+
+	private final Templates templates;
+
+	private final BlockingQueue<Transformer> pool;
+
+	private final AtomicLong created = new AtomicLong();
+	private final AtomicLong reused = new AtomicLong();
 
 	/**
-	 * Transform a XSL InputStream into a StreamSource and set it as data field
-	 * ({@link XmlTransformer#xslStreamSource}).
+	 * Transform a XSL InputStream into a StreamSource and compile it, keeping
+	 * at most {@link #DEFAULT_POOL_SIZE} idle transformers.
 	 * 
 	 * @param inputStream
 	 *            required: the InputStream of a XSL file.
@@ -53,17 +93,42 @@ public class XmlTransformer {
 	 */
 	public XmlTransformer(InputStream inputStream)
 			throws IllegalArgumentException, XslTransformerException {
+		this(inputStream, DEFAULT_POOL_SIZE);
+	}
+
+	/**
+	 * Transform a XSL InputStream into a StreamSource and compile it.
+	 * 
+	 * @param inputStream
+	 *            required: the InputStream of a XSL file.
+	 * @param poolSize
+	 *            the maximum number of idle transformers kept for reuse, must
+	 *            be greater than 0
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the XSL InputStream isn't valid or the pool size is less
+	 *             than 1.
+	 * @throws XslTransformerException
+	 *             if the XSL InputStream can't be transformed to a
+	 *             StreamSource.
+	 */
+	public XmlTransformer(InputStream inputStream, int poolSize)
+			throws IllegalArgumentException, XslTransformerException {
 		if (inputStream == null)
 			throw new IllegalArgumentException("XSL InputStream is required.");
+		if (poolSize < 1)
+			throw new IllegalArgumentException(
+					"poolSize must be greater than 0.");
 
 		try {
 			StreamSource xslStreamSource = new StreamSource(inputStream);
 			TransformerFactory transFact = TransformerFactory.newInstance();
-			transformer = transFact.newTransformer(xslStreamSource);
+			templates = transFact.newTemplates(xslStreamSource);
 		} catch (Exception e) {
 			throw new XslTransformerException(
 					"Can't transform a XSL InputStream into StreamSource.", e);
 		}
+		pool = new ArrayBlockingQueue<Transformer>(poolSize);
 	}
 
 	/**
@@ -73,7 +138,8 @@ public class XmlTransformer {
 	 * @param xmlString
 	 *            the XML file as string.
 	 * @return htmlString the HTML code between the body tags from the XML and
-	 *         XSL ( {@link XmlTransformer#XmlTransformer(InputStream)}) file.
+	 *         XSL ( {@link XmlTransformer#XmlTransformer(InputStream)}) file,
+	 *         up to the end of the document if the body is not closed.
 	 * @throws IllegalArgumentException
 	 *             if the XML string is null or not valid.
 	 * @throws CdaXmlTransformerException
@@ -82,66 +148,271 @@ public class XmlTransformer {
 	public String transformXmlIntoHtml(String xmlString)
 			throws IllegalArgumentException, CdaXmlTransformerException {
 
-		xmlString = deliverRelevantXML(xmlString);
-		String htmlString = transformXmlAndXslIntoHtml(xmlString);
-		htmlString = deliverRelevantHTML(htmlString);
+		int xmlStart = deliverRelevantXML(xmlString);
+		StringReader xmlReader = new StringReader(xmlString);
+		StringWriter htmlWriter = new StringWriter(xmlString.length()
+				- xmlStart);
+		try {
+			xmlReader.skip(xmlStart);
+		} catch (IOException e) {
+			// can't happen with a StringReader
+			throw new IllegalStateException(e);
+		}
+		transformXmlAndXslIntoHtml(new StreamSource(xmlReader), htmlWriter);
 
-		return htmlString;
+		return htmlWriter.toString();
 	}
 
 	/**
-	 * Deliver the relevant XML part from the hole XML string.
+	 * Transforms XML read from a {@link Reader} with XSL into HTML and writes
+	 * the code between the body tags to a {@link Writer}. Anything in front of
+	 * the XML declaration is skipped. Neither the reader nor the writer is
+	 * closed.
+	 * 
+	 * @param xmlReader
+	 *            required: the reader delivering the XML file.
+	 * @param htmlWriter
+	 *            required: the writer receiving the HTML code between the
+	 *            body tags.
+	 * @throws IllegalArgumentException
+	 *             if the reader or the writer is null.
+	 * @throws CdaXmlTransformerException
+	 *             if their is a error on reading the XML or transforming XML
+	 *             and XSL into HTML.
+	 */
+	public void transformXmlIntoHtml(Reader xmlReader, Writer htmlWriter)
+			throws IllegalArgumentException, CdaXmlTransformerException {
+		if (xmlReader == null)
+			throw new IllegalArgumentException("No XML reader given.");
+		if (htmlWriter == null)
+			throw new IllegalArgumentException("No HTML writer given.");
+
+		Reader reader = xmlReader.markSupported() ? xmlReader
+				: new BufferedReader(xmlReader);
+		try {
+			skipToXmlDeclaration(reader);
+		} catch (IOException e) {
+			throw new CdaXmlTransformerException("Couldn't read the CDA XML.", e);
+		}
+		transformXmlAndXslIntoHtml(new StreamSource(reader), htmlWriter);
+	}
+
+	/**
+	 * Transforms XML read from an {@link InputStream} with XSL into HTML and
+	 * writes the code between the body tags to a {@link Writer}. The encoding
+	 * is taken from the XML declaration, anything in front of it is skipped.
+	 * Neither the stream nor the writer is closed.
+	 * 
+	 * @param xmlStream
+	 *            required: the stream delivering the XML file, e.g. the one
+	 *            of a retrieved document's DataHandler.
+	 * @param htmlWriter
+	 *            required: the writer receiving the HTML code between the
+	 *            body tags.
+	 * @throws IllegalArgumentException
+	 *             if the stream or the writer is null.
+	 * @throws CdaXmlTransformerException
+	 *             if their is a error on reading the XML or transforming XML
+	 *             and XSL into HTML.
+	 */
+	public void transformXmlIntoHtml(InputStream xmlStream, Writer htmlWriter)
+			throws IllegalArgumentException, CdaXmlTransformerException {
+		if (xmlStream == null)
+			throw new IllegalArgumentException("No XML stream given.");
+		if (htmlWriter == null)
+			throw new IllegalArgumentException("No HTML writer given.");
+
+		InputStream stream = xmlStream.markSupported() ? xmlStream
+				: new BufferedInputStream(xmlStream);
+		try {
+			skipToXmlDeclaration(stream);
+		} catch (IOException e) {
+			throw new CdaXmlTransformerException("Couldn't read the CDA XML.", e);
+		}
+		transformXmlAndXslIntoHtml(new StreamSource(stream), htmlWriter);
+	}
+
+	/**
+	 * Checks the XML string and returns where the relevant XML part starts.
 	 * 
 	 * @param xmlString
 	 *            required: the XML string
-	 * @return xmlString a valid XML string
+	 * @return the index of the XML declaration
 	 * @throws IllegalArgumentException
 	 *             if the XML string is null or not valid.
 	 */
-	private String deliverRelevantXML(String xmlString) {
+	private int deliverRelevantXML(String xmlString) {
 		if (xmlString == null || xmlString.isEmpty())
 			throw new IllegalArgumentException("No XML string given.");
 
-		try {
-			if (!xmlString.startsWith("<?xml")) {
-				xmlString = xmlString.substring(xmlString.indexOf("<?xml"));
-			}
-		} catch (Exception e) {
+		int xmlStart = xmlString.indexOf(XML_DECLARATION);
+		if (xmlStart < 0)
 			throw new IllegalArgumentException(
 					"No valid XML string given. File didn't contain \"<?xml...\"");
+
+		return xmlStart;
+	}
+
+	/**
+	 * Skips anything in front of the XML declaration, if it is found within
+	 * the first {@link #DECLARATION_LOOKAHEAD} chars. Otherwise the reader is
+	 * left untouched and the parser has to cope with its content.
+	 * 
+	 * @param reader
+	 *            a reader supporting mark and reset
+	 * @throws IOException
+	 *             if the reader fails
+	 */
+	private void skipToXmlDeclaration(Reader reader) throws IOException {
+		reader.mark(DECLARATION_LOOKAHEAD);
+		int skip = 0;
+		int matched = 0;
+		while (skip + matched < DECLARATION_LOOKAHEAD) {
+			int c = reader.read();
+			if (c < 0)
+				break;
+			if (c == XML_DECLARATION.charAt(matched)) {
+				if (++matched == XML_DECLARATION.length())
+					break;
+			} else {
+				skip += matched + 1;
+				matched = 0;
+				if (c == XML_DECLARATION.charAt(0)) {
+					skip--;
+					matched = 1;
+				}
+			}
 		}
+		reader.reset();
+		if (matched == XML_DECLARATION.length() && skip > 0)
+			reader.skip(skip);
+	}
 
-		return xmlString;
+	/**
+	 * Skips anything in front of the XML declaration, if it is found within
+	 * the first {@link #DECLARATION_LOOKAHEAD} bytes. Otherwise the stream is
+	 * left untouched, e.g. for documents encoded in UTF-16, and the parser has
+	 * to cope with its content.
+	 * 
+	 * @param stream
+	 *            a stream supporting mark and reset
+	 * @throws IOException
+	 *             if the stream fails
+	 */
+	private void skipToXmlDeclaration(InputStream stream) throws IOException {
+		stream.mark(DECLARATION_LOOKAHEAD);
+		int skip = 0;
+		int matched = 0;
+		while (skip + matched < DECLARATION_LOOKAHEAD) {
+			int b = stream.read();
+			if (b < 0)
+				break;
+			if (b == XML_DECLARATION.charAt(matched)) {
+				if (++matched == XML_DECLARATION.length())
+					break;
+			} else {
+				skip += matched + 1;
+				matched = 0;
+				if (b == XML_DECLARATION.charAt(0)) {
+					skip--;
+					matched = 1;
+				}
+			}
+		}
+		stream.reset();
+		if (matched == XML_DECLARATION.length() && skip > 0)
+			stream.skip(skip);
 	}
 
 	/**
-	 * Transform the XML and XSL into HTML and return the result it as string.
+	 * Transform the XML and XSL into HTML and write the code between the body
+	 * tags to the given writer.
 	 * 
-	 * @param xmlString
-	 *            the valid XML string.
-	 * @return htmlString the HTML code.
+	 * @param xmlSource
+	 *            the source of the XML.
+	 * @param htmlWriter
+	 *            the writer receiving the HTML code between the body tags.
 	 * @throws CdaXmlTransformerException
 	 *             if their is a error on transforming XML and XSL into HTML.
 	 */
-	private String transformXmlAndXslIntoHtml(String xmlString)
+	private void transformXmlAndXslIntoHtml(Source xmlSource, Writer htmlWriter)
 			throws CdaXmlTransformerException {
-		String htmlString = null;
+		Transformer transformer = borrowTransformer();
 		try {
-			StringWriter stringWriter = new StringWriter();
-			StreamSource xmlStreamSource = new StreamSource(new StringReader(
-					xmlString));
-			StreamResult htmlStreamResult = new StreamResult(stringWriter);
-
-			transformer.transform(xmlStreamSource, htmlStreamResult);
-
-			htmlString = stringWriter.toString();
+			BodyContentWriter bodyWriter = new BodyContentWriter(htmlWriter);
+			transformer.transform(xmlSource, new StreamResult(bodyWriter));
+			bodyWriter.finish();
 		} catch (Exception e) {
+			// the state of the transformer is unknown, so it is not reused
 			throw new CdaXmlTransformerException(
 					"Couldn't transform a CDA XML string into valid HTML via XSLT.",
 					e);
 		}
+		returnTransformer(transformer);
+	}
 
-		return htmlString;
+	/**
+	 * Takes an idle transformer from the pool or creates a new one, if there
+	 * is none.
+	 * 
+	 * @return a transformer for exclusive use by the caller
+	 * @throws CdaXmlTransformerException
+	 *             if a new transformer can't be created.
+	 */
+	private Transformer borrowTransformer() throws CdaXmlTransformerException {
+		Transformer transformer = pool.poll();
+		if (transformer != null) {
+			reused.incrementAndGet();
+			return transformer;
+		}
+		try {
+			transformer = templates.newTransformer();
+		} catch (TransformerConfigurationException e) {
+			throw new CdaXmlTransformerException(
+					"Couldn't create a transformer for the compiled XSL.", e);
+		}
+		created.incrementAndGet();
+		return transformer;
+	}
+
+	/**
+	 * Resets the given transformer and puts it back into the pool, unless the
+	 * pool is full already.
+	 * 
+	 * @param transformer
+	 *            the transformer borrowed before
+	 */
+	private void returnTransformer(Transformer transformer) {
+		transformer.reset();
+		pool.offer(transformer);
+	}
+
+	/**
+	 * @return the maximum number of idle transformers kept for reuse
+	 */
+	public int getPoolSize() {
+		return pool.size() + pool.remainingCapacity();
+	}
+
+	/**
+	 * @return the number of transformers currently idle in the pool
+	 */
+	public int getIdleCount() {
+		return pool.size();
+	}
+
+	/**
+	 * @return the number of transformers created so far
+	 */
+	public long getCreatedCount() {
+		return created.get();
+	}
+
+	/**
+	 * @return the number of transformations which reused a pooled transformer
+	 */
+	public long getReusedCount() {
+		return reused.get();
 	}
 
 	/**
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.builder;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link CDATemplate}.
+ */
+public class CDATemplateTest {
+
+	/**
+	 * Tests, whether references are found between the text fragments and
+	 * dollar signs without a name are kept as text.
+	 */
+	@Test
+	public void testParse() throws IOException {
+		CDATemplate template = new CDATemplate(
+				"<id root=\"$idRoot\"/><title>${title}</title> 5 $ and $1 <x>$a-b_1</x>");
+
+		assertEquals(3, template.getSlotCount());
+		assertEquals("idRoot", template.getSlotName(0));
+		assertEquals("title", template.getSlotName(1));
+		assertEquals("a-b_1", template.getSlotName(2));
+		assertEquals("<id root=\"|\"/><title>|</title> 5 $ and $1 <x>|</x>",
+				render(template));
+	}
+
+	/**
+	 * Tests templates without any or only references.
+	 */
+	@Test
+	public void testParseBorderCases() throws IOException {
+		CDATemplate text = new CDATemplate("<a/>");
+		assertEquals(0, text.getSlotCount());
+		assertEquals("<a/>", render(text));
+
+		CDATemplate slots = new CDATemplate("$a${b}$");
+		assertEquals(2, slots.getSlotCount());
+		assertEquals("||$", render(slots));
+
+		assertEquals(0, new CDATemplate("${unclosed").getSlotCount());
+	}
+
+	/**
+	 * Tests the escaping of slot values.
+	 */
+	@Test
+	public void testWriteEscaped() throws IOException {
+		StringWriter writer = new StringWriter();
+		CDATemplate.writeEscaped("Müller & <Sons> \"Ltd\" 'GmbH'", writer);
+		CDATemplate.writeEscaped(null, writer);
+		CDATemplate.writeEscaped("plain", writer);
+
+		assertEquals(
+				"Müller &amp; &lt;Sons&gt; &quot;Ltd&quot; &apos;GmbH&apos;plain",
+				writer.toString());
+	}
+
+	/**
+	 * Tests, whether the CDA template of CoALA can be loaded.
+	 */
+	@Test
+	public void testLoad() throws IOException {
+		CDATemplate template = CDATemplate.load("CDATemplate.txt");
+
+		assertEquals(30, template.getSlotCount());
+		assertEquals("idRoot", template.getSlotName(0));
+	}
+
+	/*
+	 * Little helping method, rendering a template with | for each slot.
+	 */
+	private static String render(CDATemplate template) throws IOException {
+		StringWriter writer = new StringWriter();
+		for (int i = 0; i < template.getSlotCount(); i++) {
+			template.writeText(i, writer);
+			writer.write('|');
+		}
+		template.writeText(template.getSlotCount(), writer);
+		return writer.toString();
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link ExpiringLruCache}.
+ */
+public class ExpiringLruCacheTest {
+
+	/**
+	 * Tests that cached values are returned and lookups are counted.
+	 */
+	@Test
+	public void testGetCountsHitsAndMisses() {
+		ExpiringLruCache<String, String> cache = new ExpiringLruCache<String, String>(
+				10, 60000L);
+		assertNull(cache.get("a"));
+		cache.put("a", "A");
+		assertEquals("A", cache.get("a"));
+		assertEquals("A", cache.get("a"));
+		assertEquals(2, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(0, cache.getEvictionCount());
+	}
+
+	/**
+	 * Tests that containsKey neither counts hits nor misses and ignores
+	 * expired entries.
+	 */
+	@Test
+	public void testContainsKeyDoesNotCount() throws InterruptedException {
+		ExpiringLruCache<String, String> cache = new ExpiringLruCache<String, String>(
+				10, 60000L);
+		cache.put("a", "A");
+		assertTrue(cache.containsKey("a"));
+		assertFalse(cache.containsKey("b"));
+		assertEquals(0, cache.getHitCount());
+		assertEquals(0, cache.getMissCount());
+
+		cache = new ExpiringLruCache<String, String>(10, 20L);
+		cache.put("a", "A");
+		Thread.sleep(50L);
+		assertFalse(cache.containsKey("a"));
+		assertEquals(0, cache.size());
+		assertEquals(1, cache.getEvictionCount());
+	}
+
+	/**
+	 * Tests that the least recently used entry is evicted if the cache runs
+	 * full.
+	 */
+	@Test
+	public void testLeastRecentlyUsedEntryIsEvicted() {
+		ExpiringLruCache<String, String> cache = new ExpiringLruCache<String, String>(
+				2, 60000L);
+		cache.put("a", "A");
+		cache.put("b", "B");
+		cache.get("a");
+		cache.put("c", "C");
+		assertEquals(2, cache.size());
+		assertNull(cache.get("b"));
+		assertEquals("A", cache.get("a"));
+		assertEquals("C", cache.get("c"));
+		assertEquals(1, cache.getEvictionCount());
+	}
+
+	/**
+	 * Tests that expired entries are not returned anymore.
+	 */
+	@Test
+	public void testExpiredEntryIsEvicted() throws InterruptedException {
+		ExpiringLruCache<String, String> cache = new ExpiringLruCache<String, String>(
+				10, 20L);
+		cache.put("a", "A");
+		Thread.sleep(50L);
+		assertNull(cache.get("a"));
+		assertEquals(0, cache.size());
+		assertEquals(1, cache.getEvictionCount());
+	}
+
+	/**
+	 * Tests that removed entries are not returned anymore.
+	 */
+	@Test
+	public void testRemove() {
+		ExpiringLruCache<String, String> cache = new ExpiringLruCache<String, String>(
+				10, 60000L);
+		cache.put("a", "A");
+		assertEquals("A", cache.remove("a"));
+		assertNull(cache.remove("a"));
+		assertNull(cache.get("a"));
+		assertTrue(cache.size() == 0);
+	}
+
+	/**
+	 * Tests that least recently used entries are evicted while the total
+	 * weight exceeds the budget and values heavier than the budget are not
+	 * cached at all.
+	 */
+	@Test
+	public void testEntriesAreEvictedByWeight() {
+		ExpiringLruCache<String, String> cache = new ExpiringLruCache<String, String>(
+				10, 60000L, 10L, new Weigher<String>() {
+					public long weigh(String value) {
+						return value.length();
+					}
+				});
+		cache.put("a", "AAAA");
+		cache.put("b", "BBBB");
+		cache.get("a");
+		cache.put("c", "CCCC");
+		assertEquals(8, cache.getWeight());
+		assertNull(cache.get("b"));
+		assertEquals("AAAA", cache.get("a"));
+		assertEquals(1, cache.getEvictionCount());
+
+		cache.put("a", "AA");
+		assertEquals(6, cache.getWeight());
+		cache.put("d", "DDDDDDDDDDD");
+		assertNull(cache.get("d"));
+		assertEquals(6, cache.getWeight());
+		cache.remove("c");
+		assertEquals(2, cache.getWeight());
+	}
+
+	/**
+	 * Tests that a cache without capacity cannot be created.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidSize() {
+		new ExpiringLruCache<String, String>(0, 60000L);
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.converter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.activation.DataHandler;
+import javax.activation.DataSource;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link DocumentContentReader}.
+ */
+public class DocumentContentReaderTest {
+
+	private static final String CDA = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\r\n"
+			+ "<ClinicalDocument xmlns=\"urn:hl7-org:v3\">\r\n"
+			+ "<title>Einwilligungserkl\u00e4rung</title>\r\n</ClinicalDocument>";
+
+	/**
+	 * Tests, whether the content is read unchanged with the charset of the
+	 * XML declaration and the stream is closed.
+	 */
+	@Test
+	public void testReadWithDeclaredEncoding() throws IOException {
+		TestDataSource source = new TestDataSource(
+				CDA.getBytes("ISO-8859-1"), "text/xml");
+
+		String xml = new DocumentContentReader(1024).read(new DataHandler(
+				source));
+
+		assertEquals(CDA, xml);
+		assertTrue(source.closed);
+	}
+
+	/**
+	 * Tests, whether the charset of the content type and a byte order mark
+	 * take precedence over the XML declaration.
+	 */
+	@Test
+	public void testReadWithContentTypeAndByteOrderMark() throws IOException {
+		DocumentContentReader reader = new DocumentContentReader(1024);
+		String utf8 = CDA.replace("ISO-8859-1", "UTF-8");
+
+		assertEquals(CDA, reader.read(new DataHandler(new TestDataSource(CDA
+				.getBytes("UTF-8"), "text/xml; charset=\"UTF-8\""))));
+
+		byte[] bytes = utf8.getBytes("UTF-8");
+		byte[] withBom = new byte[bytes.length + 3];
+		withBom[0] = (byte) 0xEF;
+		withBom[1] = (byte) 0xBB;
+		withBom[2] = (byte) 0xBF;
+		System.arraycopy(bytes, 0, withBom, 3, bytes.length);
+		assertEquals(utf8, reader.read(new DataHandler(new TestDataSource(
+				withBom, null))));
+	}
+
+	/**
+	 * Tests, whether documents larger than the maximum size are rejected and
+	 * documents of exactly the maximum size are not.
+	 */
+	@Test
+	public void testMaxDocumentSize() throws IOException {
+		byte[] bytes = CDA.getBytes("ISO-8859-1");
+
+		assertEquals(CDA, new DocumentContentReader(bytes.length)
+				.read(new DataHandler(new TestDataSource(bytes, null))));
+
+		TestDataSource source = new TestDataSource(bytes, null);
+		try {
+			new DocumentContentReader(bytes.length - 1).read(new DataHandler(
+					source));
+			fail("Oversized document has been read.");
+		} catch (IOException e) {
+			assertTrue(source.closed);
+		}
+	}
+
+	/*
+	 * Data source delivering the given bytes and remembering whether its
+	 * stream has been closed. available() reports nothing to make the reader
+	 * grow its buffer.
+	 */
+	private static class TestDataSource implements DataSource {
+
+		private final byte[] bytes;
+		private final String contentType;
+		private boolean closed;
+
+		TestDataSource(byte[] bytes, String contentType) {
+			this.bytes = bytes;
+			this.contentType = contentType;
+		}
+
+		public InputStream getInputStream() throws IOException {
+			return new ByteArrayInputStream(bytes) {
+				@Override
+				public synchronized int available() {
+					return 0;
+				}
+
+				@Override
+				public void close() throws IOException {
+					closed = true;
+				}
+			};
+		}
+
+		public OutputStream getOutputStream() throws IOException {
+			throw new IOException("read only");
+		}
+
+		public String getContentType() {
+			return contentType;
+		}
+
+		public String getName() {
+			return "cda";
+		}
+	}
+}
@@ -16,17 +16,22 @@
  */
 package org.openehealth.coala.converter;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.Locale;
 import java.util.ResourceBundle;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.openehealth.coala.util.PXSDateCodec;
 import org.openehealth.coala.util.PXSDateConverter;
 import org.springframework.beans.factory.annotation.Autowired;
 
@@ -131,4 +136,94 @@ public class PXSDateConverterTest {
 		assertTrue (s.equals(referenceStringShort));
 	}
 
+	/**
+	 * Tests, whether the codec parses the default patterns exactly like
+	 * {@link SimpleDateFormat} did, including padding and rolling over out of
+	 * range values.
+	 */
+	@Test
+	public void testCodecParseMatchesSimpleDateFormat() throws Exception {
+		SimpleDateFormat sdf = new SimpleDateFormat(longPattern, Locale.GERMAN);
+		String[] dates = { referenceStringLong, referenceStringShort,
+				"201001010000", "19700101", "20111332256161", "00010101000000",
+				"20120229235959" };
+		for (String date : dates) {
+			StringBuilder padded = new StringBuilder(date);
+			while (padded.length() < longPattern.length())
+				padded.append('0');
+			assertEquals(date, sdf.parse(padded.toString()),
+					PXSDateCodec.DEFAULT.parse(date));
+		}
+	}
+
+	/**
+	 * Tests, whether the codec formats the default patterns exactly like
+	 * {@link SimpleDateFormat} does.
+	 */
+	@Test
+	public void testCodecFormatMatchesSimpleDateFormat() {
+		SimpleDateFormat longFormat = new SimpleDateFormat(longPattern);
+		SimpleDateFormat shortFormat = new SimpleDateFormat(shortPattern);
+		Calendar cal = new GregorianCalendar();
+		cal.set(5, Calendar.MARCH, 7, 8, 9, 10);
+		Date[] dates = { new Date(0), new Date(), referenceDateLong,
+				cal.getTime() };
+		for (Date date : dates) {
+			assertEquals(longFormat.format(date),
+					PXSDateCodec.DEFAULT.format(date));
+			assertEquals(shortFormat.format(date),
+					PXSDateCodec.DEFAULT.formatShort(date));
+		}
+	}
+
+	/**
+	 * Tests, whether patterns are configured per codec instance.
+	 */
+	@Test
+	public void testCodecCustomPatterns() {
+		PXSDateCodec codec = new PXSDateCodec("yyyyMMddHHmm", "yyyyMMdd");
+		Date date = codec.parse("201101150336");
+		assertEquals("201101150336", codec.format(date));
+		assertEquals("20110115", codec.formatShort(date));
+		assertEquals("20110115033600", PXSDateCodec.DEFAULT.format(date));
+	}
+
+	/**
+	 * Tests, whether non numeric date strings are rejected.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testCodecRejectsNonNumeric() {
+		PXSDateCodec.DEFAULT.parse("2011O115");
+	}
+
+	/**
+	 * Tests, whether the codec can be shared between threads.
+	 */
+	@Test
+	public void testCodecConcurrentUse() throws Exception {
+		final PXSDateCodec codec = new PXSDateCodec(longPattern, shortPattern);
+		final AtomicInteger failures = new AtomicInteger();
+		Thread[] threads = new Thread[8];
+		for (int t = 0; t < threads.length; t++) {
+			final int offset = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 1000; i++) {
+						String date = String.format("%04d%02d%02d%02d%02d%02d",
+								1900 + (i + offset) % 200, 1 + i % 12,
+								1 + i % 28, i % 24, i % 60, offset);
+						if (!date.equals(codec.format(codec.parse(date))))
+							failures.incrementAndGet();
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(0, failures.get());
+	}
+
 }
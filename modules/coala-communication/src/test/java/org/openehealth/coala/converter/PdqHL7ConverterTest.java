@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.converter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openehealth.coala.domain.Gender;
+import org.openehealth.coala.domain.Patient;
+import org.openehealth.coala.domain.PatientAddress;
+
+/**
+ * Unit test for {@link PdqHL7ConverterImpl#convertPdqToPatients(String)}.
+ */
+public class PdqHL7ConverterTest {
+
+	private static final String AUTHORITY = "2.16.840.1.113883.3.37.4.1.1.2.1.1";
+
+	private static final String HEADER = "MSH|^~\\&|PXS|ReceivingFacility|CoALA|SendingFacility|20110707092808+0200||RSP^K22|4711|P|2.5\r"
+			+ "MSA|AA|6326568982331147264\r"
+			+ "QAK|54152038513763936462005704923487680|OK\r"
+			+ "QPD|Q22^Find Candidates|54152038513763936462005704923487680|@PID.5.1^Hein\r";
+
+	private PdqHL7ConverterImpl converter;
+
+	@Before
+	public void setUp() {
+		converter = new PdqHL7ConverterImpl();
+	}
+
+	/**
+	 * Tests the conversion of a response containing two patients.
+	 */
+	@Test
+	public void testConvertPdqToPatients() {
+		String message = HEADER
+				+ "PID|1||79471^^^Heilbronn&"
+				+ AUTHORITY
+				+ "&ISO||Hein^Hans||19800101|M|||Musterweg 1^^Heilbronn^BW^74081^DE\r"
+				+ "PID|2||79472^^^Heilbronn&"
+				+ AUTHORITY
+				+ "&ISO||Hein^Helga||19820202|F\r";
+
+		List<Patient> patients = converter.convertPdqToPatients(message);
+
+		assertEquals(2, patients.size());
+		Patient hans = patients.get(0);
+		assertEquals("79471", hans.getPatientID());
+		assertEquals(AUTHORITY, hans.getPatientIDAssigningAuthorityUniversalId());
+		assertEquals("Hans", hans.getGivenName());
+		assertEquals("Hein", hans.getLastName());
+		assertEquals(converter.stringToDate("19800101"), hans.getBirthdate());
+		assertEquals(Gender.MALE.toString(), hans.getSex());
+		PatientAddress address = hans.getAddress();
+		assertEquals("Musterweg 1", address.getStreetAddress());
+		assertEquals("", address.getOtherDesignation());
+		assertEquals("Heilbronn", address.getCity());
+		assertEquals("BW", address.getStateOrProvince());
+		assertEquals("74081", address.getZipOrPostalCode());
+		assertEquals("DE", address.getCountry());
+
+		Patient helga = patients.get(1);
+		assertEquals("79472", helga.getPatientID());
+		assertEquals("Helga", helga.getGivenName());
+		assertEquals(Gender.FEMALE.toString(), helga.getSex());
+		assertEquals("", helga.getAddress().getCity());
+	}
+
+	/**
+	 * Tests, whether only the first repetition of a field is used and escaped
+	 * delimiters are resolved.
+	 */
+	@Test
+	public void testConvertPdqToPatientsWithRepetitionsAndEscapes() {
+		String message = HEADER + "PID|1||79471^^^Heilbronn&" + AUTHORITY
+				+ "&ISO~0815^^^Other&1.2.3&ISO||Hein\\S\\Meier^Hans~Alias^Al"
+				+ "||19800101|M|||Am Markt 1\\T\\3^^Heilbronn~Old Street^^Old City\r";
+
+		List<Patient> patients = converter.convertPdqToPatients(message);
+
+		assertEquals(1, patients.size());
+		Patient hans = patients.get(0);
+		assertEquals("79471", hans.getPatientID());
+		assertEquals(AUTHORITY, hans.getPatientIDAssigningAuthorityUniversalId());
+		assertEquals("Hein^Meier", hans.getLastName());
+		assertEquals("Hans", hans.getGivenName());
+		assertEquals("Am Markt 1&3", hans.getAddress().getStreetAddress());
+		assertEquals("Heilbronn", hans.getAddress().getCity());
+	}
+
+	/**
+	 * Tests, whether the delimiters defined in the MSH segment are respected.
+	 */
+	@Test
+	public void testConvertPdqToPatientsWithCustomDelimiters() {
+		String message = "MSH#*~\\$#PXS#ReceivingFacility#CoALA#SendingFacility#20110707092808##RSP*K22#4711#P#2.5\n"
+				+ "PID#1##79471***Heilbronn$" + AUTHORITY
+				+ "$ISO##Hein*Hans|Maria##19800101#M###Musterweg 1**Heilbronn\n";
+
+		List<Patient> patients = converter.convertPdqToPatients(message);
+
+		assertEquals(1, patients.size());
+		Patient hans = patients.get(0);
+		assertEquals("79471", hans.getPatientID());
+		assertEquals(AUTHORITY, hans.getPatientIDAssigningAuthorityUniversalId());
+		assertEquals("Hans|Maria", hans.getGivenName());
+		assertEquals("Heilbronn", hans.getAddress().getCity());
+	}
+
+	/**
+	 * Tests, whether responses without PID segments or no response at all
+	 * result in an empty list.
+	 */
+	@Test
+	public void testConvertPdqToPatientsWithoutPatients() {
+		assertTrue(converter.convertPdqToPatients(HEADER).isEmpty());
+		assertTrue(converter.convertPdqToPatients(null).isEmpty());
+	}
+}
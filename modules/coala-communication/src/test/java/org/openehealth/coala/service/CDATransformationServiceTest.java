@@ -16,6 +16,7 @@
  */
 package org.openehealth.coala.service;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -23,6 +24,7 @@ import java.util.Date;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.openehealth.coala.builder.CDABuilder;
 import org.openehealth.coala.builder.DocumentEntryBuilder;
 import org.openehealth.coala.domain.CoalaAuthor;
 import org.openehealth.coala.domain.Gender;
@@ -68,6 +70,8 @@ public class CDATransformationServiceTest {
 	@Autowired
 	private DocumentEntryBuilder documentEntryBuilder;
 	@Autowired
+	private CDABuilder cdaBuilder;
+	@Autowired
 	private PXSDateConverter pxsDateConverter;
 
 	/**
@@ -132,6 +136,49 @@ public class CDATransformationServiceTest {
 				html.contains(theDocumentEntry.getTitle().getValue()));
 	}
 
+	/**
+	 * Tests, whether a consent rendered before is served from the HTML cache
+	 * and an equal, but not identical description of the consent hits the
+	 * same entry, while a patient with another address does not.
+	 * 
+	 * @throws CdaXmlTransformerException
+	 *             thrown when XML transformation fails
+	 */
+	@Test
+	public final void testTransformToHTMLIsCached()
+			throws CdaXmlTransformerException {
+		CDATransformationServiceImpl cdaService = new CDATransformationServiceImpl();
+		cdaService.setNameOfXSLTSheet("text_xml-urn_ihe_iti_bppc_2007.xsl");
+		cdaService.setDocumentEntryBuilder(documentEntryBuilder);
+		cdaService.setCdaBuilder(cdaBuilder);
+
+		thePatient = new Patient((thePatientID++).toString(),
+				HL7_PatientIdAssigningAuthorityUniversalId, "Michael",
+				"Mustermann", theCurrentDate, Gender.MALE, new PatientAddress());
+		String html = cdaService.transformToHTML(thePatient, theValidFromDate,
+				theValidToDate, PatientConsentPolicy.ONE, theCoalaAuthor);
+		String cachedHtml = cdaService.transformToHTML(thePatient,
+				new Date(theValidFromDate.getTime()),
+				new Date(theValidToDate.getTime()), PatientConsentPolicy.ONE,
+				new CoalaAuthor("Dr", "Steel", "Hammer"));
+
+		assertEquals(html, cachedHtml);
+		assertEquals(1, cdaService.getHtmlCache().getHitCount());
+		assertEquals(1, cdaService.getHtmlCache().size());
+
+		cdaService.transformToHTML(thePatient, theValidFromDate,
+				theValidToDate, PatientConsentPolicy.TWO, theCoalaAuthor);
+		assertEquals(2, cdaService.getHtmlCache().size());
+
+		Patient movedPatient = new Patient(thePatient.getPatientID(),
+				HL7_PatientIdAssigningAuthorityUniversalId, "Michael",
+				"Mustermann", theCurrentDate, Gender.MALE, new PatientAddress(
+						"Hauptstrasse 1", "Heilbronn", "74072"));
+		cdaService.transformToHTML(movedPatient, theValidFromDate,
+				theValidToDate, PatientConsentPolicy.ONE, theCoalaAuthor);
+		assertEquals(3, cdaService.getHtmlCache().size());
+	}
+
 	/**
 	 * Test method for
 	 * {@link org.openehealth.coala.service.CDATransformationServiceImpl#transformToValidPatientConsent(org.openehealth.coala.domain.Patient, org.openehealth.coala.domain.PatientConsentPolicy, org.openehealth.coala.domain.CoalaAuthor, org.openehealth.ipf.commons.ihe.xds.core.metadata.DocumentEntry)}
@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openehealth.coala.domain.CoalaAuthor;
+import org.openehealth.coala.domain.ConsentFetchMode;
+import org.openehealth.coala.domain.ConsentSortParameter;
+import org.openehealth.coala.domain.FindPatientConsentResult;
+import org.openehealth.coala.domain.Gender;
+import org.openehealth.coala.domain.Patient;
+import org.openehealth.coala.domain.PatientAddress;
+import org.openehealth.coala.domain.PatientConsent;
+import org.openehealth.coala.domain.PatientConsentPolicy;
+import org.openehealth.coala.interfacing.ConsentCreationService;
+
+/**
+ * Unit test for {@link ConsentPrefetchServiceImpl}.
+ */
+public class ConsentPrefetchServiceTest {
+
+	private static final String AUTHORITY = "2.16.840.1.113883.3.37.4.1.1.2.1.1";
+
+	private ConsentPrefetchServiceImpl prefetchService;
+	private CountingConsentService consentService;
+
+	@Before
+	public void setUp() {
+		consentService = new CountingConsentService();
+		prefetchService = new ConsentPrefetchServiceImpl();
+		prefetchService.setConsentCreationService(consentService);
+		prefetchService.setMaxPatients(2);
+	}
+
+	@After
+	public void tearDown() {
+		prefetchService.shutdown();
+	}
+
+	/**
+	 * Tests that prefetched consents are handed out once and counted as hit.
+	 */
+	@Test
+	public void testTakePrefetchedConsents() {
+		Patient patient = createPatient("79471");
+		prefetchService.prefetchConsents(patient);
+		prefetchService.prefetchConsents(patient);
+
+		FindPatientConsentResult result = prefetchService
+				.takePrefetchedConsents(patient,
+						ConsentSortParameter.CREATION_DATE_OLDEST_FIRST);
+		assertNotNull(result);
+		assertEquals(ConsentSortParameter.CREATION_DATE_OLDEST_FIRST,
+				result.getSortBy());
+		assertNull(prefetchService.takePrefetchedConsents(patient, null));
+
+		assertEquals(1, consentService.calls.get());
+		assertEquals(1, prefetchService.getPrefetchCount());
+		assertEquals(1, prefetchService.getHitCount());
+		assertEquals(1, prefetchService.getMissCount());
+		assertEquals(0, prefetchService.getWastedCount());
+		assertEquals(0.5d, prefetchService.getHitRate(), 0.0001d);
+	}
+
+	/**
+	 * Tests that only small PDQ results are prefetched and unused prefetches
+	 * count as wasted once they are dropped.
+	 */
+	@Test
+	public void testPrefetchOnlySmallResults() {
+		Patient first = createPatient("79471");
+		Patient second = createPatient("79472");
+		Patient third = createPatient("79473");
+		prefetchService.prefetchConsents(Arrays.asList(first, second, third));
+		assertEquals(0, prefetchService.getPrefetchCount());
+
+		prefetchService.prefetchConsents(Arrays.asList(first, second));
+		assertEquals(2, prefetchService.getPrefetchCount());
+		assertNotNull(prefetchService.takePrefetchedConsents(first, null));
+		assertEquals(0, prefetchService.getWastedCount());
+
+		prefetchService.configureCache(10, 60000L);
+		assertEquals(1, prefetchService.getWastedCount());
+		assertNull(prefetchService.takePrefetchedConsents(second, null));
+	}
+
+	/**
+	 * Tests that invalidated prefetches are not handed out anymore, count as
+	 * wasted and the consents can be prefetched anew.
+	 */
+	@Test
+	public void testInvalidatePrefetchedConsents() {
+		Patient patient = createPatient("79471");
+		Patient other = createPatient("79472");
+		prefetchService.prefetchConsents(patient);
+		prefetchService.prefetchConsents(other);
+
+		prefetchService.invalidatePrefetchedConsents(patient);
+		assertNull(prefetchService.takePrefetchedConsents(patient, null));
+		assertEquals(1, prefetchService.getWastedCount());
+
+		prefetchService.prefetchConsents(patient);
+		assertEquals(3, prefetchService.getPrefetchCount());
+		assertNotNull(prefetchService.takePrefetchedConsents(patient, null));
+		assertNotNull(prefetchService.takePrefetchedConsents(other, null));
+	}
+
+	/**
+	 * Tests that nothing is prefetched or handed out while prefetching is
+	 * disabled.
+	 */
+	@Test
+	public void testDisabledPrefetch() {
+		Patient patient = createPatient("79471");
+		prefetchService.setEnabled(false);
+		prefetchService.prefetchConsents(patient);
+		assertNull(prefetchService.takePrefetchedConsents(patient, null));
+		assertEquals(0, consentService.calls.get());
+		assertEquals(0, prefetchService.getPrefetchCount());
+	}
+
+	/*
+	 * Little helping method, creating a patient with the given ID.
+	 */
+	private Patient createPatient(String patientID) {
+		return new Patient(patientID, AUTHORITY, "Max", "Mustermann",
+				new Date(), Gender.MALE, new PatientAddress());
+	}
+
+	/*
+	 * Consent service answering with empty results and counting the
+	 * requests.
+	 */
+	private static class CountingConsentService implements
+			ConsentCreationService {
+
+		private final AtomicInteger calls = new AtomicInteger();
+
+		@Override
+		public FindPatientConsentResult getPatientConsents(Patient patient,
+				ConsentSortParameter sortBy, ConsentFetchMode fetchMode) {
+			calls.incrementAndGet();
+			FindPatientConsentResult result = new FindPatientConsentResult(
+					patient, sortBy);
+			result.lock();
+			return result;
+		}
+
+		@Override
+		public FindPatientConsentResult getPatientConsents(Patient patient,
+				ConsentSortParameter sortBy) {
+			return getPatientConsents(patient, sortBy, null);
+		}
+
+		@Override
+		public void createPatientConsent(Patient patient, Date validFrom,
+				Date validUntil, PatientConsentPolicy policy,
+				CoalaAuthor author) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void replacePatientConsent(Patient patient, Date validFrom,
+				Date validUntil, PatientConsentPolicy policy,
+				CoalaAuthor author, PatientConsent oldConsent) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void replaceAllPatientConsents(Patient patient,
+				Date validFrom, Date validUntil, PatientConsentPolicy policy,
+				CoalaAuthor author) {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
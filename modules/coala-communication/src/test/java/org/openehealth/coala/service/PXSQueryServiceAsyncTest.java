@@ -0,0 +1,397 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.service;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.isA;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.easymock.IAnswer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openehealth.coala.builder.DocumentEntryBuilder;
+import org.openehealth.coala.communication.PdqMessageBuilder;
+import org.openehealth.coala.converter.PdqHL7Converter;
+import org.openehealth.coala.domain.CoalaAuthor;
+import org.openehealth.coala.domain.ConsentFetchMode;
+import org.openehealth.coala.domain.ConsentSortParameter;
+import org.openehealth.coala.domain.FindPatientConsentResult;
+import org.openehealth.coala.domain.FindPatientQuery;
+import org.openehealth.coala.domain.FindPatientResult;
+import org.openehealth.coala.domain.Gender;
+import org.openehealth.coala.domain.Patient;
+import org.openehealth.coala.domain.PatientAddress;
+import org.openehealth.coala.domain.PatientConsentPolicy;
+import org.openehealth.coala.domain.PatientSortParameter;
+import org.openehealth.coala.exception.PDQRequestFailedException;
+import org.openehealth.coala.exception.XDSRequestFailedException;
+import org.openehealth.coala.interfacing.AsyncResultListener;
+import org.openehealth.coala.interfacing.CDATransformationService;
+import org.openehealth.coala.interfacing.ConsentPrefetchService;
+import org.openehealth.coala.pdq.PDQGate;
+import org.openehealth.coala.util.CdaDataSourceImpl;
+import org.openehealth.coala.util.PXSDateConverterImpl;
+import org.openehealth.coala.xds.XDSGate;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.Document;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.DocumentEntry;
+
+/**
+ * Unit test for {@link PXSQueryServiceImpl}, checking that the asynchronous
+ * service methods hand out results and failures through their Futures or
+ * listeners and never block the calling thread.
+ */
+public class PXSQueryServiceAsyncTest {
+
+	private static final String AUTHORITY = "2.16.840.1.113883.3.37.4.1.1.2.1.1";
+	private static final String PDQ_REQUEST = "HL7StringContainingQueryParameter";
+	private static final String PDQ_RESPONSE = "HL7StringContainingResult";
+
+	private PXSQueryServiceImpl service;
+	private PdqMessageBuilder pdqMessageBuilder;
+	private PDQGate pdqGate;
+	private PdqHL7Converter pdqConverter;
+	private XDSGate xdsGate;
+	private Patient patient;
+
+	@Before
+	public void setUp() {
+		pdqMessageBuilder = createMock(PdqMessageBuilder.class);
+		pdqGate = createMock(PDQGate.class);
+		pdqConverter = createMock(PdqHL7Converter.class);
+		xdsGate = createMock(XDSGate.class);
+		service = new PXSQueryServiceImpl();
+		service.setPdqMessageBuilder(pdqMessageBuilder);
+		service.setPdqGate(pdqGate);
+		service.setPdqConverter(pdqConverter);
+		service.setXdsGate(xdsGate);
+		patient = new Patient("79471", AUTHORITY, "Max", "Mustermann",
+				new Date(), Gender.MALE, new PatientAddress());
+	}
+
+	@After
+	public void tearDown() {
+		service.shutdown();
+	}
+
+	/**
+	 * Tests, whether the patients found are handed out by the Future.
+	 */
+	@Test
+	public void testFindPatientsAsync() throws Exception {
+		expect(pdqMessageBuilder.buildPdqRequest("", "", "Mue*", null))
+				.andReturn(PDQ_REQUEST);
+		expect(pdqGate.requestPatients(PDQ_REQUEST)).andReturn(PDQ_RESPONSE);
+		expect(pdqConverter.convertPdqToPatients(PDQ_RESPONSE)).andReturn(
+				new ArrayList<Patient>(Collections.singletonList(patient)));
+		replay(pdqMessageBuilder, pdqGate, pdqConverter);
+
+		FindPatientResult result = service.findPatientsAsync(
+				new FindPatientQuery("", "", "Mue*", null),
+				PatientSortParameter.getDefault()).get(5, TimeUnit.SECONDS);
+		assertEquals(1, result.getPatients().size());
+		assertEquals(patient, result.getPatients().get(0));
+		verify(pdqMessageBuilder, pdqGate, pdqConverter);
+	}
+
+	/**
+	 * Tests, whether a failed query is reported as cause of the
+	 * ExecutionException.
+	 */
+	@Test
+	public void testFindPatientsAsyncFailure() throws Exception {
+		PDQRequestFailedException failure = new PDQRequestFailedException(
+				"MPI not available");
+		expect(pdqMessageBuilder.buildPdqRequest("", "", "Mue*", null))
+				.andReturn(PDQ_REQUEST);
+		expect(pdqGate.requestPatients(PDQ_REQUEST)).andThrow(failure);
+		replay(pdqMessageBuilder, pdqGate, pdqConverter);
+
+		Future<FindPatientResult> result = service.findPatientsAsync(
+				new FindPatientQuery("", "", "Mue*", null),
+				PatientSortParameter.getDefault());
+		assertSame(failure, causeOf(result));
+	}
+
+	/**
+	 * Tests, whether the listener of a query is notified of the patients found
+	 * and of a failed query.
+	 */
+	@Test
+	public void testFindPatientsAsyncListener() throws Exception {
+		PDQRequestFailedException failure = new PDQRequestFailedException(
+				"MPI not available");
+		expect(pdqMessageBuilder.buildPdqRequest("", "", "Mue*", null))
+				.andReturn(PDQ_REQUEST).times(2);
+		expect(pdqGate.requestPatients(PDQ_REQUEST)).andReturn(PDQ_RESPONSE);
+		expect(pdqGate.requestPatients(PDQ_REQUEST)).andThrow(failure);
+		expect(pdqConverter.convertPdqToPatients(PDQ_RESPONSE)).andReturn(
+				new ArrayList<Patient>(Collections.singletonList(patient)));
+		replay(pdqMessageBuilder, pdqGate, pdqConverter);
+		FindPatientQuery query = new FindPatientQuery("", "", "Mue*", null);
+
+		RecordingListener<FindPatientResult> listener = new RecordingListener<FindPatientResult>();
+		service.findPatientsAsync(query, PatientSortParameter.getDefault(),
+				listener);
+		assertTrue(listener.notified.await(5, TimeUnit.SECONDS));
+		assertEquals(patient, listener.result.getPatients().get(0));
+		assertNull(listener.cause);
+
+		service.getPatientCache().clear();
+		listener = new RecordingListener<FindPatientResult>();
+		service.findPatientsAsync(query, PatientSortParameter.getDefault(),
+				listener);
+		assertTrue(listener.notified.await(5, TimeUnit.SECONDS));
+		assertNull(listener.result);
+		assertSame(failure, listener.cause);
+		verify(pdqMessageBuilder, pdqGate, pdqConverter);
+	}
+
+	/**
+	 * Tests, whether the consents found are handed out by the Future and a
+	 * failed registry query is reported as cause of the ExecutionException.
+	 */
+	@Test
+	public void testGetPatientConsentsAsync() throws Exception {
+		XDSRequestFailedException failure = new XDSRequestFailedException(
+				"Registry not available");
+		expect(
+				xdsGate.requestConsents(eq("79471"), isA(List.class),
+						eq(ConsentSortParameter.START_DATE_NEWEST_FIRST)))
+				.andReturn(new ArrayList<DocumentEntry>());
+		expect(
+				xdsGate.requestConsents(eq("79471"), isA(List.class),
+						eq(ConsentSortParameter.END_DATE_OLDEST_FIRST)))
+				.andThrow(failure);
+		replay(xdsGate);
+
+		FindPatientConsentResult result = service.getPatientConsentsAsync(
+				patient, ConsentSortParameter.START_DATE_NEWEST_FIRST,
+				ConsentFetchMode.FULL).get(5, TimeUnit.SECONDS);
+		assertEquals(patient, result.getPatient());
+		assertTrue(result.getPatientConsents().isEmpty());
+
+		service.getConsentCache().clear();
+		assertSame(failure, causeOf(service.getPatientConsentsAsync(patient,
+				ConsentSortParameter.END_DATE_OLDEST_FIRST,
+				ConsentFetchMode.FULL)));
+		verify(xdsGate);
+	}
+
+	/**
+	 * Tests, whether a created consent is registered, the consents prefetched
+	 * for the patient are dropped and invalid parameters are reported as cause
+	 * of the ExecutionException.
+	 */
+	@Test
+	public void testCreatePatientConsentAsync() throws Exception {
+		DocumentEntryBuilder documentEntryBuilder = new DocumentEntryBuilder();
+		documentEntryBuilder.setPxsDateConverter(new PXSDateConverterImpl());
+		service.setDocumentEntryBuilder(documentEntryBuilder);
+		CDATransformationService cdaService = createMock(CDATransformationService.class);
+		service.setCdaService(cdaService);
+		expect(
+				cdaService.createValidPatientConsentDataSource(eq(patient),
+						eq(PatientConsentPolicy.ONE), isA(CoalaAuthor.class),
+						isA(DocumentEntry.class))).andReturn(
+				new CdaDataSourceImpl("<ClinicalDocument/>"));
+		expect(xdsGate.registerNewConsent(isA(Document.class), eq(false)))
+				.andReturn("1.2.3.4");
+		ConsentPrefetchService prefetchService = createMock(ConsentPrefetchService.class);
+		service.setConsentPrefetchService(prefetchService);
+		prefetchService.invalidatePrefetchedConsents(patient);
+		expectLastCall();
+		replay(cdaService, xdsGate, prefetchService);
+
+		Date validUntil = new Date(System.currentTimeMillis() + 86400000L);
+		CoalaAuthor author = new CoalaAuthor("Dr.", "Hugo", "Hausarzt");
+		assertNull(service.createPatientConsentAsync(patient, new Date(),
+				validUntil, PatientConsentPolicy.ONE, author).get(5,
+				TimeUnit.SECONDS));
+		verify(cdaService, xdsGate, prefetchService);
+
+		Throwable cause = causeOf(service.createPatientConsentAsync(patient,
+				null, validUntil, PatientConsentPolicy.ONE, author));
+		assertTrue(cause instanceof IllegalArgumentException);
+	}
+
+	/**
+	 * Tests, whether a consent request which was running while a consent was
+	 * registered for the patient does not cache its outdated result.
+	 */
+	@Test
+	public void testNoOutdatedConsentsCached() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		DocumentEntryBuilder documentEntryBuilder = new DocumentEntryBuilder();
+		documentEntryBuilder.setPxsDateConverter(new PXSDateConverterImpl());
+		service.setDocumentEntryBuilder(documentEntryBuilder);
+		CDATransformationService cdaService = createMock(CDATransformationService.class);
+		service.setCdaService(cdaService);
+		expect(
+				cdaService.createValidPatientConsentDataSource(eq(patient),
+						eq(PatientConsentPolicy.ONE), isA(CoalaAuthor.class),
+						isA(DocumentEntry.class))).andReturn(
+				new CdaDataSourceImpl("<ClinicalDocument/>"));
+		expect(
+				xdsGate.requestConsents(eq("79471"), isA(List.class),
+						eq(ConsentSortParameter.START_DATE_NEWEST_FIRST)))
+				.andAnswer(new IAnswer<List<DocumentEntry>>() {
+					@Override
+					public List<DocumentEntry> answer() throws Throwable {
+						started.countDown();
+						release.await();
+						return new ArrayList<DocumentEntry>();
+					}
+				});
+		expect(xdsGate.registerNewConsent(isA(Document.class), eq(false)))
+				.andReturn("1.2.3.4");
+		expect(
+				xdsGate.requestConsents(eq("79471"), isA(List.class),
+						eq(ConsentSortParameter.START_DATE_NEWEST_FIRST)))
+				.andReturn(new ArrayList<DocumentEntry>());
+		replay(cdaService, xdsGate);
+
+		Future<FindPatientConsentResult> outdated = service
+				.getPatientConsentsAsync(patient,
+						ConsentSortParameter.START_DATE_NEWEST_FIRST,
+						ConsentFetchMode.FULL);
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		service.createPatientConsent(patient, new Date(), new Date(System
+				.currentTimeMillis() + 86400000L), PatientConsentPolicy.ONE,
+				new CoalaAuthor("Dr.", "Hugo", "Hausarzt"));
+		release.countDown();
+		outdated.get(5, TimeUnit.SECONDS);
+		assertEquals(0, service.getConsentCache().size());
+
+		service.getPatientConsents(patient,
+				ConsentSortParameter.START_DATE_NEWEST_FIRST,
+				ConsentFetchMode.FULL);
+		assertEquals(1, service.getConsentCache().size());
+		verify(cdaService, xdsGate);
+	}
+
+	/**
+	 * Tests, whether requests exceeding the threads and the queue are rejected
+	 * at once by a failed Future instead of being run by the calling thread,
+	 * and whether the accepted requests complete.
+	 */
+	@Test
+	public void testSaturation() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		expect(pdqMessageBuilder.buildPdqRequest("", "", "Mue*", null))
+				.andReturn(PDQ_REQUEST).anyTimes();
+		expect(pdqGate.requestPatients(PDQ_REQUEST)).andAnswer(
+				new IAnswer<String>() {
+					@Override
+					public String answer() throws Throwable {
+						started.countDown();
+						release.await();
+						return PDQ_RESPONSE;
+					}
+				}).anyTimes();
+		expect(pdqConverter.convertPdqToPatients(PDQ_RESPONSE)).andReturn(
+				new ArrayList<Patient>(Collections.singletonList(patient)))
+				.anyTimes();
+		replay(pdqMessageBuilder, pdqGate, pdqConverter);
+		service.setAsyncPoolSize(1);
+		FindPatientQuery query = new FindPatientQuery("", "", "Mue*", null);
+		PatientSortParameter sortBy = PatientSortParameter.getDefault();
+
+		List<Future<FindPatientResult>> accepted = new ArrayList<Future<FindPatientResult>>();
+		accepted.add(service.findPatientsAsync(query, sortBy));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		for (int i = 0; i < PXSQueryServiceImpl.ASYNC_QUEUE_CAPACITY_PER_THREAD; i++) {
+			accepted.add(service.findPatientsAsync(query, sortBy));
+		}
+
+		// the calling thread would block on the latch, if it ran the request
+		Future<FindPatientResult> rejected = service.findPatientsAsync(query,
+				sortBy);
+		assertTrue(rejected.isDone());
+		assertTrue(causeOf(rejected) instanceof RejectedExecutionException);
+
+		// the listener of a rejected request is notified at once
+		RecordingListener<FindPatientResult> listener = new RecordingListener<FindPatientResult>();
+		service.findPatientsAsync(query, sortBy, listener);
+		assertEquals(0, listener.notified.getCount());
+		assertTrue(listener.cause instanceof RejectedExecutionException);
+
+		release.countDown();
+		for (Future<FindPatientResult> result : accepted) {
+			assertEquals(1, result.get(5, TimeUnit.SECONDS).getPatients()
+					.size());
+		}
+	}
+
+	/*
+	 * Little helping method, returning the cause of the failure of a
+	 * request.
+	 */
+	private static Throwable causeOf(Future<?> result) throws Exception {
+		try {
+			result.get(5, TimeUnit.SECONDS);
+		} catch (ExecutionException e) {
+			return e.getCause();
+		}
+		fail("request did not fail");
+		return null;
+	}
+
+	/*
+	 * Listener recording the outcome of a request.
+	 */
+	private static class RecordingListener<T> implements
+			AsyncResultListener<T> {
+
+		private final CountDownLatch notified = new CountDownLatch(1);
+		private volatile T result;
+		private volatile Throwable cause;
+
+		@Override
+		public void onSuccess(T result) {
+			this.result = result;
+			notified.countDown();
+		}
+
+		@Override
+		public void onFailure(Throwable cause) {
+			this.cause = cause;
+			notified.countDown();
+		}
+	}
+}
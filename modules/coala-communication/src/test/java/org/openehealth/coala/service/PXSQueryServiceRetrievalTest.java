@@ -0,0 +1,305 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openehealth.coala.converter.ConsentConverter;
+import org.openehealth.coala.domain.CoalaAuthor;
+import org.openehealth.coala.domain.ConsentFetchMode;
+import org.openehealth.coala.domain.ConsentSortParameter;
+import org.openehealth.coala.domain.FindPatientConsentResult;
+import org.openehealth.coala.domain.Gender;
+import org.openehealth.coala.domain.Patient;
+import org.openehealth.coala.domain.PatientAddress;
+import org.openehealth.coala.domain.PatientConsent;
+import org.openehealth.coala.domain.PatientConsentPolicy;
+import org.openehealth.coala.exception.XDSRequestFailedException;
+import org.openehealth.coala.xds.XDSGate;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.AvailabilityStatus;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.Document;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.DocumentEntry;
+import org.openehealth.ipf.commons.ihe.xds.core.requests.RetrieveDocument;
+import org.openehealth.ipf.commons.ihe.xds.core.responses.RetrievedDocument;
+
+/**
+ * Unit test for {@link PXSQueryServiceImpl}, checking the concurrent ITI-43
+ * retrievals of {@link PXSQueryServiceImpl#getPatientConsents(Patient,
+ * ConsentSortParameter, ConsentFetchMode)}: the order of the consents, the
+ * timeout of the request as a whole, the propagation of failures and the
+ * rejection of retrievals by a saturated pool.
+ */
+public class PXSQueryServiceRetrievalTest {
+
+	private static final String AUTHORITY = "2.16.840.1.113883.3.37.4.1.1.2.1.1";
+
+	private PXSQueryServiceImpl service;
+	private StubXdsGate xdsGate;
+	private Patient patient;
+
+	@Before
+	public void setUp() {
+		xdsGate = new StubXdsGate();
+		service = new PXSQueryServiceImpl();
+		service.setXdsGate(xdsGate);
+		service.setConsentConverter(new StubConsentConverter());
+		patient = new Patient("79471", AUTHORITY, "Max", "Mustermann",
+				new Date(), Gender.MALE, new PatientAddress());
+	}
+
+	@After
+	public void tearDown() {
+		service.shutdown();
+	}
+
+	/**
+	 * Tests, whether the consents keep the order of the registry response,
+	 * although the later batches are retrieved first.
+	 */
+	@Test
+	public void testRetrievalOrder() {
+		service.setRetrievalPoolSize(4);
+		for (int i = 1; i <= 8; i++) {
+			xdsGate.add("1.2.3.9." + i, (8 - i) * 20L);
+		}
+
+		List<PatientConsent> consents = getPatientConsents();
+		assertEquals(8, consents.size());
+		for (int i = 1; i <= 8; i++) {
+			assertEquals("1.2.3.9." + i, consents.get(i - 1).getCda());
+		}
+		assertEquals(4, xdsGate.retrievals);
+	}
+
+	/**
+	 * Tests, whether the timeout applies to all retrievals of a request
+	 * together: each retrieval on its own finishes within the timeout after
+	 * the previous one, but not within the timeout of the request. The
+	 * pending retrieval has to be cancelled.
+	 */
+	@Test
+	public void testRetrievalTimeout() throws Exception {
+		service.setRetrievalPoolSize(2);
+		service.setRetrievalTimeout(1000);
+		xdsGate.add("1.2.3.9.1", 600L);
+		xdsGate.add("1.2.3.9.2", 1400L);
+
+		long start = System.currentTimeMillis();
+		try {
+			getPatientConsents();
+			fail("XDSRequestFailedException expected");
+		} catch (XDSRequestFailedException e) {
+			assertTrue(System.currentTimeMillis() - start < 1400);
+		}
+		assertTrue(xdsGate.interrupted.await(5, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * Tests, whether a failed retrieval fails the request with its exception
+	 * at once and the pending retrieval is cancelled.
+	 */
+	@Test
+	public void testRetrievalFailure() throws Exception {
+		service.setRetrievalPoolSize(2);
+		XDSRequestFailedException failure = new XDSRequestFailedException(
+				"Repository not available");
+		xdsGate.add("1.2.3.9.1", 0L);
+		xdsGate.add("1.2.3.9.2", 60000L);
+		xdsGate.failures.put("1.2.3.9.1", failure);
+
+		try {
+			getPatientConsents();
+			fail("XDSRequestFailedException expected");
+		} catch (XDSRequestFailedException e) {
+			assertSame(failure, e);
+		}
+		assertTrue(xdsGate.interrupted.await(5, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * Tests, whether a request whose retrieval finds the pool and its queue
+	 * full fails at once, instead of retrieving the documents in the calling
+	 * thread beyond the reach of the timeout.
+	 */
+	@Test
+	public void testSaturatedRetrievalPool() throws Exception {
+		service.setRetrievalPoolSize(1);
+		service.setRetrievalTimeout(10000);
+		xdsGate.add("1.2.3.9.1", 60000L);
+
+		int pending = 1 + PXSQueryServiceImpl.RETRIEVAL_QUEUE_CAPACITY_PER_THREAD;
+		ExecutorService callers = Executors.newFixedThreadPool(pending);
+		try {
+			for (int i = 0; i < pending; i++) {
+				callers.submit(new Runnable() {
+					@Override
+					public void run() {
+						getPatientConsents();
+					}
+				});
+			}
+			assertTrue(xdsGate.sleeping.await(5, TimeUnit.SECONDS));
+			long waitUntil = System.currentTimeMillis() + 5000;
+			while (service.getQueuedRetrievalCount() < pending - 1
+					&& System.currentTimeMillis() < waitUntil) {
+				Thread.sleep(10);
+			}
+			assertEquals(pending - 1, service.getQueuedRetrievalCount());
+
+			long start = System.currentTimeMillis();
+			try {
+				getPatientConsents();
+				fail("XDSRequestFailedException expected");
+			} catch (XDSRequestFailedException e) {
+				assertTrue(e.getCause() instanceof RejectedExecutionException);
+				assertTrue(System.currentTimeMillis() - start < 1000);
+			}
+			assertEquals(1, xdsGate.retrievals);
+		} finally {
+			callers.shutdownNow();
+		}
+	}
+
+	/*
+	 * Little helping method, requesting the consents of the patient.
+	 */
+	private List<PatientConsent> getPatientConsents() {
+		FindPatientConsentResult result = service.getPatientConsents(patient,
+				ConsentSortParameter.START_DATE_NEWEST_FIRST,
+				ConsentFetchMode.FULL);
+		return result.getPatientConsents();
+	}
+
+	/*
+	 * XDS gate returning the registered entries, whose documents are retrieved
+	 * after the longest delay of a batch.
+	 */
+	private static class StubXdsGate implements XDSGate {
+
+		private final List<DocumentEntry> entries = new ArrayList<DocumentEntry>();
+		private final Map<String, Long> delays = new HashMap<String, Long>();
+		private final Map<String, RuntimeException> failures = new HashMap<String, RuntimeException>();
+		private final CountDownLatch sleeping = new CountDownLatch(1);
+		private final CountDownLatch interrupted = new CountDownLatch(1);
+		private volatile int retrievals;
+
+		private void add(String uniqueId, long delay) {
+			DocumentEntry entry = new DocumentEntry();
+			entry.setUniqueId(uniqueId);
+			entry.setRepositoryUniqueId("1.2.3.4.1");
+			entries.add(entry);
+			delays.put(uniqueId, delay);
+		}
+
+		@Override
+		public List<DocumentEntry> requestConsents(String pid,
+				List<AvailabilityStatus> availabilityStati,
+				ConsentSortParameter sortby) {
+			return new ArrayList<DocumentEntry>(entries);
+		}
+
+		@Override
+		public List<RetrievedDocument> retrieveDocumentSet(
+				DocumentEntry documentEntry) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Map<String, RetrievedDocument> retrieveDocumentSets(
+				List<DocumentEntry> documentEntries) {
+			retrievals++;
+			long delay = 0;
+			for (DocumentEntry entry : documentEntries) {
+				if (failures.containsKey(entry.getUniqueId()))
+					failWhileRunning(failures.get(entry.getUniqueId()));
+				delay = Math.max(delay, delays.get(entry.getUniqueId()));
+			}
+			try {
+				sleeping.countDown();
+				Thread.sleep(delay);
+			} catch (InterruptedException e) {
+				interrupted.countDown();
+				throw new XDSRequestFailedException("Retrieval interrupted.",
+						e);
+			}
+
+			Map<String, RetrievedDocument> documents = new HashMap<String, RetrievedDocument>();
+			for (DocumentEntry entry : documentEntries) {
+				RetrievedDocument document = new RetrievedDocument();
+				document.setRequestData(new RetrieveDocument(entry
+						.getRepositoryUniqueId(), entry.getUniqueId(), null));
+				documents.put(entry.getUniqueId(), document);
+			}
+			return documents;
+		}
+
+		/*
+		 * Little helping method, failing a retrieval once another retrieval
+		 * is running, so it is really stopped by the failure.
+		 */
+		private void failWhileRunning(RuntimeException failure) {
+			try {
+				sleeping.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			throw failure;
+		}
+
+		@Override
+		public String registerNewConsent(Document document,
+				boolean replaceActiveConsents) {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/*
+	 * Converter creating equally ranked consents, whose CDA is the uniqueId of
+	 * their document.
+	 */
+	private static class StubConsentConverter extends ConsentConverter {
+
+		private final Date date = new Date();
+
+		@Override
+		public PatientConsent transformToCoalaConsent(
+				DocumentEntry metadataEntry, RetrievedDocument document,
+				Patient patient) {
+			return new PatientConsent(date, date, PatientConsentPolicy.ONE,
+					patient, false, new CoalaAuthor("Dr.", "Hugo",
+							"Hausarzt"), date, document.getRequestData()
+							.getDocumentUniqueId());
+		}
+	}
+}
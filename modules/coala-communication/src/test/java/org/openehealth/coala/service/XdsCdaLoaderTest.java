@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.service;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.getCurrentArguments;
+import static org.easymock.EasyMock.isA;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import javax.activation.DataHandler;
+
+import org.easymock.IAnswer;
+import org.junit.Before;
+import org.junit.Test;
+import org.openehealth.coala.builder.DocumentEntryBuilder;
+import org.openehealth.coala.converter.ConsentConverter;
+import org.openehealth.coala.domain.CoalaAuthor;
+import org.openehealth.coala.domain.ConsentDocumentReference;
+import org.openehealth.coala.domain.ConsentFetchMode;
+import org.openehealth.coala.domain.ConsentSortParameter;
+import org.openehealth.coala.domain.Gender;
+import org.openehealth.coala.domain.Patient;
+import org.openehealth.coala.domain.PatientAddress;
+import org.openehealth.coala.domain.PatientConsent;
+import org.openehealth.coala.domain.PatientConsentPolicy;
+import org.openehealth.coala.exception.XDSRequestFailedException;
+import org.openehealth.coala.util.CdaDataSourceImpl;
+import org.openehealth.coala.util.PXSDateConverterImpl;
+import org.openehealth.coala.xds.XDSGate;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.DocumentEntry;
+import org.openehealth.ipf.commons.ihe.xds.core.responses.RetrievedDocument;
+
+/**
+ * Unit test for {@link XdsCdaLoader}, checking the retrieval of single
+ * consent documents and the lazy loading of consents requested
+ * {@link ConsentFetchMode#METADATA_ONLY}, also after deserialization.
+ */
+public class XdsCdaLoaderTest {
+
+	private static final String AUTHORITY = "2.16.840.1.113883.3.37.4.1.1.2.1.1";
+	private static final String CDA = "<ClinicalDocument/>";
+
+	private XDSGate xdsGate;
+	private XdsCdaLoader cdaLoader;
+	private Patient patient;
+
+	@Before
+	public void setUp() {
+		xdsGate = createMock(XDSGate.class);
+		ConsentConverter consentConverter = new ConsentConverter();
+		consentConverter.setPxsDateConverter(new PXSDateConverterImpl());
+		cdaLoader = new XdsCdaLoader();
+		cdaLoader.setXdsGate(xdsGate);
+		cdaLoader.setConsentConverter(consentConverter);
+		patient = new Patient("79471", AUTHORITY, "Max", "Mustermann",
+				new Date(), Gender.MALE, new PatientAddress());
+	}
+
+	/**
+	 * Tests, whether the referenced document is retrieved and read.
+	 */
+	@Test
+	public void testLoadCda() {
+		expect(xdsGate.retrieveDocumentSet(isA(DocumentEntry.class)))
+				.andAnswer(new IAnswer<List<RetrievedDocument>>() {
+					@Override
+					public List<RetrievedDocument> answer() {
+						DocumentEntry entry = (DocumentEntry) getCurrentArguments()[0];
+						assertEquals("1.2.3.9.1", entry.getUniqueId());
+						assertEquals("1.2.3.4.1", entry.getRepositoryUniqueId());
+						assertEquals("urn:oid:1.2.3.5",
+								entry.getHomeCommunityId());
+						return Collections.singletonList(document());
+					}
+				});
+		replay(xdsGate);
+
+		assertEquals(CDA, cdaLoader.loadCda(new ConsentDocumentReference(
+				"1.2.3.9.1", "1.2.3.4.1", "urn:oid:1.2.3.5")));
+		verify(xdsGate);
+	}
+
+	/**
+	 * Tests, whether a missing document fails the loading.
+	 */
+	@Test(expected = XDSRequestFailedException.class)
+	public void testLoadMissingCda() {
+		expect(xdsGate.retrieveDocumentSet(isA(DocumentEntry.class)))
+				.andReturn(new ArrayList<RetrievedDocument>());
+		replay(xdsGate);
+
+		cdaLoader.loadCda(new ConsentDocumentReference("1.2.3.9.1",
+				"1.2.3.4.1", null));
+	}
+
+	/**
+	 * Tests, whether consents requested METADATA_ONLY are listed without
+	 * retrieving their documents, load their cda once on first access and,
+	 * once deserialized, load it again with the default loader.
+	 */
+	@Test
+	public void testMetadataOnlyConsents() throws Exception {
+		DocumentEntryBuilder documentEntryBuilder = new DocumentEntryBuilder();
+		documentEntryBuilder.setPxsDateConverter(new PXSDateConverterImpl());
+		DocumentEntry entry = documentEntryBuilder.createDocumentEntry(
+				new CoalaAuthor("Dr.", "Hugo", "Hausarzt"), patient,
+				PatientConsentPolicy.ONE, new Date(), new Date(System
+						.currentTimeMillis() + 86400000L));
+		List<DocumentEntry> entries = new ArrayList<DocumentEntry>();
+		entries.add(entry);
+		expect(
+				xdsGate.requestConsents(eq("79471"), isA(List.class),
+						eq(ConsentSortParameter.START_DATE_NEWEST_FIRST)))
+				.andReturn(entries);
+		expect(xdsGate.retrieveDocumentSet(isA(DocumentEntry.class)))
+				.andReturn(Collections.singletonList(document())).times(2);
+		replay(xdsGate);
+
+		PXSQueryServiceImpl service = new PXSQueryServiceImpl();
+		service.setXdsGate(xdsGate);
+		service.setCdaLoader(cdaLoader);
+		ConsentConverter consentConverter = new ConsentConverter();
+		consentConverter.setPxsDateConverter(new PXSDateConverterImpl());
+		service.setConsentConverter(consentConverter);
+		PatientConsent consent;
+		try {
+			consent = service.getPatientConsents(patient,
+					ConsentSortParameter.START_DATE_NEWEST_FIRST,
+					ConsentFetchMode.METADATA_ONLY).getPatientConsents().get(0);
+		} finally {
+			service.shutdown();
+		}
+		assertFalse(consent.isCdaLoaded());
+		assertEquals(entry.getUniqueId(), consent.getDocumentReference()
+				.getDocumentUniqueId());
+		assertEquals(CDA, consent.getCda());
+		assertEquals(CDA, consent.getCda());
+		assertTrue(consent.isCdaLoaded());
+
+		PatientConsent copy = serializeAndDeserialize(consent);
+		assertFalse(copy.isCdaLoaded());
+		copy.setCdaLoader(cdaLoader);
+		assertEquals(CDA, copy.getCda());
+		verify(xdsGate);
+	}
+
+	/**
+	 * Tests, whether a deserialized consent without any loader fails to load
+	 * its cda.
+	 */
+	@Test(expected = IllegalStateException.class)
+	public void testDeserializedConsentWithoutLoader() throws Exception {
+		PatientConsent consent = new PatientConsent(new Date(), new Date(),
+				PatientConsentPolicy.ONE, patient, false, new CoalaAuthor(
+						"Dr.", "Hugo", "Hausarzt"), new Date(),
+				new ConsentDocumentReference("1.2.3.9.1", "1.2.3.4.1", null),
+				cdaLoader);
+		serializeAndDeserialize(consent).getCda();
+	}
+
+	/*
+	 * Little helping method, creating a retrieved consent document.
+	 */
+	private static RetrievedDocument document() {
+		RetrievedDocument document = new RetrievedDocument();
+		document.setDataHandler(new DataHandler(new CdaDataSourceImpl(CDA)));
+		return document;
+	}
+
+	/*
+	 * Little helping method, returning a deserialized copy of a consent.
+	 */
+	private static PatientConsent serializeAndDeserialize(
+			PatientConsent consent) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(consent);
+		out.close();
+		return (PatientConsent) new ObjectInputStream(new ByteArrayInputStream(
+				bytes.toByteArray())).readObject();
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.transformer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+/**
+ * Test if {@link BodyContentWriter} passes on exactly what
+ * {@link XmlTransformer#deliverRelevantHTML(String)} delivers, no matter how
+ * the HTML code is split into write calls.
+ */
+public class BodyContentWriterTest {
+
+	private static final String HTML = "<html><head><title>a<b</title></head><body>"
+			+ "<h2>Consent</h2><br></b>x</bo<</body</body><p>after</p></body></html>";
+
+	/**
+	 * Test if the body content is delivered for every chunk size.
+	 */
+	@Test
+	public void testBodyContentInChunks() throws IOException {
+		String expected = "<h2>Consent</h2><br></b>x</bo<</body";
+		for (int chunk = 1; chunk <= HTML.length(); chunk++) {
+			assertEquals("chunk size " + chunk, expected, write(HTML, chunk));
+		}
+	}
+
+	/**
+	 * Test if a document without a body is delivered completely.
+	 */
+	@Test
+	public void testWithoutBody() throws IOException {
+		String html = "<h2>Consent</h2><bod";
+		for (int chunk = 1; chunk <= html.length(); chunk++) {
+			assertEquals(html, write(html, chunk));
+		}
+	}
+
+	/**
+	 * Test if a body which is not closed is delivered up to the end.
+	 */
+	@Test
+	public void testUnclosedBody() throws IOException {
+		String html = "<html><body><p>text</p></bod";
+		for (int chunk = 1; chunk <= html.length(); chunk++) {
+			assertEquals("<p>text</p></bod", write(html, chunk));
+		}
+	}
+
+	/*
+	 * Little helping method, writing html in chunks of the given size.
+	 */
+	private String write(String html, int chunk) throws IOException {
+		StringWriter target = new StringWriter();
+		BodyContentWriter writer = new BodyContentWriter(target);
+		char[] chars = html.toCharArray();
+		for (int off = 0; off < chars.length; off += chunk) {
+			writer.write(chars, off, Math.min(chunk, chars.length - off));
+		}
+		writer.finish();
+		return target.toString();
+	}
+}
@@ -16,12 +16,17 @@
  */
 package org.openehealth.coala.transformer;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -173,4 +178,97 @@ public class XMLTransformerTest {
 		assertFalse(isException);
 	}
 
+	/**
+	 * Test if pooled transformers are reused for subsequent calls
+	 */
+	@Test
+	public void testTransformXmlIntoHtmlReusesTransformers() throws Exception {
+		XmlTransformer xmlTransformer = new XmlTransformer(xsltStream, 2);
+		String htmlResult = xmlTransformer.transformXmlIntoHtml(xmlString);
+		String htmlResult2 = xmlTransformer.transformXmlIntoHtml(xmlString);
+
+		assertEquals(htmlResult, htmlResult2);
+		assertEquals(2, xmlTransformer.getPoolSize());
+		assertEquals(1, xmlTransformer.getCreatedCount());
+		assertEquals(1, xmlTransformer.getReusedCount());
+		assertEquals(1, xmlTransformer.getIdleCount());
+	}
+
+	/**
+	 * Test if concurrent calls on one instance deliver the same result as a
+	 * single call
+	 */
+	@Test
+	public void testTransformXmlIntoHtmlConcurrently() throws Exception {
+		final XmlTransformer xmlTransformer = new XmlTransformer(xsltStream, 2);
+		final String expected = xmlTransformer.transformXmlIntoHtml(xmlString);
+		final AtomicInteger failures = new AtomicInteger();
+		Thread[] threads = new Thread[8];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 20; i++) {
+						try {
+							if (!expected.equals(xmlTransformer
+									.transformXmlIntoHtml(xmlString)))
+								failures.incrementAndGet();
+						} catch (Exception e) {
+							failures.incrementAndGet();
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(0, failures.get());
+		assertTrue(xmlTransformer.getIdleCount() <= 2);
+		assertEquals(161, xmlTransformer.getCreatedCount()
+				+ xmlTransformer.getReusedCount());
+	}
+
+	/**
+	 * Test if XML read from a stream or a reader delivers the same result as a
+	 * XML string, even if something precedes the XML declaration
+	 */
+	@Test
+	public void testTransformXmlIntoHtmlStreaming() throws Exception {
+		XmlTransformer xmlTransformer = new XmlTransformer(xsltStream);
+		String expected = xmlTransformer.transformXmlIntoHtml(xmlString);
+
+		StringWriter htmlWriter = new StringWriter();
+		xmlTransformer.transformXmlIntoHtml(new ByteArrayInputStream(
+				("\r\n" + xmlString).getBytes("UTF-8")), htmlWriter);
+		assertEquals(expected, htmlWriter.toString());
+
+		htmlWriter = new StringWriter();
+		xmlTransformer.transformXmlIntoHtml(new StringReader("--MIME\r\n"
+				+ xmlString), htmlWriter);
+		assertEquals(expected, htmlWriter.toString());
+	}
+
+	/**
+	 * Test if a body which is not closed is delivered up to the end of the
+	 * document, while {@link XmlTransformer#deliverRelevantHTML(String)} still
+	 * returns the whole document in this case
+	 */
+	@Test
+	public void testTransformXmlIntoHtmlUnclosedBody() throws Exception {
+		String xsl = "<xsl:stylesheet version=\"1.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">"
+				+ "<xsl:output method=\"text\"/>"
+				+ "<xsl:template match=\"/\">&lt;html&gt;&lt;body&gt;<xsl:value-of select=\"text\"/></xsl:template>"
+				+ "</xsl:stylesheet>";
+		XmlTransformer xmlTransformer = new XmlTransformer(
+				new ByteArrayInputStream(xsl.getBytes("UTF-8")));
+
+		assertEquals("unclosed", xmlTransformer
+				.transformXmlIntoHtml("<?xml version=\"1.0\"?><text>unclosed</text>"));
+		assertEquals("<html><body>unclosed",
+				xmlTransformer.deliverRelevantHTML("<html><body>unclosed"));
+	}
+
 }
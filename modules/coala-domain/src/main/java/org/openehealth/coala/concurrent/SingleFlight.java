@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.concurrent;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces identical concurrent calls: while a call for a key is in flight,
+ * further calls for the same key do not start a call of their own, but wait
+ * for the running one and receive its result or exception. Once a call has
+ * completed, the next call for its key starts a new one, so results are never
+ * cached beyond the duration of a call.
+ * <p>
+ * The result is handed to all waiting callers, so it must be safe to share,
+ * e.g. immutable or not modified by the callers. Instances are thread-safe.
+ * 
+ * @param <K>
+ *            the type of the keys identifying identical calls
+ * @param <V>
+ *            the type of the results
+ */
+public class SingleFlight<K, V> {
+
+	/** calls in flight, removed by their executing thread on completion */
+	private final ConcurrentMap<K, FutureTask<V>> calls = new ConcurrentHashMap<K, FutureTask<V>>();
+
+	private final AtomicLong executedCount = new AtomicLong();
+	private final AtomicLong coalescedCount = new AtomicLong();
+
+	/**
+	 * Executes the given call, unless a call for the same key is in flight
+	 * already. In that case the current thread waits for that call and
+	 * returns its result instead. A waiting thread which is interrupted stops
+	 * waiting, while the call goes on for the thread executing it.
+	 * 
+	 * @param key
+	 *            identifies identical calls, must not be <code>null</code>
+	 * @param call
+	 *            the call to execute, must not be <code>null</code>
+	 * @return the result of the call executed for the key
+	 * @throws InterruptedException
+	 *             if the current thread was interrupted while waiting for
+	 *             the call of another thread; the interrupt status is set
+	 *             again
+	 * @throws Exception
+	 *             the exception thrown by the call executed for the key
+	 */
+	public V execute(K key, Callable<V> call) throws Exception {
+		if (key == null)
+			throw new IllegalArgumentException("key cannot be null.");
+		if (call == null)
+			throw new IllegalArgumentException("call cannot be null.");
+		FutureTask<V> task = new FutureTask<V>(call);
+		FutureTask<V> running = calls.putIfAbsent(key, task);
+		if (running != null) {
+			coalescedCount.incrementAndGet();
+			return await(running);
+		}
+		executedCount.incrementAndGet();
+		try {
+			task.run();
+		} finally {
+			calls.remove(key, task);
+		}
+		return getOutcome(task);
+	}
+
+	/**
+	 * Little helping method, waiting for the call of another thread and
+	 * unwrapping its outcome. An interrupt stops the waiting only, the call
+	 * is left to the thread executing it.
+	 */
+	private V await(FutureTask<V> task) throws Exception {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw e;
+		} catch (ExecutionException e) {
+			throw unwrap(e);
+		}
+	}
+
+	/**
+	 * Little helping method, unwrapping the outcome of a call executed by the
+	 * current thread. The call has completed, so there is nothing to wait for
+	 * and an interrupt is only passed on.
+	 */
+	private V getOutcome(FutureTask<V> task) throws Exception {
+		boolean interrupted = Thread.interrupted();
+		try {
+			return task.get();
+		} catch (ExecutionException e) {
+			throw unwrap(e);
+		} finally {
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+
+	/*
+	 * Little helping method, returning the exception thrown by a call.
+	 */
+	private Exception unwrap(ExecutionException e) {
+		Throwable cause = e.getCause();
+		if (cause instanceof Exception)
+			return (Exception) cause;
+		if (cause instanceof Error)
+			throw (Error) cause;
+		return e;
+	}
+
+	/**
+	 * @return the number of calls in flight right now
+	 */
+	public int getInFlightCount() {
+		return calls.size();
+	}
+
+	/**
+	 * @return the number of calls actually executed
+	 */
+	public long getExecutedCount() {
+		return executedCount.get();
+	}
+
+	/**
+	 * @return the number of calls which shared the result of a call in flight
+	 *         instead of being executed
+	 */
+	public long getCoalescedCount() {
+		return coalescedCount.get();
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.domain;
+
+import java.io.Serializable;
+
+/**
+ * This class identifies the document of a {@link PatientConsent} within a XDS
+ * repository, so the document can be retrieved when it is needed instead of
+ * being kept with the consent.
+ */
+public class ConsentDocumentReference implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+	private final String documentUniqueId;
+	private final String repositoryUniqueId;
+	private final String homeCommunityId;
+
+	/**
+	 * Creates a new reference to a consent document
+	 * 
+	 * @param documentUniqueId
+	 *            the uniqueId of the document
+	 * @param repositoryUniqueId
+	 *            the uniqueId of the repository holding the document
+	 * @param homeCommunityId
+	 *            the id of the community of the repository, may be null
+	 */
+	public ConsentDocumentReference(String documentUniqueId,
+			String repositoryUniqueId, String homeCommunityId) {
+		if (documentUniqueId == null || documentUniqueId.length() == 0)
+			throw new IllegalArgumentException(
+					"documentUniqueId cannot be null or empty.");
+		if (repositoryUniqueId == null || repositoryUniqueId.length() == 0)
+			throw new IllegalArgumentException(
+					"repositoryUniqueId cannot be null or empty.");
+		this.documentUniqueId = documentUniqueId;
+		this.repositoryUniqueId = repositoryUniqueId;
+		this.homeCommunityId = homeCommunityId;
+	}
+
+	/**
+	 * @return the uniqueId of the document
+	 */
+	public String getDocumentUniqueId() {
+		return documentUniqueId;
+	}
+
+	/**
+	 * @return the uniqueId of the repository holding the document
+	 */
+	public String getRepositoryUniqueId() {
+		return repositoryUniqueId;
+	}
+
+	/**
+	 * @return the id of the community of the repository, may be null
+	 */
+	public String getHomeCommunityId() {
+		return homeCommunityId;
+	}
+
+	@Override
+	public int hashCode() {
+		int result = documentUniqueId.hashCode();
+		result = 31 * result + repositoryUniqueId.hashCode();
+		result = 31 * result
+				+ (homeCommunityId == null ? 0 : homeCommunityId.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof ConsentDocumentReference))
+			return false;
+		ConsentDocumentReference other = (ConsentDocumentReference) obj;
+		return documentUniqueId.equals(other.documentUniqueId)
+				&& repositoryUniqueId.equals(other.repositoryUniqueId)
+				&& (homeCommunityId == null ? other.homeCommunityId == null
+						: homeCommunityId.equals(other.homeCommunityId));
+	}
+
+	@Override
+	public String toString() {
+		return "ConsentDocumentReference [documentUniqueId="
+				+ documentUniqueId + ", repositoryUniqueId="
+				+ repositoryUniqueId + ", homeCommunityId=" + homeCommunityId
+				+ "]";
+	}
+}
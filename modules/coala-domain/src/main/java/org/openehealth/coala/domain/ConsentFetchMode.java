@@ -0,0 +1,39 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.domain;
+
+/**
+ * This simple enum is used to identify how much of a patient's consents
+ * should be fetched from the PXS.
+ */
+public enum ConsentFetchMode {
+	/** the consent documents are retrieved (ITI-18 and ITI-43) */
+	FULL(),
+	/**
+	 * only the registry metadata is queried (ITI-18), the consent documents
+	 * are retrieved when their CDA is needed
+	 */
+	METADATA_ONLY();
+
+	/**
+	 * Returns the default Fetch Mode.
+	 * @return the default Fetch Mode.
+	 */
+	public static ConsentFetchMode getDefault() {
+		return FULL;
+	}
+}
@@ -20,9 +20,12 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.EnumMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Holds all consents for a given patient. This set locks itself once it is
@@ -48,6 +51,12 @@ public class FindPatientConsentResult implements Serializable {
 	/** this is the parameter the consents will be sorted by */
 	private ConsentSortParameter sortBy;
 
+	/** false, if consents have been added since the list was sorted last */
+	private boolean sorted = true;
+
+	/** the comparators used for sorting, one per sort parameter */
+	private static final Map<ConsentSortParameter, Comparator<PatientConsent>> COMPARATORS = createComparators();
+
 	/**
 	 * The time that this consent set has been created
 	 */
@@ -99,19 +108,9 @@ public class FindPatientConsentResult implements Serializable {
 			throw new IllegalArgumentException(
 					"Cannot add a consent to a locked list. Has the list been accessd already?");
 
-		// insert sorted in place!
-		if (consentList.isEmpty()) {
-			consentList.add(consent);
-			return;
-		}
-		else
-			for (int i = 0; i < consentList.size(); i++) {
-				if (compareConsents(consent, consentList.get(i)) < 0) {
-					consentList.add(i, consent);
-					return; // exit, when added
-				}
-			}
-		consentList.add(consent); // if consent has never evaluated to "smaller", add to end of list
+		// append only, the list is sorted once when it is locked or read
+		consentList.add(consent);
+		sorted = false;
 	}
 
 	/**
@@ -127,7 +126,8 @@ public class FindPatientConsentResult implements Serializable {
 		if (locked)
 			throw new IllegalArgumentException(
 					"Cannot add a consent to a locked list. Has the list been accessd already?");
-		for (PatientConsent c : consents) addPatientConsent(c);
+		consentList.addAll(consents);
+		sorted = false;
 	}
 
 	/**
@@ -136,7 +136,7 @@ public class FindPatientConsentResult implements Serializable {
 	 * @return the list of consents as an unmodifiable List.
 	 */
 	public List<PatientConsent> getPatientConsents() {
-
+		ensureSorted();
 		return Collections.unmodifiableList(consentList);
 	}
 
@@ -144,9 +144,40 @@ public class FindPatientConsentResult implements Serializable {
 	 * Locks this result set. After locking it cannot be unlocked again.
 	 */
 	public void lock() {
+		ensureSorted();
 		locked = true;
 	}
 
+	/**
+	 * Returns the parameter the consents of this result are sorted by.
+	 * 
+	 * @return the parameter the consents of this result are sorted by.
+	 */
+	public ConsentSortParameter getSortBy() {
+		return sortBy;
+	}
+
+	/**
+	 * Returns a new, locked result holding the same consents as this one,
+	 * sorted by the given parameter. This result is locked as well and remains
+	 * unchanged, so the consents can be re-sorted without querying the XDS
+	 * repository again. The new result keeps the time of creation of this
+	 * one.
+	 * 
+	 * @param sortBy
+	 *            The sort criterion used for the order of the new result.
+	 * @return a new, locked result sorted by <code>sortBy</code>
+	 */
+	public FindPatientConsentResult resortBy(ConsentSortParameter sortBy) {
+		lock();
+		FindPatientConsentResult result = new FindPatientConsentResult(
+				patient, sortBy);
+		result.addAll(consentList);
+		result.lock();
+		result.timeOfCreation = timeOfCreation;
+		return result;
+	}
+
 	/**
 	 * Returns the time that this set of results has been created (time of
 	 * calling it's constructor)
@@ -159,61 +190,98 @@ public class FindPatientConsentResult implements Serializable {
 	}
 
 	/**
-	 * Compares two consents and returns a negative number, if c1 before c2, 0
-	 * if c1 ~ c2 and a positive number if c1 after c2. Comparison is ordinal.
-	 * Do not use output to calculate anything else than sort order.
+	 * Sorts the list of consents by the sort parameter of this result, unless
+	 * it is sorted already. The sort is stable, so consents which are equal
+	 * according to the sort parameter keep the order they were added in.
+	 */
+	private void ensureSorted() {
+		if (sorted)
+			return;
+		Comparator<PatientConsent> comparator = COMPARATORS.get(sortBy);
+		if (comparator == null)
+			throw new RuntimeException(
+					"All possibilities checked. This line should never be reached, unless new sort Options have been introduced. Please update sorting algorithm.");
+		Collections.sort(consentList, comparator);
+		sorted = true;
+	}
+
+	/**
+	 * Creates one {@link Comparator} per {@link ConsentSortParameter}. Each of
+	 * them returns a negative number, if c1 before c2, 0 if c1 ~ c2 and a
+	 * positive number if c1 after c2. Comparison is ordinal.
 	 * 
-	 * @param c1
-	 *            First consent to compare
-	 * @param c2
-	 *            First consent to compare
-	 * @return returns a negative number, if c1 < c2, 0 if c1 ~ c2 and a
-	 *         positive number if c1 > c2. (Comparison is ordinal)
+	 * @return the comparators by sort parameter
 	 */
-	private int compareConsents(PatientConsent c1, PatientConsent c2) {
-		if (sortBy == ConsentSortParameter.UNSORTED)
-			return 0;
-
-		else if (sortBy == ConsentSortParameter.END_DATE_NEWEST_FIRST)
-			return c1.getValidUntil().compareTo(c2.getValidUntil());
-		else if (sortBy == ConsentSortParameter.END_DATE_OLDEST_FIRST)
-			return -1 * c1.getValidUntil().compareTo(c2.getValidUntil());
-		
-		else if (sortBy == ConsentSortParameter.CREATION_DATE_NEWEST_FIRST)
-			return c1.getCreationDate().compareTo(c2.getCreationDate());
-		else if (sortBy == ConsentSortParameter.CREATION_DATE_OLDEST_FIRST)
-			return -1 * c1.getCreationDate().compareTo(c2.getCreationDate());
-		
-		else if (sortBy == ConsentSortParameter.AUTHOR_ASCENDING)
-			return c1.getAuthor().compareTo(c2.getAuthor());
-		else if (sortBy == ConsentSortParameter.AUTHOR_DESCENDING)
-			return -1 * c1.getAuthor().compareTo(c2.getAuthor());
-
-		else if (sortBy == ConsentSortParameter.START_DATE_NEWEST_FIRST)
-			return c1.getValidFrom().compareTo(c2.getValidFrom());
-		else if (sortBy == ConsentSortParameter.START_DATE_OLDEST_FIRST)
-			return -1 * c1.getValidFrom().compareTo(c2.getValidFrom());
-
-		else if (sortBy == ConsentSortParameter.OBSOLETE_TRUE_FIRST)
-			return -1 * compareBool(c1.isObsolete(), c2.isObsolete());
-		else if (sortBy == ConsentSortParameter.OBSOLETE_FALSE_FIRST)
-			return compareBool(c1.isObsolete(), c2.isObsolete());
-
-		else if (sortBy == ConsentSortParameter.EFFECTIVE_TRUE_FIRST)
-			return -1 * compareBool(c1.isActive(), c2.isActive());
-		else if (sortBy == ConsentSortParameter.EFFECTIVE_FALSE_FIRST)
-			return compareBool(c1.isActive(), c2.isActive());
-
-		else if (sortBy == ConsentSortParameter.POLICY_TYPE_ASCENDING)
-			return c1.getPolicyType().getNumber()
-					- c2.getPolicyType().getNumber();
-		else if (sortBy == ConsentSortParameter.POLICY_TYPE_DESCENDING)
-			return -1
-					* (c1.getPolicyType().getNumber() - c2.getPolicyType()
-							.getNumber());
-
-		throw new RuntimeException(
-				"All possibilities checked. This line should never be reached, unless new sort Options have been introduced. Please update sorting algorithm.");
+	private static Map<ConsentSortParameter, Comparator<PatientConsent>> createComparators() {
+		Map<ConsentSortParameter, Comparator<PatientConsent>> comparators = new EnumMap<ConsentSortParameter, Comparator<PatientConsent>>(
+				ConsentSortParameter.class);
+		Comparator<PatientConsent> byEndDate = new Comparator<PatientConsent>() {
+			public int compare(PatientConsent c1, PatientConsent c2) {
+				return c1.getValidUntil().compareTo(c2.getValidUntil());
+			}
+		};
+		Comparator<PatientConsent> byCreationDate = new Comparator<PatientConsent>() {
+			public int compare(PatientConsent c1, PatientConsent c2) {
+				return c1.getCreationDate().compareTo(c2.getCreationDate());
+			}
+		};
+		Comparator<PatientConsent> byAuthor = new Comparator<PatientConsent>() {
+			public int compare(PatientConsent c1, PatientConsent c2) {
+				return c1.getAuthor().compareTo(c2.getAuthor());
+			}
+		};
+		Comparator<PatientConsent> byStartDate = new Comparator<PatientConsent>() {
+			public int compare(PatientConsent c1, PatientConsent c2) {
+				return c1.getValidFrom().compareTo(c2.getValidFrom());
+			}
+		};
+		Comparator<PatientConsent> byObsolete = new Comparator<PatientConsent>() {
+			public int compare(PatientConsent c1, PatientConsent c2) {
+				return compareBool(c1.isObsolete(), c2.isObsolete());
+			}
+		};
+		Comparator<PatientConsent> byEffective = new Comparator<PatientConsent>() {
+			public int compare(PatientConsent c1, PatientConsent c2) {
+				return compareBool(c1.isActive(), c2.isActive());
+			}
+		};
+		Comparator<PatientConsent> byPolicyType = new Comparator<PatientConsent>() {
+			public int compare(PatientConsent c1, PatientConsent c2) {
+				return c1.getPolicyType().getNumber()
+						- c2.getPolicyType().getNumber();
+			}
+		};
+		comparators.put(ConsentSortParameter.UNSORTED, new Comparator<PatientConsent>() {
+			public int compare(PatientConsent c1, PatientConsent c2) {
+				return 0;
+			}
+		});
+		comparators.put(ConsentSortParameter.END_DATE_NEWEST_FIRST, byEndDate);
+		comparators.put(ConsentSortParameter.END_DATE_OLDEST_FIRST,
+				Collections.reverseOrder(byEndDate));
+		comparators.put(ConsentSortParameter.CREATION_DATE_NEWEST_FIRST,
+				byCreationDate);
+		comparators.put(ConsentSortParameter.CREATION_DATE_OLDEST_FIRST,
+				Collections.reverseOrder(byCreationDate));
+		comparators.put(ConsentSortParameter.AUTHOR_ASCENDING, byAuthor);
+		comparators.put(ConsentSortParameter.AUTHOR_DESCENDING,
+				Collections.reverseOrder(byAuthor));
+		comparators.put(ConsentSortParameter.START_DATE_NEWEST_FIRST,
+				byStartDate);
+		comparators.put(ConsentSortParameter.START_DATE_OLDEST_FIRST,
+				Collections.reverseOrder(byStartDate));
+		comparators.put(ConsentSortParameter.OBSOLETE_TRUE_FIRST,
+				Collections.reverseOrder(byObsolete));
+		comparators.put(ConsentSortParameter.OBSOLETE_FALSE_FIRST, byObsolete);
+		comparators.put(ConsentSortParameter.EFFECTIVE_TRUE_FIRST,
+				Collections.reverseOrder(byEffective));
+		comparators.put(ConsentSortParameter.EFFECTIVE_FALSE_FIRST,
+				byEffective);
+		comparators.put(ConsentSortParameter.POLICY_TYPE_ASCENDING,
+				byPolicyType);
+		comparators.put(ConsentSortParameter.POLICY_TYPE_DESCENDING,
+				Collections.reverseOrder(byPolicyType));
+		return comparators;
 	}
 
 	/**
@@ -226,7 +294,7 @@ public class FindPatientConsentResult implements Serializable {
 	 *            second boolean
 	 * @return b1 - b2, where True = 1, False = 0;
 	 */
-	private int compareBool(boolean b1, boolean b2) {
+	private static int compareBool(boolean b1, boolean b2) {
 		if (b1 == b2)
 			return 0; // Both equal
 		if (b1)
@@ -242,6 +310,7 @@ public class FindPatientConsentResult implements Serializable {
 	 * Returns an iterator to access all patients from the result
 	 */
 	public Iterator<PatientConsent> iterator() {
+		ensureSorted();
 		return new PatientConsentIterator();
 	}
 
@@ -17,7 +17,10 @@
 package org.openehealth.coala.domain;
 
 import java.io.Serializable;
+import java.util.Calendar;
 import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Locale;
 
 import org.apache.commons.lang.StringUtils;
 
@@ -26,6 +29,10 @@ import org.openehealth.coala.exception.ServiceParameterException;
 
 /**
  * This class encapsulates a query with simple String parameters. It might implement input validation at a later point.
+ * <p>
+ * Two queries are equal, if they find the same patients: names and patient ID
+ * are compared trimmed and case-insensitive, empty values equal null, and
+ * birthdates are compared by day only. This makes queries usable as cache keys.
  * 
  * @author kmaerz
  */
@@ -62,7 +69,8 @@ public class FindPatientQuery implements Serializable {
         this.patientID = patientID;
         this.givenName = givenName;
         this.lastName = lastName;
-        this.birthdate = birthdate;
+        // copied, as a changed birthdate would corrupt cached queries
+        this.birthdate = birthdate == null ? null : new Date(birthdate.getTime());
         
     }
     
@@ -102,12 +110,66 @@ public class FindPatientQuery implements Serializable {
     }
 
     /**
-     * @return the birthdate
+     * @return a copy of the birthdate
      */
     public Date getBirthdate() {
-        return birthdate;
+        return birthdate == null ? null : new Date(birthdate.getTime());
     }
 
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + normalize(givenName).hashCode();
+		result = prime * result + normalize(lastName).hashCode();
+		result = prime * result + normalize(patientID).hashCode();
+		result = prime * result + birthday(birthdate);
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null || getClass() != obj.getClass())
+			return false;
+		FindPatientQuery other = (FindPatientQuery) obj;
+		return normalize(givenName).equals(normalize(other.givenName))
+				&& normalize(lastName).equals(normalize(other.lastName))
+				&& normalize(patientID).equals(normalize(other.patientID))
+				&& birthday(birthdate) == birthday(other.birthdate);
+	}
+
+	/**
+	 * Little helping method, returning the trimmed, lower case form of a query
+	 * parameter. Null is treated like an empty String.
+	 * 
+	 * @param s the parameter to normalize
+	 * @return the normalized parameter, never null
+	 */
+	private static String normalize(String s) {
+		if (s == null)
+			return "";
+		return s.trim().toLowerCase(Locale.ENGLISH);
+	}
+
+	/**
+	 * Little helping method, returning the day of a birthdate as yyyyMMdd
+	 * number, ignoring the time of day.
+	 * 
+	 * @param date the birthdate, may be null
+	 * @return the day of the birthdate or -1, if there is none
+	 */
+	private static int birthday(Date date) {
+		if (date == null)
+			return -1;
+		Calendar calendar = new GregorianCalendar();
+		calendar.setTime(date);
+		return calendar.get(Calendar.YEAR) * 10000
+				+ (calendar.get(Calendar.MONTH) + 1) * 100
+				+ calendar.get(Calendar.DAY_OF_MONTH);
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder builder = new StringBuilder();
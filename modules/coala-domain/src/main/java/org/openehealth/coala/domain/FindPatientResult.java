@@ -20,8 +20,11 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Encapsulates a list of patients. Once the list is read the first time, it will be locked and
@@ -47,6 +50,12 @@ public class FindPatientResult implements Serializable, Iterable<Patient> {
 	/** this is the parameter the consents will be sorted by */
 	private PatientSortParameter sortBy;
 
+	/** false, if patients have been added since the list was sorted last */
+	private boolean sorted = true;
+
+	/** the comparators used for sorting, one per sort parameter */
+	private static final Map<PatientSortParameter, Comparator<Patient>> COMPARATORS = createComparators();
+
     /**
      * Creates a new Query which can then be filled with results. Don't forget to lock the query
      * when done filling in results.
@@ -86,21 +95,9 @@ public class FindPatientResult implements Serializable, Iterable<Patient> {
         if (locked)
             throw new IllegalArgumentException(
                     "Cannot add a patient to a locked list. Has the list been accessd already?");
-    	// insert sorted in place!
-		if (patientList.isEmpty()) {
-			patientList.add(patient);
-			return;
-		}
-		else
-		{	
-			for (int i = 0; i < patientList.size(); i++) {
-				if (comparePatients(patient, patientList.get(i)) < 0) {
-					patientList.add(i, patient);
-					return; // exit, when added
-				}
-			}
-		}
-		patientList.add(patient); // if consent has never evaluated to "smaller", add to end of list
+		// append only, the list is sorted once when it is locked or read
+		patientList.add(patient);
+		sorted = false;
     }
 
     /**
@@ -114,44 +111,132 @@ public class FindPatientResult implements Serializable, Iterable<Patient> {
         if (locked)
             throw new IllegalArgumentException(
                     "Cannot add a patient to a locked list. Has the list been accessd already?");
-		for (Patient p : patients) addPatient(p);
+		patientList.addAll(patients);
+		sorted = false;
     }
-    
-    /**
-	 * Compares two {@link Patient} instances and returns a negative number, if c1 before c2, 0
-	 * if c1 ~ c2 and a positive number if c1 after c2. Comparison is ordinal.
-	 * Do not use output to calculate anything else than sort order.
+
+	/**
+	 * Sorts the list of patients by the sort parameter of this result, unless
+	 * it is sorted already. The sort is stable, so patients which are equal
+	 * according to the sort parameter keep the order they were added in.
+	 */
+	private void ensureSorted() {
+		if (sorted)
+			return;
+		Collections.sort(patientList, getComparator(sortBy));
+		sorted = true;
+	}
+
+	/**
+	 * Returns the {@link Comparator} which orders {@link Patient} instances
+	 * according to the given sort parameter. Comparison is ordinal.
+	 * 
+	 * @param sortBy
+	 *            the sort parameter
+	 * @return the {@link Comparator} for <code>sortBy</code>
+	 */
+	private static Comparator<Patient> getComparator(PatientSortParameter sortBy) {
+		Comparator<Patient> comparator = COMPARATORS.get(sortBy);
+		if (comparator == null)
+			throw new RuntimeException(
+					"All possibilities checked. This line should never be reached, unless new sort Options have been introduced. Please update sorting algorithm.");
+		return comparator;
+	}
+
+	/**
+	 * Creates one {@link Comparator} per {@link PatientSortParameter}.
+	 * 
+	 * @return the comparators by sort parameter
+	 */
+	private static Map<PatientSortParameter, Comparator<Patient>> createComparators() {
+		Map<PatientSortParameter, Comparator<Patient>> comparators = new EnumMap<PatientSortParameter, Comparator<Patient>>(
+				PatientSortParameter.class);
+		Comparator<Patient> byBirthdate = new Comparator<Patient>() {
+			public int compare(Patient c1, Patient c2) {
+				return c1.getBirthdate().compareTo(c2.getBirthdate());
+			}
+		};
+		Comparator<Patient> byGivenName = new Comparator<Patient>() {
+			public int compare(Patient c1, Patient c2) {
+				return c1.getGivenName().compareTo(c2.getGivenName());
+			}
+		};
+		Comparator<Patient> byLastName = new Comparator<Patient>() {
+			public int compare(Patient c1, Patient c2) {
+				return c1.getLastName().compareTo(c2.getLastName());
+			}
+		};
+		Comparator<Patient> byPatientID = new Comparator<Patient>() {
+			public int compare(Patient c1, Patient c2) {
+				return comparePatientIDs(c1.getPatientID(), c2.getPatientID());
+			}
+		};
+		comparators.put(PatientSortParameter.UNSORTED, new Comparator<Patient>() {
+			public int compare(Patient c1, Patient c2) {
+				return 0;
+			}
+		});
+		comparators.put(PatientSortParameter.BIRTHDATE_NEWEST_FIRST, byBirthdate);
+		comparators.put(PatientSortParameter.BIRTHDATE_OLDEST_FIRST,
+				Collections.reverseOrder(byBirthdate));
+		comparators.put(PatientSortParameter.GIVENNAME_ASCENDING, byGivenName);
+		comparators.put(PatientSortParameter.GIVENNAME_DESCENDING,
+				Collections.reverseOrder(byGivenName));
+		comparators.put(PatientSortParameter.LASTNAME_ASCENDING, byLastName);
+		comparators.put(PatientSortParameter.LASTNAME_DESCENDING,
+				Collections.reverseOrder(byLastName));
+		comparators.put(PatientSortParameter.PID_ASCENDING, byPatientID);
+		comparators.put(PatientSortParameter.PID_DESCENDING,
+				Collections.reverseOrder(byPatientID));
+		return comparators;
+	}
+
+	/**
+	 * Compares two numeric patient IDs by their numeric value without parsing
+	 * them. IDs containing anything else than digits are compared as
+	 * {@link Long}s, which fails for non-numeric IDs.
 	 * 
-	 * @param c1
-	 *            First {@link Patient} to compare
-	 * @param c2
-	 *            First {@link Patient} to compare
-	 * @return returns a negative number, if c1 < c2, 0 if c1 ~ c2 and a
-	 *         positive number if c1 > c2. (Comparison is ordinal)
+	 * @param id1
+	 *            First patient ID to compare
+	 * @param id2
+	 *            Second patient ID to compare
+	 * @return a negative number, if id1 < id2, 0 if id1 = id2 and a positive
+	 *         number if id1 > id2
+	 */
+	private static int comparePatientIDs(String id1, String id2) {
+		int start1 = skipLeadingZeros(id1);
+		int start2 = skipLeadingZeros(id2);
+		if (start1 < 0 || start2 < 0)
+			return Long.valueOf(id1).compareTo(Long.valueOf(id2));
+		int length1 = id1.length() - start1;
+		int length2 = id2.length() - start2;
+		if (length1 != length2)
+			return length1 < length2 ? -1 : 1;
+		for (int i = 0; i < length1; i++) {
+			char c1 = id1.charAt(start1 + i);
+			char c2 = id2.charAt(start2 + i);
+			if (c1 != c2)
+				return c1 < c2 ? -1 : 1;
+		}
+		return 0;
+	}
+
+	/**
+	 * Returns the index of the first significant digit of the given numeric
+	 * String or -1, if it is empty or contains anything else than digits.
 	 */
-	private int comparePatients(Patient c1, Patient c2) {
-		if (sortBy == PatientSortParameter.UNSORTED)
-			return 0;
-
-		else if (sortBy == PatientSortParameter.BIRTHDATE_NEWEST_FIRST)
-			return c1.getBirthdate().compareTo(c2.getBirthdate());
-		else if (sortBy == PatientSortParameter.BIRTHDATE_OLDEST_FIRST)
-			return -1 * c1.getBirthdate().compareTo(c2.getBirthdate());
-		else if (sortBy == PatientSortParameter.GIVENNAME_ASCENDING)
-			return c1.getGivenName().compareTo(c2.getGivenName());
-		else if (sortBy == PatientSortParameter.GIVENNAME_DESCENDING)
-			return -1 * c1.getGivenName().compareTo(c2.getGivenName());
-		else if (sortBy == PatientSortParameter.LASTNAME_ASCENDING)
-			return c1.getLastName().compareTo(c2.getLastName());
-		else if (sortBy == PatientSortParameter.LASTNAME_DESCENDING)
-			return -1 * c1.getLastName().compareTo(c2.getLastName());
-		else if (sortBy == PatientSortParameter.PID_ASCENDING)
-			return new Long(c1.getPatientID()).compareTo(new Long(c2.getPatientID()));
-		else if (sortBy == PatientSortParameter.PID_DESCENDING)
-			return  -1 * new Long(c1.getPatientID()).compareTo(new Long(c2.getPatientID()));
-
-		throw new RuntimeException(
-				"All possibilities checked. This line should never be reached, unless new sort Options have been introduced. Please update sorting algorithm.");
+	private static int skipLeadingZeros(String id) {
+		if (id.length() == 0)
+			return -1;
+		int start = -1;
+		for (int i = 0; i < id.length(); i++) {
+			char c = id.charAt(i);
+			if (c < '0' || c > '9')
+				return -1;
+			if (start < 0 && c != '0')
+				start = i;
+		}
+		return start < 0 ? id.length() : start;
 	}
     
     /**
@@ -159,6 +244,7 @@ public class FindPatientResult implements Serializable, Iterable<Patient> {
      * @return the list of patients as an unmodifiable List.
      */
     public List<Patient> getPatients() {    
+		ensureSorted();
         return Collections.unmodifiableList(patientList);
     }
     
@@ -166,9 +252,37 @@ public class FindPatientResult implements Serializable, Iterable<Patient> {
      * Locks this result set. After locking it cannot be unlocked again.
      */
     public void lock(){
+		ensureSorted();
         locked = true;
     }
 
+	/**
+	 * Returns the parameter the patients of this result are sorted by.
+	 * 
+	 * @return the parameter the patients of this result are sorted by.
+	 */
+	public PatientSortParameter getSortBy() {
+		return sortBy;
+	}
+
+	/**
+	 * Returns a new, locked result holding the same patients as this one,
+	 * sorted by the given parameter. This result is locked as well and remains
+	 * unchanged, so the patients can be re-sorted without querying the PDQ
+	 * service again.
+	 * 
+	 * @param sortBy
+	 *            The sort criterion used for the order of the new result.
+	 * @return a new, locked result sorted by <code>sortBy</code>
+	 */
+	public FindPatientResult resortBy(PatientSortParameter sortBy) {
+		lock();
+		FindPatientResult result = new FindPatientResult(query, sortBy);
+		result.addAll(patientList);
+		result.lock();
+		return result;
+	}
+
     // ===========================================================//
     // INTERNAL LOGIC ENDS HERE, ITERATION CODE AHEAD //
     // ===========================================================//
@@ -177,6 +291,7 @@ public class FindPatientResult implements Serializable, Iterable<Patient> {
      * Returns an iterator to access all patients from the result
      */
     public Iterator<Patient> iterator() {
+		ensureSorted();
         return new PatientIterator();
 
     }
@@ -221,6 +336,7 @@ public class FindPatientResult implements Serializable, Iterable<Patient> {
 	@Override
 	public String toString() {
 		StringBuilder builder = new StringBuilder();
+		ensureSorted();
 		builder.append("FindPatientResult [patientList=");
 		builder.append(patientList);
 		builder.append(", query=");
@@ -19,9 +19,16 @@ package org.openehealth.coala.domain;
 import java.io.Serializable;
 import java.util.Date;
 import org.openehealth.coala.domain.CoalaAuthor;
+import org.openehealth.coala.interfacing.CdaLoader;
 
 /**
- * This class represents a patient consent document
+ * This class represents a patient consent document. The CDA of the consent is
+ * either held directly or, for consents created from registry metadata alone,
+ * loaded by a {@link CdaLoader} when it is needed for the first time. A loaded
+ * CDA is not serialized, so consents kept in the session stay small. As the
+ * loader is not serialized either, it has to be set again on deserialized
+ * consents (see {@link #setCdaLoader(CdaLoader)}) before their CDA can be
+ * loaded.
  * @author kmaerz
  *
  */
@@ -37,6 +44,10 @@ public class PatientConsent implements Serializable {
 	private Date creationDate;
 	private boolean active;
 	private String cda;
+	/** reference of the document, if the cda is loaded on demand **/
+	private ConsentDocumentReference documentReference;
+	private transient CdaLoader cdaLoader;
+	private transient volatile String loadedCda;
 	/** This is true if the consent does not contain all of the necessary data **/
 	private boolean invalid;
 	
@@ -81,6 +92,34 @@ public class PatientConsent implements Serializable {
 		this.creationDate = creationDate;
 	}
 
+	/**
+	 * Creates a new Patient Consent whose cda is loaded on demand
+	 * 
+	 * @param validFrom This marks the starting time of this consent's validity
+	 * @param validUntil This marks the end time of this consent's validity
+	 * @param policy identifies the policy contained within. 
+	 * @param patient the patient to whom this consent belongs
+	 * @param obsolete A consent is obsolete, if it has been replaced by another consent in the pxs
+	 * @param author the creator of this consent
+	 * @param creationDate the date this consent was written into the pxs database
+	 * @param documentReference the reference of this consent's document
+	 * @param cdaLoader loads the cda representation of this consent when it is needed
+	 */
+	public PatientConsent(Date validFrom, Date validUntil,
+			PatientConsentPolicy policy, Patient patient, boolean obsolete,
+			CoalaAuthor author, Date creationDate,
+			ConsentDocumentReference documentReference, CdaLoader cdaLoader) {
+		this(validFrom, validUntil, policy, patient, obsolete, author,
+				creationDate, null);
+		if (documentReference == null)
+			throw new IllegalArgumentException(
+					"documentReference cannot be null.");
+		if (cdaLoader == null)
+			throw new IllegalArgumentException("cdaLoader cannot be null.");
+		this.documentReference = documentReference;
+		this.cdaLoader = cdaLoader;
+	}
+
 	/**
 	 * Returns true, if the agreement is valid (startDate < now < endDate) and
 	 * it is not marked as obsolete. It does NOT evaluate data of other
@@ -146,11 +185,53 @@ public class PatientConsent implements Serializable {
 	}
 	
 	/**
-	 * Returns this consent's cda representation
+	 * Returns this consent's cda representation. If the cda is loaded on
+	 * demand, it is loaded by the first call.
 	 * @return this consent's cda representation
+	 * @throws IllegalStateException if the cda has to be loaded, but no
+	 *         {@link CdaLoader} is set, e.g. after deserialization
 	 */
 	public String getCda() {
-		return cda;
+		if (documentReference == null)
+			return cda;
+		String result = loadedCda;
+		if (result == null) {
+			CdaLoader loader = cdaLoader;
+			if (loader == null)
+				throw new IllegalStateException(
+						"No CdaLoader set to load the cda of "
+								+ documentReference);
+			result = loader.loadCda(documentReference);
+			loadedCda = result;
+		}
+		return result;
+	}
+
+	/**
+	 * @return true, if the cda is held by this consent, false if it still has
+	 *         to be loaded
+	 */
+	public boolean isCdaLoaded() {
+		return documentReference == null || loadedCda != null;
+	}
+
+	/**
+	 * @return the reference of this consent's document, null if the cda is
+	 *         not loaded on demand
+	 */
+	public ConsentDocumentReference getDocumentReference() {
+		return documentReference;
+	}
+
+	/**
+	 * Sets the loader of the cda, e.g. after this consent has been
+	 * deserialized. Has no effect on consents holding their cda directly.
+	 * 
+	 * @param cdaLoader
+	 *            loads the cda representation of this consent
+	 */
+	public void setCdaLoader(CdaLoader cdaLoader) {
+		this.cdaLoader = cdaLoader;
 	}
 
 	/**
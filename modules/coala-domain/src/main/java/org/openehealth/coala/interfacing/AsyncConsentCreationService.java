@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.interfacing;
+
+import java.util.Date;
+import java.util.concurrent.Future;
+
+import org.openehealth.coala.domain.CoalaAuthor;
+import org.openehealth.coala.domain.ConsentFetchMode;
+import org.openehealth.coala.domain.ConsentSortParameter;
+import org.openehealth.coala.domain.FindPatientConsentResult;
+import org.openehealth.coala.domain.Patient;
+import org.openehealth.coala.domain.PatientConsentPolicy;
+
+/**
+ * This interface models the non-blocking counterpart of
+ * {@link ConsentCreationService}. The requests are sent in the background,
+ * the calling thread can go on and pick up the results from the returned
+ * {@link Future}s. Failures, e.g. a XDSRequestFailedException, are reported
+ * as cause of the ExecutionException thrown by {@link Future#get()}. If too
+ * many requests are pending, a request is not queued and its Future fails at
+ * once with a RejectedExecutionException as cause. Callers which must not
+ * block pass an {@link AsyncResultListener} instead, which is notified on
+ * completion.
+ */
+public interface AsyncConsentCreationService {
+
+	/**
+	 * Creates a new consent for the given {@link Patient} in the background.
+	 * 
+	 * @param patient
+	 *            The patient who should be associated with this Consent
+	 * @param validFrom
+	 *            The date that marks the start of the validity period
+	 * @param validUntil
+	 *            The date that marks the end of the validity period
+	 * @param policy
+	 *            The policy that defines the restrictions of this consent.
+	 * @param author
+	 *            The author of this consent
+	 * @return the pending creation, its result is always null
+	 * @see ConsentCreationService#createPatientConsent(Patient, Date, Date,
+	 *      PatientConsentPolicy, CoalaAuthor)
+	 */
+	public Future<Void> createPatientConsentAsync(Patient patient,
+			Date validFrom, Date validUntil, PatientConsentPolicy policy,
+			CoalaAuthor author);
+
+	/**
+	 * Creates a new consent for the given {@link Patient} in the background
+	 * and notifies the given listener once the consent has been registered.
+	 * 
+	 * @param patient
+	 *            The patient who should be associated with this Consent
+	 * @param validFrom
+	 *            The date that marks the start of the validity period
+	 * @param validUntil
+	 *            The date that marks the end of the validity period
+	 * @param policy
+	 *            The policy that defines the restrictions of this consent.
+	 * @param author
+	 *            The author of this consent
+	 * @param listener
+	 *            the listener to notify, must not be <code>null</code>
+	 * @return the pending creation, e.g. to cancel it
+	 * @see #createPatientConsentAsync(Patient, Date, Date,
+	 *      PatientConsentPolicy, CoalaAuthor)
+	 */
+	public Future<Void> createPatientConsentAsync(Patient patient,
+			Date validFrom, Date validUntil, PatientConsentPolicy policy,
+			CoalaAuthor author, AsyncResultListener<Void> listener);
+
+	/**
+	 * Fetches the consents of the given {@link Patient} in the background.
+	 * 
+	 * @param patient
+	 *            The {@link Patient} whose consents are of interest.
+	 * @param sortBy
+	 *            The parameter by which the results shall be sorted. If this is
+	 *            null, results will be sorted by a default as defined in
+	 *            {@link ConsentSortParameter}.
+	 * @param fetchMode
+	 *            How much of the consents shall be fetched. If this is null,
+	 *            the default as defined in {@link ConsentFetchMode} is used.
+	 * @return the pending sorted {@link FindPatientConsentResult}
+	 * @see ConsentCreationService#getPatientConsents(Patient,
+	 *      ConsentSortParameter, ConsentFetchMode)
+	 */
+	public Future<FindPatientConsentResult> getPatientConsentsAsync(
+			Patient patient, ConsentSortParameter sortBy,
+			ConsentFetchMode fetchMode);
+
+	/**
+	 * Fetches the consents of the given {@link Patient} in the background and
+	 * notifies the given listener once they are available.
+	 * 
+	 * @param patient
+	 *            The {@link Patient} whose consents are of interest.
+	 * @param sortBy
+	 *            The parameter by which the results shall be sorted. If this is
+	 *            null, results will be sorted by a default as defined in
+	 *            {@link ConsentSortParameter}.
+	 * @param fetchMode
+	 *            How much of the consents shall be fetched. If this is null,
+	 *            the default as defined in {@link ConsentFetchMode} is used.
+	 * @param listener
+	 *            the listener to notify, must not be <code>null</code>
+	 * @return the pending sorted {@link FindPatientConsentResult}, e.g. to
+	 *         cancel the request
+	 * @see #getPatientConsentsAsync(Patient, ConsentSortParameter,
+	 *      ConsentFetchMode)
+	 */
+	public Future<FindPatientConsentResult> getPatientConsentsAsync(
+			Patient patient, ConsentSortParameter sortBy,
+			ConsentFetchMode fetchMode,
+			AsyncResultListener<FindPatientConsentResult> listener);
+}
@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.interfacing;
+
+import java.util.concurrent.Future;
+
+import org.openehealth.coala.domain.FindPatientQuery;
+import org.openehealth.coala.domain.FindPatientResult;
+import org.openehealth.coala.domain.PatientSortParameter;
+
+/**
+ * This interface models the non-blocking counterpart of
+ * {@link PatientService}. The query is sent in the background, the calling
+ * thread can go on and pick up the result from the returned {@link Future}.
+ * Failures, e.g. a PDQRequestFailedException, are reported as cause of the
+ * ExecutionException thrown by {@link Future#get()}. If too many requests
+ * are pending, a request is not queued and its Future fails at once with a
+ * RejectedExecutionException as cause. Callers which must not block pass an
+ * {@link AsyncResultListener} instead, which is notified on completion.
+ */
+public interface AsyncPatientService {
+
+	/**
+	 * Queries for patients in the background.
+	 * 
+	 * @param query
+	 *            the {@link FindPatientQuery} to send to the MPI
+	 * @param sortBy
+	 *            The parameter by which the results shall be sorted. If this is
+	 *            null, results will be sorted by a default as defined in
+	 *            {@link PatientSortParameter}.
+	 * @return the pending sorted {@link FindPatientResult}
+	 * @see PatientService#findPatients(FindPatientQuery, PatientSortParameter)
+	 */
+	public Future<FindPatientResult> findPatientsAsync(FindPatientQuery query,
+			PatientSortParameter sortBy);
+
+	/**
+	 * Queries for patients in the background and notifies the given listener
+	 * once the query has completed.
+	 * 
+	 * @param query
+	 *            the {@link FindPatientQuery} to send to the MPI
+	 * @param sortBy
+	 *            The parameter by which the results shall be sorted. If this is
+	 *            null, results will be sorted by a default as defined in
+	 *            {@link PatientSortParameter}.
+	 * @param listener
+	 *            the listener to notify, must not be <code>null</code>
+	 * @return the pending sorted {@link FindPatientResult}, e.g. to cancel
+	 *         the query
+	 * @see #findPatientsAsync(FindPatientQuery, PatientSortParameter)
+	 */
+	public Future<FindPatientResult> findPatientsAsync(FindPatientQuery query,
+			PatientSortParameter sortBy,
+			AsyncResultListener<FindPatientResult> listener);
+}
@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.interfacing;
+
+/**
+ * Listener notified once a request of {@link AsyncPatientService} or
+ * {@link AsyncConsentCreationService} has completed, so the caller does not
+ * have to block on the returned Future to pick up the outcome. Exactly one
+ * of the methods is called, usually by the thread which executed the
+ * request. A request which is rejected or cancelled before it started is
+ * reported by the thread rejecting or cancelling it. Implementations must
+ * not block and are expected to be thread-safe.
+ * 
+ * @param <T>
+ *            the type of the result of the request
+ */
+public interface AsyncResultListener<T> {
+
+	/**
+	 * Called with the result of a request which completed normally.
+	 * 
+	 * @param result
+	 *            the result of the request, null for requests without result
+	 */
+	public void onSuccess(T result);
+
+	/**
+	 * Called if a request failed, was rejected or was cancelled.
+	 * 
+	 * @param cause
+	 *            the exception thrown by the request, e.g. a
+	 *            XDSRequestFailedException, a RejectedExecutionException or a
+	 *            CancellationException
+	 */
+	public void onFailure(Throwable cause);
+}
@@ -0,0 +1,42 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.interfacing;
+
+import org.openehealth.coala.domain.ConsentDocumentReference;
+import org.openehealth.coala.domain.PatientConsent;
+import org.openehealth.coala.exception.XDSRequestFailedException;
+
+/**
+ * This interface models the retrieval of the CDA document of a
+ * {@link PatientConsent}, which has been created from registry metadata
+ * alone. It is called when the CDA is needed for the first time.
+ */
+public interface CdaLoader {
+
+	/**
+	 * Loads the CDA document the given reference points to.
+	 * 
+	 * @param reference
+	 *            the reference of the consent document, must not be null
+	 * @return the CDA document as string, an empty string if the document has
+	 *         no readable content
+	 * @throws XDSRequestFailedException
+	 *             Thrown if the document could not be retrieved.
+	 */
+	public String loadCda(ConsentDocumentReference reference)
+			throws XDSRequestFailedException;
+}
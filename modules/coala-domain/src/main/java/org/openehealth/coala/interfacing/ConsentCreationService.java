@@ -19,6 +19,7 @@ package org.openehealth.coala.interfacing;
 import java.util.Date;
 
 import org.openehealth.coala.domain.CoalaAuthor;
+import org.openehealth.coala.domain.ConsentFetchMode;
 import org.openehealth.coala.domain.ConsentSortParameter;
 import org.openehealth.coala.domain.FindPatientConsentResult;
 import org.openehealth.coala.domain.Patient;
@@ -114,4 +115,27 @@ public interface ConsentCreationService {
 	public FindPatientConsentResult getPatientConsents(Patient patient,
 			ConsentSortParameter sortBy) throws XDSRequestFailedException;
 
+	/**
+	 * Returns the list of {@link PatientConsent} corresponding to this
+	 * {@link Patient}, fetched as specified by the given mode. With
+	 * {@link ConsentFetchMode#METADATA_ONLY} the consents are created from
+	 * the registry metadata alone, their CDA is retrieved when
+	 * {@link PatientConsent#getCda()} is called for the first time.
+	 * 
+	 * @param patient
+	 *            The {@link Patient} whose {@link PatientConsent} instances are of
+	 *            interest.
+	 * @param sortBy
+	 *            The parameter by which the results shall be sorted. If this is
+	 *            null, results will be sorted by a default as defined in
+	 *            {@link ConsentSortParameter}.
+	 * @param fetchMode
+	 *            How much of the consents shall be fetched. If this is null,
+	 *            the default as defined in {@link ConsentFetchMode} is used.
+	 * @return the sorted {@link FindPatientConsentResult} of consents corresponding to this patient.
+	 */
+	public FindPatientConsentResult getPatientConsents(Patient patient,
+			ConsentSortParameter sortBy, ConsentFetchMode fetchMode)
+			throws XDSRequestFailedException;
+
 }
@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.interfacing;
+
+import java.util.List;
+
+import org.openehealth.coala.domain.ConsentSortParameter;
+import org.openehealth.coala.domain.FindPatientConsentResult;
+import org.openehealth.coala.domain.Patient;
+
+/**
+ * This interface models a speculative prefetch of patient consents. The
+ * consents of patients which are likely to be selected next are fetched in
+ * the background and kept for a short time, so they are usually available
+ * when the consent screen is opened. Prefetching is a pure optimization: if
+ * nothing was prefetched or the prefetch failed, callers fall back to the
+ * {@link ConsentCreationService}.
+ */
+public interface ConsentPrefetchService {
+
+	/**
+	 * Starts fetching the consents of the given patients in the background,
+	 * provided prefetching is enabled and the list contains few enough
+	 * patients to make a selection likely. Returns immediately.
+	 * 
+	 * @param patients
+	 *            the patients of a PDQ result
+	 */
+	public void prefetchConsents(List<Patient> patients);
+
+	/**
+	 * Starts fetching the consents of the given patient in the background,
+	 * unless they are being prefetched already or prefetching is disabled.
+	 * Returns immediately.
+	 * 
+	 * @param patient
+	 *            the patient whose consents are likely to be shown next
+	 */
+	public void prefetchConsents(Patient patient);
+
+	/**
+	 * Takes the prefetched consents of the given patient. A prefetch which
+	 * is still running is waited for. Each prefetch is handed out only once.
+	 * 
+	 * @param patient
+	 *            the patient whose consents are shown
+	 * @param sortBy
+	 *            The parameter by which the results shall be sorted. If this is
+	 *            null, results will be sorted by a default as defined in
+	 *            {@link ConsentSortParameter}.
+	 * @return the sorted {@link FindPatientConsentResult} or
+	 *         <code>null</code>, if there is no usable prefetch for the
+	 *         patient
+	 */
+	public FindPatientConsentResult takePrefetchedConsents(Patient patient,
+			ConsentSortParameter sortBy);
+
+	/**
+	 * Drops the prefetched consents of the given patient, e.g. because a new
+	 * consent has been registered for the patient. A prefetch which is still
+	 * running is cancelled.
+	 * 
+	 * @param patient
+	 *            the patient whose consents have changed
+	 */
+	public void invalidatePrefetchedConsents(Patient patient);
+}
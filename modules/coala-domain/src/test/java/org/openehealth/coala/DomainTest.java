@@ -18,6 +18,10 @@ package org.openehealth.coala;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
@@ -25,6 +29,7 @@ import java.util.GregorianCalendar;
 import org.junit.Test;
 
 import org.openehealth.coala.domain.CoalaAuthor;
+import org.openehealth.coala.domain.ConsentDocumentReference;
 import org.openehealth.coala.domain.ConsentSortParameter;
 import org.openehealth.coala.domain.FindPatientConsentResult;
 import org.openehealth.coala.domain.FindPatientQuery;
@@ -36,6 +41,7 @@ import org.openehealth.coala.domain.PatientConsent;
 import org.openehealth.coala.domain.PatientConsentPolicy;
 import org.openehealth.coala.domain.PatientSortParameter;
 import org.openehealth.coala.exception.ServiceParameterException;
+import org.openehealth.coala.interfacing.CdaLoader;
 
 /**
  * Unit test for various coala domain classes.‚
@@ -163,6 +169,46 @@ public class DomainTest {
 		assertTrue(q.getBirthdate().equals(date));
 	}
 
+	/**
+	 * Test if queries finding the same patients are equal, so they can be used
+	 * as cache keys.
+	 */
+	@Test
+	public void testFindPatientQueryEquality() {
+		Calendar morning = new GregorianCalendar(1980, Calendar.JANUARY, 1, 8, 0);
+		Calendar evening = new GregorianCalendar(1980, Calendar.JANUARY, 1, 20, 0);
+		FindPatientQuery q1 = new FindPatientQuery(null, " Hans", "Hein ",
+				morning.getTime());
+		FindPatientQuery q2 = new FindPatientQuery("", "hans", "HEIN",
+				evening.getTime());
+		assertEquals(q1, q2);
+		assertEquals(q1.hashCode(), q2.hashCode());
+
+		assertFalse(q1.equals(new FindPatientQuery(null, "Hans", "Hein", null)));
+		assertFalse(q1.equals(new FindPatientQuery("12", "Hans", "Hein",
+				morning.getTime())));
+		assertFalse(q1.equals(new FindPatientQuery(null, "Helga", "Hein",
+				morning.getTime())));
+	}
+
+	/**
+	 * Test if the birthdate of a query cannot be changed from outside, as the
+	 * query is used as cache key.
+	 */
+	@Test
+	public void testFindPatientQueryBirthdateIsCopied() {
+		Date birthdate = new GregorianCalendar(1980, Calendar.JANUARY, 1)
+				.getTime();
+		FindPatientQuery q = new FindPatientQuery(null, "Hans", "Hein",
+				birthdate);
+		int hashCode = q.hashCode();
+		birthdate.setTime(0);
+		q.getBirthdate().setTime(0);
+		assertEquals(hashCode, q.hashCode());
+		assertEquals(new GregorianCalendar(1980, Calendar.JANUARY, 1).getTime(),
+				q.getBirthdate());
+	}
+
 	/**
 	 * Test if a query generates an error, if it is empty.
 	 */
@@ -490,6 +536,40 @@ public class DomainTest {
 		assertEquals(p1, fpr.getPatients().get(3));
 	}
 
+	/**
+	 * Tests, whether {@link Patient} instances are sorted by the numeric value
+	 * of their {@link Patient#getPatientID()} and patients with equal IDs keep
+	 * the order they were added in.
+	 */
+	@Test
+	public void testPatientSortByMPIIDNumeric() {
+		PatientAddress address = new PatientAddress();
+		Patient p1 = new Patient("9", patientIDAssigningAuthorityUniversalId,
+				"Franz", "Beckenbauer", convertStringToDate("20010101"),
+				Gender.NOT_APPLICABLE, address);
+		Patient p2 = new Patient("010", patientIDAssigningAuthorityUniversalId,
+				"Gerd", "Müller", convertStringToDate("20010101"),
+				Gender.NOT_APPLICABLE, address);
+		Patient p3 = new Patient("10", patientIDAssigningAuthorityUniversalId,
+				"Paul", "Breitner", convertStringToDate("20010101"),
+				Gender.NOT_APPLICABLE, address);
+		Patient p4 = new Patient("100", patientIDAssigningAuthorityUniversalId,
+				"Uli", "Hoeneß", convertStringToDate("20010101"),
+				Gender.NOT_APPLICABLE, address);
+
+		FindPatientResult fpr = new FindPatientResult(new FindPatientQuery("1",
+				"", "", null), PatientSortParameter.PID_ASCENDING);
+		fpr.addPatient(p4);
+		fpr.addPatient(p2);
+		fpr.addPatient(p3);
+		fpr.addPatient(p1);
+
+		assertEquals(p1, fpr.getPatients().get(0));
+		assertEquals(p2, fpr.getPatients().get(1));
+		assertEquals(p3, fpr.getPatients().get(2));
+		assertEquals(p4, fpr.getPatients().get(3));
+	}
+
 	/**
 	 * Test, whether {@link FindPatientConsentResult} behaves correctly with
 	 * invalid arguments in constructor.
@@ -680,6 +760,90 @@ public class DomainTest {
 		assertTrue(c4 == fpcr.getPatientConsents().get(4));
 	}
 
+	/**
+	 * Tests, whether a locked {@link FindPatientConsentResult} can be re-sorted
+	 * without changing the original result.
+	 */
+	@Test
+	public void testConsentResortBy() {
+		Patient patient = new Patient("1",
+				patientIDAssigningAuthorityUniversalId, "A", "B", new Date(),
+				Gender.NOT_APPLICABLE, new PatientAddress());
+		CoalaAuthor author = new CoalaAuthor("Dr.", "Keno", "März");
+
+		PatientConsent c0 = new PatientConsent(convertStringToDate("20010101"),
+				new Date(), PatientConsentPolicy.ONE, patient, false, author,
+				new Date(), TAG_XML);
+		PatientConsent c1 = new PatientConsent(convertStringToDate("20010101"),
+				new Date(), PatientConsentPolicy.TWO, patient, false, author,
+				new Date(), TAG_XML);
+		PatientConsent c2 = new PatientConsent(convertStringToDate("20010101"),
+				new Date(), PatientConsentPolicy.THREE, patient, false, author,
+				new Date(), TAG_XML);
+
+		FindPatientConsentResult fpcr = new FindPatientConsentResult(patient,
+				ConsentSortParameter.POLICY_TYPE_ASCENDING);
+		fpcr.addPatientConsent(c1);
+		fpcr.addPatientConsent(c2);
+		fpcr.addPatientConsent(c0);
+		fpcr.lock();
+
+		FindPatientConsentResult resorted = fpcr
+				.resortBy(ConsentSortParameter.POLICY_TYPE_DESCENDING);
+		assertEquals(ConsentSortParameter.POLICY_TYPE_DESCENDING,
+				resorted.getSortBy());
+		assertEquals(patient, resorted.getPatient());
+		assertEquals(fpcr.getTimeOfCreation(), resorted.getTimeOfCreation());
+		assertTrue(c2 == resorted.getPatientConsents().get(0));
+		assertTrue(c1 == resorted.getPatientConsents().get(1));
+		assertTrue(c0 == resorted.getPatientConsents().get(2));
+
+		// the original result remains unchanged
+		assertTrue(c0 == fpcr.getPatientConsents().get(0));
+		assertTrue(c1 == fpcr.getPatientConsents().get(1));
+		assertTrue(c2 == fpcr.getPatientConsents().get(2));
+	}
+
+	/**
+	 * Tests, whether a locked {@link FindPatientResult} can be re-sorted
+	 * without changing the original result.
+	 */
+	@Test
+	public void testPatientResortBy() {
+		PatientAddress address = new PatientAddress();
+		Patient p1 = new Patient("1", patientIDAssigningAuthorityUniversalId,
+				"Franz", "Beckenbauer", convertStringToDate("20010101"),
+				Gender.NOT_APPLICABLE, address);
+		Patient p2 = new Patient("2", patientIDAssigningAuthorityUniversalId,
+				"Gerd", "Müller", convertStringToDate("20010101"),
+				Gender.NOT_APPLICABLE, address);
+		Patient p3 = new Patient("3", patientIDAssigningAuthorityUniversalId,
+				"Paul", "Breitner", convertStringToDate("20010101"),
+				Gender.NOT_APPLICABLE, address);
+
+		FindPatientQuery query = new FindPatientQuery("1", "", "", null);
+		FindPatientResult fpr = new FindPatientResult(query,
+				PatientSortParameter.PID_ASCENDING);
+		fpr.addPatient(p3);
+		fpr.addPatient(p1);
+		fpr.addPatient(p2);
+		fpr.lock();
+
+		FindPatientResult resorted = fpr
+				.resortBy(PatientSortParameter.LASTNAME_ASCENDING);
+		assertEquals(PatientSortParameter.LASTNAME_ASCENDING,
+				resorted.getSortBy());
+		assertTrue(query == resorted.getOriginalQuery());
+		assertEquals(p1, resorted.getPatients().get(0));
+		assertEquals(p3, resorted.getPatients().get(1));
+		assertEquals(p2, resorted.getPatients().get(2));
+
+		// the original result remains unchanged
+		assertEquals(p1, fpr.getPatients().get(0));
+		assertEquals(p2, fpr.getPatients().get(1));
+		assertEquals(p3, fpr.getPatients().get(2));
+	}
+
 	@Test
 	public void testPolicyCodes() {
 		assertEquals(
@@ -819,6 +983,51 @@ public class DomainTest {
 		new PatientAddress("A", "B", null);
 	}
 
+	/**
+	 * Tests, whether the cda of a {@link PatientConsent} with a
+	 * {@link ConsentDocumentReference} is loaded once on demand and is not
+	 * serialized.
+	 */
+	@Test
+	public void testConsentLoadsCdaOnDemand() throws Exception {
+		Patient patient = new Patient("1",
+				patientIDAssigningAuthorityUniversalId, "A", "B", new Date(),
+				Gender.NOT_APPLICABLE, new PatientAddress());
+		final ConsentDocumentReference reference = new ConsentDocumentReference(
+				"1.2.3.4", "1.2.3", null);
+		final int[] loads = new int[1];
+		CdaLoader loader = new CdaLoader() {
+			public String loadCda(ConsentDocumentReference ref) {
+				assertEquals(reference, ref);
+				loads[0]++;
+				return TAG_XML;
+			}
+		};
+
+		PatientConsent consent = new PatientConsent(
+				convertStringToDate("20010101"), new Date(),
+				PatientConsentPolicy.ONE, patient, false, new CoalaAuthor(
+						"Dr.", "Keno", "März"), new Date(), reference, loader);
+		assertFalse(consent.isCdaLoaded());
+		assertEquals(0, loads[0]);
+		assertEquals(TAG_XML, consent.getCda());
+		assertEquals(TAG_XML, consent.getCda());
+		assertTrue(consent.isCdaLoaded());
+		assertEquals(1, loads[0]);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(consent);
+		out.close();
+		PatientConsent copy = (PatientConsent) new ObjectInputStream(
+				new ByteArrayInputStream(bytes.toByteArray())).readObject();
+		assertFalse(copy.isCdaLoaded());
+		assertEquals(reference, copy.getDocumentReference());
+		copy.setCdaLoader(loader);
+		assertEquals(TAG_XML, copy.getCda());
+		assertEquals(2, loads[0]);
+	}
+
 	/**
 	 * Converts a PXS date representation into an java Date.
 	 * 
@@ -0,0 +1,229 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link SingleFlight}.
+ */
+public class SingleFlightTest {
+
+	private static final int THREADS = 4;
+
+	private ExecutorService executor;
+
+	@Before
+	public void setUp() {
+		executor = Executors.newFixedThreadPool(THREADS);
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Tests that concurrent calls for the same key share one execution and
+	 * its result.
+	 */
+	@Test
+	public void testConcurrentCallsAreCoalesced() throws Exception {
+		final SingleFlight<String, Object> singleFlight = new SingleFlight<String, Object>();
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger executions = new AtomicInteger();
+		final Callable<Object> call = new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				executions.incrementAndGet();
+				release.await(10, TimeUnit.SECONDS);
+				return new Object();
+			}
+		};
+
+		List<Future<Object>> results = new ArrayList<Future<Object>>();
+		for (int i = 0; i < THREADS; i++) {
+			results.add(executor.submit(new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					return singleFlight.execute("79471", call);
+				}
+			}));
+		}
+		awaitCoalesced(singleFlight, THREADS - 1);
+		release.countDown();
+
+		Object result = results.get(0).get(10, TimeUnit.SECONDS);
+		for (Future<Object> future : results) {
+			assertSame(result, future.get(10, TimeUnit.SECONDS));
+		}
+		assertEquals(1, executions.get());
+		assertEquals(1, singleFlight.getExecutedCount());
+		assertEquals(THREADS - 1, singleFlight.getCoalescedCount());
+		assertEquals(0, singleFlight.getInFlightCount());
+
+		// completed calls are not cached
+		singleFlight.execute("79471", call);
+		assertEquals(2, executions.get());
+	}
+
+	/**
+	 * Tests that the exception of a call is thrown to all coalesced callers.
+	 */
+	@Test
+	public void testExceptionIsSharedWithCoalescedCalls() throws Exception {
+		final SingleFlight<String, Object> singleFlight = new SingleFlight<String, Object>();
+		final CountDownLatch release = new CountDownLatch(1);
+		final Callable<Object> call = new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				release.await(10, TimeUnit.SECONDS);
+				throw new IllegalStateException("PXS not reachable");
+			}
+		};
+
+		List<Future<Object>> results = new ArrayList<Future<Object>>();
+		for (int i = 0; i < 2; i++) {
+			results.add(executor.submit(new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					try {
+						singleFlight.execute("79471", call);
+						fail();
+					} catch (IllegalStateException e) {
+						return e;
+					}
+					return null;
+				}
+			}));
+		}
+		awaitCoalesced(singleFlight, 1);
+		release.countDown();
+
+		Object first = results.get(0).get(10, TimeUnit.SECONDS);
+		assertTrue(first instanceof IllegalStateException);
+		assertSame(first, results.get(1).get(10, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * Tests that a coalesced caller stops waiting when it is interrupted, with
+	 * its interrupt status set, while the call goes on for its executing
+	 * thread.
+	 */
+	@Test
+	public void testInterruptedWaiterStops() throws Exception {
+		final SingleFlight<String, String> singleFlight = new SingleFlight<String, String>();
+		final CountDownLatch release = new CountDownLatch(1);
+		final Callable<String> call = new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				release.await(10, TimeUnit.SECONDS);
+				return "79471";
+			}
+		};
+		Future<String> executing = executor.submit(new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				return singleFlight.execute("79471", call);
+			}
+		});
+		while (singleFlight.getInFlightCount() == 0) {
+			Thread.sleep(5);
+		}
+		final AtomicBoolean interrupted = new AtomicBoolean();
+		final CountDownLatch stopped = new CountDownLatch(1);
+		Thread waiting = new Thread() {
+			@Override
+			public void run() {
+				try {
+					singleFlight.execute("79471", call);
+				} catch (InterruptedException e) {
+					interrupted.set(isInterrupted());
+				} catch (Exception e) {
+					// not expected, checked below
+				}
+				stopped.countDown();
+			}
+		};
+		waiting.start();
+		awaitCoalesced(singleFlight, 1);
+
+		waiting.interrupt();
+		assertTrue(stopped.await(10, TimeUnit.SECONDS));
+		assertTrue(interrupted.get());
+		assertFalse(executing.isDone());
+		release.countDown();
+		assertEquals("79471", executing.get(10, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * Tests that calls for different keys are executed independently.
+	 */
+	@Test
+	public void testDifferentKeysAreNotCoalesced() throws Exception {
+		SingleFlight<String, String> singleFlight = new SingleFlight<String, String>();
+		assertEquals("a", singleFlight.execute("a", constant("a")));
+		assertEquals("b", singleFlight.execute("b", constant("b")));
+		assertEquals(2, singleFlight.getExecutedCount());
+		assertEquals(0, singleFlight.getCoalescedCount());
+	}
+
+	/*
+	 * Little helping method, waiting until the given number of calls joined
+	 * a call in flight.
+	 */
+	private void awaitCoalesced(SingleFlight<?, ?> singleFlight, long count)
+			throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (singleFlight.getCoalescedCount() < count) {
+			if (System.currentTimeMillis() > deadline)
+				fail("calls were not coalesced");
+			Thread.sleep(5);
+		}
+	}
+
+	/*
+	 * Little helping method, creating a call returning the given value.
+	 */
+	private Callable<String> constant(final String value) {
+		return new Callable<String>() {
+			@Override
+			public String call() {
+				return value;
+			}
+		};
+	}
+}
@@ -0,0 +1,371 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.pdq;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.Endpoint;
+import org.apache.camel.Exchange;
+import org.apache.camel.ExchangeTimedOutException;
+import org.apache.camel.Producer;
+import org.slf4j.Logger;
+
+/**
+ * Bounded pool of started {@link Producer}s of one MLLP endpoint. Each
+ * producer keeps its TCP connection to the endpoint open between exchanges,
+ * so pooled producers save the connect and handshake of every request.
+ * <p>
+ * At most <code>maxSize</code> producers are in use or idle at a time; if all
+ * are in use, borrowing waits up to <code>borrowTimeout</code> milliseconds.
+ * Idle producers are reused most recently used first, producers idle longer
+ * than <code>maxIdleTime</code> milliseconds are stopped, on each borrow and
+ * by a background evictor. Producers returned as unhealthy are stopped
+ * instead of being reused, which {@link #process(PooledProducer, Exchange)}
+ * does only for I/O failures and timeouts of the connection.
+ * <p>
+ * Instances are thread-safe.
+ */
+final class MllpConnectionPool {
+
+	private static final Logger LOG = org.slf4j.LoggerFactory
+			.getLogger(MllpConnectionPool.class);
+
+	private final Endpoint endpoint;
+	private final long maxIdleTime;
+	private final long borrowTimeout;
+
+	/** one permit per producer which may be in use or idle */
+	private final Semaphore permits;
+
+	/** idle producers, the most recently used one first */
+	private final Deque<PooledProducer> idle = new ArrayDeque<PooledProducer>();
+
+	private final ScheduledExecutorService evictor;
+
+	private volatile boolean closed;
+
+	private final AtomicLong createdCount = new AtomicLong();
+	private final AtomicLong reusedCount = new AtomicLong();
+	private final AtomicLong evictedCount = new AtomicLong();
+	private final AtomicLong discardedCount = new AtomicLong();
+
+	/**
+	 * Creates a new pool.
+	 * 
+	 * @param endpoint
+	 *            the endpoint to create producers for
+	 * @param maxSize
+	 *            maximum number of producers, must be greater than 0
+	 * @param maxIdleTime
+	 *            time in milliseconds a producer may stay idle before it is
+	 *            stopped, must be greater than 0
+	 * @param borrowTimeout
+	 *            time in milliseconds to wait for a producer if all are in
+	 *            use, must not be negative
+	 * @param evictionInterval
+	 *            time in milliseconds between two runs of the background
+	 *            evictor, 0 to evict on borrow only
+	 */
+	MllpConnectionPool(Endpoint endpoint, int maxSize, long maxIdleTime,
+			long borrowTimeout, long evictionInterval) {
+		if (endpoint == null)
+			throw new IllegalArgumentException("endpoint cannot be null.");
+		if (maxSize < 1)
+			throw new IllegalArgumentException(
+					"maxSize must be greater than 0.");
+		if (maxIdleTime < 1)
+			throw new IllegalArgumentException(
+					"maxIdleTime must be greater than 0.");
+		if (borrowTimeout < 0 || evictionInterval < 0)
+			throw new IllegalArgumentException(
+					"borrowTimeout and evictionInterval must not be negative.");
+		this.endpoint = endpoint;
+		this.maxIdleTime = maxIdleTime;
+		this.borrowTimeout = borrowTimeout;
+		this.permits = new Semaphore(maxSize, true);
+		if (evictionInterval > 0) {
+			evictor = Executors
+					.newSingleThreadScheduledExecutor(new ThreadFactory() {
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r, "coala-mllp-evictor");
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			evictor.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					evictIdle();
+				}
+			}, evictionInterval, evictionInterval, TimeUnit.MILLISECONDS);
+		} else {
+			evictor = null;
+		}
+	}
+
+	/**
+	 * Borrows a started producer, reusing an idle one if possible. Every
+	 * borrowed producer must be given back by {@link #release(PooledProducer,
+	 * boolean)}.
+	 * 
+	 * @return a started producer
+	 * @throws Exception
+	 *             if no producer became available in time or a new one could
+	 *             not be started
+	 */
+	PooledProducer borrow() throws Exception {
+		if (closed)
+			throw new IllegalStateException("The connection pool for "
+					+ endpoint.getEndpointUri() + " is closed.");
+		if (!permits.tryAcquire(borrowTimeout, TimeUnit.MILLISECONDS))
+			throw new IllegalStateException("No connection to "
+					+ endpoint.getEndpointUri() + " available within "
+					+ borrowTimeout + " ms.");
+		try {
+			evictIdle();
+			PooledProducer reusable;
+			synchronized (idle) {
+				reusable = idle.pollFirst();
+			}
+			if (reusable != null) {
+				reusedCount.incrementAndGet();
+				return reusable;
+			}
+			Producer producer = endpoint.createProducer();
+			producer.start();
+			createdCount.incrementAndGet();
+			return new PooledProducer(producer);
+		} catch (Exception e) {
+			permits.release();
+			throw e;
+		} catch (Error e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Processes an exchange with a borrowed producer and gives the producer
+	 * back to the pool. The producer is discarded only if its connection
+	 * failed, failures of the exchange itself, e.g. a rejected request, keep
+	 * the connection.
+	 * 
+	 * @param producer
+	 *            the borrowed producer
+	 * @param exchange
+	 *            the exchange to process
+	 * @return the exchange, holding the response or the exception
+	 */
+	Exchange process(PooledProducer producer, Exchange exchange) {
+		boolean healthy = false;
+		try {
+			producer.getProducer().process(exchange);
+			healthy = !isConnectionFailure(exchange.getException());
+		} catch (Exception e) {
+			exchange.setException(e);
+			healthy = !isConnectionFailure(e);
+		} finally {
+			release(producer, healthy);
+		}
+		return exchange;
+	}
+
+	/**
+	 * Checks whether an exception or one of its causes is an I/O failure or a
+	 * timeout of the connection. Afterwards, the connection must not be
+	 * reused, as it may be closed or still receive the late response.
+	 * 
+	 * @param e
+	 *            the exception of an exchange, may be <code>null</code>
+	 * @return true, if the exception indicates a failed connection
+	 */
+	static boolean isConnectionFailure(Throwable e) {
+		for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+			if (cause instanceof IOException
+					|| cause instanceof ExchangeTimedOutException)
+				return true;
+			if (cause.getCause() == cause)
+				break;
+		}
+		return false;
+	}
+
+	/**
+	 * Gives a borrowed producer back to the pool.
+	 * 
+	 * @param producer
+	 *            the borrowed producer
+	 * @param healthy
+	 *            false, if the connection of the producer failed and it must
+	 *            not be reused
+	 */
+	void release(PooledProducer producer, boolean healthy) {
+		try {
+			if (healthy) {
+				producer.reused = true;
+				producer.idleSince = System.currentTimeMillis();
+				// checked under the lock, so close() either sees the producer
+				// or the producer is not parked anymore
+				synchronized (idle) {
+					if (!closed) {
+						idle.addFirst(producer);
+						return;
+					}
+				}
+			}
+			discardedCount.incrementAndGet();
+			stop(producer.getProducer());
+		} finally {
+			permits.release();
+		}
+	}
+
+	/**
+	 * Stops all producers which have been idle longer than the maximum idle
+	 * time.
+	 * 
+	 * @return the number of stopped producers
+	 */
+	int evictIdle() {
+		long oldest = System.currentTimeMillis() - maxIdleTime;
+		Deque<PooledProducer> expired = new ArrayDeque<PooledProducer>();
+		synchronized (idle) {
+			// the least recently used producers are at the end
+			Iterator<PooledProducer> iterator = idle.descendingIterator();
+			while (iterator.hasNext()) {
+				PooledProducer candidate = iterator.next();
+				if (candidate.idleSince > oldest)
+					break;
+				iterator.remove();
+				expired.add(candidate);
+			}
+		}
+		for (PooledProducer producer : expired) {
+			evictedCount.incrementAndGet();
+			stop(producer.producer);
+		}
+		return expired.size();
+	}
+
+	/**
+	 * Stops all idle producers and the evictor. Producers in use are stopped
+	 * when they are released.
+	 */
+	void close() {
+		closed = true;
+		if (evictor != null)
+			evictor.shutdownNow();
+		Deque<PooledProducer> producers;
+		synchronized (idle) {
+			producers = new ArrayDeque<PooledProducer>(idle);
+			idle.clear();
+		}
+		for (PooledProducer producer : producers) {
+			stop(producer.producer);
+		}
+	}
+
+	/**
+	 * @return the number of idle producers
+	 */
+	int getIdleCount() {
+		synchronized (idle) {
+			return idle.size();
+		}
+	}
+
+	/**
+	 * @return the number of producers created, i.e. connections opened
+	 */
+	long getCreatedCount() {
+		return createdCount.get();
+	}
+
+	/**
+	 * @return the number of borrows served by an idle producer
+	 */
+	long getReusedCount() {
+		return reusedCount.get();
+	}
+
+	/**
+	 * @return the number of producers stopped for being idle too long
+	 */
+	long getEvictedCount() {
+		return evictedCount.get();
+	}
+
+	/**
+	 * @return the number of producers stopped for being unhealthy or released
+	 *         after the pool was closed
+	 */
+	long getDiscardedCount() {
+		return discardedCount.get();
+	}
+
+	/*
+	 * Little helping method, stopping a producer and closing its connection.
+	 */
+	private void stop(Producer producer) {
+		try {
+			producer.stop();
+		} catch (Exception e) {
+			LOG.warn("Stopping a producer for " + endpoint.getEndpointUri()
+					+ " failed: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * A producer of the pool, knowing whether it has been used before and
+	 * since when it is idle.
+	 */
+	static final class PooledProducer {
+
+		private final Producer producer;
+		private boolean reused;
+		private long idleSince;
+
+		private PooledProducer(Producer producer) {
+			this.producer = producer;
+		}
+
+		/**
+		 * @return the started producer
+		 */
+		Producer getProducer() {
+			return producer;
+		}
+
+		/**
+		 * @return true, if the connection of the producer has been used for
+		 *         an earlier exchange already
+		 */
+		boolean isReused() {
+			return reused;
+		}
+	}
+}
@@ -16,11 +16,16 @@
  */
 package org.openehealth.coala.pdq;
 
+import java.util.concurrent.Callable;
+
+import org.openehealth.coala.concurrent.SingleFlight;
 import org.openehealth.coala.exception.PDQRequestFailedException;
 import org.slf4j.Logger;
 
 /**
  * This class functions as a gate to the communication with the PDQ endpoint.
+ * Identical requests sent concurrently, e.g. by several workstations opening
+ * the same patient, share one exchange with the PDQ endpoint.
  * 
  * @author kmaerz, siekmann
  */
@@ -31,6 +36,11 @@ public class PDQGateImpl implements PDQGate {
 
 	private PDQTransactor pdqTransactor;
 
+	/*
+	 * PDQ exchanges in flight, keyed by their query parameters
+	 */
+	private final SingleFlight<String, String> inFlightRequests = new SingleFlight<String, String>();
+
 	/**
 	 * @return the pdqTransactor
 	 */
@@ -51,17 +61,35 @@ public class PDQGateImpl implements PDQGate {
 	/**
 	 * Returns a result String from the PDQ which contains the data relating to
 	 * the found patients.
+	 * <p>
+	 * If an identical request is in flight already, its raw RSP^K22 response
+	 * is returned. Its MSH-10, MSA-2 and QAK-1 then echo the message control
+	 * id and query tag of that other request, not of
+	 * <code>hl7ReqString</code>, so the response must only be used for the
+	 * patients it contains.
 	 * 
 	 * @param hl7ReqString
 	 *            The search string for the PDQ Server
 	 * @return The result String from the PDQ
 	 * @throws PDQRequestFailedException
-	 *             Is thrown if an error occurred during the PDQ communication.
+	 *             Is thrown if an error occurred during the PDQ communication
+	 *             or the current thread was interrupted while waiting for an
+	 *             identical request.
 	 */
-	public String requestPatients(String hl7ReqString)
+	public String requestPatients(final String hl7ReqString)
 			throws PDQRequestFailedException {
 		try {
-			return pdqTransactor.sendPDQRequest(hl7ReqString);
+			return inFlightRequests.execute(createRequestKey(hl7ReqString),
+					new Callable<String>() {
+						@Override
+						public String call() throws Exception {
+							return pdqTransactor.sendPDQRequest(hl7ReqString);
+						}
+					});
+		} catch (InterruptedException e) {
+			throw new PDQRequestFailedException(
+					"Interrupted while waiting for an identical PDQ request.",
+					e);
 		} catch (Exception e) {
 			LOG.error(e.getLocalizedMessage(), e);
 			throw new PDQRequestFailedException(
@@ -69,4 +97,56 @@ public class PDQGateImpl implements PDQGate {
 					e);
 		}
 	}
+
+	/**
+	 * Returns the number of requests which shared the response of an identical
+	 * request in flight instead of being sent to the PDQ endpoint.
+	 * 
+	 * @return the number of coalesced requests
+	 */
+	public long getCoalescedRequestCount() {
+		return inFlightRequests.getCoalescedCount();
+	}
+
+	/**
+	 * Returns the number of requests actually sent to the PDQ endpoint.
+	 * 
+	 * @return the number of sent requests
+	 */
+	public long getSentRequestCount() {
+		return inFlightRequests.getExecutedCount();
+	}
+
+	/**
+	 * Little helping method which creates the key identical requests are
+	 * coalesced by. The MSH segment and the query tag (QPD-2) differ for each
+	 * message and are left out, the query parameters remain.
+	 * 
+	 * @param hl7ReqString
+	 *            the HL7 request
+	 * @return the key of the request
+	 */
+	static String createRequestKey(String hl7ReqString) {
+		if (hl7ReqString == null || hl7ReqString.length() < 4
+				|| !hl7ReqString.startsWith("MSH"))
+			return String.valueOf(hl7ReqString);
+		char fieldSeparator = hl7ReqString.charAt(3);
+		StringBuilder key = new StringBuilder();
+		for (String segment : hl7ReqString.split("[\\r\\n]+")) {
+			if (segment.startsWith("MSH"))
+				continue;
+			if (segment.startsWith("QPD")) {
+				// QPD|<query name>|<query tag>|<parameters>...
+				int tagStart = segment.indexOf(fieldSeparator,
+						segment.indexOf(fieldSeparator) + 1);
+				int tagEnd = tagStart < 0 ? -1 : segment.indexOf(
+						fieldSeparator, tagStart + 1);
+				if (tagEnd >= 0)
+					segment = segment.substring(0, tagStart + 1)
+							+ segment.substring(tagEnd);
+			}
+			key.append(segment).append('\r');
+		}
+		return key.toString();
+	}
 }
@@ -22,6 +22,7 @@ import org.apache.camel.ProducerTemplate;
 import org.apache.camel.impl.DefaultExchange;
 import org.openehealth.coala.exception.PDQConfigurationErrorException;
 import org.openehealth.coala.exception.PDQRequestFailedException;
+import org.openehealth.coala.pdq.MllpConnectionPool.PooledProducer;
 import org.openehealth.ipf.platform.camel.ihe.mllp.PixPdqCamelValidators;
 import org.slf4j.Logger;
 
@@ -31,6 +32,12 @@ import org.slf4j.Logger;
  * The method {@code public static String sendPDQRequest(String request)} should
  * be used to send a HL7 request to the PDQ endpoint. The answer is the
  * corresponding HL7 answer
+ * <p>
+ * If <code>maxPoolSize</code> is greater than 0, requests are sent through a
+ * pool of persistent MLLP connections instead of the producer template, see
+ * {@link MllpConnectionPool}. A request failing with an I/O error on a reused
+ * connection is repeated once on a new connection, as the MPI may have closed
+ * the old one.
  * 
  * @author siekmann, wkais
  */
@@ -47,9 +54,27 @@ public class PDQTransactorImpl implements PDQTransactor {
 	private static final Logger LOG = org.slf4j.LoggerFactory.getLogger(PDQTransactorImpl.class);
 	private final String PDQ_ENDPOINT_BEGINNIG = "pdq-iti21://";
 	
+	/** default maximum number of pooled MLLP connections, 0 disables pooling */
+	public static final int DEFAULT_MAX_POOL_SIZE = 0;
+	/** default time in milliseconds a pooled connection may stay idle */
+	public static final long DEFAULT_MAX_IDLE_TIME = 60000L;
+	/** default time in milliseconds to wait for a free pooled connection */
+	public static final long DEFAULT_BORROW_TIMEOUT = 10000L;
+	/** default time in milliseconds between two runs of the idle evictor */
+	public static final long DEFAULT_EVICTION_INTERVAL = 30000L;
+
 	private String pdqEndpoint;
 	private CamelContext camelContext;
 	private ProducerTemplate producerTemplate;
+
+	/*
+	 * Pool of persistent MLLP connections, created on first use
+	 */
+	private MllpConnectionPool connectionPool;
+	private int maxPoolSize = DEFAULT_MAX_POOL_SIZE;
+	private long maxIdleTime = DEFAULT_MAX_IDLE_TIME;
+	private long borrowTimeout = DEFAULT_BORROW_TIMEOUT;
+	private long evictionInterval = DEFAULT_EVICTION_INTERVAL;
 	
 	public PDQTransactorImpl() {
 
@@ -109,8 +134,14 @@ public class PDQTransactorImpl implements PDQTransactor {
 		Exchange requestExchange = prepareRequest(request, camelContext);
 
 		// send request
-		Exchange responseExchange = producerTemplate.send(pdqEndpoint,
-				requestExchange);
+		Exchange responseExchange;
+		MllpConnectionPool pool = getConnectionPool();
+		if (pool == null) {
+			responseExchange = producerTemplate.send(pdqEndpoint,
+					requestExchange);
+		} else {
+			responseExchange = sendPooled(pool, requestExchange, request);
+		}
 		Exception e = responseExchange.getException();
 		if (e != null) {
 			LOG.error("Error during validating PDQ request: " + e.getMessage(), e);
@@ -134,6 +165,166 @@ public class PDQTransactorImpl implements PDQTransactor {
 		return response;
 	}
 
+	/**
+	 * Sends the request exchange on a pooled connection. If a reused
+	 * connection fails, it is discarded and the request is sent once more on
+	 * a new connection. PDQ queries do not change any data, so repeating them
+	 * is safe. Other failures, e.g. a rejected request, are not repeated.
+	 * 
+	 * @param pool
+	 *            the connection pool
+	 * @param requestExchange
+	 *            the prepared request exchange
+	 * @param request
+	 *            the HL7 request message, needed to repeat the request
+	 * @return the exchange holding the response or the exception
+	 */
+	private Exchange sendPooled(MllpConnectionPool pool,
+			Exchange requestExchange, String request)
+			throws PDQRequestFailedException {
+		PooledProducer producer;
+		try {
+			producer = pool.borrow();
+		} catch (Exception e) {
+			requestExchange.setException(e);
+			return requestExchange;
+		}
+		boolean reused = producer.isReused();
+		Exchange exchange = pool.process(producer, requestExchange);
+		if (reused
+				&& MllpConnectionPool.isConnectionFailure(exchange
+						.getException())) {
+			LOG.info("PDQ request on a reused connection failed, retrying on a new connection: "
+					+ exchange.getException().getMessage());
+			exchange = prepareRequest(request, camelContext);
+			try {
+				producer = pool.borrow();
+			} catch (Exception e) {
+				exchange.setException(e);
+				return exchange;
+			}
+			exchange = pool.process(producer, exchange);
+		}
+		return exchange;
+	}
+
+	/**
+	 * Returns the pool of MLLP connections and creates it on first use.
+	 * 
+	 * @return the connection pool or <code>null</code>, if pooling is
+	 *         disabled
+	 */
+	private synchronized MllpConnectionPool getConnectionPool() {
+		if (maxPoolSize < 1)
+			return null;
+		if (connectionPool == null) {
+			connectionPool = new MllpConnectionPool(
+					camelContext.getEndpoint(pdqEndpoint), maxPoolSize,
+					maxIdleTime, borrowTimeout, evictionInterval);
+		}
+		return connectionPool;
+	}
+
+	/**
+	 * Closes all pooled MLLP connections. Called by Spring on context
+	 * shutdown.
+	 */
+	public synchronized void shutdown() {
+		if (connectionPool != null) {
+			connectionPool.close();
+			connectionPool = null;
+		}
+	}
+
+	/**
+	 * Sets the maximum number of persistent MLLP connections to the MPI. Pass
+	 * 0 to open a connection per request via the producer template.
+	 * 
+	 * @param maxPoolSize
+	 *            number of connections, must not be negative
+	 */
+	public synchronized void setMaxPoolSize(int maxPoolSize) {
+		if (maxPoolSize < 0)
+			throw new IllegalArgumentException(
+					"maxPoolSize must not be negative.");
+		this.maxPoolSize = maxPoolSize;
+		shutdown();
+	}
+
+	/**
+	 * Sets the time in milliseconds a pooled connection may stay idle before
+	 * it is closed. Should be shorter than the idle timeout of the MPI.
+	 * 
+	 * @param maxIdleTime
+	 *            time in milliseconds, must be greater than 0
+	 */
+	public synchronized void setMaxIdleTime(long maxIdleTime) {
+		if (maxIdleTime < 1)
+			throw new IllegalArgumentException(
+					"maxIdleTime must be greater than 0.");
+		this.maxIdleTime = maxIdleTime;
+		shutdown();
+	}
+
+	/**
+	 * Sets the time in milliseconds to wait for a free connection if all
+	 * pooled connections are in use.
+	 * 
+	 * @param borrowTimeout
+	 *            time in milliseconds, must not be negative
+	 */
+	public synchronized void setBorrowTimeout(long borrowTimeout) {
+		if (borrowTimeout < 0)
+			throw new IllegalArgumentException(
+					"borrowTimeout must not be negative.");
+		this.borrowTimeout = borrowTimeout;
+		shutdown();
+	}
+
+	/**
+	 * Sets the time in milliseconds between two checks for idle connections
+	 * in the background.
+	 * 
+	 * @param evictionInterval
+	 *            time in milliseconds, 0 to check on use only
+	 */
+	public synchronized void setEvictionInterval(long evictionInterval) {
+		if (evictionInterval < 0)
+			throw new IllegalArgumentException(
+					"evictionInterval must not be negative.");
+		this.evictionInterval = evictionInterval;
+		shutdown();
+	}
+
+	/**
+	 * @return the number of MLLP connections opened by the pool
+	 */
+	public synchronized long getOpenedConnectionCount() {
+		return connectionPool == null ? 0 : connectionPool.getCreatedCount();
+	}
+
+	/**
+	 * @return the number of requests sent on a reused pooled connection
+	 */
+	public synchronized long getReusedConnectionCount() {
+		return connectionPool == null ? 0 : connectionPool.getReusedCount();
+	}
+
+	/**
+	 * @return the number of pooled connections closed after a failure
+	 */
+	public synchronized long getDiscardedConnectionCount() {
+		return connectionPool == null ? 0 : connectionPool
+				.getDiscardedCount();
+	}
+
+	/**
+	 * @return the number of pooled connections closed for being idle
+	 */
+	public synchronized long getEvictedConnectionCount() {
+		return connectionPool == null ? 0 : connectionPool.getEvictedCount();
+	}
+
 	private Exchange prepareRequest(String request, CamelContext camelContext)
 			throws PDQRequestFailedException {
 		Exchange requestExchange = new DefaultExchange(camelContext);
@@ -0,0 +1,232 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.pdq;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Endpoint;
+import org.apache.camel.Exchange;
+import org.apache.camel.ExchangeTimedOutException;
+import org.apache.camel.Producer;
+import org.apache.camel.impl.DefaultExchange;
+import org.junit.Before;
+import org.junit.Test;
+import org.openehealth.coala.pdq.MllpConnectionPool.PooledProducer;
+
+/**
+ * Unit test for {@link MllpConnectionPool}, using proxies instead of real MLLP
+ * producers.
+ */
+public class MllpConnectionPoolTest {
+
+	private AtomicInteger started;
+	private AtomicInteger stopped;
+	private Endpoint endpoint;
+	/** thrown by the producers on process, null to succeed */
+	private Exception processFailure;
+
+	@Before
+	public void setUp() {
+		started = new AtomicInteger();
+		stopped = new AtomicInteger();
+		endpoint = (Endpoint) Proxy.newProxyInstance(getClass()
+				.getClassLoader(), new Class<?>[] { Endpoint.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method,
+							Object[] args) {
+						if (method.getName().equals("createProducer"))
+							return createProducer();
+						if (method.getName().equals("getEndpointUri"))
+							return "pdq-iti21://localhost:8765";
+						return null;
+					}
+				});
+	}
+
+	/**
+	 * Tests that released producers are reused and unhealthy ones are stopped.
+	 */
+	@Test
+	public void testReuseAndDiscard() throws Exception {
+		MllpConnectionPool pool = new MllpConnectionPool(endpoint, 2, 60000L,
+				0L, 0L);
+		PooledProducer first = pool.borrow();
+		assertFalse(first.isReused());
+		pool.release(first, true);
+
+		PooledProducer second = pool.borrow();
+		assertSame(first, second);
+		assertTrue(second.isReused());
+		pool.release(second, false);
+		assertEquals(1, stopped.get());
+
+		PooledProducer third = pool.borrow();
+		assertNotSame(first, third);
+		assertEquals(2, pool.getCreatedCount());
+		assertEquals(1, pool.getReusedCount());
+		assertEquals(1, pool.getDiscardedCount());
+		pool.release(third, true);
+		pool.close();
+		assertEquals(2, stopped.get());
+	}
+
+	/**
+	 * Tests that no more than the maximum number of producers are borrowed.
+	 */
+	@Test
+	public void testPoolIsBounded() throws Exception {
+		MllpConnectionPool pool = new MllpConnectionPool(endpoint, 1, 60000L,
+				10L, 0L);
+		PooledProducer producer = pool.borrow();
+		try {
+			pool.borrow();
+			fail();
+		} catch (IllegalStateException e) {
+			// all connections are in use
+		}
+		pool.release(producer, true);
+		pool.release(pool.borrow(), true);
+		assertEquals(1, started.get());
+		pool.close();
+	}
+
+	/**
+	 * Tests that producers idle longer than the maximum idle time are stopped.
+	 */
+	@Test
+	public void testIdleProducersAreEvicted() throws Exception {
+		MllpConnectionPool pool = new MllpConnectionPool(endpoint, 2, 1L, 0L,
+				0L);
+		pool.release(pool.borrow(), true);
+		Thread.sleep(20);
+		assertEquals(1, pool.evictIdle());
+		assertEquals(0, pool.getIdleCount());
+		assertEquals(1, stopped.get());
+		assertEquals(1, pool.getEvictedCount());
+		pool.close();
+	}
+
+	/**
+	 * Tests that a producer released after the pool was closed is stopped
+	 * instead of being parked.
+	 */
+	@Test
+	public void testReleaseAfterClose() throws Exception {
+		MllpConnectionPool pool = new MllpConnectionPool(endpoint, 2, 60000L,
+				0L, 0L);
+		PooledProducer producer = pool.borrow();
+		pool.close();
+		pool.release(producer, true);
+		assertEquals(0, pool.getIdleCount());
+		assertEquals(1, stopped.get());
+		assertEquals(1, pool.getDiscardedCount());
+	}
+
+	/**
+	 * Tests that only I/O failures discard the connection, while failures of
+	 * the exchange itself keep it.
+	 */
+	@Test
+	public void testProcessDiscardsOnlyFailedConnections() throws Exception {
+		MllpConnectionPool pool = new MllpConnectionPool(endpoint, 2, 60000L,
+				0L, 0L);
+		processFailure = new IllegalArgumentException("AR: unknown query");
+		Exchange exchange = pool.process(pool.borrow(), createExchange());
+		assertSame(processFailure, exchange.getException());
+		assertEquals(1, pool.getIdleCount());
+		assertEquals(0, pool.getDiscardedCount());
+
+		processFailure = new IllegalStateException("send failed",
+				new IOException("Connection reset by peer"));
+		exchange = pool.process(pool.borrow(), createExchange());
+		assertSame(processFailure, exchange.getException());
+		assertEquals(0, pool.getIdleCount());
+		assertEquals(1, pool.getDiscardedCount());
+		assertEquals(1, stopped.get());
+
+		processFailure = null;
+		exchange = pool.process(pool.borrow(), createExchange());
+		assertEquals(null, exchange.getException());
+		assertEquals(1, pool.getIdleCount());
+		pool.close();
+	}
+
+	/**
+	 * Tests which exceptions count as failures of the connection.
+	 */
+	@Test
+	public void testIsConnectionFailure() {
+		assertFalse(MllpConnectionPool.isConnectionFailure(null));
+		assertFalse(MllpConnectionPool
+				.isConnectionFailure(new IllegalStateException("AE")));
+		assertTrue(MllpConnectionPool.isConnectionFailure(new IOException()));
+		assertTrue(MllpConnectionPool
+				.isConnectionFailure(new RuntimeException(new Exception(
+						new IOException()))));
+		assertTrue(MllpConnectionPool
+				.isConnectionFailure(new ExchangeTimedOutException(
+						createExchange(), 5000L)));
+	}
+
+	/*
+	 * Little helping method, creating an empty exchange.
+	 */
+	private static Exchange createExchange() {
+		return new DefaultExchange((CamelContext) null);
+	}
+
+	/*
+	 * Little helping method, creating a producer which counts starts and
+	 * stops.
+	 */
+	private Producer createProducer() {
+		return (Producer) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { Producer.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method,
+							Object[] args) throws Exception {
+						if (method.getName().equals("start"))
+							started.incrementAndGet();
+						else if (method.getName().equals("stop"))
+							stopped.incrementAndGet();
+						else if (method.getName().equals("process")
+								&& processFailure != null)
+							throw processFailure;
+						else if (method.getName().equals("hashCode"))
+							return System.identityHashCode(proxy);
+						else if (method.getName().equals("equals"))
+							return proxy == args[0];
+						else if (method.getName().equals("isSingleton"))
+							return false;
+						return null;
+					}
+				});
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.pdq.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openehealth.coala.exception.PDQRequestFailedException;
+import org.openehealth.coala.pdq.PDQGateImpl;
+import org.openehealth.coala.pdq.PDQTransactor;
+
+/**
+ * Tests that the PDQGateImpl coalesces identical concurrent requests, without
+ * a PDQ endpoint.
+ */
+public class PDQGateCoalescingTest implements PDQTestConstants {
+
+	/** same query as VALID_REQUEST_HEADER, but another control ID and tag */
+	private static final String SAME_QUERY = "MSH|^~\\&|OHFConsumer|OHFFacility|OTHER_KIOSK|HIMSSSANDIEGO|20070108145323-0800||"
+			+ "QBP^Q22|1234567890123456789|P|2.5|\nQPD|Q22^Find Candidates|"
+			+ "1111111111111111111111111111111|@PID.5.1^M*|\nRCP|I|2^RD";
+
+	private static final String OTHER_QUERY = "MSH|^~\\&|OHFConsumer|OHFFacility|OTHER_KIOSK|HIMSSSANDIEGO|20070108145323-0800||"
+			+ "QBP^Q22|1234567890123456789|P|2.5|\nQPD|Q22^Find Candidates|"
+			+ "1111111111111111111111111111111|@PID.5.1^N*|\nRCP|I|2^RD";
+
+	private ExecutorService executor;
+	private PDQGateImpl pdqGate;
+	private CountDownLatch release;
+	private AtomicInteger sent;
+
+	@Before
+	public void setUp() {
+		executor = Executors.newCachedThreadPool();
+		release = new CountDownLatch(1);
+		sent = new AtomicInteger();
+		pdqGate = new PDQGateImpl();
+		pdqGate.setPdqTransactor(new PDQTransactor() {
+			@Override
+			public String sendPDQRequest(String request)
+					throws PDQRequestFailedException {
+				sent.incrementAndGet();
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					throw new PDQRequestFailedException(e);
+				}
+				return "MSH|response " + sent.get();
+			}
+		});
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Requests for the same query parameters share one exchange, even if
+	 * their message control IDs and query tags differ.
+	 */
+	@Test
+	public void testIdenticalRequestsAreCoalesced() throws Exception {
+		Future<String> first = request(VALID_REQUEST_HEADER);
+		Future<String> second = request(SAME_QUERY);
+		awaitCoalesced(1);
+		release.countDown();
+
+		assertEquals("MSH|response 1", first.get(10, TimeUnit.SECONDS));
+		assertEquals("MSH|response 1", second.get(10, TimeUnit.SECONDS));
+		assertEquals(1, sent.get());
+		assertEquals(1, pdqGate.getSentRequestCount());
+		assertEquals(1, pdqGate.getCoalescedRequestCount());
+	}
+
+	/**
+	 * Requests for different query parameters are sent on their own.
+	 */
+	@Test
+	public void testDifferentRequestsAreNotCoalesced() throws Exception {
+		release.countDown();
+		pdqGate.requestPatients(VALID_REQUEST_HEADER);
+		pdqGate.requestPatients(OTHER_QUERY);
+		assertEquals(2, sent.get());
+		assertEquals(0, pdqGate.getCoalescedRequestCount());
+	}
+
+	/*
+	 * Little helping method, sending a request in the background.
+	 */
+	private Future<String> request(final String hl7ReqString) {
+		return executor.submit(new Callable<String>() {
+			@Override
+			public String call() {
+				return pdqGate.requestPatients(hl7ReqString);
+			}
+		});
+	}
+
+	/*
+	 * Little helping method, waiting until the given number of requests
+	 * joined a request in flight.
+	 */
+	private void awaitCoalesced(long count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (pdqGate.getCoalescedRequestCount() < count) {
+			if (System.currentTimeMillis() > deadline)
+				fail("requests were not coalesced");
+			Thread.sleep(5);
+		}
+	}
+}
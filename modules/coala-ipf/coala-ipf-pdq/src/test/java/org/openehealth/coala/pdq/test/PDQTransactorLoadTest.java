@@ -0,0 +1,191 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.pdq.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.builder.RouteBuilder;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openehealth.coala.pdq.PDQTransactorImpl;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+/**
+ * Load test comparing the latency of PDQ requests sent via the producer
+ * template with requests sent on pooled MLLP connections. The requests are
+ * answered by a local ITI-21 route behaving like coala-pdq-mock.
+ * <p>
+ * The test takes a while and only runs with
+ * <code>-Dcoala.loadtest=true</code>. The latencies are logged.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:/META-INF/coala-pdq-system-context.xml" })
+public class PDQTransactorLoadTest implements PDQTestConstants {
+
+	private static final Logger LOG = org.slf4j.LoggerFactory
+			.getLogger(PDQTransactorLoadTest.class);
+
+	private static final String MOCK_ENDPOINT = "pdq-iti21://localhost:18765?audit=false";
+
+	private static final int THREADS = 8;
+	private static final int WARMUP_REQUESTS = 50;
+	private static final int REQUESTS_PER_THREAD = 250;
+
+	private static boolean routeStarted;
+
+	@Autowired
+	private CamelContext platformCamelContext;
+
+	@Autowired
+	private ProducerTemplate template;
+
+	@Before
+	public void setUp() throws Exception {
+		assumeTrue(Boolean.getBoolean("coala.loadtest"));
+		synchronized (PDQTransactorLoadTest.class) {
+			if (!routeStarted) {
+				platformCamelContext.addRoutes(new MockMpiRouteBuilder());
+				routeStarted = true;
+			}
+		}
+	}
+
+	/**
+	 * Sends the same load with and without connection pooling.
+	 */
+	@Test
+	public void testPooledConnectionLatency() throws Exception {
+		PDQTransactorImpl unpooled = new PDQTransactorImpl(MOCK_ENDPOINT,
+				platformCamelContext, template);
+		unpooled.setMaxPoolSize(0);
+		PDQTransactorImpl pooled = new PDQTransactorImpl(MOCK_ENDPOINT,
+				platformCamelContext, template);
+		pooled.setMaxPoolSize(THREADS);
+		try {
+			long[] unpooledLatencies = runLoad(unpooled);
+			long[] pooledLatencies = runLoad(pooled);
+			report("producer template", unpooledLatencies);
+			report("pooled connections", pooledLatencies);
+			LOG.info("Pooled connections opened: "
+					+ pooled.getOpenedConnectionCount() + ", reused: "
+					+ pooled.getReusedConnectionCount());
+			assertEquals(THREADS * REQUESTS_PER_THREAD,
+					pooledLatencies.length);
+		} finally {
+			pooled.shutdown();
+		}
+	}
+
+	/*
+	 * Little helping method, sending requests from several threads and
+	 * returning the sorted latencies in microseconds.
+	 */
+	private long[] runLoad(final PDQTransactorImpl transactor)
+			throws Exception {
+		for (int i = 0; i < WARMUP_REQUESTS; i++) {
+			transactor.sendPDQRequest(VALID_REQUEST_HEADER);
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<long[]>> results = new ArrayList<Future<long[]>>();
+			for (int t = 0; t < THREADS; t++) {
+				results.add(executor.submit(new Callable<long[]>() {
+					@Override
+					public long[] call() throws Exception {
+						long[] latencies = new long[REQUESTS_PER_THREAD];
+						for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+							long start = System.nanoTime();
+							transactor.sendPDQRequest(VALID_REQUEST_HEADER);
+							latencies[i] = (System.nanoTime() - start) / 1000;
+						}
+						return latencies;
+					}
+				}));
+			}
+			long[] all = new long[THREADS * REQUESTS_PER_THREAD];
+			int offset = 0;
+			for (Future<long[]> result : results) {
+				long[] latencies = result.get(5, TimeUnit.MINUTES);
+				System.arraycopy(latencies, 0, all, offset, latencies.length);
+				offset += latencies.length;
+			}
+			Arrays.sort(all);
+			return all;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/*
+	 * Little helping method, logging percentiles of sorted latencies.
+	 */
+	private void report(String name, long[] latencies) {
+		LOG.info(String.format(
+				"%-20s requests=%d p50=%dus p95=%dus p99=%dus max=%dus", name,
+				latencies.length, percentile(latencies, 50),
+				percentile(latencies, 95), percentile(latencies, 99),
+				latencies[latencies.length - 1]));
+	}
+
+	private long percentile(long[] sorted, int percent) {
+		int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+		return sorted[Math.max(0, index)];
+	}
+
+	/**
+	 * Answers every ITI-21 query with one patient, like coala-pdq-mock.
+	 */
+	private static class MockMpiRouteBuilder extends RouteBuilder {
+
+		@Override
+		public void configure() throws Exception {
+			from(MOCK_ENDPOINT).process(new Processor() {
+				@Override
+				public void process(Exchange exchange) throws Exception {
+					String request = exchange.getIn().getBody(String.class);
+					String[] segments = request.split("[\\r\\n]+");
+					String[] msh = segments[0].split("\\|");
+					String[] qpd = segments[1].split("\\|");
+					exchange.getOut().setBody(
+							"MSH|^~\\&|PXS|ReceivingFacility|CoALA|SendingFacility|20110707092808+0200||RSP^K22^RSP_K21|4711|P|2.5\r"
+									+ "MSA|AA|" + msh[9] + "\r"
+									+ "QAK|" + qpd[2] + "|OK\r"
+									+ segments[1] + "\r"
+									+ "PID|1||79471^^^&2.16.840.1.113883.3.37.4.1.1.2.1.1&ISO||Mustermann^Max||19800101|M\r");
+				}
+			});
+		}
+	}
+}
@@ -16,43 +16,126 @@
  */
 package org.openehealth.coala.util;
 
+import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 
 import javax.activation.DataSource;
 
-
-
 /**
- * This utility class provides a means to stream xml content to a DocumentHandler.
+ * This utility class provides a means to stream xml content to a
+ * DocumentHandler. The content is held UTF-8 encoded and every call of
+ * {@link #getInputStream()} returns a new stream over it, so the document can
+ * be read any number of times, e.g. for MTOM attachments which are written
+ * after the size of the message has been determined.
+ * <p>
+ * Instances are immutable and thread-safe.
  * 
  * @author kmaerz
  */
-public class CdaDataSourceImpl implements DataSource{
+public class CdaDataSourceImpl implements DataSource {
+
+	/** charset of the delivered content */
+	public static final Charset CHARSET = Charset.forName("UTF-8");
+
+	private static final String CONTENT_TYPE = "text/xml; charset=UTF-8";
+
+	private final byte[] bytes;
+	private final int length;
+
+	/**
+	 * Writes xml content into the {@link Writer} it is given, e.g. by merging
+	 * a template.
+	 */
+	public interface Renderer {
+
+		/**
+		 * Writes the xml content.
+		 * 
+		 * @param writer
+		 *            the writer for the content, must not be closed
+		 * @throws IOException
+		 *             if the content could not be written
+		 */
+		void render(Writer writer) throws IOException;
+	}
+
+	/**
+	 * Creates a new data source for the given xml content.
+	 * 
+	 * @param xml
+	 *            the xml content, must neither be null nor empty
+	 */
+	public CdaDataSourceImpl(String xml) {
+		if ((xml == null) || (xml.isEmpty()))
+			throw new IllegalArgumentException(
+					"The xml content can be neither null nor empty");
+		ByteBuffer buffer = CHARSET.encode(xml);
+		if (buffer.hasArray()) {
+			bytes = buffer.array();
+			length = buffer.limit();
+		} else {
+			bytes = new byte[buffer.remaining()];
+			buffer.get(bytes);
+			length = bytes.length;
+		}
+	}
+
+	/*
+	 * Little helping constructor, taking over an already encoded buffer.
+	 */
+	private CdaDataSourceImpl(byte[] bytes, int length) {
+		if (length == 0)
+			throw new IllegalArgumentException(
+					"The xml content can be neither null nor empty");
+		this.bytes = bytes;
+		this.length = length;
+	}
 
-	private InputStream stream;
-	
-	public CdaDataSourceImpl (String xml){
-		if ( (xml == null) || (xml.isEmpty()) ) throw new IllegalArgumentException("The xml content can be neither null nor empty");
-		stream = new ByteArrayInputStream( xml.getBytes( Charset.defaultCharset() ) );
+	/**
+	 * Creates a new data source for the content written by the given
+	 * renderer. The content is encoded into the buffer of the data source
+	 * while it is written, no String of the whole document is created.
+	 * 
+	 * @param renderer
+	 *            the renderer writing the xml content, must not be null
+	 * @return the data source for the written content
+	 * @throws IOException
+	 *             if the renderer fails
+	 */
+	public static CdaDataSourceImpl render(Renderer renderer)
+			throws IOException {
+		if (renderer == null)
+			throw new IllegalArgumentException("renderer cannot be null");
+		Buffer buffer = new Buffer();
+		Writer writer = new BufferedWriter(new OutputStreamWriter(buffer,
+				CHARSET));
+		renderer.render(writer);
+		writer.flush();
+		return new CdaDataSourceImpl(buffer.getBytes(), buffer.size());
 	}
-	
+
 	@Override
 	public InputStream getInputStream() throws IOException {
-		return stream;
+		return new ByteArrayInputStream(bytes, 0, length);
 	}
 
 	@Override
 	public OutputStream getOutputStream() throws IOException {
-		throw new UnsupportedOperationException("A CdaDataSource cannot output any data.");
+		throw new UnsupportedOperationException(
+				"A CdaDataSource cannot output any data.");
 	}
 
 	@Override
 	public String getContentType() {
-		return "text/xml";
+		return CONTENT_TYPE;
 	}
 
 	@Override
@@ -60,4 +143,24 @@ public class CdaDataSourceImpl implements DataSource{
 		return "A Patient Consent";
 	}
 
+	/**
+	 * @return the size of the UTF-8 encoded content in bytes
+	 */
+	public int getSize() {
+		return length;
+	}
+
+	/*
+	 * Byte buffer handing out its array instead of a copy.
+	 */
+	private static class Buffer extends ByteArrayOutputStream {
+
+		Buffer() {
+			super(8192);
+		}
+
+		byte[] getBytes() {
+			return buf;
+		}
+	}
 }
@@ -0,0 +1,248 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.util;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+
+/**
+ * Immutable, thread-safe codec for PXS date representations. For the default
+ * patterns <code>yyyyMMddHHmmss</code> and <code>yyyyMMdd</code> the digits
+ * are parsed and written by hand, other patterns are handled by one
+ * {@link SimpleDateFormat} per thread. No formatter is created per call.
+ */
+public final class PXSDateCodec {
+
+	public static final String DEFAULT_LONG_PATTERN = "yyyyMMddHHmmss";
+	public static final String DEFAULT_SHORT_PATTERN = "yyyyMMdd";
+
+	/** codec for the default patterns */
+	public static final PXSDateCodec DEFAULT = new PXSDateCodec(
+			DEFAULT_LONG_PATTERN, DEFAULT_SHORT_PATTERN);
+
+	private final String longPattern;
+	private final String shortPattern;
+
+	/** true, if the default patterns are used and the fast path applies */
+	private final boolean defaultPatterns;
+
+	private final ThreadLocal<Calendar> calendar = new ThreadLocal<Calendar>() {
+		@Override
+		protected Calendar initialValue() {
+			return new GregorianCalendar(Locale.GERMAN);
+		}
+	};
+
+	private final ThreadLocal<SimpleDateFormat> parser = new ThreadLocal<SimpleDateFormat>() {
+		@Override
+		protected SimpleDateFormat initialValue() {
+			return new SimpleDateFormat(longPattern, Locale.GERMAN);
+		}
+	};
+
+	private final ThreadLocal<SimpleDateFormat> longFormatter = new ThreadLocal<SimpleDateFormat>() {
+		@Override
+		protected SimpleDateFormat initialValue() {
+			return new SimpleDateFormat(longPattern);
+		}
+	};
+
+	private final ThreadLocal<SimpleDateFormat> shortFormatter = new ThreadLocal<SimpleDateFormat>() {
+		@Override
+		protected SimpleDateFormat initialValue() {
+			return new SimpleDateFormat(shortPattern);
+		}
+	};
+
+	/**
+	 * Creates a new codec for the given patterns.
+	 *
+	 * @param longPattern
+	 *            the {@link SimpleDateFormat} pattern for full timestamps
+	 * @param shortPattern
+	 *            the {@link SimpleDateFormat} pattern for dates, e.g. birth
+	 *            dates
+	 */
+	public PXSDateCodec(String longPattern, String shortPattern) {
+		if (longPattern == null || longPattern.length() == 0)
+			throw new IllegalArgumentException(
+					"longPattern cannot be null or empty");
+		if (shortPattern == null || shortPattern.length() == 0)
+			throw new IllegalArgumentException(
+					"shortPattern cannot be null or empty");
+		// fail early on invalid patterns
+		new SimpleDateFormat(longPattern);
+		new SimpleDateFormat(shortPattern);
+		this.longPattern = longPattern;
+		this.shortPattern = shortPattern;
+		this.defaultPatterns = DEFAULT_LONG_PATTERN.equals(longPattern)
+				&& DEFAULT_SHORT_PATTERN.equals(shortPattern);
+	}
+
+	/**
+	 * Converts a PXS date representation into a {@link Date}. Strings shorter
+	 * than the long pattern are filled with trailing zeroes.
+	 *
+	 * @param pxsDate
+	 *            the pxs date string. Must be at least the length of the short
+	 *            pattern and only contain digits
+	 * @return A {@link Date} that represents the same time as the date string
+	 */
+	public Date parse(String pxsDate) {
+		// Basic Checks
+		if (pxsDate == null)
+			throw new IllegalArgumentException("pxsDate cannot be null");
+		if (pxsDate.length() < shortPattern.length())
+			throw new IllegalArgumentException(
+					"pxsDate must be at least eight digits long");
+		boolean ascii = true;
+		for (int i = 0; i < pxsDate.length(); i++) {
+			char c = pxsDate.charAt(i);
+			if (!Character.isDigit(c))
+				throw new IllegalArgumentException(
+						"pxsDate must be strictly numeric");
+			ascii &= c >= '0' && c <= '9';
+		}
+
+		if (defaultPatterns && ascii
+				&& pxsDate.length() <= longPattern.length())
+			return parseDigits(pxsDate);
+
+		// Fill pxsDate with trailing zeroes if too short
+		StringBuilder padded = new StringBuilder(pxsDate);
+		while (padded.length() < longPattern.length())
+			padded.append('0');
+		try {
+			return parser.get().parse(padded.toString());
+		} catch (Exception e) {
+			throw new RuntimeException(
+					"Could not convert PXS Date representation to java Date. Invalid DateString was: "
+							+ padded, e);
+		}
+	}
+
+	/**
+	 * Formats a {@link Date} according to the long pattern.
+	 *
+	 * @param date
+	 *            the {@link Date} to format
+	 * @return the String representing the given {@link Date}
+	 */
+	public String format(Date date) {
+		if (defaultPatterns) {
+			String result = formatDigits(date, 14);
+			if (result != null)
+				return result;
+		}
+		return longFormatter.get().format(date);
+	}
+
+	/**
+	 * Formats a {@link Date} according to the short pattern.
+	 *
+	 * @param date
+	 *            the {@link Date} to format
+	 * @return the String representing the given {@link Date}
+	 */
+	public String formatShort(Date date) {
+		if (defaultPatterns) {
+			String result = formatDigits(date, 8);
+			if (result != null)
+				return result;
+		}
+		return shortFormatter.get().format(date);
+	}
+
+	/**
+	 * @return the pattern used for full timestamps
+	 */
+	public String getLongPattern() {
+		return longPattern;
+	}
+
+	/**
+	 * @return the pattern used for dates
+	 */
+	public String getShortPattern() {
+		return shortPattern;
+	}
+
+	/*
+	 * Little helping method, parsing up to 14 digits in yyyyMMddHHmmss order.
+	 * Missing digits count as zeroes, out of range values roll over like with
+	 * a lenient SimpleDateFormat.
+	 */
+	private Date parseDigits(String digits) {
+		Calendar cal = calendar.get();
+		cal.clear();
+		cal.set(digits(digits, 0, 4), digits(digits, 4, 6) - 1,
+				digits(digits, 6, 8), digits(digits, 8, 10),
+				digits(digits, 10, 12), digits(digits, 12, 14));
+		return cal.getTime();
+	}
+
+	/*
+	 * Little helping method, returning the number made of the digits between
+	 * start and end. Missing digits count as zeroes.
+	 */
+	private static int digits(String digits, int start, int end) {
+		int value = 0;
+		for (int i = start; i < end; i++) {
+			value *= 10;
+			if (i < digits.length())
+				value += digits.charAt(i) - '0';
+		}
+		return value;
+	}
+
+	/*
+	 * Little helping method, writing the first length digits of the
+	 * yyyyMMddHHmmss representation of date. Returns null for years which do
+	 * not fit into four digits.
+	 */
+	private String formatDigits(Date date, int length) {
+		Calendar cal = calendar.get();
+		cal.setTime(date);
+		int year = cal.get(Calendar.YEAR);
+		if (year > 9999 || cal.get(Calendar.ERA) != GregorianCalendar.AD)
+			return null;
+		char[] chars = new char[length];
+		writeDigits(chars, 0, 4, year);
+		writeDigits(chars, 4, 2, cal.get(Calendar.MONTH) + 1);
+		writeDigits(chars, 6, 2, cal.get(Calendar.DAY_OF_MONTH));
+		if (length > 8) {
+			writeDigits(chars, 8, 2, cal.get(Calendar.HOUR_OF_DAY));
+			writeDigits(chars, 10, 2, cal.get(Calendar.MINUTE));
+			writeDigits(chars, 12, 2, cal.get(Calendar.SECOND));
+		}
+		return new String(chars);
+	}
+
+	/*
+	 * Little helping method, writing value zero padded into count chars.
+	 */
+	private static void writeDigits(char[] chars, int offset, int count,
+			int value) {
+		for (int i = offset + count - 1; i >= offset; i--) {
+			chars[i] = (char) ('0' + value % 10);
+			value /= 10;
+		}
+	}
+}
@@ -16,16 +16,14 @@
  */
 package org.openehealth.coala.util;
 
-import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.Locale;
 
-import org.apache.commons.lang.StringUtils;
 import org.openehealth.coala.xds.XDSConfigurationImpl;
 
 /**
  * This class offers conversion Methods for PXS Dates. Define the patterns used
- * in coala-document.properties.
+ * in coala-document.properties. The patterns are configured per instance, the
+ * conversion itself is delegated to an immutable {@link PXSDateCodec}.
  * 
  * @author kmaerz
  */
@@ -34,10 +32,9 @@ public class PXSDateConverterImpl implements PXSDateConverter {
 	private XDSConfigurationImpl xdsConfiguration;
 	
 	/**
-	 * The pattern to use for Date formatting
+	 * The codec used for conversion, replaced when the patterns are configured
 	 */
-	private static String longPattern = "yyyyMMddHHmmss";
-	private static String shortPattern = "yyyyMMdd";
+	private volatile PXSDateCodec codec = PXSDateCodec.DEFAULT;
 
 	/**
 	 * Converts a PXS date representation into an {@link Date}. The String needs
@@ -51,31 +48,7 @@ public class PXSDateConverterImpl implements PXSDateConverter {
 	 * @return A {@link Date} that represents the same time as the date string
 	 */
 	public Date stringToDate(String pxsDate) {
-		// Basic Checks
-		if (pxsDate == null)
-			throw new IllegalArgumentException("pxsDate cannot be null");
-		if (pxsDate.length() < shortPattern.length())
-			throw new IllegalArgumentException(
-					"pxsDate must be at least eight digits long");
-		if (!StringUtils.isNumeric(pxsDate))
-			throw new IllegalArgumentException(
-					"pxsDate must be strictly numeric");
-
-		// Fill pxsDate with trailing zeroes if too short
-		while (pxsDate.length() < longPattern.length())
-			pxsDate += "0";
-
-		try {
-			SimpleDateFormat sdf = new SimpleDateFormat(longPattern,
-					Locale.GERMAN);
-			Date result = sdf.parse(pxsDate);
-			return result;
-		} catch (Exception e) {
-			throw new RuntimeException(
-					"Could not convert PXS Date representation to java Date. Invalid DateString was: "
-							+ pxsDate, e);
-		}
-
+		return codec.parse(pxsDate);
 	}
 
 	/**
@@ -87,8 +60,7 @@ public class PXSDateConverterImpl implements PXSDateConverter {
 	 * @return the String representing the given {@link Date}
 	 */
 	public String DateToString(Date pxsDate) {
-		SimpleDateFormat formatter = new SimpleDateFormat(longPattern);
-		return formatter.format(pxsDate);
+		return codec.format(pxsDate);
 	}
 
 	/**
@@ -101,18 +73,30 @@ public class PXSDateConverterImpl implements PXSDateConverter {
 	 * @return the String representing the given {@link Date}
 	 */
 	public String DateToShortString(Date pxsDate) {
-		SimpleDateFormat formatter = new SimpleDateFormat(shortPattern);
-		return formatter.format(pxsDate);
+		return codec.formatShort(pxsDate);
+	}
+
+	/**
+	 * Returns the codec used by this converter.
+	 * 
+	 * @return the codec used by this converter
+	 */
+	public PXSDateCodec getCodec() {
+		return codec;
 	}
 
-	
 	/*
 	 * Needed for Spring
 	 */
 	public void setXdsConfiguration(XDSConfigurationImpl xdsConfiguration) {
 		this.xdsConfiguration = xdsConfiguration;
-		if (xdsConfiguration.getLongDatePattern() != null) PXSDateConverterImpl.longPattern = xdsConfiguration.getLongDatePattern();
-		if (xdsConfiguration.getShortDatePattern() != null) PXSDateConverterImpl.shortPattern = xdsConfiguration.getShortDatePattern();
+		String longPattern = xdsConfiguration.getLongDatePattern();
+		String shortPattern = xdsConfiguration.getShortDatePattern();
+		if (longPattern == null)
+			longPattern = codec.getLongPattern();
+		if (shortPattern == null)
+			shortPattern = codec.getShortPattern();
+		this.codec = new PXSDateCodec(longPattern, shortPattern);
 	}
 
 	/*
@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.xds;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.cxf.Bus;
+import org.apache.cxf.BusFactory;
+import org.apache.cxf.interceptor.Fault;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageUtils;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.Phase;
+import org.apache.cxf.transport.Conduit;
+import org.apache.cxf.transport.common.gzip.GZIPInInterceptor;
+import org.apache.cxf.transport.common.gzip.GZIPOutInterceptor;
+import org.apache.cxf.transport.http.HTTPConduit;
+import org.apache.cxf.transports.http.configuration.ConnectionType;
+import org.apache.cxf.transports.http.configuration.HTTPClientPolicy;
+import org.slf4j.Logger;
+
+/**
+ * CXF interceptor applying the {@link XDSClientSettings} of the
+ * {@link XDSConfigurationImpl} to the outgoing ITI-18, ITI-41 and ITI-43
+ * requests. The IPF components create their CXF clients internally, so the
+ * interceptor is added to the bus and recognizes the transaction of a request
+ * by its target address. Requests to other addresses are left untouched.
+ * <p>
+ * The HTTP client policy of a conduit is configured once, when the first
+ * request is sent through it. MTOM and request compression are set per
+ * message.
+ */
+public class XDSClientConfigurer extends AbstractPhaseInterceptor<Message> {
+
+	private static final Logger LOG = org.slf4j.LoggerFactory
+			.getLogger(XDSClientConfigurer.class);
+
+	private final GZIPInInterceptor gzipInInterceptor = new GZIPInInterceptor();
+
+	/** conduits which have been configured already */
+	private final Map<Conduit, Boolean> configuredConduits = Collections
+			.synchronizedMap(new WeakHashMap<Conduit, Boolean>());
+
+	private Map<String, XDSClientSettings> settingsByAddress = Collections
+			.emptyMap();
+
+	private XDSConfigurationImpl xdsConfiguration;
+	private Bus bus;
+
+	public XDSClientConfigurer() {
+		super(Phase.SETUP);
+	}
+
+	/**
+	 * Adds this interceptor to the bus. Must be called after the XDS
+	 * configuration has been set and before the first request is sent.
+	 */
+	public synchronized void install() {
+		if (xdsConfiguration == null)
+			throw new IllegalStateException(
+					"xdsConfiguration must be set before installing.");
+		Map<String, XDSClientSettings> settings = new HashMap<String, XDSClientSettings>();
+		settings.put(addressKey(xdsConfiguration.getXdsIti18endpoint()),
+				xdsConfiguration.getXdsIti18ClientSettings());
+		settings.put(addressKey(xdsConfiguration.getXdsIti41endpoint()),
+				xdsConfiguration.getXdsIti41ClientSettings());
+		settings.put(addressKey(xdsConfiguration.getXdsIti43endpoint()),
+				xdsConfiguration.getXdsIti43ClientSettings());
+		settings.remove("");
+		settingsByAddress = settings;
+		configuredConduits.clear();
+
+		Bus target = getBus();
+		target.getOutInterceptors().remove(this);
+		target.getOutInterceptors().add(this);
+		boolean acceptCompressed = false;
+		for (XDSClientSettings s : settings.values()) {
+			acceptCompressed |= s.isAcceptCompressedResponses();
+		}
+		target.getInInterceptors().remove(gzipInInterceptor);
+		if (acceptCompressed)
+			target.getInInterceptors().add(gzipInInterceptor);
+		LOG.info("Installed XDS client settings for " + settings.size()
+				+ " endpoints.");
+	}
+
+	/**
+	 * Removes this interceptor from the bus again.
+	 */
+	public synchronized void uninstall() {
+		if (bus == null)
+			return;
+		bus.getOutInterceptors().remove(this);
+		bus.getInInterceptors().remove(gzipInInterceptor);
+		configuredConduits.clear();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.apache.cxf.interceptor.Interceptor#handleMessage(org.apache.cxf.message
+	 * .Message)
+	 */
+	@Override
+	public void handleMessage(Message message) throws Fault {
+		if (!MessageUtils.isRequestor(message))
+			return;
+		XDSClientSettings settings = settingsFor((String) message
+				.get(Message.ENDPOINT_ADDRESS));
+		if (settings == null)
+			return;
+
+		Conduit conduit = message.getExchange().getConduit(message);
+		if (conduit instanceof HTTPConduit
+				&& configuredConduits.put(conduit, Boolean.TRUE) == null) {
+			configure((HTTPConduit) conduit, settings);
+		}
+		if (settings.getMtomEnabled() != null)
+			message.put(Message.MTOM_ENABLED, settings.getMtomEnabled());
+		if (settings.isCompressRequests())
+			message.getInterceptorChain().add(
+					new GZIPOutInterceptor(settings.getCompressionThreshold()));
+	}
+
+	/**
+	 * Returns the settings of the transaction sent to the given address.
+	 * 
+	 * @param address
+	 *            the target address of a request, e.g.
+	 *            <code>https://host:8443/path</code>
+	 * @return the settings or null, if the address belongs to no XDS
+	 *         transaction
+	 */
+	XDSClientSettings settingsFor(String address) {
+		if (address == null)
+			return null;
+		return settingsByAddress.get(addressKey(address));
+	}
+
+	/*
+	 * Little helping method, configuring the HTTP client policy of a conduit.
+	 */
+	private void configure(HTTPConduit conduit, XDSClientSettings settings) {
+		HTTPClientPolicy policy = conduit.getClient();
+		if (policy == null) {
+			policy = new HTTPClientPolicy();
+			conduit.setClient(policy);
+		}
+		policy.setConnection(settings.isKeepAlive() ? ConnectionType.KEEP_ALIVE
+				: ConnectionType.CLOSE);
+		policy.setConnectionTimeout(settings.getConnectionTimeout());
+		policy.setReceiveTimeout(settings.getReceiveTimeout());
+		policy.setAllowChunking(settings.isAllowChunking());
+		policy.setChunkingThreshold(settings.getChunkingThreshold());
+		if (settings.isAcceptCompressedResponses())
+			policy.setAcceptEncoding("gzip");
+	}
+
+	/*
+	 * Little helping method, reducing a Camel endpoint URI or a HTTP address
+	 * to host, port and path, so both can be compared.
+	 */
+	static String addressKey(String address) {
+		if (address == null)
+			return "";
+		String key = address.trim();
+		int index = key.indexOf("://");
+		if (index >= 0)
+			key = key.substring(index + 3);
+		index = key.indexOf('?');
+		if (index >= 0)
+			key = key.substring(0, index);
+		while (key.endsWith("/"))
+			key = key.substring(0, key.length() - 1);
+		return key.toLowerCase(Locale.ENGLISH);
+	}
+
+	private Bus getBus() {
+		if (bus == null)
+			bus = BusFactory.getDefaultBus();
+		return bus;
+	}
+
+	public void setBus(Bus bus) {
+		this.bus = bus;
+	}
+
+	public XDSConfigurationImpl getXdsConfiguration() {
+		return xdsConfiguration;
+	}
+
+	public void setXdsConfiguration(XDSConfigurationImpl xdsConfiguration) {
+		this.xdsConfiguration = xdsConfiguration;
+	}
+}
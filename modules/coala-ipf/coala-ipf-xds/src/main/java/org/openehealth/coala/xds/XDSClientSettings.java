@@ -0,0 +1,232 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.xds;
+
+/**
+ * HTTP client settings of one XDS transaction (ITI-18, ITI-41 or ITI-43).
+ * They are applied to the CXF conduit of the transaction by the
+ * {@link XDSClientConfigurer} before each request is sent. Settings made in
+ * the CXF <code>http:conduit</code> configuration, e.g. for TLS, stay
+ * untouched.
+ * <p>
+ * There is no setting for the number of connections per host: the conduit
+ * is based on <code>HttpURLConnection</code>, which opens as many
+ * connections as there are concurrent requests. It only limits the idle
+ * connections kept alive per destination, for the whole JVM, by the
+ * <code>http.maxConnections</code> system property. Set that property on
+ * the command line if the default of 5 is too low.
+ */
+public class XDSClientSettings {
+
+	/** default connection timeout in milliseconds, as used by CXF */
+	public static final long DEFAULT_CONNECTION_TIMEOUT = 30000L;
+	/** default receive timeout in milliseconds, as used by CXF */
+	public static final long DEFAULT_RECEIVE_TIMEOUT = 60000L;
+	/** default size in bytes above which requests are sent chunked */
+	public static final int DEFAULT_CHUNKING_THRESHOLD = 4096;
+	/** default size in bytes above which requests are compressed */
+	public static final int DEFAULT_COMPRESSION_THRESHOLD = 1024;
+
+	private boolean keepAlive = true;
+	private boolean compressRequests;
+	private boolean acceptCompressedResponses;
+	private int compressionThreshold = DEFAULT_COMPRESSION_THRESHOLD;
+	private Boolean mtomEnabled;
+	private boolean allowChunking = true;
+	private int chunkingThreshold = DEFAULT_CHUNKING_THRESHOLD;
+	private long connectionTimeout = DEFAULT_CONNECTION_TIMEOUT;
+	private long receiveTimeout = DEFAULT_RECEIVE_TIMEOUT;
+
+	/**
+	 * @return true, if connections are kept alive and reused for further
+	 *         requests
+	 */
+	public boolean isKeepAlive() {
+		return keepAlive;
+	}
+
+	/**
+	 * Sets whether connections are kept alive (<code>Connection:
+	 * Keep-Alive</code>) or closed after each request. Default is true.
+	 * 
+	 * @param keepAlive
+	 *            the keepAlive to set
+	 */
+	public void setKeepAlive(boolean keepAlive) {
+		this.keepAlive = keepAlive;
+	}
+
+	/**
+	 * @return true, if requests are sent GZIP compressed
+	 */
+	public boolean isCompressRequests() {
+		return compressRequests;
+	}
+
+	/**
+	 * Sets whether requests larger than the compression threshold are sent
+	 * GZIP compressed. Only enable this if the server accepts
+	 * <code>Content-Encoding: gzip</code>. Default is false.
+	 * 
+	 * @param compressRequests
+	 *            the compressRequests to set
+	 */
+	public void setCompressRequests(boolean compressRequests) {
+		this.compressRequests = compressRequests;
+	}
+
+	/**
+	 * @return true, if GZIP compressed responses are requested
+	 */
+	public boolean isAcceptCompressedResponses() {
+		return acceptCompressedResponses;
+	}
+
+	/**
+	 * Sets whether GZIP compressed responses are requested by
+	 * <code>Accept-Encoding: gzip</code>. Default is false.
+	 * 
+	 * @param acceptCompressedResponses
+	 *            the acceptCompressedResponses to set
+	 */
+	public void setAcceptCompressedResponses(boolean acceptCompressedResponses) {
+		this.acceptCompressedResponses = acceptCompressedResponses;
+	}
+
+	/**
+	 * @return the size in bytes above which requests are compressed
+	 */
+	public int getCompressionThreshold() {
+		return compressionThreshold;
+	}
+
+	/**
+	 * Sets the size in bytes above which requests are compressed, if request
+	 * compression is enabled. Default is 1024.
+	 * 
+	 * @param compressionThreshold
+	 *            the compressionThreshold to set, must not be negative
+	 */
+	public void setCompressionThreshold(int compressionThreshold) {
+		if (compressionThreshold < 0)
+			throw new IllegalArgumentException(
+					"compressionThreshold must not be negative.");
+		this.compressionThreshold = compressionThreshold;
+	}
+
+	/**
+	 * @return true or false, if MTOM is switched on or off explicitly, null if
+	 *         the default of the IPF component is used
+	 */
+	public Boolean getMtomEnabled() {
+		return mtomEnabled;
+	}
+
+	/**
+	 * Sets whether documents are sent as MTOM attachments instead of inline
+	 * base64 content. Only meaningful for ITI-41 and ITI-43. Default is null,
+	 * keeping the default of the IPF component.
+	 * 
+	 * @param mtomEnabled
+	 *            the mtomEnabled to set
+	 */
+	public void setMtomEnabled(Boolean mtomEnabled) {
+		this.mtomEnabled = mtomEnabled;
+	}
+
+	/**
+	 * @return true, if requests may be sent chunked
+	 */
+	public boolean isAllowChunking() {
+		return allowChunking;
+	}
+
+	/**
+	 * Sets whether requests larger than the chunking threshold are streamed
+	 * with chunked transfer encoding instead of being buffered completely.
+	 * Default is true.
+	 * 
+	 * @param allowChunking
+	 *            the allowChunking to set
+	 */
+	public void setAllowChunking(boolean allowChunking) {
+		this.allowChunking = allowChunking;
+	}
+
+	/**
+	 * @return the size in bytes above which requests are sent chunked
+	 */
+	public int getChunkingThreshold() {
+		return chunkingThreshold;
+	}
+
+	/**
+	 * Sets the size in bytes above which requests are sent chunked, if
+	 * chunking is allowed. Default is 4096.
+	 * 
+	 * @param chunkingThreshold
+	 *            the chunkingThreshold to set, must not be negative
+	 */
+	public void setChunkingThreshold(int chunkingThreshold) {
+		if (chunkingThreshold < 0)
+			throw new IllegalArgumentException(
+					"chunkingThreshold must not be negative.");
+		this.chunkingThreshold = chunkingThreshold;
+	}
+
+	/**
+	 * @return the connection timeout in milliseconds
+	 */
+	public long getConnectionTimeout() {
+		return connectionTimeout;
+	}
+
+	/**
+	 * Sets the time in milliseconds to wait for a connection to be
+	 * established, 0 waits forever. Default is 30000.
+	 * 
+	 * @param connectionTimeout
+	 *            the connectionTimeout to set, must not be negative
+	 */
+	public void setConnectionTimeout(long connectionTimeout) {
+		if (connectionTimeout < 0)
+			throw new IllegalArgumentException(
+					"connectionTimeout must not be negative.");
+		this.connectionTimeout = connectionTimeout;
+	}
+
+	/**
+	 * @return the receive timeout in milliseconds
+	 */
+	public long getReceiveTimeout() {
+		return receiveTimeout;
+	}
+
+	/**
+	 * Sets the time in milliseconds to wait for a response, 0 waits forever.
+	 * Default is 60000.
+	 * 
+	 * @param receiveTimeout
+	 *            the receiveTimeout to set, must not be negative
+	 */
+	public void setReceiveTimeout(long receiveTimeout) {
+		if (receiveTimeout < 0)
+			throw new IllegalArgumentException(
+					"receiveTimeout must not be negative.");
+		this.receiveTimeout = receiveTimeout;
+	}
+}
@@ -26,6 +26,9 @@ package org.openehealth.coala.xds;
  */
 public class XDSConfigurationImpl extends XDSBaseConfiguration {
 
+	/** default maximum number of documents requested by a single ITI-43 call */
+	public static final int DEFAULT_XDS_ITI43_MAX_BATCH_SIZE = 20;
+
 	private String xdsIti18endpoint;
 	private String xdsIti41endpoint;
 	private String xdsIti43endpoint;
@@ -54,7 +57,13 @@ public class XDSConfigurationImpl extends XDSBaseConfiguration {
 
 	private String longDatePattern;
 	private String shortDatePattern;
-	
+
+	private int xdsIti43MaxBatchSize = DEFAULT_XDS_ITI43_MAX_BATCH_SIZE;
+
+	private XDSClientSettings xdsIti18ClientSettings = new XDSClientSettings();
+	private XDSClientSettings xdsIti41ClientSettings = new XDSClientSettings();
+	private XDSClientSettings xdsIti43ClientSettings = new XDSClientSettings();
+
 	public XDSConfigurationImpl() {
 		xdsIti18endpoint = "";
 		xdsIti41endpoint = "";
@@ -223,4 +232,91 @@ public class XDSConfigurationImpl extends XDSBaseConfiguration {
 	public void setShortDatePattern(String shortDatePattern) {
 		this.shortDatePattern = shortDatePattern;
 	}
+
+	/**
+	 * Returns the maximum number of documents requested by a single ITI-43
+	 * RetrieveDocumentSet call
+	 * 
+	 * @return the xdsIti43MaxBatchSize
+	 */
+	public int getXdsIti43MaxBatchSize() {
+		return xdsIti43MaxBatchSize;
+	}
+
+	/**
+	 * Sets the maximum number of documents requested by a single ITI-43
+	 * RetrieveDocumentSet call
+	 * 
+	 * @param xdsIti43MaxBatchSize
+	 *            the xdsIti43MaxBatchSize to set
+	 */
+	public void setXdsIti43MaxBatchSize(int xdsIti43MaxBatchSize) {
+		this.xdsIti43MaxBatchSize = xdsIti43MaxBatchSize;
+	}
+
+	/**
+	 * Returns the HTTP client settings of the ITI-18 transaction
+	 * 
+	 * @return the xdsIti18ClientSettings
+	 */
+	public XDSClientSettings getXdsIti18ClientSettings() {
+		return xdsIti18ClientSettings;
+	}
+
+	/**
+	 * Sets the HTTP client settings of the ITI-18 transaction
+	 * 
+	 * @param xdsIti18ClientSettings
+	 *            the xdsIti18ClientSettings to set, must not be null
+	 */
+	public void setXdsIti18ClientSettings(XDSClientSettings xdsIti18ClientSettings) {
+		if (xdsIti18ClientSettings == null)
+			throw new IllegalArgumentException(
+					"xdsIti18ClientSettings cannot be null.");
+		this.xdsIti18ClientSettings = xdsIti18ClientSettings;
+	}
+
+	/**
+	 * Returns the HTTP client settings of the ITI-41 transaction
+	 * 
+	 * @return the xdsIti41ClientSettings
+	 */
+	public XDSClientSettings getXdsIti41ClientSettings() {
+		return xdsIti41ClientSettings;
+	}
+
+	/**
+	 * Sets the HTTP client settings of the ITI-41 transaction
+	 * 
+	 * @param xdsIti41ClientSettings
+	 *            the xdsIti41ClientSettings to set, must not be null
+	 */
+	public void setXdsIti41ClientSettings(XDSClientSettings xdsIti41ClientSettings) {
+		if (xdsIti41ClientSettings == null)
+			throw new IllegalArgumentException(
+					"xdsIti41ClientSettings cannot be null.");
+		this.xdsIti41ClientSettings = xdsIti41ClientSettings;
+	}
+
+	/**
+	 * Returns the HTTP client settings of the ITI-43 transaction
+	 * 
+	 * @return the xdsIti43ClientSettings
+	 */
+	public XDSClientSettings getXdsIti43ClientSettings() {
+		return xdsIti43ClientSettings;
+	}
+
+	/**
+	 * Sets the HTTP client settings of the ITI-43 transaction
+	 * 
+	 * @param xdsIti43ClientSettings
+	 *            the xdsIti43ClientSettings to set, must not be null
+	 */
+	public void setXdsIti43ClientSettings(XDSClientSettings xdsIti43ClientSettings) {
+		if (xdsIti43ClientSettings == null)
+			throw new IllegalArgumentException(
+					"xdsIti43ClientSettings cannot be null.");
+		this.xdsIti43ClientSettings = xdsIti43ClientSettings;
+	}
 }
@@ -17,6 +17,7 @@
 package org.openehealth.coala.xds;
 
 import java.util.List;
+import java.util.Map;
 
 import org.openehealth.ipf.commons.ihe.xds.core.metadata.AvailabilityStatus;
 import org.openehealth.ipf.commons.ihe.xds.core.metadata.Document;
@@ -70,6 +71,25 @@ public interface XDSGate {
 			DocumentEntry documentEntry) throws XDSRequestFailedException,
 			XDSConfigurationErrorException;
 
+	/**
+	 * Returns the documents associated with the given
+	 * <code>documentEntries</code>, retrieved by as few ITI-43 requests as
+	 * possible.
+	 * 
+	 * @param documentEntries
+	 *            The document entries that should be processed.
+	 * @return Map of the retrieved documents, keyed by the uniqueId of their
+	 *         document entry
+	 * @throws XDSRequestFailedException
+	 *             Is thrown if anything went wrong during retrieving the
+	 *             document sets.
+	 * @throws XDSConfigurationErrorException
+	 *             Is thrown if the ITI-43 endpoint is misconfigured
+	 */
+	public Map<String, RetrievedDocument> retrieveDocumentSets(
+			List<DocumentEntry> documentEntries)
+			throws XDSRequestFailedException, XDSConfigurationErrorException;
+
 	/**
 	 * This method registers a new consent document for the given patient
 	 * 
@@ -16,7 +16,10 @@
  */
 package org.openehealth.coala.xds;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
 
 import org.openehealth.ipf.commons.ihe.xds.core.metadata.AvailabilityStatus;
 import org.openehealth.ipf.commons.ihe.xds.core.metadata.Document;
@@ -24,6 +27,7 @@ import org.openehealth.ipf.commons.ihe.xds.core.metadata.DocumentEntry;
 import org.openehealth.ipf.commons.ihe.xds.core.responses.RetrievedDocument;
 import org.slf4j.Logger;
 
+import org.openehealth.coala.concurrent.SingleFlight;
 import org.openehealth.coala.domain.ConsentSortParameter;
 import org.openehealth.coala.exception.XDSConfigurationErrorException;
 import org.openehealth.coala.exception.XDSConsentConversionException;
@@ -31,7 +35,10 @@ import org.openehealth.coala.exception.XDSRequestFailedException;
 
 /**
  * This class implements {@link XDSGate} to provide the communication to a XDS
- * server via IHE-XDS.
+ * server via IHE-XDS. Identical consent queries (ITI-18) sent concurrently
+ * share one exchange with the registry, each caller gets its own copy of the
+ * resulting list. Retrievals are never shared, as the content of a retrieved
+ * document can only be read once.
  * 
  * @author kmaerz, siekmann
  */
@@ -42,6 +49,11 @@ public class XDSGateImpl implements XDSGate {
 
 	private XDSTransactor xdsTransactor;
 
+	/*
+	 * ITI-18 exchanges in flight, keyed by patient ID and availability stati
+	 */
+	private final SingleFlight<String, List<DocumentEntry>> inFlightQueries = new SingleFlight<String, List<DocumentEntry>>();
+
 	/**
 	 * Creates a new XDSGate for XDS communication with a PXS.
 	 * 
@@ -71,23 +83,36 @@ public class XDSGateImpl implements XDSGate {
 	 *            This list must contain at least one entry.
 	 * @return List of {@link DocumentEntry} that are consent documents.
 	 * @throws XDSRequestFailedException
-	 *             If any error occurred during processing of the request
+	 *             If any error occurred during processing of the request or
+	 *             the current thread was interrupted while waiting for an
+	 *             identical request
 	 */
-	public List<DocumentEntry> requestConsents(String pid,
-			List<AvailabilityStatus> availabilityStati,
+	public List<DocumentEntry> requestConsents(final String pid,
+			final List<AvailabilityStatus> availabilityStati,
 			ConsentSortParameter sortby) throws XDSRequestFailedException {
-		List<DocumentEntry> documents;
+		List<DocumentEntry> documentEntries;
 		try {
-			documents = xdsTransactor.getConsentDocumentList(pid,
-					availabilityStati);
-			return documents;
+			documentEntries = inFlightQueries.execute(pid + "^"
+					+ availabilityStati, new Callable<List<DocumentEntry>>() {
+				@Override
+				public List<DocumentEntry> call() throws Exception {
+					return xdsTransactor.getConsentDocumentList(pid,
+							availabilityStati);
+				}
+			});
 		} catch (XDSRequestFailedException e) {
 			throw e;
+		} catch (InterruptedException e) {
+			throw new XDSRequestFailedException(
+					"Interrupted while waiting for an identical consent query.",
+					e);
 		} catch (Throwable e) {
 			LOG.error(e.getLocalizedMessage(), e);
 			throw new XDSRequestFailedException(
 					"Communication with XDS failed. See log for details", e);
 		}
+		// the list may be shared with concurrent callers of the same query
+		return new ArrayList<DocumentEntry>(documentEntries);
 	}
 
 	/**
@@ -119,6 +144,35 @@ public class XDSGateImpl implements XDSGate {
 		}
 	}
 
+	/**
+	 * Returns the documents associated with the given
+	 * <code>documentEntries</code>, retrieved by as few ITI-43 requests as
+	 * possible.
+	 * 
+	 * @param documentEntries
+	 *            The document entries that should be processed.
+	 * @return Map of the retrieved documents, keyed by the uniqueId of their
+	 *         document entry
+	 * @throws XDSRequestFailedException
+	 *             Is thrown if anything went wrong during retrieving the
+	 *             document sets.
+	 * @throws XDSConfigurationErrorException
+	 *             Is thrown if the ITI-43 endpoint is misconfigured
+	 */
+	public Map<String, RetrievedDocument> retrieveDocumentSets(
+			List<DocumentEntry> documentEntries)
+			throws XDSRequestFailedException, XDSConfigurationErrorException {
+		try {
+			return xdsTransactor.retrieveDocumentSets(documentEntries);
+		} catch (XDSRequestFailedException e) {
+			throw e;
+		} catch (Throwable e) {
+			LOG.error(e.getLocalizedMessage(), e);
+			throw new XDSRequestFailedException(
+					"Communication with XDS failed. See log for details", e);
+		}
+	}
+
 	/**
 	 * This method registers a new consent document for the given patient
 	 * 
@@ -157,4 +211,23 @@ public class XDSGateImpl implements XDSGate {
 					"Communication with XDS failed. See log for details.", e);
 		}
 	}
+
+	/**
+	 * Returns the number of consent queries which shared the response of an
+	 * identical query in flight instead of being sent to the registry.
+	 * 
+	 * @return the number of coalesced ITI-18 queries
+	 */
+	public long getCoalescedQueryCount() {
+		return inFlightQueries.getCoalescedCount();
+	}
+
+	/**
+	 * Returns the number of consent queries actually sent to the registry.
+	 * 
+	 * @return the number of sent ITI-18 queries
+	 */
+	public long getSentQueryCount() {
+		return inFlightQueries.getExecutedCount();
+	}
 }
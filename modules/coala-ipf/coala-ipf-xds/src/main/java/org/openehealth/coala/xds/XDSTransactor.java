@@ -17,6 +17,7 @@
 package org.openehealth.coala.xds;
 
 import java.util.List;
+import java.util.Map;
 
 import org.openehealth.ipf.commons.ihe.xds.core.metadata.AvailabilityStatus;
 import org.openehealth.ipf.commons.ihe.xds.core.metadata.Document;
@@ -72,6 +73,25 @@ public interface XDSTransactor {
 	public List<RetrievedDocument> retrieveDocumentSet(
 			DocumentEntry documentEntry) throws XDSRequestFailedException;
 
+	/**
+	 * This method retrieves the documents for several DocumentEntries at once.
+	 * The entries are grouped by repositoryUniqueId and homeCommunityId and
+	 * each group is requested by as few ITI-43 requests as the configured
+	 * maximum batch size allows.
+	 * 
+	 * @param documentEntries
+	 *            The DocumentEntries the documents should be retrieved for.
+	 *            Must not be null.
+	 * @return Map of the retrieved documents, keyed by the uniqueId of their
+	 *         DocumentEntry. Documents the repository did not return are
+	 *         missing from the map.
+	 * @throws XDSRequestFailedException
+	 *             Thrown if any problems occured processing the XDS requests.
+	 */
+	public Map<String, RetrievedDocument> retrieveDocumentSets(
+			List<DocumentEntry> documentEntries)
+			throws XDSRequestFailedException;
+
 	/**
 	 * This method provides and registers the documentSet.
 	 * 
@@ -19,7 +19,10 @@ package org.openehealth.coala.xds;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.MissingResourceException;
 
 import org.apache.camel.CamelContext;
@@ -49,9 +52,11 @@ import org.openehealth.ipf.commons.ihe.xds.core.requests.QueryRegistry;
 import org.openehealth.ipf.commons.ihe.xds.core.requests.RetrieveDocument;
 import org.openehealth.ipf.commons.ihe.xds.core.requests.RetrieveDocumentSet;
 import org.openehealth.ipf.commons.ihe.xds.core.requests.query.FindDocumentsQuery;
+import org.openehealth.ipf.commons.ihe.xds.core.responses.ErrorInfo;
 import org.openehealth.ipf.commons.ihe.xds.core.responses.QueryResponse;
 import org.openehealth.ipf.commons.ihe.xds.core.responses.RetrievedDocument;
 import org.openehealth.ipf.commons.ihe.xds.core.responses.RetrievedDocumentSet;
+import org.openehealth.ipf.commons.ihe.xds.core.responses.Status;
 import org.openehealth.ipf.commons.ihe.xds.core.stub.ebrs30.rs.RegistryError;
 import org.openehealth.ipf.commons.ihe.xds.core.stub.ebrs30.rs.RegistryResponseType;
 import org.openehealth.ipf.platform.camel.ihe.xds.XdsCamelValidators;
@@ -304,19 +309,150 @@ public class XDSTransactorImpl implements XDSTransactor {
 		return Collections.emptyList();
 	}
 
+	/**
+	 * This method retrieves the documents for several DocumentEntries at once.
+	 * The entries are grouped by repositoryUniqueId and homeCommunityId and
+	 * each group is sent as one ITI-43 request, split up into several requests
+	 * if it exceeds the configured maximum batch size.
+	 * 
+	 * @param documentEntries
+	 *            The DocumentEntries the documents should be retrieved for.
+	 *            Must not be null.
+	 * @return Map of the retrieved documents, keyed by the uniqueId of their
+	 *         DocumentEntry
+	 * @throws XDSRequestFailedException
+	 *             Thrown if any problems occured processing the XDS requests,
+	 *             including a response with a status other than success, e.g.
+	 *             because a document was not found.
+	 */
+	public Map<String, RetrievedDocument> retrieveDocumentSets(
+			List<DocumentEntry> documentEntries)
+			throws XDSRequestFailedException {
+		if (documentEntries == null) {
+			LOG.error("Parameter 'documentEntries' must not be null.");
+			throw new XDSRequestFailedException(
+					"Parameter 'documentEntries' must not be null.");
+		}
+		Map<String, RetrievedDocument> documents = new HashMap<String, RetrievedDocument>();
+		for (List<DocumentEntry> batch : createRetrieveBatches(documentEntries)) {
+			Exchange requestExchange = prepareRetrieveDocumentSet(batch);
+			Exchange responseExchange = producerTemplate.send(
+					xdsIti43Endpoint, requestExchange);
+
+			RetrievedDocumentSet resp = checkRetrieveResponse(responseExchange);
+			LOG.info("Received response for batched ITI43 request. "
+					+ resp.getDocuments().size() + " of " + batch.size()
+					+ " documents found!");
+			for (RetrievedDocument doc : resp.getDocuments()) {
+				documents.put(doc.getRequestData().getDocumentUniqueId(), doc);
+			}
+		}
+		return documents;
+	}
+
+	/*
+	 * Little helping method for checking the response of a batched ITI-43
+	 * request. Anything but a complete success fails the retrieval, carrying
+	 * the errors reported by the repository.
+	 */
+	private RetrievedDocumentSet checkRetrieveResponse(Exchange responseExchange)
+			throws XDSRequestFailedException {
+		if (responseExchange == null) {
+			LOG.error("No response received for ITI-43 request!");
+			throw new XDSRequestFailedException(
+					"No response received for document set request.");
+		}
+		if (responseExchange.getException() != null) {
+			LOG.error("Error ITI-43: "
+					+ responseExchange.getException().getMessage());
+			throw new XDSRequestFailedException(
+					"An error occured during proccessing of ITI-43 request. ",
+					responseExchange.getException());
+		}
+		RetrievedDocumentSet resp = null;
+		if (responseExchange.getOut() != null
+				&& responseExchange.getOut().getBody() != null)
+			resp = responseExchange.getOut().getBody(
+					RetrievedDocumentSet.class);
+		if (resp == null) {
+			LOG.error("Response body of ITI-43 request corrupted!");
+			throw new XDSRequestFailedException(
+					"Received response for document set could not be processed.");
+		}
+		if (resp.getStatus() != Status.SUCCESS) {
+			LOG.error("Repository error(s) occured while processing ITI-43 request, status "
+					+ resp.getStatus() + ":");
+			String errorText = "";
+			for (ErrorInfo e : resp.getErrors()) {
+				LOG.error("Repository error: " + e.getCodeContext());
+				errorText += e.getCodeContext() + "\n";
+			}
+			throw new XDSRequestFailedException(
+					"An error occured during proccessing of ITI-43 request, status "
+							+ resp.getStatus() + ". " + errorText);
+		}
+		return resp;
+	}
+
+	/*
+	 * Little helping method to group DocumentEntries by repository and
+	 * community, split up into batches of at most the configured size
+	 */
+	private List<List<DocumentEntry>> createRetrieveBatches(
+			List<DocumentEntry> documentEntries) {
+		int maxBatchSize = xdsConfiguration.getXdsIti43MaxBatchSize();
+		if (maxBatchSize < 1)
+			maxBatchSize = XDSConfigurationImpl.DEFAULT_XDS_ITI43_MAX_BATCH_SIZE;
+
+		Map<String, List<DocumentEntry>> groups = new LinkedHashMap<String, List<DocumentEntry>>();
+		for (DocumentEntry documentEntry : documentEntries) {
+			checkParametersRetrieveDocumentSet(documentEntry);
+			String key = documentEntry.getRepositoryUniqueId() + "|"
+					+ documentEntry.getHomeCommunityId();
+			List<DocumentEntry> group = groups.get(key);
+			if (group == null) {
+				group = new ArrayList<DocumentEntry>();
+				groups.put(key, group);
+			}
+			group.add(documentEntry);
+		}
+
+		List<List<DocumentEntry>> batches = new ArrayList<List<DocumentEntry>>();
+		for (List<DocumentEntry> group : groups.values()) {
+			for (int i = 0; i < group.size(); i += maxBatchSize) {
+				batches.add(group.subList(i,
+						Math.min(i + maxBatchSize, group.size())));
+			}
+		}
+		return batches;
+	}
+
 	/*
 	 * Little helping method to create an Exchange-object to retrieve the
 	 * consent documents for the given DocumentEntry
 	 */
 	private Exchange prepareRetrieveDocumentSet(DocumentEntry documentEntry)
 			throws XDSRequestFailedException {
+		return prepareRetrieveDocumentSet(Collections
+				.singletonList(documentEntry));
+	}
+
+	/*
+	 * Little helping method to create an Exchange-object to retrieve the
+	 * consent documents for all given DocumentEntries with a single request
+	 */
+	private Exchange prepareRetrieveDocumentSet(
+			List<DocumentEntry> documentEntries)
+			throws XDSRequestFailedException {
 		Exchange requestExchange = new DefaultExchange(camelContext);
 
 		RetrieveDocumentSet queryRegistry = new RetrieveDocumentSet();
-		queryRegistry.getDocuments().add(
-				new RetrieveDocument(documentEntry.getRepositoryUniqueId(),
-						documentEntry.getUniqueId(), documentEntry
-								.getHomeCommunityId()));
+		for (DocumentEntry documentEntry : documentEntries) {
+			queryRegistry.getDocuments().add(
+					new RetrieveDocument(documentEntry.getRepositoryUniqueId(),
+							documentEntry.getUniqueId(), documentEntry
+									.getHomeCommunityId()));
+		}
 
 		requestExchange.getIn().setBody(queryRegistry);
 
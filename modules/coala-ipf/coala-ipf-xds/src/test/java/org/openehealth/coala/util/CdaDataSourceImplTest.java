@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link CdaDataSourceImpl}.
+ */
+public class CdaDataSourceImplTest {
+
+	private static final String XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+			+ "<ClinicalDocument><title>Einwilligung Müller ß</title></ClinicalDocument>\n";
+
+	/**
+	 * Tests, whether the content is delivered UTF-8 encoded, no matter which
+	 * default charset the JVM uses, and can be read more than once.
+	 */
+	@Test
+	public void testReadTwice() throws IOException {
+		CdaDataSourceImpl dataSource = new CdaDataSourceImpl(XML);
+		byte[] expected = XML.getBytes("UTF-8");
+
+		assertArrayEquals(expected, read(dataSource.getInputStream()));
+		assertArrayEquals(expected, read(dataSource.getInputStream()));
+		assertEquals(expected.length, dataSource.getSize());
+		assertEquals("text/xml; charset=UTF-8", dataSource.getContentType());
+	}
+
+	/**
+	 * Tests, whether rendered content equals the content given as String.
+	 */
+	@Test
+	public void testRender() throws IOException {
+		CdaDataSourceImpl dataSource = CdaDataSourceImpl
+				.render(new CdaDataSourceImpl.Renderer() {
+					@Override
+					public void render(Writer writer) throws IOException {
+						for (int i = 0; i < 1000; i++) {
+							writer.write(XML);
+						}
+					}
+				});
+		StringBuilder xml = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			xml.append(XML);
+		}
+
+		assertArrayEquals(xml.toString().getBytes("UTF-8"),
+				read(dataSource.getInputStream()));
+		assertArrayEquals(read(new CdaDataSourceImpl(xml.toString())
+				.getInputStream()), read(dataSource.getInputStream()));
+	}
+
+	/**
+	 * Tests, whether empty content is rejected.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testRenderNothing() throws IOException {
+		CdaDataSourceImpl.render(new CdaDataSourceImpl.Renderer() {
+			@Override
+			public void render(Writer writer) {
+			}
+		});
+	}
+
+	/*
+	 * Little helping method, reading a stream completely.
+	 */
+	private static byte[] read(InputStream stream) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		int count;
+		while ((count = stream.read(buffer)) >= 0) {
+			bytes.write(buffer, 0, count);
+		}
+		stream.close();
+		return bytes.toByteArray();
+	}
+}
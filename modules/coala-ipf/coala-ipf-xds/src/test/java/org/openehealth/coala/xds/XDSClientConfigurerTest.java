@@ -0,0 +1,280 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.xds;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.cxf.Bus;
+import org.apache.cxf.interceptor.InterceptorChain;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.ExchangeImpl;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageImpl;
+import org.apache.cxf.service.model.EndpointInfo;
+import org.apache.cxf.transport.Conduit;
+import org.apache.cxf.transport.common.gzip.GZIPOutInterceptor;
+import org.apache.cxf.transport.http.HTTPConduit;
+import org.apache.cxf.transports.http.configuration.ConnectionType;
+import org.apache.cxf.transports.http.configuration.HTTPClientPolicy;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link XDSClientConfigurer}, checking that requests are
+ * assigned to the settings of their transaction and that these settings are
+ * applied to the conduit and the message.
+ */
+public class XDSClientConfigurerTest {
+
+	private XDSConfigurationImpl configuration;
+	private XDSClientConfigurer configurer;
+	private List<Object> outInterceptors;
+	private List<Object> inInterceptors;
+	private List<Object> chainInterceptors;
+
+	@Before
+	public void setUp() {
+		configuration = new XDSConfigurationImpl();
+		configuration
+				.setXdsIti18endpoint("xds-iti18://pxs.example.org:8443/registry/xds?secure=true&audit=false");
+		configuration
+				.setXdsIti41endpoint("xds-iti41://pxs.example.org:8443/repository/provide");
+		configuration
+				.setXdsIti43endpoint("xds-iti43://pxs.example.org:8443/repository/retrieve/");
+
+		outInterceptors = new ArrayList<Object>();
+		inInterceptors = new ArrayList<Object>();
+		chainInterceptors = new ArrayList<Object>();
+		configurer = new XDSClientConfigurer();
+		configurer.setXdsConfiguration(configuration);
+		configurer.setBus((Bus) Proxy.newProxyInstance(getClass()
+				.getClassLoader(), new Class<?>[] { Bus.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method,
+							Object[] args) {
+						if (method.getName().equals("getOutInterceptors"))
+							return outInterceptors;
+						if (method.getName().equals("getInInterceptors"))
+							return inInterceptors;
+						throw new UnsupportedOperationException(method
+								.getName());
+					}
+				}));
+	}
+
+	/**
+	 * Tests, whether Camel endpoint URIs and HTTP addresses are reduced to the
+	 * same key.
+	 */
+	@Test
+	public void testAddressKey() {
+		assertEquals("pxs.example.org:8443/registry/xds",
+				XDSClientConfigurer
+						.addressKey("xds-iti18://pxs.example.org:8443/registry/xds?secure=true"));
+		assertEquals("pxs.example.org:8443/registry/xds",
+				XDSClientConfigurer
+						.addressKey("https://PXS.example.org:8443/registry/xds/"));
+		assertEquals("", XDSClientConfigurer.addressKey(null));
+	}
+
+	/**
+	 * Tests, whether each target address gets the settings of its transaction
+	 * and unknown addresses are left alone.
+	 */
+	@Test
+	public void testSettingsFor() {
+		configurer.install();
+
+		assertSame(configuration.getXdsIti18ClientSettings(),
+				configurer.settingsFor("https://pxs.example.org:8443/registry/xds"));
+		assertSame(configuration.getXdsIti41ClientSettings(),
+				configurer.settingsFor("https://pxs.example.org:8443/repository/provide"));
+		assertSame(configuration.getXdsIti43ClientSettings(),
+				configurer.settingsFor("https://pxs.example.org:8443/repository/retrieve"));
+		assertNull(configurer.settingsFor("https://pxs.example.org:8443/other"));
+		assertNull(configurer.settingsFor(null));
+	}
+
+	/**
+	 * Tests, whether the interceptors are added to the bus only once and
+	 * removed again.
+	 */
+	@Test
+	public void testInstallAndUninstall() {
+		configurer.install();
+		configurer.install();
+		assertEquals(1, outInterceptors.size());
+		assertTrue(inInterceptors.isEmpty());
+
+		configurer.uninstall();
+		configuration.getXdsIti43ClientSettings().setAcceptCompressedResponses(
+				true);
+		configurer.install();
+		assertEquals(1, outInterceptors.size());
+		assertEquals(1, inInterceptors.size());
+
+		configurer.uninstall();
+		assertTrue(outInterceptors.isEmpty());
+		assertFalse(inInterceptors.contains(configurer));
+	}
+
+	/**
+	 * Tests, whether the settings of the transaction are applied to the HTTP
+	 * client policy of the conduit and to the message.
+	 */
+	@Test
+	public void testHandleMessage() throws Exception {
+		XDSClientSettings settings = configuration.getXdsIti41ClientSettings();
+		settings.setKeepAlive(false);
+		settings.setConnectionTimeout(1000);
+		settings.setReceiveTimeout(2000);
+		settings.setAllowChunking(false);
+		settings.setChunkingThreshold(100);
+		settings.setMtomEnabled(Boolean.TRUE);
+		settings.setCompressRequests(true);
+		settings.setCompressionThreshold(10);
+		configurer.install();
+
+		String address = "https://pxs.example.org:8443/repository/provide";
+		HTTPConduit conduit = conduit(address);
+		Message message = request(address, conduit);
+		configurer.handleMessage(message);
+
+		HTTPClientPolicy policy = conduit.getClient();
+		assertEquals(ConnectionType.CLOSE, policy.getConnection());
+		assertEquals(1000, policy.getConnectionTimeout());
+		assertEquals(2000, policy.getReceiveTimeout());
+		assertFalse(policy.isAllowChunking());
+		assertEquals(100, policy.getChunkingThreshold());
+		assertNull(policy.getAcceptEncoding());
+		assertEquals(Boolean.TRUE, message.get(Message.MTOM_ENABLED));
+		assertEquals(1, chainInterceptors.size());
+		assertTrue(chainInterceptors.get(0) instanceof GZIPOutInterceptor);
+	}
+
+	/**
+	 * Tests, whether compressed responses are requested and the MTOM default
+	 * of the IPF component is kept, if the transaction says so. The policy of
+	 * a conduit is configured only once.
+	 */
+	@Test
+	public void testHandleMessageDefaults() throws Exception {
+		XDSClientSettings settings = configuration.getXdsIti43ClientSettings();
+		settings.setAcceptCompressedResponses(true);
+		configurer.install();
+
+		String address = "https://pxs.example.org:8443/repository/retrieve";
+		HTTPConduit conduit = conduit(address);
+		HTTPClientPolicy policy = new HTTPClientPolicy();
+		conduit.setClient(policy);
+		Message message = request(address, conduit);
+		configurer.handleMessage(message);
+
+		assertSame(policy, conduit.getClient());
+		assertEquals(ConnectionType.KEEP_ALIVE, policy.getConnection());
+		assertEquals(XDSClientSettings.DEFAULT_CONNECTION_TIMEOUT,
+				policy.getConnectionTimeout());
+		assertEquals(XDSClientSettings.DEFAULT_RECEIVE_TIMEOUT,
+				policy.getReceiveTimeout());
+		assertTrue(policy.isAllowChunking());
+		assertEquals(XDSClientSettings.DEFAULT_CHUNKING_THRESHOLD,
+				policy.getChunkingThreshold());
+		assertEquals("gzip", policy.getAcceptEncoding());
+		assertFalse(message.containsKey(Message.MTOM_ENABLED));
+		assertTrue(chainInterceptors.isEmpty());
+
+		settings.setReceiveTimeout(5);
+		configurer.handleMessage(request(address, conduit));
+		assertEquals(XDSClientSettings.DEFAULT_RECEIVE_TIMEOUT,
+				policy.getReceiveTimeout());
+	}
+
+	/**
+	 * Tests, whether responses and requests to other addresses are left
+	 * untouched.
+	 */
+	@Test
+	public void testHandleMessageIgnored() throws Exception {
+		configuration.getXdsIti18ClientSettings().setMtomEnabled(Boolean.FALSE);
+		configurer.install();
+
+		String address = "https://pxs.example.org:8443/other";
+		HTTPConduit conduit = conduit(address);
+		Message message = request(address, conduit);
+		configurer.handleMessage(message);
+		assertNull(conduit.getClient());
+		assertFalse(message.containsKey(Message.MTOM_ENABLED));
+
+		address = "https://pxs.example.org:8443/registry/xds";
+		conduit = conduit(address);
+		message = request(address, conduit);
+		message.put(Message.REQUESTOR_ROLE, Boolean.FALSE);
+		configurer.handleMessage(message);
+		assertNull(conduit.getClient());
+		assertFalse(message.containsKey(Message.MTOM_ENABLED));
+	}
+
+	/*
+	 * Little helping method, creating the HTTP conduit of an address.
+	 */
+	private static HTTPConduit conduit(String address) throws IOException {
+		EndpointInfo endpointInfo = new EndpointInfo();
+		endpointInfo.setAddress(address);
+		return new HTTPConduit(null, endpointInfo);
+	}
+
+	/*
+	 * Little helping method, creating an outgoing request to an address,
+	 * sent through the given conduit.
+	 */
+	private Message request(String address, Conduit conduit) {
+		Exchange exchange = new ExchangeImpl();
+		exchange.put(Conduit.class, conduit);
+		Message message = new MessageImpl();
+		message.setExchange(exchange);
+		message.put(Message.REQUESTOR_ROLE, Boolean.TRUE);
+		message.put(Message.ENDPOINT_ADDRESS, address);
+		message.setInterceptorChain((InterceptorChain) Proxy.newProxyInstance(
+				getClass().getClassLoader(),
+				new Class<?>[] { InterceptorChain.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method,
+							Object[] args) {
+						if (method.getName().equals("add")) {
+							chainInterceptors.add(args[0]);
+							return null;
+						}
+						throw new UnsupportedOperationException(method
+								.getName());
+					}
+				}));
+		return message;
+	}
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.xds.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.openehealth.coala.xds.XDSGateImpl;
+import org.openehealth.coala.xds.XDSTransactor;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.AvailabilityStatus;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.Document;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.DocumentEntry;
+import org.openehealth.ipf.commons.ihe.xds.core.responses.RetrievedDocument;
+
+/**
+ * Unit test for {@link XDSGateImpl}, checking that identical consent queries
+ * sent concurrently share one ITI-18 exchange without sharing the returned
+ * list. The registry is replaced by a stub {@link XDSTransactor}.
+ */
+public class XDSGateCoalescingTest {
+
+	/**
+	 * Tests, whether two callers of the same query in flight receive lists of
+	 * their own, so one of them modifying its list does not affect the other.
+	 */
+	@Test
+	public void testCoalescedCallersGetOwnLists() throws Exception {
+		BlockingTransactor transactor = new BlockingTransactor();
+		final XDSGateImpl xdsGate = new XDSGateImpl(transactor);
+		final List<AvailabilityStatus> stati = Arrays
+				.asList(AvailabilityStatus.APPROVED);
+		Callable<List<DocumentEntry>> query = new Callable<List<DocumentEntry>>() {
+			@Override
+			public List<DocumentEntry> call() throws Exception {
+				return xdsGate.requestConsents("42", stati, null);
+			}
+		};
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<List<DocumentEntry>> first = executor.submit(query);
+			transactor.started.await(5, TimeUnit.SECONDS);
+			Future<List<DocumentEntry>> second = executor.submit(query);
+			long waitUntil = System.currentTimeMillis() + 5000;
+			while (xdsGate.getCoalescedQueryCount() == 0
+					&& System.currentTimeMillis() < waitUntil) {
+				Thread.sleep(10);
+			}
+			transactor.release.countDown();
+
+			List<DocumentEntry> firstEntries = first.get(5, TimeUnit.SECONDS);
+			List<DocumentEntry> secondEntries = second
+					.get(5, TimeUnit.SECONDS);
+			assertEquals(1, xdsGate.getSentQueryCount());
+			assertEquals(1, xdsGate.getCoalescedQueryCount());
+			assertNotSame(firstEntries, secondEntries);
+
+			firstEntries.clear();
+			assertEquals(1, secondEntries.size());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/*
+	 * Stub transactor answering consent queries with one entry as soon as it
+	 * is released.
+	 */
+	private static class BlockingTransactor implements XDSTransactor {
+
+		private final CountDownLatch started = new CountDownLatch(1);
+		private final CountDownLatch release = new CountDownLatch(1);
+
+		@Override
+		public List<DocumentEntry> getConsentDocumentList(String pid,
+				List<AvailabilityStatus> availabilityStati) {
+			started.countDown();
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			List<DocumentEntry> entries = new ArrayList<DocumentEntry>();
+			entries.add(new DocumentEntry());
+			return entries;
+		}
+
+		@Override
+		public List<RetrievedDocument> retrieveDocumentSet(
+				DocumentEntry documentEntry) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Map<String, RetrievedDocument> retrieveDocumentSets(
+				List<DocumentEntry> documentEntries) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public String provideAndRegisterNewConsent(Document document,
+				boolean replaceOld) {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
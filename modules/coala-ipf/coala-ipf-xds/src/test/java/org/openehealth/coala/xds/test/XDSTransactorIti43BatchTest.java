@@ -0,0 +1,300 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.xds.test;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.getCurrentArguments;
+import static org.easymock.EasyMock.isA;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.easymock.IAnswer;
+import org.junit.Before;
+import org.junit.Test;
+import org.openehealth.coala.exception.XDSRequestFailedException;
+import org.openehealth.coala.xds.XDSConfigurationImpl;
+import org.openehealth.coala.xds.XDSTransactorImpl;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.DocumentEntry;
+import org.openehealth.ipf.commons.ihe.xds.core.requests.RetrieveDocument;
+import org.openehealth.ipf.commons.ihe.xds.core.requests.RetrieveDocumentSet;
+import org.openehealth.ipf.commons.ihe.xds.core.responses.ErrorInfo;
+import org.openehealth.ipf.commons.ihe.xds.core.responses.RetrievedDocument;
+import org.openehealth.ipf.commons.ihe.xds.core.responses.RetrievedDocumentSet;
+import org.openehealth.ipf.commons.ihe.xds.core.responses.Status;
+
+/**
+ * Unit test for {@link XDSTransactorImpl#retrieveDocumentSets(List)},
+ * checking how the document entries are grouped and split into ITI-43
+ * requests and how failed responses are reported. Unlike
+ * {@link XDSTransactorIti43Test} it does not need a running repository, the
+ * requests are answered by a mocked {@link ProducerTemplate}.
+ */
+public class XDSTransactorIti43BatchTest {
+
+	private static final String ITI18_ENDPOINT = "xds-iti18://localhost:8080/xds-iti18";
+	private static final String ITI41_ENDPOINT = "xds-iti41://localhost:8080/xds-iti41";
+	private static final String ITI43_ENDPOINT = "xds-iti43://localhost:8080/xds-iti43";
+	private static final String REPOSITORY_A = "1.2.3.4.1";
+	private static final String REPOSITORY_B = "1.2.3.4.2";
+	private static final String COMMUNITY = "urn:oid:1.2.3.5";
+	private static final String NOT_FOUND = "Document 1.2.3.9.5 not found";
+
+	private List<RetrieveDocumentSet> requests;
+
+	@Before
+	public void setUp() {
+		requests = new ArrayList<RetrieveDocumentSet>();
+	}
+
+	/**
+	 * Tests, whether entries of different repositories and communities are
+	 * retrieved with one request per repository and community, keeping the
+	 * order in which they were first seen.
+	 */
+	@Test
+	public void testRetrieveGroupedByRepositoryAndCommunity() {
+		XDSTransactorImpl transactor = createTransactor(10,
+				answer(Status.SUCCESS));
+		Map<String, RetrievedDocument> documents = transactor
+				.retrieveDocumentSets(Arrays.asList(
+						entry("1.2.3.9.1", REPOSITORY_A, null),
+						entry("1.2.3.9.2", REPOSITORY_B, null),
+						entry("1.2.3.9.3", REPOSITORY_A, null),
+						entry("1.2.3.9.4", REPOSITORY_A, COMMUNITY),
+						entry("1.2.3.9.5", REPOSITORY_B, null)));
+
+		assertEquals(5, documents.size());
+		assertEquals(3, requests.size());
+		assertRequest(requests.get(0), REPOSITORY_A, null, "1.2.3.9.1",
+				"1.2.3.9.3");
+		assertRequest(requests.get(1), REPOSITORY_B, null, "1.2.3.9.2",
+				"1.2.3.9.5");
+		assertRequest(requests.get(2), REPOSITORY_A, COMMUNITY, "1.2.3.9.4");
+		for (int i = 1; i <= 5; i++) {
+			assertEquals("1.2.3.9." + i, documents.get("1.2.3.9." + i)
+					.getRequestData().getDocumentUniqueId());
+		}
+	}
+
+	/**
+	 * Tests, whether more entries of one repository than the maximum batch
+	 * size allows are split up into several requests.
+	 */
+	@Test
+	public void testRetrieveSplitIntoBatches() {
+		XDSTransactorImpl transactor = createTransactor(2,
+				answer(Status.SUCCESS));
+		Map<String, RetrievedDocument> documents = transactor
+				.retrieveDocumentSets(Arrays.asList(
+						entry("1.2.3.9.1", REPOSITORY_A, null),
+						entry("1.2.3.9.2", REPOSITORY_A, null),
+						entry("1.2.3.9.3", REPOSITORY_B, null),
+						entry("1.2.3.9.4", REPOSITORY_A, null),
+						entry("1.2.3.9.5", REPOSITORY_A, null),
+						entry("1.2.3.9.6", REPOSITORY_A, null)));
+
+		assertEquals(6, documents.size());
+		assertEquals(4, requests.size());
+		assertRequest(requests.get(0), REPOSITORY_A, null, "1.2.3.9.1",
+				"1.2.3.9.2");
+		assertRequest(requests.get(1), REPOSITORY_A, null, "1.2.3.9.4",
+				"1.2.3.9.5");
+		assertRequest(requests.get(2), REPOSITORY_A, null, "1.2.3.9.6");
+		assertRequest(requests.get(3), REPOSITORY_B, null, "1.2.3.9.3");
+	}
+
+	/**
+	 * Tests, whether a partially successful response fails the retrieval with
+	 * the errors of the repository, even if the other batches succeeded.
+	 */
+	@Test
+	public void testRetrievePartialSuccess() {
+		XDSTransactorImpl transactor = createTransactor(2,
+				answer(Status.PARTIAL_SUCCESS));
+		try {
+			transactor.retrieveDocumentSets(Arrays.asList(
+					entry("1.2.3.9.1", REPOSITORY_A, null),
+					entry("1.2.3.9.2", REPOSITORY_A, null),
+					entry("1.2.3.9.5", REPOSITORY_A, null)));
+			fail("XDSRequestFailedException expected");
+		} catch (XDSRequestFailedException e) {
+			assertTrue(e.getMessage().contains(
+					Status.PARTIAL_SUCCESS.toString()));
+			assertTrue(e.getMessage().contains(NOT_FOUND));
+		}
+		assertEquals(2, requests.size());
+	}
+
+	/**
+	 * Tests, whether a failed response fails the retrieval with the errors of
+	 * the repository.
+	 */
+	@Test
+	public void testRetrieveFailure() {
+		XDSTransactorImpl transactor = createTransactor(10,
+				answer(Status.FAILURE));
+		try {
+			transactor.retrieveDocumentSets(Arrays.asList(entry("1.2.3.9.5",
+					REPOSITORY_A, null)));
+			fail("XDSRequestFailedException expected");
+		} catch (XDSRequestFailedException e) {
+			assertTrue(e.getMessage().contains(Status.FAILURE.toString()));
+			assertTrue(e.getMessage().contains(NOT_FOUND));
+		}
+	}
+
+	/**
+	 * Tests, whether an exception of the exchange fails the retrieval and is
+	 * kept as cause.
+	 */
+	@Test
+	public void testRetrieveException() {
+		final IllegalStateException cause = new IllegalStateException(
+				"connection refused");
+		XDSTransactorImpl transactor = createTransactor(10,
+				new IAnswer<Exchange>() {
+					public Exchange answer() {
+						Exchange exchange = (Exchange) getCurrentArguments()[1];
+						exchange.setException(cause);
+						return exchange;
+					}
+				});
+		try {
+			transactor.retrieveDocumentSets(Arrays.asList(entry("1.2.3.9.1",
+					REPOSITORY_A, null)));
+			fail("XDSRequestFailedException expected");
+		} catch (XDSRequestFailedException e) {
+			assertSame(cause, e.getCause());
+		}
+	}
+
+	/**
+	 * Tests, whether a response without body fails the retrieval.
+	 */
+	@Test(expected = XDSRequestFailedException.class)
+	public void testRetrieveWithoutResponse() {
+		XDSTransactorImpl transactor = createTransactor(10,
+				new IAnswer<Exchange>() {
+					public Exchange answer() {
+						return (Exchange) getCurrentArguments()[1];
+					}
+				});
+		transactor.retrieveDocumentSets(Arrays.asList(entry("1.2.3.9.1",
+				REPOSITORY_A, null)));
+	}
+
+	/*
+	 * Little helping method, creating a transactor whose ITI-43 requests are
+	 * recorded and answered by the given answer.
+	 */
+	private XDSTransactorImpl createTransactor(int maxBatchSize,
+			IAnswer<Exchange> answer) {
+		XDSConfigurationImpl configuration = new XDSConfigurationImpl();
+		configuration.setXdsIti18endpoint(ITI18_ENDPOINT);
+		configuration.setXdsIti41endpoint(ITI41_ENDPOINT);
+		configuration.setXdsIti43endpoint(ITI43_ENDPOINT);
+		configuration.setAssigningAuthorityOID("1.2.3.6");
+		configuration.setXdsIti43MaxBatchSize(maxBatchSize);
+
+		ProducerTemplate producerTemplate = createMock(ProducerTemplate.class);
+		expect(producerTemplate.send(eq(ITI43_ENDPOINT), isA(Exchange.class)))
+				.andAnswer(answer).anyTimes();
+		replay(producerTemplate);
+
+		XDSTransactorImpl transactor = new XDSTransactorImpl();
+		transactor.setXdsConfiguration(configuration);
+		transactor.setCamelContext(new DefaultCamelContext());
+		transactor.setProducerTemplate(producerTemplate);
+		return transactor;
+	}
+
+	/*
+	 * Little helping method, creating an answer that returns all requested
+	 * documents with the given status. Unless the status is success, the
+	 * document 1.2.3.9.5 is reported as not found instead.
+	 */
+	private IAnswer<Exchange> answer(final Status status) {
+		return new IAnswer<Exchange>() {
+			public Exchange answer() {
+				Exchange exchange = (Exchange) getCurrentArguments()[1];
+				RetrieveDocumentSet request = exchange.getIn().getBody(
+						RetrieveDocumentSet.class);
+				requests.add(request);
+
+				RetrievedDocumentSet response = new RetrievedDocumentSet();
+				for (RetrieveDocument requested : request.getDocuments()) {
+					if (status != Status.SUCCESS
+							&& requested.getDocumentUniqueId().equals(
+									"1.2.3.9.5")) {
+						ErrorInfo error = new ErrorInfo();
+						error.setCodeContext(NOT_FOUND);
+						response.getErrors().add(error);
+						continue;
+					}
+					RetrievedDocument document = new RetrievedDocument();
+					document.setRequestData(requested);
+					response.getDocuments().add(document);
+				}
+				response.setStatus(response.getErrors().isEmpty() ? Status.SUCCESS
+						: status);
+				exchange.getOut().setBody(response);
+				return exchange;
+			}
+		};
+	}
+
+	/*
+	 * Little helping method, checking repository, community and documents of a
+	 * recorded request.
+	 */
+	private static void assertRequest(RetrieveDocumentSet request,
+			String repositoryUniqueId, String homeCommunityId,
+			String... documentUniqueIds) {
+		assertEquals(documentUniqueIds.length, request.getDocuments().size());
+		for (int i = 0; i < documentUniqueIds.length; i++) {
+			RetrieveDocument document = request.getDocuments().get(i);
+			assertEquals(repositoryUniqueId, document.getRepositoryUniqueId());
+			assertEquals(homeCommunityId, document.getHomeCommunityId());
+			assertEquals(documentUniqueIds[i], document.getDocumentUniqueId());
+		}
+	}
+
+	/*
+	 * Little helping method, creating a document entry.
+	 */
+	private static DocumentEntry entry(String uniqueId,
+			String repositoryUniqueId, String homeCommunityId) {
+		DocumentEntry entry = new DocumentEntry();
+		entry.setUniqueId(uniqueId);
+		entry.setRepositoryUniqueId(repositoryUniqueId);
+		entry.setHomeCommunityId(homeCommunityId);
+		return entry;
+	}
+}
@@ -0,0 +1,469 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.loadtest;
+
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.GregorianCalendar;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.openehealth.coala.domain.CoalaAuthor;
+import org.openehealth.coala.domain.ConsentFetchMode;
+import org.openehealth.coala.domain.ConsentSortParameter;
+import org.openehealth.coala.domain.FindPatientQuery;
+import org.openehealth.coala.domain.Gender;
+import org.openehealth.coala.domain.Patient;
+import org.openehealth.coala.domain.PatientAddress;
+import org.openehealth.coala.domain.PatientConsentPolicy;
+import org.openehealth.coala.domain.PatientSortParameter;
+import org.openehealth.coala.interfacing.ConsentCreationService;
+import org.openehealth.coala.interfacing.PatientService;
+import org.slf4j.Logger;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+/**
+ * Drives a weighted mix of {@link Operation}s against the PXS communication
+ * layer from a number of threads and reports the latencies as a
+ * {@link LoadReport}. {@link #main(String[])} wires the Spring contexts of
+ * CoALA against coala-pdq-mock and coala-xds-mock, as configured in
+ * coala-loadtest.properties.
+ * <p>
+ * With a target rate the calls are scheduled at fixed intervals and each
+ * latency is measured from the time the call was scheduled for, not from the
+ * time it was actually sent. Calls delayed by busy threads or a slow service
+ * therefore count with their waiting time, which avoids hiding stalls
+ * (coordinated omission). Without a target rate every thread calls the
+ * service as fast as it can. Calls scheduled during the warmup are not
+ * recorded.
+ */
+public class LoadDriver {
+
+	private static final Logger LOG = org.slf4j.LoggerFactory
+			.getLogger(LoadDriver.class);
+
+	/** location of the Spring context used by {@link #main(String[])} */
+	public static final String CONTEXT_LOCATION = "classpath:/META-INF/coala-loadtest-context.xml";
+
+	public static final int DEFAULT_THREADS = 16;
+	public static final int DEFAULT_RATE = 50;
+	public static final int DEFAULT_DURATION = 60;
+	public static final int DEFAULT_WARMUP = 10;
+	public static final int DEFAULT_PATIENT_COUNT = 1000;
+	public static final long DEFAULT_FIRST_PATIENT_ID = 100000L;
+	public static final long DEFAULT_SEED = 42L;
+
+	/** time (s) to wait for running calls after the end of the measurement */
+	private static final long DRAIN_TIMEOUT = 300L;
+
+	private static final long CONSENT_VALIDITY = TimeUnit.DAYS.toMillis(365);
+
+	private static final PatientConsentPolicy[] POLICIES = PatientConsentPolicy
+			.values();
+
+	private static final CoalaAuthor AUTHOR = new CoalaAuthor("Dr.", "Max",
+			"Loadtest");
+
+	private static final Date BIRTHDATE = new GregorianCalendar(1970, 0, 1)
+			.getTime();
+
+	private PatientService patientService;
+	private ConsentCreationService consentService;
+
+	private int threads = DEFAULT_THREADS;
+	private int rate = DEFAULT_RATE;
+	private int duration = DEFAULT_DURATION;
+	private int warmup = DEFAULT_WARMUP;
+	private int findPatientsWeight = 60;
+	private int getPatientConsentsWeight = 35;
+	private int createPatientConsentWeight = 5;
+	private int patientCount = DEFAULT_PATIENT_COUNT;
+	private long firstPatientId = DEFAULT_FIRST_PATIENT_ID;
+	private String assigningAuthorityOid;
+	private ConsentFetchMode fetchMode = ConsentFetchMode.getDefault();
+	private long seed = DEFAULT_SEED;
+
+	/**
+	 * Runs the load driver with the context at {@link #CONTEXT_LOCATION} and
+	 * prints the report. Every setting can be overridden by a system property,
+	 * e.g. <code>-Dcoala.loadtest.rate=200</code>.
+	 * 
+	 * @param args
+	 *            ignored
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the calls
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		ClassPathXmlApplicationContext context = new ClassPathXmlApplicationContext(
+				CONTEXT_LOCATION);
+		try {
+			LoadDriver driver = context.getBean("loadDriver", LoadDriver.class);
+			System.out.println(driver.run());
+		} finally {
+			context.close();
+		}
+	}
+
+	/**
+	 * Runs the warmup and the measurement. Blocks until all calls have
+	 * finished.
+	 * 
+	 * @return the report of the measurement
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the calls
+	 */
+	public LoadReport run() throws InterruptedException {
+		if (patientService == null)
+			throw new IllegalStateException("patientService is not set");
+		if (consentService == null)
+			throw new IllegalStateException("consentService is not set");
+		if (assigningAuthorityOid == null)
+			throw new IllegalStateException("assigningAuthorityOid is not set");
+		OperationMix mix = new OperationMix(findPatientsWeight,
+				getPatientConsentsWeight, createPatientConsentWeight);
+		String description = String.format(
+				"threads=%d rate=%s warmup=%ds duration=%ds fetchMode=%s mix: %s",
+				threads, rate > 0 ? rate + "/s" : "unlimited", warmup,
+				duration, fetchMode, mix);
+		LOG.info("Starting load: " + description);
+
+		Measurement measurement = new Measurement(mix);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			for (int i = 0; i < threads; i++) {
+				executor.execute(new Worker(measurement, new Random(seed + i)));
+			}
+			executor.shutdown();
+			if (!executor.awaitTermination(warmup + duration + DRAIN_TIMEOUT,
+					TimeUnit.SECONDS))
+				LOG.warn("Calls still running after the end of the measurement are not recorded");
+		} finally {
+			executor.shutdownNow();
+		}
+		long elapsed = Math.max(1L, System.nanoTime()
+				- measurement.measurementStart);
+
+		Map<Operation, Histogram> histograms = new EnumMap<Operation, Histogram>(
+				Operation.class);
+		Map<Operation, Long> errors = new EnumMap<Operation, Long>(
+				Operation.class);
+		for (Operation operation : Operation.values()) {
+			histograms.put(operation,
+					measurement.recorders[operation.ordinal()]
+							.getIntervalHistogram());
+			errors.put(operation,
+					measurement.errors[operation.ordinal()].get());
+		}
+		return new LoadReport(description, histograms, errors, elapsed,
+				measurement.unsentRequests());
+	}
+
+	/*
+	 * Little helping method, calling the service method of the operation for
+	 * a random patient.
+	 */
+	private void call(Operation operation, Random random) {
+		switch (operation) {
+		case FIND_PATIENTS:
+			patientService.findPatients(new FindPatientQuery(
+					nextPatientId(random), null, null, null),
+					PatientSortParameter.getDefault());
+			break;
+		case GET_PATIENT_CONSENTS:
+			consentService.getPatientConsents(nextPatient(random),
+					ConsentSortParameter.getDefault(), fetchMode);
+			break;
+		case CREATE_PATIENT_CONSENT:
+			Date validFrom = new Date();
+			consentService.createPatientConsent(nextPatient(random),
+					validFrom, new Date(validFrom.getTime() + CONSENT_VALIDITY),
+					POLICIES[random.nextInt(POLICIES.length)], AUTHOR);
+			break;
+		default:
+			throw new IllegalArgumentException("unknown operation "
+					+ operation);
+		}
+	}
+
+	/*
+	 * Little helping method, returning the id of a random synthetic patient.
+	 */
+	private String nextPatientId(Random random) {
+		return String.valueOf(firstPatientId + random.nextInt(patientCount));
+	}
+
+	/*
+	 * Little helping method, returning a random synthetic patient. Only the
+	 * id is looked up by the PXS, the other values are just required.
+	 */
+	private Patient nextPatient(Random random) {
+		return new Patient(nextPatientId(random), assigningAuthorityOid,
+				"Max", "Mustermann", BIRTHDATE, Gender.MALE,
+				new PatientAddress());
+	}
+
+	/**
+	 * @param patientService
+	 *            the service called by {@link Operation#FIND_PATIENTS}
+	 */
+	public void setPatientService(PatientService patientService) {
+		this.patientService = patientService;
+	}
+
+	/**
+	 * @param consentService
+	 *            the service called by {@link Operation#GET_PATIENT_CONSENTS}
+	 *            and {@link Operation#CREATE_PATIENT_CONSENT}
+	 */
+	public void setConsentService(ConsentCreationService consentService) {
+		this.consentService = consentService;
+	}
+
+	/**
+	 * @param threads
+	 *            the number of concurrent callers, must be greater than 0
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("threads must be greater than 0");
+		this.threads = threads;
+	}
+
+	/**
+	 * @param rate
+	 *            the target number of calls per second of all threads, 0 calls
+	 *            as fast as possible
+	 */
+	public void setRate(int rate) {
+		if (rate < 0)
+			throw new IllegalArgumentException("rate must not be negative");
+		this.rate = rate;
+	}
+
+	/**
+	 * @param duration
+	 *            the duration of the measurement in seconds, must be greater
+	 *            than 0
+	 */
+	public void setDuration(int duration) {
+		if (duration < 1)
+			throw new IllegalArgumentException(
+					"duration must be greater than 0");
+		this.duration = duration;
+	}
+
+	/**
+	 * @param warmup
+	 *            the duration of the warmup in seconds, whose calls are not
+	 *            recorded
+	 */
+	public void setWarmup(int warmup) {
+		if (warmup < 0)
+			throw new IllegalArgumentException("warmup must not be negative");
+		this.warmup = warmup;
+	}
+
+	/**
+	 * @param findPatientsWeight
+	 *            the weight of {@link Operation#FIND_PATIENTS} in the mix
+	 */
+	public void setFindPatientsWeight(int findPatientsWeight) {
+		this.findPatientsWeight = findPatientsWeight;
+	}
+
+	/**
+	 * @param getPatientConsentsWeight
+	 *            the weight of {@link Operation#GET_PATIENT_CONSENTS} in the
+	 *            mix
+	 */
+	public void setGetPatientConsentsWeight(int getPatientConsentsWeight) {
+		this.getPatientConsentsWeight = getPatientConsentsWeight;
+	}
+
+	/**
+	 * @param createPatientConsentWeight
+	 *            the weight of {@link Operation#CREATE_PATIENT_CONSENT} in the
+	 *            mix
+	 */
+	public void setCreatePatientConsentWeight(int createPatientConsentWeight) {
+		this.createPatientConsentWeight = createPatientConsentWeight;
+	}
+
+	/**
+	 * @param patientCount
+	 *            the number of synthetic patients the calls are spread over,
+	 *            must be greater than 0
+	 */
+	public void setPatientCount(int patientCount) {
+		if (patientCount < 1)
+			throw new IllegalArgumentException(
+					"patientCount must be greater than 0");
+		this.patientCount = patientCount;
+	}
+
+	/**
+	 * @param firstPatientId
+	 *            the id of the first synthetic patient, the others are
+	 *            numbered consecutively like in the mocks
+	 */
+	public void setFirstPatientId(long firstPatientId) {
+		if (firstPatientId < 0)
+			throw new IllegalArgumentException(
+					"firstPatientId must not be negative");
+		this.firstPatientId = firstPatientId;
+	}
+
+	/**
+	 * @param assigningAuthorityOid
+	 *            the assigning authority of the patient ids
+	 */
+	public void setAssigningAuthorityOid(String assigningAuthorityOid) {
+		this.assigningAuthorityOid = assigningAuthorityOid;
+	}
+
+	/**
+	 * @param fetchMode
+	 *            the fetch mode of {@link Operation#GET_PATIENT_CONSENTS}
+	 */
+	public void setFetchMode(ConsentFetchMode fetchMode) {
+		if (fetchMode == null)
+			throw new IllegalArgumentException("fetchMode cannot be null");
+		this.fetchMode = fetchMode;
+	}
+
+	/**
+	 * @param seed
+	 *            the seed of the random numbers of the first thread, the
+	 *            following threads use the next seeds
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * The schedule and the recorded results of one run, shared by all
+	 * {@link Worker}s.
+	 */
+	private class Measurement {
+
+		private final OperationMix mix;
+		private final long start = System.nanoTime();
+		private final long measurementStart = start
+				+ TimeUnit.SECONDS.toNanos(warmup);
+		private final long end = measurementStart
+				+ TimeUnit.SECONDS.toNanos(duration);
+		/** 0 if the calls are not scheduled */
+		private final long interval = rate > 0 ? TimeUnit.SECONDS.toNanos(1)
+				/ rate : 0L;
+		/** number of the next scheduled call */
+		private final AtomicLong ticket = new AtomicLong();
+		/** number of measured calls sent */
+		private final AtomicLong sent = new AtomicLong();
+		private final Recorder[] recorders = new Recorder[Operation.values().length];
+		private final AtomicLong[] errors = new AtomicLong[Operation.values().length];
+
+		Measurement(OperationMix mix) {
+			this.mix = mix;
+			for (int i = 0; i < recorders.length; i++) {
+				recorders[i] = new Recorder(LoadReport.SIGNIFICANT_DIGITS);
+				errors[i] = new AtomicLong();
+			}
+		}
+
+		/*
+		 * Little helping method, returning the number of calls scheduled for
+		 * the measurement, which were not sent until its end.
+		 */
+		long unsentRequests() {
+			if (interval == 0)
+				return 0L;
+			long scheduled = ticketsBefore(end) - ticketsBefore(measurementStart);
+			return Math.max(0L, scheduled - sent.get());
+		}
+
+		/*
+		 * Little helping method, returning the number of calls scheduled
+		 * before the given time.
+		 */
+		private long ticketsBefore(long time) {
+			return (time - start + interval - 1) / interval;
+		}
+	}
+
+	/**
+	 * Sends calls until the end of the measurement.
+	 */
+	private class Worker implements Runnable {
+
+		private final Measurement measurement;
+		private final Random random;
+
+		Worker(Measurement measurement, Random random) {
+			this.measurement = measurement;
+			this.random = random;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.lang.Runnable#run()
+		 */
+		@Override
+		public void run() {
+			while (!Thread.currentThread().isInterrupted()) {
+				long scheduled;
+				if (measurement.interval > 0) {
+					scheduled = measurement.start
+							+ measurement.ticket.getAndIncrement()
+							* measurement.interval;
+					if (scheduled >= measurement.end
+							|| System.nanoTime() >= measurement.end)
+						return;
+					long wait;
+					while ((wait = scheduled - System.nanoTime()) > 0)
+						LockSupport.parkNanos(wait);
+				} else {
+					scheduled = System.nanoTime();
+					if (scheduled >= measurement.end)
+						return;
+				}
+				boolean measured = scheduled >= measurement.measurementStart;
+				Operation operation = measurement.mix.select(random);
+				if (measured)
+					measurement.sent.incrementAndGet();
+				try {
+					call(operation, random);
+					if (measured)
+						measurement.recorders[operation.ordinal()]
+								.recordValue((System.nanoTime() - scheduled) / 1000);
+				} catch (RuntimeException e) {
+					if (measured)
+						measurement.errors[operation.ordinal()]
+								.incrementAndGet();
+					LOG.debug(operation.getMethodName() + " failed", e);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.loadtest;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Result of a run of the {@link LoadDriver}: the latency histograms of the
+ * successful calls, the number of failed calls per {@link Operation} and the
+ * throughput. Latencies are recorded in microseconds; {@link #toString()}
+ * renders the p50, p95, p99 and p999 latencies in milliseconds.
+ */
+public class LoadReport {
+
+	/** number of significant digits of the histograms */
+	public static final int SIGNIFICANT_DIGITS = 3;
+
+	/** printed instead of the latencies of an operation without successes */
+	public static final String NO_SUCCESSFUL_CALLS = "no successful calls, no latencies";
+
+	private final String description;
+	private final Map<Operation, Histogram> histograms = new EnumMap<Operation, Histogram>(
+			Operation.class);
+	private final Map<Operation, Long> errors = new EnumMap<Operation, Long>(
+			Operation.class);
+	private final Histogram total = new Histogram(SIGNIFICANT_DIGITS);
+	private final long totalErrors;
+	private final long elapsedNanos;
+	private final long unsentRequests;
+
+	/**
+	 * Creates a new report.
+	 * 
+	 * @param description
+	 *            describes the configuration of the run, printed as first line
+	 * @param histograms
+	 *            the latencies of the successful calls in microseconds per
+	 *            operation, missing operations count as not called
+	 * @param errors
+	 *            the number of failed calls per operation
+	 * @param elapsedNanos
+	 *            the duration of the measurement in nanoseconds
+	 * @param unsentRequests
+	 *            the number of requests of the target rate which were not
+	 *            sent before the end of the measurement
+	 */
+	public LoadReport(String description, Map<Operation, Histogram> histograms,
+			Map<Operation, Long> errors, long elapsedNanos, long unsentRequests) {
+		if (histograms == null)
+			throw new IllegalArgumentException("histograms cannot be null");
+		if (errors == null)
+			throw new IllegalArgumentException("errors cannot be null");
+		if (elapsedNanos <= 0)
+			throw new IllegalArgumentException(
+					"elapsedNanos must be greater than 0");
+		this.description = description;
+		long errorSum = 0;
+		for (Operation operation : Operation.values()) {
+			Histogram histogram = histograms.get(operation);
+			if (histogram == null)
+				histogram = new Histogram(SIGNIFICANT_DIGITS);
+			this.histograms.put(operation, histogram);
+			total.add(histogram);
+			Long count = errors.get(operation);
+			this.errors.put(operation, count == null ? 0L : count);
+			errorSum += this.errors.get(operation);
+		}
+		this.totalErrors = errorSum;
+		this.elapsedNanos = elapsedNanos;
+		this.unsentRequests = unsentRequests;
+	}
+
+	/**
+	 * @param operation
+	 *            an operation
+	 * @return the latencies of the successful calls of the operation in
+	 *         microseconds
+	 */
+	public Histogram getHistogram(Operation operation) {
+		return histograms.get(operation);
+	}
+
+	/**
+	 * @return the latencies of all successful calls in microseconds
+	 */
+	public Histogram getTotalHistogram() {
+		return total;
+	}
+
+	/**
+	 * @param operation
+	 *            an operation
+	 * @return the number of failed calls of the operation
+	 */
+	public long getErrors(Operation operation) {
+		return errors.get(operation);
+	}
+
+	/**
+	 * @return the number of all failed calls
+	 */
+	public long getTotalErrors() {
+		return totalErrors;
+	}
+
+	/**
+	 * @param operation
+	 *            an operation
+	 * @return the successful and failed calls of the operation per second
+	 */
+	public double getThroughput(Operation operation) {
+		return perSecond(histograms.get(operation).getTotalCount()
+				+ errors.get(operation));
+	}
+
+	/**
+	 * @return all successful and failed calls per second
+	 */
+	public double getTotalThroughput() {
+		return perSecond(total.getTotalCount() + totalErrors);
+	}
+
+	/**
+	 * @return the duration of the measurement in nanoseconds
+	 */
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	/**
+	 * @return the number of requests of the target rate which were not sent
+	 *         before the end of the measurement, as the threads were busy
+	 */
+	public long getUnsentRequests() {
+		return unsentRequests;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		if (description != null)
+			builder.append(description).append('\n');
+		builder.append(String.format(
+				"measured %.1f s, latencies in ms%n",
+				elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1)));
+		builder.append(String.format(
+				"%-22s %9s %7s %9s %9s %9s %9s %9s %9s%n", "operation",
+				"calls", "errors", "calls/s", "p50", "p95", "p99", "p999",
+				"max"));
+		for (Operation operation : Operation.values()) {
+			appendLine(builder, operation.getMethodName(),
+					histograms.get(operation), errors.get(operation),
+					getThroughput(operation));
+		}
+		appendLine(builder, "total", total, totalErrors, getTotalThroughput());
+		if (unsentRequests > 0)
+			builder.append(String.format(
+					"%d requests of the target rate were not sent in time, "
+							+ "the latencies are understated%n", unsentRequests));
+		return builder.toString();
+	}
+
+	/*
+	 * Little helping method, appending the line of one operation. Without
+	 * successful calls there are no latencies, which is stated instead of
+	 * printing percentiles of an empty histogram.
+	 */
+	private static void appendLine(StringBuilder builder, String name,
+			Histogram histogram, long errors, double throughput) {
+		if (histogram.getTotalCount() == 0) {
+			builder.append(String.format("%-22s %9d %7d %9.1f %s%n", name, 0,
+					errors, throughput, NO_SUCCESSFUL_CALLS));
+			return;
+		}
+		builder.append(String.format(
+				"%-22s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n", name,
+				histogram.getTotalCount(), errors, throughput,
+				millis(histogram.getValueAtPercentile(50.0)),
+				millis(histogram.getValueAtPercentile(95.0)),
+				millis(histogram.getValueAtPercentile(99.0)),
+				millis(histogram.getValueAtPercentile(99.9)),
+				millis(histogram.getMaxValue())));
+	}
+
+	/*
+	 * Little helping method, converting microseconds to milliseconds.
+	 */
+	private static double millis(long micros) {
+		return micros / 1000.0;
+	}
+
+	/*
+	 * Little helping method, returning the given count per second of the
+	 * measurement.
+	 */
+	private double perSecond(long count) {
+		return count * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+	}
+}
@@ -0,0 +1,40 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.loadtest;
+
+/**
+ * The calls of the PXS communication layer driven by the {@link LoadDriver}.
+ */
+public enum Operation {
+
+	FIND_PATIENTS("findPatients"),
+	GET_PATIENT_CONSENTS("getPatientConsents"),
+	CREATE_PATIENT_CONSENT("createPatientConsent");
+
+	private final String methodName;
+
+	private Operation(String methodName) {
+		this.methodName = methodName;
+	}
+
+	/**
+	 * @return the name of the service method called by this operation
+	 */
+	public String getMethodName() {
+		return methodName;
+	}
+}
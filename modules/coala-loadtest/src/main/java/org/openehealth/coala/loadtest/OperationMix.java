@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.loadtest;
+
+import java.util.Random;
+
+/**
+ * Weighted mix of {@link Operation}s. Each operation is selected with the
+ * probability of its weight divided by the sum of all weights, an operation
+ * with weight 0 is never selected.
+ * <p>
+ * Instances are immutable and thread-safe.
+ */
+public final class OperationMix {
+
+	private static final Operation[] OPERATIONS = Operation.values();
+
+	private final int[] weights;
+
+	/** running sums of the weights in the order of the operations */
+	private final int[] cumulativeWeights;
+
+	/**
+	 * Creates a new mix of the given weights.
+	 * 
+	 * @param findPatients
+	 *            the weight of {@link Operation#FIND_PATIENTS}
+	 * @param getPatientConsents
+	 *            the weight of {@link Operation#GET_PATIENT_CONSENTS}
+	 * @param createPatientConsent
+	 *            the weight of {@link Operation#CREATE_PATIENT_CONSENT}
+	 */
+	public OperationMix(int findPatients, int getPatientConsents,
+			int createPatientConsent) {
+		weights = new int[OPERATIONS.length];
+		weights[Operation.FIND_PATIENTS.ordinal()] = findPatients;
+		weights[Operation.GET_PATIENT_CONSENTS.ordinal()] = getPatientConsents;
+		weights[Operation.CREATE_PATIENT_CONSENT.ordinal()] = createPatientConsent;
+		cumulativeWeights = new int[OPERATIONS.length];
+		long sum = 0;
+		for (int i = 0; i < weights.length; i++) {
+			if (weights[i] < 0)
+				throw new IllegalArgumentException("weight of "
+						+ OPERATIONS[i].getMethodName() + " must not be negative");
+			sum += weights[i];
+			if (sum > Integer.MAX_VALUE)
+				throw new IllegalArgumentException("sum of the weights is too large");
+			cumulativeWeights[i] = (int) sum;
+		}
+		if (sum == 0)
+			throw new IllegalArgumentException(
+					"at least one weight must be greater than 0");
+	}
+
+	/**
+	 * Selects the next operation.
+	 * 
+	 * @param random
+	 *            the source of randomness, usually one per thread
+	 * @return the selected operation
+	 */
+	public Operation select(Random random) {
+		int value = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+		for (int i = 0; i < cumulativeWeights.length; i++) {
+			if (value < cumulativeWeights[i])
+				return OPERATIONS[i];
+		}
+		throw new IllegalStateException("no operation selected for " + value);
+	}
+
+	/**
+	 * @param operation
+	 *            an operation
+	 * @return the weight of the given operation
+	 */
+	public int getWeight(Operation operation) {
+		return weights[operation.ordinal()];
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		for (Operation operation : OPERATIONS) {
+			if (builder.length() > 0)
+				builder.append(", ");
+			builder.append(operation.getMethodName()).append('=')
+					.append(getWeight(operation));
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.loadtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.openehealth.coala.domain.CoalaAuthor;
+import org.openehealth.coala.domain.ConsentFetchMode;
+import org.openehealth.coala.domain.ConsentSortParameter;
+import org.openehealth.coala.domain.FindPatientConsentResult;
+import org.openehealth.coala.domain.FindPatientQuery;
+import org.openehealth.coala.domain.FindPatientResult;
+import org.openehealth.coala.domain.Patient;
+import org.openehealth.coala.domain.PatientConsent;
+import org.openehealth.coala.domain.PatientConsentPolicy;
+import org.openehealth.coala.domain.PatientSortParameter;
+import org.openehealth.coala.exception.XDSRequestFailedException;
+import org.openehealth.coala.interfacing.ConsentCreationService;
+import org.openehealth.coala.interfacing.PatientService;
+
+/**
+ * Unit test for {@link LoadDriver}, checking the scheduling and the recording
+ * of the calls against services answering from memory.
+ */
+public class LoadDriverTest {
+
+	private static final String AUTHORITY = "2.16.840.1.113883.3.37.4.1.1.2.2.1";
+
+	private final AtomicInteger findCalls = new AtomicInteger();
+	private final AtomicInteger consentCalls = new AtomicInteger();
+	private final AtomicInteger createCalls = new AtomicInteger();
+
+	/**
+	 * Tests, whether a target rate is kept and failed calls are counted as
+	 * errors instead of latencies.
+	 */
+	@Test
+	public void testTargetRate() throws Exception {
+		LoadDriver driver = createDriver();
+		driver.setRate(200);
+		driver.setThreads(4);
+		driver.setWarmup(0);
+		driver.setDuration(1);
+		LoadReport report = driver.run();
+
+		int calls = findCalls.get() + consentCalls.get() + createCalls.get();
+		assertEquals(200, calls, 2);
+		assertEquals(0, report.getUnsentRequests());
+		assertEquals(findCalls.get(),
+				report.getHistogram(Operation.FIND_PATIENTS).getTotalCount());
+		assertEquals(consentCalls.get(),
+				report.getHistogram(Operation.GET_PATIENT_CONSENTS)
+						.getTotalCount());
+		assertEquals(0, report.getHistogram(Operation.CREATE_PATIENT_CONSENT)
+				.getTotalCount());
+		assertEquals(createCalls.get(),
+				report.getErrors(Operation.CREATE_PATIENT_CONSENT));
+		assertEquals(createCalls.get(), report.getTotalErrors());
+		assertTrue(createCalls.get() > 0);
+		assertEquals(200.0, report.getTotalThroughput(), 20.0);
+		assertTrue(report.toString().contains("createPatientConsent"));
+	}
+
+	/**
+	 * Tests, whether calls of the warmup are not recorded.
+	 */
+	@Test
+	public void testWarmup() throws Exception {
+		LoadDriver driver = createDriver();
+		driver.setRate(100);
+		driver.setThreads(2);
+		driver.setWarmup(1);
+		driver.setDuration(1);
+		LoadReport report = driver.run();
+
+		int calls = findCalls.get() + consentCalls.get() + createCalls.get();
+		assertEquals(200, calls, 2);
+		long recorded = report.getTotalHistogram().getTotalCount()
+				+ report.getTotalErrors();
+		assertEquals(100, recorded, 2);
+	}
+
+	/*
+	 * Little helping method, creating a driver whose consent creation always
+	 * fails.
+	 */
+	private LoadDriver createDriver() {
+		LoadDriver driver = new LoadDriver();
+		driver.setPatientService(new PatientService() {
+			@Override
+			public FindPatientResult findPatients(FindPatientQuery query,
+					PatientSortParameter sortBy) {
+				findCalls.incrementAndGet();
+				return new FindPatientResult(query, sortBy);
+			}
+		});
+		driver.setConsentService(new ConsentCreationService() {
+			@Override
+			public void createPatientConsent(Patient patient, Date validFrom,
+					Date validUntil, PatientConsentPolicy policy,
+					CoalaAuthor author) {
+				createCalls.incrementAndGet();
+				throw new XDSRequestFailedException("registry unavailable");
+			}
+
+			@Override
+			public void replacePatientConsent(Patient patient, Date validFrom,
+					Date validUntil, PatientConsentPolicy policy,
+					CoalaAuthor author, PatientConsent oldConsent) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public void replaceAllPatientConsents(Patient patient,
+					Date validFrom, Date validUntil,
+					PatientConsentPolicy policy, CoalaAuthor author) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public FindPatientConsentResult getPatientConsents(Patient patient,
+					ConsentSortParameter sortBy) {
+				return getPatientConsents(patient, sortBy,
+						ConsentFetchMode.getDefault());
+			}
+
+			@Override
+			public FindPatientConsentResult getPatientConsents(Patient patient,
+					ConsentSortParameter sortBy, ConsentFetchMode fetchMode) {
+				consentCalls.incrementAndGet();
+				return new FindPatientConsentResult(patient, sortBy);
+			}
+		});
+		driver.setAssigningAuthorityOid(AUTHORITY);
+		driver.setCreatePatientConsentWeight(20);
+		return driver;
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.loadtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link LoadReport}, checking the printed table.
+ */
+public class LoadReportTest {
+
+	/**
+	 * Tests, whether an operation without successful calls is reported as
+	 * such instead of with the percentiles of an empty histogram.
+	 */
+	@Test
+	public void testOperationWithoutSuccessfulCalls() {
+		Map<Operation, Histogram> histograms = new EnumMap<Operation, Histogram>(
+				Operation.class);
+		Histogram findPatients = new Histogram(LoadReport.SIGNIFICANT_DIGITS);
+		findPatients.recordValue(1500);
+		histograms.put(Operation.FIND_PATIENTS, findPatients);
+		Map<Operation, Long> errors = new EnumMap<Operation, Long>(
+				Operation.class);
+		errors.put(Operation.CREATE_PATIENT_CONSENT, 7L);
+
+		LoadReport report = new LoadReport("test", histograms, errors,
+				TimeUnit.SECONDS.toNanos(1), 0);
+		assertEquals(7, report.getTotalErrors());
+
+		String[] lines = report.toString().split("\\r?\\n");
+		assertEquals(7, lines.length);
+		assertTrue(lines[3].startsWith("findPatients"));
+		assertFalse(lines[3].contains(LoadReport.NO_SUCCESSFUL_CALLS));
+		assertTrue(lines[3].contains("1.50"));
+		assertTrue(lines[4].startsWith("getPatientConsents"));
+		assertTrue(lines[4].contains(LoadReport.NO_SUCCESSFUL_CALLS));
+		assertTrue(lines[5].startsWith("createPatientConsent"));
+		assertTrue(lines[5].contains(LoadReport.NO_SUCCESSFUL_CALLS));
+		assertTrue(lines[5].contains(" 7 "));
+		assertTrue(lines[6].startsWith("total"));
+		assertFalse(lines[6].contains(LoadReport.NO_SUCCESSFUL_CALLS));
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.coala.loadtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link OperationMix}, checking the frequencies of the
+ * selected operations.
+ */
+public class OperationMixTest {
+
+	/**
+	 * Tests, whether operations are selected according to their weights.
+	 */
+	@Test
+	public void testSelectByWeight() {
+		OperationMix mix = new OperationMix(60, 35, 5);
+		Map<Operation, Integer> counts = count(mix, 100000);
+		assertEquals(60000, counts.get(Operation.FIND_PATIENTS), 1000);
+		assertEquals(35000, counts.get(Operation.GET_PATIENT_CONSENTS), 1000);
+		assertEquals(5000, counts.get(Operation.CREATE_PATIENT_CONSENT), 500);
+	}
+
+	/**
+	 * Tests, whether operations with weight 0 are never selected.
+	 */
+	@Test
+	public void testZeroWeight() {
+		OperationMix mix = new OperationMix(0, 1, 0);
+		Map<Operation, Integer> counts = count(mix, 1000);
+		assertEquals(1000, (int) counts.get(Operation.GET_PATIENT_CONSENTS));
+		assertEquals(0, (int) counts.get(Operation.FIND_PATIENTS));
+		assertEquals(0, (int) counts.get(Operation.CREATE_PATIENT_CONSENT));
+		assertTrue(mix.toString().contains("getPatientConsents=1"));
+	}
+
+	/**
+	 * Tests, whether negative weights and mixes without any operation are
+	 * rejected.
+	 */
+	@Test
+	public void testInvalidWeights() {
+		try {
+			new OperationMix(1, -1, 1);
+			fail("negative weight accepted");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			new OperationMix(0, 0, 0);
+			fail("empty mix accepted");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	/*
+	 * Little helping method, counting the operations of several selections.
+	 */
+	private Map<Operation, Integer> count(OperationMix mix, int selections) {
+		Map<Operation, Integer> counts = new EnumMap<Operation, Integer>(
+				Operation.class);
+		for (Operation operation : Operation.values()) {
+			counts.put(operation, 0);
+		}
+		Random random = new Random(42);
+		for (int i = 0; i < selections; i++) {
+			Operation operation = mix.select(random);
+			counts.put(operation, counts.get(operation) + 1);
+		}
+		return counts;
+	}
+}